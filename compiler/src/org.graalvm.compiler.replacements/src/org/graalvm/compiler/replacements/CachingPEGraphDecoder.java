@@ -62,6 +62,7 @@ import jdk.vm.ci.meta.ResolvedJavaMethod;
 public class CachingPEGraphDecoder extends PEGraphDecoder {
 
     protected final Providers providers;
+    protected final Providers parsingProviders;
     protected final GraphBuilderConfiguration graphBuilderConfig;
     protected final OptimisticOptimizations optimisticOpts;
     private final AllowAssumptions allowAssumptions;
@@ -73,10 +74,26 @@ public class CachingPEGraphDecoder extends PEGraphDecoder {
                     ParameterPlugin parameterPlugin,
                     NodePlugin[] nodePlugins, ResolvedJavaMethod callInlinedMethod, ResolvedJavaMethod callInlinedAgnosticMethod, SourceLanguagePositionProvider sourceLanguagePositionProvider,
                     BasePhase<? super CoreProviders> postParsingPhase, EconomicMap<ResolvedJavaMethod, EncodedGraph> graphCache) {
+        this(architecture, graph, providers, providers, graphBuilderConfig, optimisticOpts, allowAssumptions, loopExplosionPlugin, invocationPlugins, inlineInvokePlugins, parameterPlugin,
+                        nodePlugins, callInlinedMethod, callInlinedAgnosticMethod, sourceLanguagePositionProvider, postParsingPhase, graphCache);
+    }
+
+    /**
+     * Creates a decoder that uses {@code parsingProviders} instead of {@code providers} to parse
+     * and encode the graphs of the methods that are not yet in the {@code graphCache}. This allows
+     * to restrict the folding done while parsing, for example when the encoded graphs outlive the
+     * compilation.
+     */
+    public CachingPEGraphDecoder(Architecture architecture, StructuredGraph graph, Providers providers, Providers parsingProviders, GraphBuilderConfiguration graphBuilderConfig,
+                    OptimisticOptimizations optimisticOpts, AllowAssumptions allowAssumptions, LoopExplosionPlugin loopExplosionPlugin, InvocationPlugins invocationPlugins,
+                    InlineInvokePlugin[] inlineInvokePlugins, ParameterPlugin parameterPlugin, NodePlugin[] nodePlugins, ResolvedJavaMethod callInlinedMethod,
+                    ResolvedJavaMethod callInlinedAgnosticMethod, SourceLanguagePositionProvider sourceLanguagePositionProvider, BasePhase<? super CoreProviders> postParsingPhase,
+                    EconomicMap<ResolvedJavaMethod, EncodedGraph> graphCache) {
         super(architecture, graph, providers, loopExplosionPlugin,
                         invocationPlugins, inlineInvokePlugins, parameterPlugin, nodePlugins, callInlinedMethod, callInlinedAgnosticMethod, sourceLanguagePositionProvider);
 
         this.providers = providers;
+        this.parsingProviders = parsingProviders;
         this.graphBuilderConfig = graphBuilderConfig;
         this.optimisticOpts = optimisticOpts;
         this.allowAssumptions = allowAssumptions;
@@ -85,7 +102,7 @@ public class CachingPEGraphDecoder extends PEGraphDecoder {
     }
 
     protected GraphBuilderPhase.Instance createGraphBuilderPhaseInstance(IntrinsicContext initialIntrinsicContext) {
-        return new GraphBuilderPhase.Instance(providers, graphBuilderConfig, optimisticOpts, initialIntrinsicContext);
+        return new GraphBuilderPhase.Instance(parsingProviders, graphBuilderConfig, optimisticOpts, initialIntrinsicContext);
     }
 
     @SuppressWarnings("try")
@@ -105,7 +122,7 @@ public class CachingPEGraphDecoder extends PEGraphDecoder {
          * initial graph.
          */
         try (DebugContext.Scope scope = debug.scope("createGraph", graphToEncode)) {
-            new ConvertDeoptimizeToGuardPhase().apply(graphToEncode, providers);
+            new ConvertDeoptimizeToGuardPhase().apply(graphToEncode, parsingProviders);
         } catch (Throwable t) {
             throw debug.handle(t);
         }
@@ -132,9 +149,9 @@ public class CachingPEGraphDecoder extends PEGraphDecoder {
                             : null;
             GraphBuilderPhase.Instance graphBuilderPhaseInstance = createGraphBuilderPhaseInstance(initialIntrinsicContext);
             graphBuilderPhaseInstance.apply(graphToEncode);
-            CanonicalizerPhase.create().apply(graphToEncode, providers);
+            CanonicalizerPhase.create().apply(graphToEncode, parsingProviders);
             if (postParsingPhase != null) {
-                postParsingPhase.apply(graphToEncode, providers);
+                postParsingPhase.apply(graphToEncode, parsingProviders);
             }
         } catch (Throwable ex) {
             throw debug.handle(ex);
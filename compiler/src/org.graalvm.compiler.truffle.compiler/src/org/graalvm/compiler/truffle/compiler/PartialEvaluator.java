@@ -26,6 +26,7 @@ package org.graalvm.compiler.truffle.compiler;
 
 import static org.graalvm.compiler.nodes.graphbuilderconf.InlineInvokePlugin.InlineInfo.createStandardInlineInfo;
 import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.NodeSourcePositions;
+import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.EncodedGraphCache;
 import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.ExcludeAssertions;
 import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.TraceInlining;
 import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.TraceStackTraceLimit;
@@ -53,11 +54,13 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.graalvm.collections.EconomicMap;
 import org.graalvm.collections.Equivalence;
 import org.graalvm.collections.MapCursor;
 import org.graalvm.compiler.api.replacements.SnippetReflectionProvider;
+import org.graalvm.compiler.bytecode.BytecodeProvider;
 import org.graalvm.compiler.core.common.CompilationIdentifier;
 import org.graalvm.compiler.core.common.type.StampPair;
 import org.graalvm.compiler.debug.DebugCloseable;
@@ -85,6 +88,7 @@ import org.graalvm.compiler.nodes.graphbuilderconf.InlineInvokePlugin;
 import org.graalvm.compiler.nodes.graphbuilderconf.InlineInvokePlugin.InlineInfo;
 import org.graalvm.compiler.nodes.graphbuilderconf.InvocationPlugins;
 import org.graalvm.compiler.nodes.graphbuilderconf.LoopExplosionPlugin;
+import org.graalvm.compiler.nodes.graphbuilderconf.MethodSubstitutionPlugin;
 import org.graalvm.compiler.nodes.graphbuilderconf.NodePlugin;
 import org.graalvm.compiler.nodes.graphbuilderconf.ParameterPlugin;
 import org.graalvm.compiler.nodes.java.InstanceOfNode;
@@ -160,6 +164,7 @@ public abstract class PartialEvaluator {
     private final KnownTruffleTypes knownTruffleTypes;
     private final ResolvedJavaMethod callBoundary;
     private volatile GraphBuilderConfiguration configForParsing;
+    private final ConcurrentHashMap<SharedEncodedGraphCache.Configuration, SharedEncodedGraphCache> encodedGraphCaches = new ConcurrentHashMap<>();
 
     /**
      * Holds instrumentation options initialized in
@@ -624,11 +629,72 @@ public abstract class PartialEvaluator {
                         method -> TruffleCompilerRuntime.getRuntime().getInlineKind(method, true) == InlineKind.DO_NOT_INLINE_WITH_SPECULATIVE_EXCEPTION);
 
         Providers compilationUnitProviders = providers.copyWith(new TruffleConstantFieldProvider(providers.getConstantFieldProvider(), providers.getMetaAccess()));
+        SharedEncodedGraphCache sharedCache = getEncodedGraphCache(options);
+        if (sharedCache != null && graph.getAssumptions() != null) {
+            /*
+             * Graphs shared between compilations must not contain the values of mutable Truffle
+             * fields, they are folded when the graph is decoded instead.
+             */
+            Providers parsingProviders = providers.copyWith(new TruffleConstantFieldProvider(providers.getConstantFieldProvider(), providers.getMetaAccess(), false));
+            return new SharedCachePEGraphDecoder(architecture, graph, compilationUnitProviders, parsingProviders, newConfig, AllowAssumptions.YES, loopExplosionPlugin,
+                            decodingInvocationPlugins, inlineInvokePlugins, parameterPlugin, nodePluginList, sourceLanguagePositionProvider, postParsingPhase, graphCache, sharedCache);
+        }
         return new CachingPEGraphDecoder(architecture, graph, compilationUnitProviders, newConfig, TruffleCompilerImpl.Optimizations, AllowAssumptions.ifNonNull(graph.getAssumptions()),
                         loopExplosionPlugin, decodingInvocationPlugins, inlineInvokePlugins, parameterPlugin, nodePluginList, callInlinedMethod, callInlinedAgnosticMethod,
                         sourceLanguagePositionProvider, postParsingPhase, graphCache);
     }
 
+    /**
+     * Returns the cache of encoded graphs shared by all compilations with the same
+     * {@linkplain SharedEncodedGraphCache.Configuration configuration} as {@code options}, or
+     * {@code null} if it is disabled. Engines with different configurations do not share graphs.
+     */
+    private SharedEncodedGraphCache getEncodedGraphCache(OptionValues options) {
+        if (!getPolyglotOptionValue(options, EncodedGraphCache) || getPolyglotOptionValue(options, PrintExpansionHistogram)) {
+            return null;
+        }
+        return encodedGraphCaches.computeIfAbsent(new SharedEncodedGraphCache.Configuration(options), SharedEncodedGraphCache::new);
+    }
+
+    /**
+     * Removes all graphs from the caches of encoded graphs shared by compilations.
+     */
+    public void purgeEncodedGraphCache() {
+        for (SharedEncodedGraphCache cache : encodedGraphCaches.values()) {
+            cache.purge();
+        }
+    }
+
+    private final class SharedCachePEGraphDecoder extends CachingPEGraphDecoder {
+
+        private final SharedEncodedGraphCache sharedCache;
+
+        SharedCachePEGraphDecoder(Architecture architecture, StructuredGraph graph, Providers providers, Providers parsingProviders, GraphBuilderConfiguration graphBuilderConfig,
+                        AllowAssumptions allowAssumptions, LoopExplosionPlugin loopExplosionPlugin, InvocationPlugins invocationPlugins, InlineInvokePlugin[] inlineInvokePlugins,
+                        ParameterPlugin parameterPlugin, NodePlugin[] nodePlugins, SourceLanguagePositionProvider sourceLanguagePositionProvider,
+                        DeoptimizeOnExceptionPhase postParsingPhase, EconomicMap<ResolvedJavaMethod, EncodedGraph> graphCache, SharedEncodedGraphCache sharedCache) {
+            super(architecture, graph, providers, parsingProviders, graphBuilderConfig, TruffleCompilerImpl.Optimizations, allowAssumptions, loopExplosionPlugin, invocationPlugins,
+                            inlineInvokePlugins, parameterPlugin, nodePlugins, callInlinedMethod, callInlinedAgnosticMethod, sourceLanguagePositionProvider, postParsingPhase, graphCache);
+            this.sharedCache = sharedCache;
+        }
+
+        @Override
+        protected EncodedGraph lookupEncodedGraph(ResolvedJavaMethod method, MethodSubstitutionPlugin plugin, BytecodeProvider intrinsicBytecodeProvider, boolean isSubstitution,
+                        boolean trackNodeSourcePosition) {
+            if (plugin != null || isSubstitution) {
+                return super.lookupEncodedGraph(method, plugin, intrinsicBytecodeProvider, isSubstitution, trackNodeSourcePosition);
+            }
+            EncodedGraph result = sharedCache.get(debug, method, trackNodeSourcePosition);
+            if (result == null) {
+                result = super.lookupEncodedGraph(method, plugin, intrinsicBytecodeProvider, isSubstitution, trackNodeSourcePosition);
+                if (result != null) {
+                    sharedCache.put(debug, method, trackNodeSourcePosition, result);
+                }
+            }
+            return result;
+        }
+    }
+
     protected void doGraphPE(OptionValues options, CompilableTruffleAST compilable, StructuredGraph graph, HighTierContext tierContext, TruffleInliningPlan inliningDecision,
                     InlineInvokePlugin inlineInvokePlugin,
                     EconomicMap<ResolvedJavaMethod, EncodedGraph> graphCache) {
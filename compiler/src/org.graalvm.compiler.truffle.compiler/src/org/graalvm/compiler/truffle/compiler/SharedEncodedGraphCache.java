@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.compiler;
+
+import static org.graalvm.compiler.truffle.compiler.TruffleCompilerOptions.getPolyglotOptionValue;
+import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.EncodedGraphCacheCapacity;
+import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.ExcludeAssertions;
+import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.InstrumentBoundaries;
+import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.InstrumentBoundariesPerInlineSite;
+import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.InstrumentBranches;
+import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.InstrumentBranchesPerInlineSite;
+import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.NodeSourcePositions;
+import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.TracePerformanceWarnings;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.graalvm.compiler.debug.CounterKey;
+import org.graalvm.compiler.debug.DebugContext;
+import org.graalvm.compiler.nodes.EncodedGraph;
+import org.graalvm.options.OptionValues;
+
+import jdk.vm.ci.meta.ResolvedJavaMethod;
+
+/**
+ * A cache of the encoded graphs of interpreter methods that is shared by all compilations and
+ * compiler threads of a {@link PartialEvaluator}. Without it, each partial evaluation parses and
+ * encodes the {@code execute} methods of nodes, DSL generated specializations and library exports
+ * again.
+ *
+ * The graphs are parsed without folding mutable Truffle fields (see
+ * {@link TruffleConstantFieldProvider}), so their only compilation independent inputs are the
+ * bytecodes and the class hierarchy. The class hierarchy assumptions of a cached graph are
+ * recorded in every compilation that uses it, so code relying on a graph that became stale by
+ * class loading or redefinition fails to install, and the {@link TruffleCompilerImpl} then
+ * {@linkplain #purge() purges} the cache before the compilation is retried.
+ *
+ * The cache is bounded by the approximate size of the encoded graphs. When the capacity is
+ * exceeded, the least recently used graphs are evicted.
+ *
+ * Engines whose options influence how interpreter methods are parsed use separate caches, see
+ * {@link Configuration}.
+ */
+public final class SharedEncodedGraphCache {
+
+    private static final CounterKey EncodedGraphCacheHits = DebugContext.counter("EncodedGraphCacheHits").doc("Number of encoded graphs found in the shared encoded graph cache.");
+    private static final CounterKey EncodedGraphCacheMisses = DebugContext.counter("EncodedGraphCacheMisses").doc("Number of encoded graphs not found in the shared encoded graph cache.");
+    private static final CounterKey EncodedGraphCacheEvictions = DebugContext.counter("EncodedGraphCacheEvictions").doc("Number of encoded graphs evicted from the shared encoded graph cache.");
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+    private final long capacity;
+
+    /**
+     * @param capacity the maximum approximate size in bytes of all cached graphs
+     */
+    public SharedEncodedGraphCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    SharedEncodedGraphCache(Configuration configuration) {
+        this(configuration.capacity);
+    }
+
+    /**
+     * The options of an engine that influence the encoded graphs of interpreter methods or the
+     * size of the cache. Compilations share a cache only if their configurations are equal.
+     */
+    static final class Configuration {
+        final boolean nodeSourcePositions;
+        final boolean excludeAssertions;
+        final boolean instrumentBranches;
+        final boolean instrumentBranchesPerInlineSite;
+        final boolean instrumentBoundaries;
+        final boolean instrumentBoundariesPerInlineSite;
+        final boolean tracePerformanceWarnings;
+        final long capacity;
+
+        Configuration(OptionValues options) {
+            this.nodeSourcePositions = getPolyglotOptionValue(options, NodeSourcePositions);
+            this.excludeAssertions = getPolyglotOptionValue(options, ExcludeAssertions);
+            this.instrumentBranches = getPolyglotOptionValue(options, InstrumentBranches);
+            this.instrumentBranchesPerInlineSite = getPolyglotOptionValue(options, InstrumentBranchesPerInlineSite);
+            this.instrumentBoundaries = getPolyglotOptionValue(options, InstrumentBoundaries);
+            this.instrumentBoundariesPerInlineSite = getPolyglotOptionValue(options, InstrumentBoundariesPerInlineSite);
+            this.tracePerformanceWarnings = !getPolyglotOptionValue(options, TracePerformanceWarnings).isEmpty();
+            this.capacity = getPolyglotOptionValue(options, EncodedGraphCacheCapacity) * 1024L;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Configuration) {
+                Configuration other = (Configuration) obj;
+                return nodeSourcePositions == other.nodeSourcePositions && excludeAssertions == other.excludeAssertions && instrumentBranches == other.instrumentBranches &&
+                                instrumentBranchesPerInlineSite == other.instrumentBranchesPerInlineSite && instrumentBoundaries == other.instrumentBoundaries &&
+                                instrumentBoundariesPerInlineSite == other.instrumentBoundariesPerInlineSite && tracePerformanceWarnings == other.tracePerformanceWarnings &&
+                                capacity == other.capacity;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(nodeSourcePositions, excludeAssertions, instrumentBranches, instrumentBranchesPerInlineSite, instrumentBoundaries, instrumentBoundariesPerInlineSite,
+                            tracePerformanceWarnings, capacity);
+        }
+    }
+
+    public EncodedGraph get(DebugContext debug, ResolvedJavaMethod method, boolean trackNodeSourcePosition) {
+        Entry entry = entries.get(new Key(method, trackNodeSourcePosition));
+        if (entry == null) {
+            EncodedGraphCacheMisses.increment(debug);
+            return null;
+        }
+        entry.lastAccess = clock.incrementAndGet();
+        EncodedGraphCacheHits.increment(debug);
+        return entry.graph;
+    }
+
+    public void put(DebugContext debug, ResolvedJavaMethod method, boolean trackNodeSourcePosition, EncodedGraph graph) {
+        long graphSize = sizeOf(graph);
+        if (graphSize > capacity) {
+            return;
+        }
+        Entry entry = new Entry(graph, graphSize, clock.incrementAndGet());
+        if (entries.putIfAbsent(new Key(method, trackNodeSourcePosition), entry) == null) {
+            if (size.addAndGet(graphSize) > capacity) {
+                evict(debug);
+            }
+        }
+    }
+
+    /**
+     * Returns the approximate size in bytes of all cached graphs.
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    /**
+     * Removes all graphs from the cache.
+     */
+    public void purge() {
+        for (Map.Entry<Key, Entry> e : entries.entrySet()) {
+            if (entries.remove(e.getKey(), e.getValue())) {
+                size.addAndGet(-e.getValue().size);
+            }
+        }
+    }
+
+    /**
+     * Evicts the least recently used graphs until the cache is filled to at most three quarters of
+     * its capacity, so that evictions are not needed on every insertion.
+     */
+    private synchronized void evict(DebugContext debug) {
+        if (size.get() <= capacity) {
+            // another thread evicted in the meantime
+            return;
+        }
+        List<Map.Entry<Key, Entry>> candidates = new ArrayList<>(entries.entrySet());
+        candidates.sort(Comparator.comparingLong((Map.Entry<Key, Entry> e) -> e.getValue().lastAccess));
+        long target = capacity / 4 * 3;
+        for (Map.Entry<Key, Entry> e : candidates) {
+            if (size.get() <= target) {
+                break;
+            }
+            if (entries.remove(e.getKey(), e.getValue())) {
+                size.addAndGet(-e.getValue().size);
+                EncodedGraphCacheEvictions.increment(debug);
+            }
+        }
+    }
+
+    private static long sizeOf(EncodedGraph graph) {
+        return graph.getEncoding().length + 8L * graph.getNumObjects() + 8L * graph.getNodeClasses().length;
+    }
+
+    private static final class Key {
+        final ResolvedJavaMethod method;
+        final boolean trackNodeSourcePosition;
+
+        Key(ResolvedJavaMethod method, boolean trackNodeSourcePosition) {
+            this.method = method;
+            this.trackNodeSourcePosition = trackNodeSourcePosition;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Key) {
+                Key other = (Key) obj;
+                return method.equals(other.method) && trackNodeSourcePosition == other.trackNodeSourcePosition;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return method.hashCode() * 31 + (trackNodeSourcePosition ? 1 : 0);
+        }
+    }
+
+    private static final class Entry {
+        final EncodedGraph graph;
+        final long size;
+        volatile long lastAccess;
+
+        Entry(EncodedGraph graph, long size, long lastAccess) {
+            this.graph = graph;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
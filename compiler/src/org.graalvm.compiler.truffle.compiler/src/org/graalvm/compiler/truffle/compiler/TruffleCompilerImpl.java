@@ -484,6 +484,11 @@ public abstract class TruffleCompilerImpl implements TruffleCompilerBase {
                 boolean permanentBailout = bailout != null ? bailout.isPermanent() : false;
                 listener.onFailure(compilable, t.toString(), bailout != null, permanentBailout);
             }
+            if (t instanceof BailoutException && !((BailoutException) t).isPermanent() && !(t instanceof CancellationBailoutException) && !(t instanceof RetryableBailoutException)) {
+                // code installation failed because of invalidated class hierarchy dependencies
+                // which may have been recorded from a stale shared encoded graph
+                partialEvaluator.purgeEncodedGraphCache();
+            }
             throw t;
         }
     }
@@ -38,11 +38,22 @@ public class TruffleConstantFieldProvider implements ConstantFieldProvider {
     private final ConstantFieldProvider graalConstantFieldProvider;
     private final MetaAccessProvider metaAccess;
     private final EconomicMap<ResolvedJavaField, ConstantFieldInfo> cachedConstantFieldInfo;
+    private final boolean foldMutableFields;
 
     public TruffleConstantFieldProvider(ConstantFieldProvider graalConstantFieldProvider, MetaAccessProvider metaAccess) {
+        this(graalConstantFieldProvider, metaAccess, true);
+    }
+
+    /**
+     * @param foldMutableFields if {@code false}, the values of fields annotated as compilation
+     *            final, child or children fields are only folded if the field is final and not an
+     *            array. Used when the folded value must remain valid beyond a single compilation.
+     */
+    public TruffleConstantFieldProvider(ConstantFieldProvider graalConstantFieldProvider, MetaAccessProvider metaAccess, boolean foldMutableFields) {
         this.graalConstantFieldProvider = graalConstantFieldProvider;
         this.metaAccess = metaAccess;
         this.cachedConstantFieldInfo = EconomicMap.create();
+        this.foldMutableFields = foldMutableFields;
     }
 
     @Override
@@ -66,6 +77,10 @@ public class TruffleConstantFieldProvider implements ConstantFieldProvider {
 
         boolean hasObjectKind = field.getType().getJavaKind() == JavaKind.Object;
         ConstantFieldInfo info = getConstantFieldInfo(field);
+        if (info != null && !foldMutableFields) {
+            // final non-array fields were already handled by readConstantFieldFast
+            return null;
+        }
         if (info != null) {
             if (info.isChildren()) {
                 int stableDimensions = isArrayField ? 1 : 0;
@@ -209,6 +209,36 @@ public final class PolyglotCompilerOptions {
     @Option(help = "Manually set the number of compiler threads", category = OptionCategory.EXPERT)
     public static final OptionKey<Integer> CompilerThreads = new OptionKey<>(0);
 
+    @Option(help = "Start with a single compiler thread and add compiler threads while the compilation queue backlog grows. Idle compiler threads are retired.", category = OptionCategory.EXPERT)
+    public static final OptionKey<Boolean> AdaptiveCompilerThreads = new OptionKey<>(false);
+
+    @Option(help = "Maximum number of compiler threads this engine contributes to the compiler thread budget shared by all engines when AdaptiveCompilerThreads is enabled (0 = half of the available processors).", category = OptionCategory.EXPERT)
+    public static final OptionKey<Integer> MaxCompilerThreads = new OptionKey<>(0);
+
+    @Option(help = "Time in milliseconds after which an idle compiler thread is retired when AdaptiveCompilerThreads is enabled.", category = OptionCategory.EXPERT)
+    public static final OptionKey<Integer> CompilerThreadIdleTimeout = new OptionKey<>(10000);
+
+    @Option(help = "Schedule compilations of the same tier by the hotness of their call targets instead of the order in which they were submitted.", category = OptionCategory.EXPERT)
+    public static final OptionKey<Boolean> TraversingCompilationQueue = new OptionKey<>(false);
+
+    @Option(help = "Time in milliseconds after which a waiting compilation has doubled its priority in the traversing compilation queue.", category = OptionCategory.EXPERT)
+    public static final OptionKey<Integer> TraversingQueueAgingPeriod = new OptionKey<>(1000);
+
+    @Option(help = "Time in milliseconds after which a queued call target that is no longer called is removed from the traversing compilation queue (0 = never).", category = OptionCategory.EXPERT)
+    public static final OptionKey<Integer> TraversingQueueColdTimeout = new OptionKey<>(10000);
+
+    @Option(help = "File in which the call targets compiled by the engine are remembered across runs. Call targets compiled in a previous run are compiled as soon as they reach the call threshold.", category = OptionCategory.EXPERT)
+    public static final OptionKey<String> CompilationCacheFile = new OptionKey<>("");
+
+    @Option(help = "Maximum number of call targets remembered in the CompilationCacheFile. The call targets that were not used for the most runs are evicted first.", category = OptionCategory.EXPERT)
+    public static final OptionKey<Integer> CompilationCacheMaxEntries = new OptionKey<>(65536);
+
+    @Option(help = "File to which the call and type profiles of the call targets are written when the engine is closed.", category = OptionCategory.EXPERT)
+    public static final OptionKey<String> ProfileSnapshotExport = new OptionKey<>("");
+
+    @Option(help = "File written by ProfileSnapshotExport from which the profiles of new call targets are seeded. Call targets that were compiled when the snapshot was taken are compiled on their first call.", category = OptionCategory.EXPERT)
+    public static final OptionKey<String> ProfileSnapshotImport = new OptionKey<>("");
+
     @Option(help = "Minimum number of invocations or loop iterations needed to compile a guest language root.",
                     category = OptionCategory.EXPERT)
     public static final OptionKey<Integer> CompilationThreshold = new OptionKey<>(1000);
@@ -428,6 +458,12 @@ public final class PolyglotCompilerOptions {
     @Option(help = "Instrument branches by considering different inlining sites as different branches.", category = OptionCategory.EXPERT)
     public static final OptionKey<Boolean> InstrumentBranchesPerInlineSite = new OptionKey<>(false);
 
+    @Option(help = "Share the parsed graphs of interpreter methods between partial evaluations of all compiler threads.", category = OptionCategory.EXPERT)
+    public static final OptionKey<Boolean> EncodedGraphCache = new OptionKey<>(false);
+
+    @Option(help = "Maximum size in kilobytes of the encoded graphs shared between partial evaluations.", category = OptionCategory.EXPERT)
+    public static final OptionKey<Integer> EncodedGraphCacheCapacity = new OptionKey<>(32768);
+
     // Language agnostic inlining
 
     @Option(help = "Print detailed information for inlining (i.e. the entire explored call tree).", category = OptionCategory.EXPERT)
@@ -25,6 +25,9 @@
 package org.graalvm.compiler.truffle.runtime;
 
 import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.FutureTask;
@@ -34,6 +37,7 @@ import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.graalvm.compiler.truffle.common.TruffleCompilationTask;
@@ -48,15 +52,57 @@ import org.graalvm.compiler.truffle.options.PolyglotCompilerOptions;
  * (first-in-first-out).
  *
  * Note that all the compilation requests are second tier when the multi-tier option is turned off.
+ *
+ * If the {@link PolyglotCompilerOptions#TraversingCompilationQueue} option is enabled, requests of
+ * the same tier are instead ordered by the hotness of their call target, see
+ * {@link TraversingBlockingQueue}.
+ *
+ * By default the number of compiler threads is fixed when the first compilation is submitted. If
+ * the {@link PolyglotCompilerOptions#AdaptiveCompilerThreads} option is enabled, the pool starts
+ * with a single thread, adds threads while the backlog of the queue and the time requests wait in
+ * it keep growing, and retires threads that were idle for
+ * {@link PolyglotCompilerOptions#CompilerThreadIdleTimeout} milliseconds. All engines share one
+ * budget of compiler threads, to which each engine contributes at most
+ * {@link PolyglotCompilerOptions#MaxCompilerThreads} threads and which never exceeds the number of
+ * available processors.
  */
 public class BackgroundCompileQueue {
 
     private final AtomicLong idCounter;
+    private final AtomicInteger[] queuedPerTier;
     private volatile ExecutorService compilationExecutorService;
     private boolean shutdown = false;
 
+    /**
+     * Number of queued requests per compiler thread above which the adaptive pool considers adding
+     * a compiler thread.
+     */
+    private static final int ADAPTIVE_BACKLOG_PER_THREAD = 2;
+
+    /*
+     * Written before compilationExecutorService is published and never changed afterwards.
+     */
+    private boolean adaptive;
+
+    /*
+     * State of the adaptive compiler thread pool, guarded by this. The contributions are weak so
+     * that engines which are no longer reachable stop contributing to the budget.
+     */
+    private final Map<EngineData, Integer> compilerThreadContributions = new WeakHashMap<>();
+    private long queueTimeAtLastGrowth;
+
+    /**
+     * Smoothed time in nanoseconds that requests waited in the queue before a compiler thread took
+     * them. Updated atomically by the compiler threads.
+     */
+    private final AtomicLong averageQueueTime = new AtomicLong();
+
     public BackgroundCompileQueue() {
         this.idCounter = new AtomicLong();
+        this.queuedPerTier = new AtomicInteger[Priority.values().length];
+        for (int i = 0; i < queuedPerTier.length; i++) {
+            queuedPerTier[i] = new AtomicInteger();
+        }
     }
 
     private ExecutorService getExecutorService(OptimizedCallTarget callTarget) {
@@ -82,16 +128,108 @@ public class BackgroundCompileQueue {
             }
             threads = Math.max(1, threads);
 
+            int maxThreads = threads;
+            long keepAlive = 0;
+            adaptive = callTarget.getOptionValue(PolyglotCompilerOptions.AdaptiveCompilerThreads);
+            if (adaptive) {
+                // Start small unless a number of threads was selected manually.
+                threads = Math.max(1, callTarget.getOptionValue(PolyglotCompilerOptions.CompilerThreads));
+                maxThreads = Math.max(threads, Runtime.getRuntime().availableProcessors());
+                keepAlive = Math.max(1, callTarget.getOptionValue(PolyglotCompilerOptions.CompilerThreadIdleTimeout));
+            }
+
             ThreadFactory factory = newThreadFactory("TruffleCompilerThread", callTarget);
+            if (adaptive) {
+                factory = new RetiringThreadFactory(factory);
+            }
+
+            BlockingQueue<Runnable> queue;
+            if (callTarget.getOptionValue(PolyglotCompilerOptions.TraversingCompilationQueue)) {
+                long agingPeriod = TimeUnit.MILLISECONDS.toNanos(Math.max(1, callTarget.getOptionValue(PolyglotCompilerOptions.TraversingQueueAgingPeriod)));
+                long coldTimeout = TimeUnit.MILLISECONDS.toNanos(callTarget.getOptionValue(PolyglotCompilerOptions.TraversingQueueColdTimeout));
+                queue = new TraversingBlockingQueue(agingPeriod, coldTimeout);
+            } else {
+                queue = new PriorityBlockingQueue<>();
+            }
 
-            return compilationExecutorService = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
-                            new PriorityBlockingQueue<>(), factory) {
+            ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threads, maxThreads, keepAlive, TimeUnit.MILLISECONDS,
+                            queue, factory) {
                 @Override
                 protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
                     return new RequestFutureTask<>((RequestImpl<T>) callable);
                 }
             };
+            if (adaptive) {
+                threadPool.allowCoreThreadTimeOut(true);
+            }
+            return compilationExecutorService = threadPool;
+        }
+    }
+
+    /**
+     * Registers the contribution of the engine of {@code callTarget} to the compiler thread budget.
+     */
+    private synchronized void registerEngine(OptimizedCallTarget callTarget) {
+        if (!compilerThreadContributions.containsKey(callTarget.engine)) {
+            int contribution = callTarget.getOptionValue(PolyglotCompilerOptions.MaxCompilerThreads);
+            if (contribution <= 0) {
+                contribution = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            }
+            compilerThreadContributions.put(callTarget.engine, contribution);
+        }
+    }
+
+    private int getCompilerThreadBudget(ThreadPoolExecutor threadPool) {
+        assert Thread.holdsLock(this);
+        int budget = 0;
+        for (Integer contribution : compilerThreadContributions.values()) {
+            budget += contribution;
         }
+        return Math.max(1, Math.min(budget, threadPool.getMaximumPoolSize()));
+    }
+
+    /**
+     * Adds a compiler thread to the adaptive pool if the queue holds more than
+     * {@link #ADAPTIVE_BACKLOG_PER_THREAD} requests per thread and the time requests wait in the
+     * queue grew since the last thread was added.
+     */
+    private void maybeAddCompilerThread(ThreadPoolExecutor threadPool) {
+        if (threadPool.getQueue().size() <= threadPool.getCorePoolSize() * ADAPTIVE_BACKLOG_PER_THREAD) {
+            return;
+        }
+        synchronized (this) {
+            int threads = threadPool.getCorePoolSize();
+            long queueTime = averageQueueTime.get();
+            if (threads < getCompilerThreadBudget(threadPool) && queueTime > queueTimeAtLastGrowth && !threadPool.isShutdown()) {
+                queueTimeAtLastGrowth = queueTime;
+                threadPool.setCorePoolSize(threads + 1);
+            }
+        }
+    }
+
+    /**
+     * Called by an adaptive pool compiler thread after it retired because it was idle.
+     */
+    private void onCompilerThreadRetired() {
+        ExecutorService executorService = compilationExecutorService;
+        if (!(executorService instanceof ThreadPoolExecutor)) {
+            return;
+        }
+        ThreadPoolExecutor threadPool = (ThreadPoolExecutor) executorService;
+        synchronized (this) {
+            if (threadPool.isShutdown()) {
+                return;
+            }
+            int threads = Math.max(1, Math.min(threadPool.getCorePoolSize(), threadPool.getPoolSize()));
+            if (threads < threadPool.getCorePoolSize()) {
+                threadPool.setCorePoolSize(threads);
+            }
+            queueTimeAtLastGrowth = 0;
+        }
+    }
+
+    private void onRequestPolled(long queueTime) {
+        averageQueueTime.updateAndGet(average -> average + (queueTime - average) / 8);
     }
 
     @SuppressWarnings("unused")
@@ -101,8 +239,20 @@ public class BackgroundCompileQueue {
 
     public CancellableCompileTask submitTask(Priority priority, OptimizedCallTarget target, Request request) {
         CancellableCompileTask cancellable = new CancellableCompileTask(priority == Priority.LAST_TIER);
-        RequestImpl<Void> requestImpl = new RequestImpl<>(nextId(), priority, target, cancellable, request);
-        cancellable.setFuture(getExecutorService(target).submit(requestImpl));
+        RequestImpl<Void> requestImpl = new RequestImpl<>(this, nextId(), priority, target, cancellable, request);
+        ExecutorService executorService = getExecutorService(target);
+        /* Counted before it is queued, so that a compiler thread never sees a negative count. */
+        queuedPerTier[priority.value].incrementAndGet();
+        try {
+            cancellable.setFuture(executorService.submit(requestImpl));
+        } catch (RejectedExecutionException e) {
+            queuedPerTier[priority.value].decrementAndGet();
+            throw e;
+        }
+        if (adaptive) {
+            registerEngine(target);
+            maybeAddCompilerThread((ThreadPoolExecutor) executorService);
+        }
         return cancellable;
     }
 
@@ -119,6 +269,28 @@ public class BackgroundCompileQueue {
         }
     }
 
+    /**
+     * Returns the number of compiler threads the pool currently aims for, or {@code 0} if no
+     * compilation was submitted yet. With {@link PolyglotCompilerOptions#AdaptiveCompilerThreads}
+     * this changes as threads are added and retired.
+     */
+    public int getCompilerThreadCount() {
+        final ExecutorService threadPool = compilationExecutorService;
+        if (threadPool instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) threadPool).getCorePoolSize();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the number of requests of the given tier that were submitted but not yet picked up by
+     * a compiler thread.
+     */
+    public int getQueueSize(Priority priority) {
+        return queuedPerTier[priority.value].get();
+    }
+
     public void shutdownAndAwaitTermination(long timeout) {
         final ExecutorService threadPool;
         synchronized (this) {
@@ -157,20 +329,78 @@ public class BackgroundCompileQueue {
 
     }
 
-    private static final class RequestImpl<V> implements Callable<V>, Comparable<RequestImpl<?>> {
+    static final class RequestImpl<V> implements Callable<V>, Comparable<RequestImpl<?>> {
 
+        private final BackgroundCompileQueue owner;
         private final long id;
-        private final Priority priority;
+        final Priority priority;
         private final TruffleCompilationTask task;
         private final WeakReference<OptimizedCallTarget> targetRef;
         private final Request request;
-
-        RequestImpl(long id, Priority priority, OptimizedCallTarget callTarget, TruffleCompilationTask task, Request request) {
+        private final long submitTime;
+        private final int submitCount;
+
+        /*
+         * Hotness bookkeeping of the traversing queue. Only accessed while holding the lock of the
+         * TraversingBlockingQueue.
+         */
+        private int lastCount;
+        private long lastCountChange;
+        private volatile boolean evicted;
+
+        RequestImpl(BackgroundCompileQueue owner, long id, Priority priority, OptimizedCallTarget callTarget, TruffleCompilationTask task, Request request) {
+            this.owner = owner;
             this.id = id;
             this.priority = priority;
             this.targetRef = new WeakReference<>(callTarget);
             this.task = task;
             this.request = request;
+            this.submitTime = System.nanoTime();
+            this.submitCount = callTarget.getCallAndLoopCount();
+            this.lastCount = submitCount;
+            this.lastCountChange = submitTime;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        /**
+         * Determines whether this request can be handed to a compiler thread right away because it
+         * will not compile anything: the call target was garbage collected, the task was cancelled
+         * or the call target was not called for longer than {@code coldTimeout} nanoseconds. In the
+         * latter case the request is marked as evicted and its task gets cancelled once it runs.
+         */
+        boolean isStale(long now, long coldTimeout) {
+            OptimizedCallTarget target = targetRef.get();
+            if (target == null || task.isCancelled()) {
+                return true;
+            }
+            if (priority == Priority.INITIALIZATION) {
+                return false;
+            }
+            int count = target.getCallAndLoopCount();
+            if (count != lastCount) {
+                lastCount = count;
+                lastCountChange = now;
+            } else if (coldTimeout > 0 && now - lastCountChange > coldTimeout) {
+                evicted = true;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Computes the scheduling weight of a request that is not {@linkplain #isStale stale}. The
+         * weight is the current call and loop count of the target, increased by the rate at which
+         * the count grew since submission extrapolated over one aging period, and multiplied by the
+         * number of aging periods the request has been waiting for.
+         */
+        double weight(long now, long agingPeriod) {
+            long waitTime = Math.max(1, now - submitTime);
+            double rate = (lastCount - submitCount) / (double) waitTime;
+            double hotness = lastCount + Math.max(0, rate) * agingPeriod;
+            return hotness * (1 + waitTime / (double) agingPeriod);
         }
 
         @Override
@@ -185,6 +415,17 @@ public class BackgroundCompileQueue {
         @SuppressWarnings("try")
         @Override
         public V call() {
+            int queued = owner.queuedPerTier[priority.value].decrementAndGet();
+            long queueTime = System.nanoTime() - submitTime;
+            owner.onRequestPolled(queueTime);
+            OptimizedCallTarget callTarget = targetRef.get();
+            if (callTarget != null) {
+                if (evicted) {
+                    callTarget.cancelInstalledTask(null, "Call target went cold in the compilation queue.");
+                } else {
+                    GraalTruffleRuntime.getRuntime().getListener().onCompilationPolled(callTarget, priority, queueTime, queued);
+                }
+            }
             request.execute(task, targetRef);
             return null;
         }
@@ -195,8 +436,8 @@ public class BackgroundCompileQueue {
         }
     }
 
-    private static class RequestFutureTask<V> extends FutureTask<V> implements Comparable<RequestFutureTask<?>> {
-        private final RequestImpl<V> request;
+    static class RequestFutureTask<V> extends FutureTask<V> implements Comparable<RequestFutureTask<?>> {
+        final RequestImpl<V> request;
 
         RequestFutureTask(RequestImpl<V> callable) {
             super(callable);
@@ -214,6 +455,31 @@ public class BackgroundCompileQueue {
         }
     }
 
+    /**
+     * Wraps the compiler threads of the adaptive pool to notice when they retire.
+     */
+    private final class RetiringThreadFactory implements ThreadFactory {
+        private final ThreadFactory delegate;
+
+        RetiringThreadFactory(ThreadFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return delegate.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        r.run();
+                    } finally {
+                        onCompilerThreadRetired();
+                    }
+                }
+            });
+        }
+    }
+
     private static final class TruffleCompilerThreadFactory implements ThreadFactory {
         private final String namePrefix;
 
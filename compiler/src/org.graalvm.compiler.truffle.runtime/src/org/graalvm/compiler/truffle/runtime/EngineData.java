@@ -27,6 +27,8 @@ package org.graalvm.compiler.truffle.runtime;
 import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.ArgumentTypeSpeculation;
 import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.BackgroundCompilation;
 import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.Compilation;
+import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.CompilationCacheFile;
+import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.CompilationCacheMaxEntries;
 import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.CompilationExceptionsAreFatal;
 import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.CompilationExceptionsArePrinted;
 import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.CompilationExceptionsAreThrown;
@@ -43,6 +45,8 @@ import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.MinIn
 import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.Mode;
 import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.MultiTier;
 import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.PerformanceWarningsAreFatal;
+import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.ProfileSnapshotExport;
+import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.ProfileSnapshotImport;
 import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.Profiling;
 import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.ReturnTypeSpeculation;
 import static org.graalvm.compiler.truffle.options.PolyglotCompilerOptions.Splitting;
@@ -127,6 +131,8 @@ public final class EngineData {
     @CompilationFinal public boolean callTargetStatisticDetails;
     @CompilationFinal public boolean profilingEnabled;
     @CompilationFinal public boolean traceTransferToInterpreter;
+    @CompilationFinal public PersistentCompilationCache compilationCache;
+    @CompilationFinal ProfileSnapshot profileSnapshot;
 
     // computed fields.
     @CompilationFinal public int firstTierCallThreshold;
@@ -181,6 +187,8 @@ public final class EngineData {
         this.profilingEnabled = getPolyglotOptionValue(options, Profiling);
         this.traceTransferToInterpreter = getPolyglotOptionValue(options, TraceTransferToInterpreter);
         this.compilationFailureAction = computeCompilationFailureAction(options);
+        this.compilationCache = computeCompilationCache(options);
+        this.profileSnapshot = ProfileSnapshot.create(getPolyglotOptionValue(options, ProfileSnapshotImport), getPolyglotOptionValue(options, ProfileSnapshotExport));
         validateOptions();
     }
 
@@ -201,6 +209,14 @@ public final class EngineData {
         return action;
     }
 
+    private static PersistentCompilationCache computeCompilationCache(OptionValues options) {
+        String file = getPolyglotOptionValue(options, CompilationCacheFile);
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+        return PersistentCompilationCache.forFile(file, getPolyglotOptionValue(options, CompilationCacheMaxEntries));
+    }
+
     private void validateOptions() {
         if (compilationFailureAction == ExceptionAction.Throw && backgroundCompilation) {
             GraalTruffleRuntime.getRuntime().log("WARNING: The 'Throw' value of the 'engine.CompilationFailureAction' option requires the 'engine.BackgroundCompilation' option to be set to 'false'.");
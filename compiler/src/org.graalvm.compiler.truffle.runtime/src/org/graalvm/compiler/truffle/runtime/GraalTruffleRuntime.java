@@ -408,6 +408,7 @@ public abstract class GraalTruffleRuntime implements TruffleRuntime, TruffleComp
         StatisticsListener.install(this);
         TraceASTCompilationListener.install(this);
         JFRListener.install(this);
+        PersistentCompilationCache.install(this);
         installShutdownHooks();
     }
 
@@ -658,6 +659,10 @@ public abstract class GraalTruffleRuntime implements TruffleRuntime, TruffleComp
         CompilerAsserts.neverPartOfCompilation();
         final OptimizedCallTarget newCallTarget = createClonedCallTarget(rootNode, null);
         TruffleSplittingStrategy.newTargetCreated(newCallTarget);
+        ProfileSnapshot profileSnapshot = newCallTarget.engine.profileSnapshot;
+        if (profileSnapshot != null) {
+            profileSnapshot.onCallTargetCreated(newCallTarget);
+        }
         return newCallTarget;
     }
 
@@ -695,6 +700,9 @@ public abstract class GraalTruffleRuntime implements TruffleRuntime, TruffleComp
 
     void onEngineClosed(EngineData runtimeData) {
         getListener().onEngineClosed(runtimeData);
+        if (runtimeData.profileSnapshot != null) {
+            runtimeData.profileSnapshot.export();
+        }
     }
 
     protected void doCompile(OptimizedCallTarget callTarget, TruffleCompilationTask task) {
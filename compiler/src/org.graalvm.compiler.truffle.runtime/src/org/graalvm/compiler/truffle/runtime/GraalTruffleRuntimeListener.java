@@ -92,6 +92,19 @@ public interface GraalTruffleRuntimeListener {
     default void onCompilationDequeued(OptimizedCallTarget target, Object source, CharSequence reason) {
     }
 
+    /**
+     * Notifies this object when a compiler thread takes the compilation request of {@code target}
+     * out of the compilation queue, shortly before {@link #onCompilationStarted compilation}
+     * starts.
+     *
+     * @param target the call target that is about to be compiled
+     * @param tier the tier of the compilation request
+     * @param queueTimeNanos the time in nanoseconds the request waited in the compilation queue
+     * @param tierQueueSize the number of requests of the same tier still waiting in the queue
+     */
+    default void onCompilationPolled(OptimizedCallTarget target, BackgroundCompileQueue.Priority tier, long queueTimeNanos, int tierQueueSize) {
+    }
+
     /**
      * Notifies this object when compilation of {@code target} is about to start.
      *
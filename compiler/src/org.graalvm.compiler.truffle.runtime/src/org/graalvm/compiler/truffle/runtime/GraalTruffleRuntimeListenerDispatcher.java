@@ -75,6 +75,13 @@ final class GraalTruffleRuntimeListenerDispatcher extends CopyOnWriteArrayList<G
         }
     }
 
+    @Override
+    public void onCompilationPolled(OptimizedCallTarget target, BackgroundCompileQueue.Priority tier, long queueTimeNanos, int tierQueueSize) {
+        for (GraalTruffleRuntimeListener l : this) {
+            l.onCompilationPolled(target, tier, queueTimeNanos, tierQueueSize);
+        }
+    }
+
     @Override
     public void onCompilationFailed(OptimizedCallTarget target, String reason, boolean bailout, boolean permanent) {
         for (GraalTruffleRuntimeListener l : this) {
@@ -203,6 +203,13 @@ public abstract class OptimizedCallTarget implements CompilableTruffleAST, RootC
     private volatile int callSitesKnown;
 
     private volatile String nameCache;
+
+    /**
+     * Key of this call target in the {@link PersistentCompilationCache}, computed when the call
+     * target reaches the call threshold or when it is submitted for compilation. Zero if not
+     * computed.
+     */
+    volatile long compilationCacheKey;
     private final int uninitializedNodeCount;
 
     private volatile WeakReference<OptimizedDirectCallNode> singleCallNode = NO_CALL;
@@ -433,10 +440,21 @@ public abstract class OptimizedCallTarget implements CompilableTruffleAST, RootC
         this.callAndLoopCount = intAndLoopCallCount == Integer.MAX_VALUE ? intAndLoopCallCount : ++intAndLoopCallCount;
 
         // Check if call target is hot enough to compile
-        if (intCallCount >= engine.firstTierCallThreshold //
-                        && intAndLoopCallCount >= engine.firstTierCallAndLoopThreshold //
-                        && !compilationFailed //
-                        && !isCompiling()) {
+        if (intCallCount >= engine.firstTierCallThreshold) {
+            if (intAndLoopCallCount >= engine.firstTierCallAndLoopThreshold //
+                            && !compilationFailed //
+                            && !isCompiling()) {
+                return compile(!engine.multiTier);
+            }
+            if (intCallCount == engine.firstTierCallThreshold && engine.compilationCache != null) {
+                return compileIfCached();
+            }
+        }
+        return false;
+    }
+
+    private boolean compileIfCached() {
+        if (!compilationFailed && !isCompiling() && engine.compilationCache.lookup(this)) {
             return compile(!engine.multiTier);
         }
         return false;
@@ -560,6 +578,9 @@ public abstract class OptimizedCallTarget implements CompilableTruffleAST, RootC
                 }
                 ensureInitialized();
                 if (!isCompiling()) {
+                    if (engine.compilationCache != null) {
+                        engine.compilationCache.onSubmitted(this);
+                    }
                     try {
                         this.compilationTask = task = runtime().submitForCompilation(this, lastTierCompilation);
                     } catch (RejectedExecutionException e) {
@@ -1217,6 +1238,42 @@ public abstract class OptimizedCallTarget implements CompilableTruffleAST, RootC
         return needsSplit;
     }
 
+    /**
+     * Seeds the profiles of a newly created call target with profiles of a previous run.
+     *
+     * @see ProfileSnapshot
+     */
+    final synchronized void seedProfile(int seededCallCount, int seededCallAndLoopCount, boolean compiled, Class<?>[] argumentTypes, Class<?> returnType, boolean seededNeedsSplit) {
+        CompilerAsserts.neverPartOfCompilation();
+        int newCallCount = Math.max(callCount, seededCallCount);
+        int newCallAndLoopCount = Math.max(callAndLoopCount, seededCallAndLoopCount);
+        if (compiled) {
+            newCallCount = Math.max(newCallCount, engine.firstTierCallThreshold);
+            newCallAndLoopCount = Math.max(newCallAndLoopCount, engine.firstTierCallAndLoopThreshold);
+        }
+        this.callCount = newCallCount;
+        this.callAndLoopCount = newCallAndLoopCount;
+        if (argumentTypes != null && profiledArgumentTypesAssumption == null && argumentTypes.length <= MAX_PROFILED_ARGUMENTS && engine.argumentTypeSpeculation) {
+            profiledArgumentTypes = argumentTypes;
+            profiledArgumentTypesAssumption = createValidAssumption(ARGUMENT_TYPES_ASSUMPTION_NAME);
+        }
+        if (returnType != null && profiledReturnTypeAssumption == null && engine.returnTypeSpeculation) {
+            profiledReturnType = returnType;
+            profiledReturnTypeAssumption = createValidAssumption(RETURN_TYPE_ASSUMPTION_NAME);
+        }
+        if (seededNeedsSplit) {
+            needsSplit = true;
+        }
+    }
+
+    final ProfileSnapshot.Entry createProfileSnapshotEntry() {
+        Assumption argumentTypesAssumption = profiledArgumentTypesAssumption;
+        Class<?>[] argumentTypes = argumentTypesAssumption != null && argumentTypesAssumption.isValid() ? profiledArgumentTypes : null;
+        Assumption returnTypeAssumption = profiledReturnTypeAssumption;
+        Class<?> returnType = returnTypeAssumption != null && returnTypeAssumption.isValid() ? profiledReturnType : null;
+        return new ProfileSnapshot.Entry(callCount, callAndLoopCount, isValid(), needsSplit, argumentTypes, returnType);
+    }
+
     final void polymorphicSpecialize(Node source) {
         List<Node> toDump = null;
         if (engine.splittingDumpDecisions) {
@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.runtime;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.graalvm.compiler.truffle.common.TruffleCompilerListener.CompilationResultInfo;
+import org.graalvm.compiler.truffle.common.TruffleCompilerListener.GraphInfo;
+
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.NodeVisitor;
+import com.oracle.truffle.api.nodes.RootNode;
+import com.oracle.truffle.api.source.SourceSection;
+
+import sun.misc.Unsafe;
+
+/**
+ * A file backed cache of the call targets that were compiled in previous runs of the process. A
+ * call target that was compiled before is submitted for compilation as soon as it reaches the
+ * call threshold, without waiting for the call and loop threshold.
+ *
+ * Compiled code cannot be reinstalled in another process, so the cache only records which call
+ * targets were worth compiling. Call targets are identified by a hash of their AST, including the
+ * {@linkplain Node#getCost() cost} of every node which reflects its specialization state. The hash
+ * is taken when the call target reaches the call threshold, or when it is submitted for
+ * compilation if that happens first, e.g., for call targets compiled because of their loop count,
+ * OSR call targets or seeded call targets. The hash is only stable if the same guest code is
+ * executed with the same inputs, a mismatch merely causes a regular compilation.
+ *
+ * The file starts with a header containing a magic number, the format version, a hash of the
+ * runtime and compiler configuration, the run generation, the number of entries and a CRC32 of
+ * the entries. Files with an unknown version, a different configuration or a wrong checksum are
+ * ignored and overwritten. The file is read by memory mapping it and written to a memory mapped
+ * temporary file which atomically replaces the previous file. Both mappings are released as soon
+ * as the file was read or written. If the number of entries exceeds the configured
+ * maximum, the entries that were not used for the most runs are evicted.
+ */
+public final class PersistentCompilationCache {
+
+    private static final int MAGIC = 0x54434331; // 'TCC1'
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 16;
+
+    private static final Map<Path, PersistentCompilationCache> caches = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final int maxEntries;
+    private final long configurationHash;
+    private final ConcurrentHashMap<Long, Integer> entries = new ConcurrentHashMap<>();
+    private int generation;
+    private boolean modified;
+
+    private PersistentCompilationCache(Path file, int maxEntries, long configurationHash) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        this.configurationHash = configurationHash;
+    }
+
+    /**
+     * Returns the cache stored in {@code fileName}, loading it on first use. All engines of the
+     * process that use the same file share the cache.
+     */
+    static PersistentCompilationCache forFile(String fileName, int maxEntries) {
+        Path path = Paths.get(fileName).toAbsolutePath().normalize();
+        return caches.computeIfAbsent(path, p -> {
+            GraalTruffleRuntime runtime = GraalTruffleRuntime.getRuntime();
+            long configuration = hash(hash(FNV_OFFSET, runtime.getName()), System.getProperty("java.vm.version"));
+            PersistentCompilationCache cache = new PersistentCompilationCache(p, maxEntries, configuration);
+            cache.load();
+            return cache;
+        });
+    }
+
+    /**
+     * Computes the key of {@code target} and returns whether the call target was compiled in a
+     * previous run.
+     */
+    boolean lookup(OptimizedCallTarget target) {
+        long key = computeKey(target);
+        target.compilationCacheKey = key;
+        Integer lastUsed = entries.get(key);
+        if (lastUsed == null) {
+            return false;
+        }
+        if (lastUsed != generation) {
+            entries.put(key, generation);
+            markModified();
+        }
+        return true;
+    }
+
+    /**
+     * Computes the key of {@code target} when it is submitted for compilation, unless it was
+     * already computed by {@link #lookup}.
+     */
+    void onSubmitted(OptimizedCallTarget target) {
+        if (target.compilationCacheKey == 0) {
+            target.compilationCacheKey = computeKey(target);
+        }
+    }
+
+    void record(OptimizedCallTarget target) {
+        long key = target.compilationCacheKey;
+        if (key == 0) {
+            // compiled without being submitted through OptimizedCallTarget.compile
+            key = computeKey(target);
+            target.compilationCacheKey = key;
+        }
+        if (entries.put(key, generation) == null) {
+            markModified();
+        }
+    }
+
+    void remove(OptimizedCallTarget target) {
+        long key = target.compilationCacheKey;
+        if (key != 0 && entries.remove(key) != null) {
+            markModified();
+        }
+    }
+
+    private synchronized void markModified() {
+        modified = true;
+    }
+
+    private synchronized void load() {
+        if (!Files.isRegularFile(file)) {
+            generation = 1;
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                generation = 1;
+                return;
+            }
+            if (size < HEADER_SIZE) {
+                throw new IOException("truncated header");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            try {
+                if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                    throw new IOException("unknown format");
+                }
+                if (buffer.getLong() != configurationHash) {
+                    // compiled with a different runtime or compiler, start from scratch
+                    generation = 1;
+                    return;
+                }
+                int previousGeneration = buffer.getInt();
+                int count = buffer.getInt();
+                long checksum = buffer.getLong();
+                if (count < 0 || size != HEADER_SIZE + (long) count * ENTRY_SIZE) {
+                    throw new IOException("invalid entry count");
+                }
+                ByteBuffer entryBuffer = buffer.slice();
+                CRC32 crc = new CRC32();
+                crc.update(entryBuffer.duplicate());
+                if (crc.getValue() != checksum) {
+                    throw new IOException("checksum mismatch");
+                }
+                for (int i = 0; i < count; i++) {
+                    entries.put(entryBuffer.getLong(), entryBuffer.getInt());
+                    entryBuffer.getInt(); // reserved
+                }
+                generation = previousGeneration + 1;
+            } finally {
+                unmap(buffer);
+            }
+        } catch (IOException e) {
+            GraalTruffleRuntime.getRuntime().log(String.format("WARNING: Ignoring invalid compilation cache file %s: %s", file, e.getMessage()));
+            entries.clear();
+            generation = 1;
+        }
+    }
+
+    /**
+     * Writes the cache to its file if it changed since it was loaded or last saved.
+     */
+    synchronized void save() {
+        if (!modified) {
+            return;
+        }
+        List<Map.Entry<Long, Integer>> list = new ArrayList<>(entries.entrySet());
+        if (list.size() > maxEntries) {
+            list.sort((e1, e2) -> Integer.compare(e2.getValue(), e1.getValue()));
+            list = list.subList(0, maxEntries);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Path parent = file.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            int size = HEADER_SIZE + list.size() * ENTRY_SIZE;
+            try (RandomAccessFile raf = new RandomAccessFile(tmp.toFile(), "rw")) {
+                raf.setLength(size);
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                try {
+                    buffer.position(HEADER_SIZE);
+                    for (Map.Entry<Long, Integer> e : list) {
+                        buffer.putLong(e.getKey());
+                        buffer.putInt(e.getValue());
+                        buffer.putInt(0);
+                    }
+                    ByteBuffer entryBuffer = buffer.duplicate();
+                    entryBuffer.position(HEADER_SIZE);
+                    CRC32 crc = new CRC32();
+                    crc.update(entryBuffer);
+                    buffer.putInt(0, MAGIC);
+                    buffer.putInt(4, VERSION);
+                    buffer.putLong(8, configurationHash);
+                    buffer.putInt(16, generation);
+                    buffer.putInt(20, list.size());
+                    buffer.putLong(24, crc.getValue());
+                    buffer.force();
+                } finally {
+                    // the file cannot be replaced on all platforms while it is mapped
+                    unmap(buffer);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            modified = false;
+        } catch (IOException e) {
+            GraalTruffleRuntime.getRuntime().log(String.format("WARNING: Failed to write compilation cache file %s: %s", file, e.getMessage()));
+        }
+    }
+
+    /**
+     * Releases the mapping of {@code buffer} without waiting for the buffer to be garbage
+     * collected. The buffer must not be accessed afterwards. If the mapping cannot be released
+     * explicitly, it is released when the buffer is collected.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Field theUnsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Unsafe unsafe = (Unsafe) theUnsafe.get(Unsafe.class);
+            Method invokeCleaner;
+            try {
+                // JDK 9 and later
+                invokeCleaner = Unsafe.class.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                // JDK 8
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+                return;
+            }
+            invokeCleaner.invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // released when the buffer is garbage collected
+        }
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static long hash(long h, long value) {
+        long result = h;
+        for (int i = 0; i < 8; i++) {
+            result = (result ^ ((value >>> (i * 8)) & 0xFF)) * FNV_PRIME;
+        }
+        return result;
+    }
+
+    private static long hash(long h, String value) {
+        long result = h;
+        if (value != null) {
+            for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+                result = (result ^ (b & 0xFF)) * FNV_PRIME;
+            }
+        }
+        return hash(result, 0);
+    }
+
+    private static long computeKey(OptimizedCallTarget target) {
+        RootNode rootNode = target.getRootNode();
+        long h = hash(FNV_OFFSET, target.engine.multiTier ? 1 : 0);
+        h = hash(h, target.engine.inlining ? 1 : 0);
+        h = hash(h, rootNode.getName());
+        SourceSection section = rootNode.getSourceSection();
+        if (section != null && section.isAvailable()) {
+            h = hash(h, section.getSource().getName());
+            h = hash(h, section.getCharIndex());
+            h = hash(h, section.getCharLength());
+        }
+        ShapeHashVisitor visitor = new ShapeHashVisitor(h);
+        rootNode.accept(visitor);
+        // zero denotes a missing key
+        return visitor.hash == 0 ? 1 : visitor.hash;
+    }
+
+    private static final class ShapeHashVisitor implements NodeVisitor {
+        long hash;
+
+        ShapeHashVisitor(long hash) {
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean visit(Node node) {
+            hash = hash(hash, node.getClass().getName());
+            hash = hash(hash, node.getCost().ordinal());
+            return true;
+        }
+    }
+
+    static void install(GraalTruffleRuntime runtime) {
+        runtime.addListener(new CacheListener(runtime));
+    }
+
+    private static final class CacheListener extends AbstractGraalTruffleRuntimeListener {
+
+        CacheListener(GraalTruffleRuntime runtime) {
+            super(runtime);
+        }
+
+        @Override
+        public void onCompilationSuccess(OptimizedCallTarget target, TruffleInlining inliningDecision, GraphInfo graph, CompilationResultInfo result) {
+            PersistentCompilationCache cache = target.engine.compilationCache;
+            if (cache != null) {
+                cache.record(target);
+            }
+        }
+
+        @Override
+        public void onCompilationFailed(OptimizedCallTarget target, String reason, boolean bailout, boolean permanentBailout) {
+            PersistentCompilationCache cache = target.engine.compilationCache;
+            if (cache != null && (!bailout || permanentBailout)) {
+                cache.remove(target);
+            }
+        }
+
+        @Override
+        public void onEngineClosed(EngineData engine) {
+            if (engine.compilationCache != null) {
+                engine.compilationCache.save();
+            }
+        }
+
+        @Override
+        public void onShutdown() {
+            for (PersistentCompilationCache cache : caches.values()) {
+                cache.save();
+            }
+        }
+    }
+}
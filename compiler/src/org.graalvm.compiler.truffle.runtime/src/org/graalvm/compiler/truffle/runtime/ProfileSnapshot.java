@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.runtime;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import com.oracle.truffle.api.nodes.RootNode;
+import com.oracle.truffle.api.source.SourceSection;
+
+/**
+ * Exports the call and type profiles of the call targets of an engine to a file when the engine
+ * is closed and seeds the profiles of newly created call targets of a later engine from such a
+ * file.
+ *
+ * Call targets are identified by the name of their source, their source section and the name of
+ * their root node. Call targets without an available source section and split call targets are
+ * not part of the snapshot. Call targets that were compiled when the snapshot was taken get call
+ * counts that make them compile on their first call. Seeded type profiles are checked like
+ * profiles collected by the interpreter, so a profile that does not match the behavior of the new
+ * run only causes a deoptimization.
+ */
+final class ProfileSnapshot {
+
+    private static final int MAGIC = 0x54505331; // 'TPS1'
+    private static final int VERSION = 1;
+
+    private static final int COMPILED = 1;
+    private static final int NEEDS_SPLIT = 1 << 1;
+    private static final int ARGUMENT_TYPES = 1 << 2;
+    private static final int RETURN_TYPE = 1 << 3;
+
+    private final Path exportFile;
+    private final Map<String, Entry> imported;
+    private final Set<OptimizedCallTarget> callTargets;
+
+    private ProfileSnapshot(Path exportFile, Map<String, Entry> imported) {
+        this.exportFile = exportFile;
+        this.imported = imported;
+        this.callTargets = exportFile != null ? Collections.newSetFromMap(new WeakHashMap<>()) : null;
+    }
+
+    static ProfileSnapshot create(String importFile, String exportFile) {
+        boolean doImport = importFile != null && !importFile.isEmpty();
+        boolean doExport = exportFile != null && !exportFile.isEmpty();
+        if (!doImport && !doExport) {
+            return null;
+        }
+        Map<String, Entry> imported = doImport ? read(Paths.get(importFile)) : Collections.emptyMap();
+        return new ProfileSnapshot(doExport ? Paths.get(exportFile) : null, imported);
+    }
+
+    void onCallTargetCreated(OptimizedCallTarget target) {
+        if (imported.isEmpty() && callTargets == null) {
+            return;
+        }
+        String key = keyOf(target.getRootNode());
+        if (key == null) {
+            return;
+        }
+        Entry entry = imported.get(key);
+        if (entry != null) {
+            ClassLoader loader = target.getRootNode().getClass().getClassLoader();
+            Class<?>[] argumentTypes = null;
+            if (entry.argumentTypes != null) {
+                argumentTypes = new Class<?>[entry.argumentTypes.length];
+                for (int i = 0; argumentTypes != null && i < argumentTypes.length; i++) {
+                    if (entry.argumentTypes[i] != null) {
+                        argumentTypes[i] = resolve(entry.argumentTypes[i], loader);
+                        if (argumentTypes[i] == null) {
+                            argumentTypes = null;
+                        }
+                    }
+                }
+            }
+            Class<?> returnType = entry.returnType != null ? resolve(entry.returnType, loader) : null;
+            target.seedProfile(entry.callCount, entry.callAndLoopCount, (entry.flags & COMPILED) != 0, argumentTypes, returnType, (entry.flags & NEEDS_SPLIT) != 0);
+        }
+        if (callTargets != null) {
+            synchronized (callTargets) {
+                callTargets.add(target);
+            }
+        }
+    }
+
+    /**
+     * Writes the profiles of all live call targets to the export file, if any.
+     */
+    void export() {
+        if (exportFile == null) {
+            return;
+        }
+        List<OptimizedCallTarget> targets;
+        synchronized (callTargets) {
+            targets = new ArrayList<>(callTargets);
+        }
+        Map<String, Entry> entries = new HashMap<>();
+        for (OptimizedCallTarget target : targets) {
+            String key = keyOf(target.getRootNode());
+            if (key == null) {
+                continue;
+            }
+            Entry entry = target.createProfileSnapshotEntry();
+            Entry previous = entries.get(key);
+            entries.put(key, previous == null ? entry : previous.merge(entry));
+        }
+        Path tmp = exportFile.resolveSibling(exportFile.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    e.getValue().write(out);
+                }
+            }
+            Files.move(tmp, exportFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            GraalTruffleRuntime.getRuntime().log(String.format("WARNING: Failed to write profile snapshot %s: %s", exportFile, e.getMessage()));
+        }
+    }
+
+    private static Map<String, Entry> read(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return Collections.emptyMap();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("unknown format");
+            }
+            int count = in.readInt();
+            Map<String, Entry> entries = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                entries.put(key, Entry.read(in));
+            }
+            return entries;
+        } catch (IOException e) {
+            GraalTruffleRuntime.getRuntime().log(String.format("WARNING: Ignoring invalid profile snapshot %s: %s", file, e.getMessage()));
+            return Collections.emptyMap();
+        }
+    }
+
+    private static String keyOf(RootNode rootNode) {
+        SourceSection section = rootNode.getSourceSection();
+        if (section == null || !section.isAvailable()) {
+            return null;
+        }
+        return section.getSource().getName() + ':' + section.getCharIndex() + ':' + section.getCharLength() + ':' + rootNode.getName();
+    }
+
+    private static Class<?> resolve(String className, ClassLoader loader) {
+        try {
+            return Class.forName(className, false, loader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
+    static final class Entry {
+        final int callCount;
+        final int callAndLoopCount;
+        final int flags;
+        /** Profiled argument type names, {@code null} elements denote unprofiled arguments. */
+        final String[] argumentTypes;
+        final String returnType;
+
+        Entry(int callCount, int callAndLoopCount, boolean compiled, boolean needsSplit, Class<?>[] argumentTypes, Class<?> returnType) {
+            this.callCount = callCount;
+            this.callAndLoopCount = callAndLoopCount;
+            String[] argumentTypeNames = null;
+            if (argumentTypes != null) {
+                argumentTypeNames = new String[argumentTypes.length];
+                for (int i = 0; i < argumentTypes.length; i++) {
+                    argumentTypeNames[i] = argumentTypes[i] != null ? argumentTypes[i].getName() : null;
+                }
+            }
+            this.argumentTypes = argumentTypeNames;
+            this.returnType = returnType != null ? returnType.getName() : null;
+            this.flags = (compiled ? COMPILED : 0) | (needsSplit ? NEEDS_SPLIT : 0) | (argumentTypeNames != null ? ARGUMENT_TYPES : 0) | (this.returnType != null ? RETURN_TYPE : 0);
+        }
+
+        private Entry(int callCount, int callAndLoopCount, int flags, String[] argumentTypes, String returnType) {
+            this.callCount = callCount;
+            this.callAndLoopCount = callAndLoopCount;
+            this.flags = flags;
+            this.argumentTypes = argumentTypes;
+            this.returnType = returnType;
+        }
+
+        /**
+         * Merges the profiles of call targets with the same key, for example the same function
+         * loaded by several contexts. Type profiles are only kept if they agree.
+         */
+        Entry merge(Entry other) {
+            String[] mergedArgumentTypes = Arrays.equals(argumentTypes, other.argumentTypes) ? argumentTypes : null;
+            String mergedReturnType = returnType != null && returnType.equals(other.returnType) ? returnType : null;
+            int mergedFlags = ((flags | other.flags) & (COMPILED | NEEDS_SPLIT)) | (mergedArgumentTypes != null ? ARGUMENT_TYPES : 0) | (mergedReturnType != null ? RETURN_TYPE : 0);
+            return new Entry(Math.max(callCount, other.callCount), Math.max(callAndLoopCount, other.callAndLoopCount), mergedFlags, mergedArgumentTypes, mergedReturnType);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(callCount);
+            out.writeInt(callAndLoopCount);
+            out.writeByte(flags);
+            if (argumentTypes != null) {
+                out.writeShort(argumentTypes.length);
+                for (String type : argumentTypes) {
+                    out.writeUTF(type != null ? type : "");
+                }
+            }
+            if (returnType != null) {
+                out.writeUTF(returnType);
+            }
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            int callCount = in.readInt();
+            int callAndLoopCount = in.readInt();
+            int flags = in.readUnsignedByte();
+            String[] argumentTypes = null;
+            if ((flags & ARGUMENT_TYPES) != 0) {
+                argumentTypes = new String[in.readUnsignedShort()];
+                for (int i = 0; i < argumentTypes.length; i++) {
+                    String type = in.readUTF();
+                    argumentTypes[i] = type.isEmpty() ? null : type;
+                }
+            }
+            String returnType = (flags & RETURN_TYPE) != 0 ? in.readUTF() : null;
+            return new Entry(callCount, callAndLoopCount, flags, argumentTypes, returnType);
+        }
+    }
+}
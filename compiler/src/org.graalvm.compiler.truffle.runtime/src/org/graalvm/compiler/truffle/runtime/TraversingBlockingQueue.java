@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.runtime;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.graalvm.compiler.truffle.runtime.BackgroundCompileQueue.RequestFutureTask;
+import org.graalvm.compiler.truffle.runtime.BackgroundCompileQueue.RequestImpl;
+
+/**
+ * A compilation queue that picks the next request by traversing all waiting requests instead of
+ * keeping them in a fixed order. Requests of a lower {@link BackgroundCompileQueue.Priority tier}
+ * are still always taken first, but within a tier the request with the highest
+ * {@linkplain RequestImpl#weight weight} wins. The weight is derived from the live call and loop
+ * counts of the call target, so a hot call target submitted late overtakes cold call targets that
+ * crossed their compilation threshold earlier. Requests age while they wait, which prevents
+ * starvation of moderately hot call targets.
+ *
+ * Stale requests, i.e., requests whose call target was garbage collected, whose task was
+ * cancelled, or whose call target went cold, are handed out before any other request so that
+ * compiler threads drop them without compiling and they stop occupying the queue.
+ */
+final class TraversingBlockingQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final ArrayList<Runnable> entries = new ArrayList<>();
+    private final long agingPeriod;
+    private final long coldTimeout;
+
+    /**
+     * @param agingPeriod the time in nanoseconds after which the weight of a waiting request has
+     *            doubled
+     * @param coldTimeout the time in nanoseconds after which a queued call target that was not
+     *            called is considered cold, or {@code 0} if call targets never go cold
+     */
+    TraversingBlockingQueue(long agingPeriod, long coldTimeout) {
+        this.agingPeriod = agingPeriod;
+        this.coldTimeout = coldTimeout;
+    }
+
+    /**
+     * Removes and returns the best entry. Must be called while holding {@link #lock}.
+     */
+    private Runnable dequeue() {
+        int size = entries.size();
+        if (size == 0) {
+            return null;
+        }
+        long now = System.nanoTime();
+        int bestIndex = -1;
+        RequestImpl<?> best = null;
+        double bestWeight = 0;
+        for (int i = 0; i < size; i++) {
+            Runnable entry = entries.get(i);
+            if (!(entry instanceof RequestFutureTask<?>)) {
+                bestIndex = i;
+                break;
+            }
+            RequestImpl<?> request = ((RequestFutureTask<?>) entry).request;
+            if (request.isStale(now, coldTimeout)) {
+                bestIndex = i;
+                break;
+            }
+            double weight = request.weight(now, agingPeriod);
+            if (best == null || isBetter(request, weight, best, bestWeight)) {
+                bestIndex = i;
+                best = request;
+                bestWeight = weight;
+            }
+        }
+        Runnable result = entries.get(bestIndex);
+        // the order of the entries is irrelevant, so move the last entry into the gap
+        Runnable last = entries.remove(size - 1);
+        if (bestIndex != size - 1) {
+            entries.set(bestIndex, last);
+        }
+        return result;
+    }
+
+    private static boolean isBetter(RequestImpl<?> request, double weight, RequestImpl<?> other, double otherWeight) {
+        int tierDiff = request.priority.compareTo(other.priority);
+        if (tierDiff != 0) {
+            return tierDiff < 0;
+        }
+        if (weight != otherWeight) {
+            return weight > otherWeight;
+        }
+        return request.getId() < other.getId();
+    }
+
+    @Override
+    public boolean offer(Runnable e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        lock.lock();
+        try {
+            entries.add(e);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    @Override
+    public void put(Runnable e) {
+        offer(e);
+    }
+
+    @Override
+    public boolean offer(Runnable e, long timeout, TimeUnit unit) {
+        return offer(e);
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (entries.isEmpty()) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (entries.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns an arbitrary waiting entry, not necessarily the one that {@link #poll()} would
+     * return.
+     */
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            return entries.isEmpty() ? null : entries.get(0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            return entries.remove(o);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        lock.lock();
+        try {
+            return entries.toArray();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        lock.lock();
+        try {
+            return entries.toArray(a);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        lock.lock();
+        try {
+            int n = Math.min(maxElements, entries.size());
+            for (int i = 0; i < n; i++) {
+                c.add(entries.remove(entries.size() - 1));
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the waiting entries.
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        final Object[] snapshot = toArray();
+        return new Iterator<Runnable>() {
+            private int cursor;
+            private Runnable lastReturned;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < snapshot.length;
+            }
+
+            @Override
+            public Runnable next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                lastReturned = (Runnable) snapshot[cursor++];
+                return lastReturned;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                TraversingBlockingQueue.this.remove(lastReturned);
+                lastReturned = null;
+            }
+        };
+    }
+}
@@ -40,6 +40,7 @@ import java.util.function.Function;
 import org.graalvm.compiler.truffle.common.TruffleCompilerListener.CompilationResultInfo;
 import org.graalvm.compiler.truffle.common.TruffleCompilerListener.GraphInfo;
 import org.graalvm.compiler.truffle.runtime.AbstractGraalTruffleRuntimeListener;
+import org.graalvm.compiler.truffle.runtime.BackgroundCompileQueue;
 import org.graalvm.compiler.truffle.runtime.EngineData;
 import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntime;
 import org.graalvm.compiler.truffle.runtime.OptimizedCallTarget;
@@ -68,6 +69,8 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
 
     private final LongSummaryStatistics timeToQueue = new LongSummaryStatistics();
     private final LongSummaryStatistics timeToCompilation = new LongSummaryStatistics();
+    private final LongSummaryStatistics[] timeInQueue = new LongSummaryStatistics[BackgroundCompileQueue.Priority.values().length];
+    private final IntSummaryStatistics[] queueSize = new IntSummaryStatistics[BackgroundCompileQueue.Priority.values().length];
 
     private final IntSummaryStatistics nodeCount = new IntSummaryStatistics();
     private final IntSummaryStatistics nodeCountTrivial = new IntSummaryStatistics();
@@ -106,6 +109,10 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
 
     private StatisticsListener(GraalTruffleRuntime runtime) {
         super(runtime);
+        for (int i = 0; i < timeInQueue.length; i++) {
+            timeInQueue[i] = new LongSummaryStatistics();
+            queueSize[i] = new IntSummaryStatistics();
+        }
     }
 
     /**
@@ -148,6 +155,12 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
         invalidations++;
     }
 
+    @Override
+    public synchronized void onCompilationPolled(OptimizedCallTarget target, BackgroundCompileQueue.Priority tier, long queueTimeNanos, int tierQueueSize) {
+        timeInQueue[tier.ordinal()].accept(queueTimeNanos);
+        queueSize[tier.ordinal()].accept(tierQueueSize);
+    }
+
     @Override
     public synchronized void onCompilationStarted(OptimizedCallTarget target) {
         compilations++;
@@ -260,6 +273,12 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
 
         printStatisticTime(rt, "Time to queue", timeToQueue);
         printStatisticTime(rt, "Time to compilation", timeToCompilation);
+        for (BackgroundCompileQueue.Priority tier : BackgroundCompileQueue.Priority.values()) {
+            if (timeInQueue[tier.ordinal()].getCount() > 0) {
+                printStatisticTime(rt, "Time in queue (" + tier + ")", timeInQueue[tier.ordinal()]);
+                printStatistic(rt, "Queue size (" + tier + ")", queueSize[tier.ordinal()]);
+            }
+        }
 
         printStatisticTime(rt, "Compilation time", compilationTime);
         printStatisticTime(rt, "  Truffle Tier", compilationTimeTruffleTier);
@@ -502,6 +521,14 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
             }
         }
 
+        @Override
+        public void onCompilationPolled(OptimizedCallTarget target, BackgroundCompileQueue.Priority tier, long queueTimeNanos, int tierQueueSize) {
+            StatisticsListener listener = target.engine.statisticsListener;
+            if (listener != null) {
+                listener.onCompilationPolled(target, tier, queueTimeNanos, tierQueueSize);
+            }
+        }
+
         @Override
         public void onCompilationSplit(OptimizedDirectCallNode callNode) {
             StatisticsListener listener = callNode.getCallTarget().engine.statisticsListener;
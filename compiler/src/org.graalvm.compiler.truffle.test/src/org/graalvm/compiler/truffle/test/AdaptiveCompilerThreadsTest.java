@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.test;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.graalvm.compiler.truffle.common.TruffleCompilationTask;
+import org.graalvm.compiler.truffle.runtime.BackgroundCompileQueue;
+import org.graalvm.compiler.truffle.runtime.BackgroundCompileQueue.Priority;
+import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntime;
+import org.graalvm.compiler.truffle.runtime.OptimizedCallTarget;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.RootNode;
+
+public class AdaptiveCompilerThreadsTest extends TestWithPolyglotOptions {
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    private final BackgroundCompileQueue queue = new BackgroundCompileQueue();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    @After
+    public void shutdownQueue() {
+        release.countDown();
+        queue.shutdownAndAwaitTermination(TIMEOUT_MILLIS);
+    }
+
+    private void submitBlocking(OptimizedCallTarget target, CountDownLatch done) {
+        queue.submitTask(Priority.LAST_TIER, target, new BackgroundCompileQueue.Request() {
+            @Override
+            protected void execute(TruffleCompilationTask task, WeakReference<OptimizedCallTarget> targetRef) {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            }
+        });
+    }
+
+    private static void waitUntil(String message, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue(message, System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testGrowAndRetire() throws InterruptedException {
+        Assume.assumeTrue(Runtime.getRuntime().availableProcessors() >= 2);
+        setupContext("engine.Compilation", "false",
+                        "engine.AdaptiveCompilerThreads", "true",
+                        "engine.MaxCompilerThreads", "2",
+                        "engine.CompilerThreadIdleTimeout", "100");
+        OptimizedCallTarget target = (OptimizedCallTarget) GraalTruffleRuntime.getRuntime().createCallTarget(new RootNode(null) {
+            @Override
+            public Object execute(VirtualFrame frame) {
+                return 42;
+            }
+        });
+        Assert.assertEquals(0, queue.getCompilerThreadCount());
+
+        int requests = 12;
+        CountDownLatch done = new CountDownLatch(requests);
+        submitBlocking(target, done);
+        Assert.assertEquals(1, queue.getCompilerThreadCount());
+        waitUntil("first request did not start", () -> running.get() == 1);
+
+        // A backlog of more than two requests per compiler thread adds a thread, but never more
+        // than the budget of the engine.
+        for (int i = 1; i < requests; i++) {
+            submitBlocking(target, done);
+        }
+        Assert.assertEquals(2, queue.getCompilerThreadCount());
+        waitUntil("second compiler thread did not start", () -> running.get() == 2);
+
+        release.countDown();
+        Assert.assertTrue(done.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(2, maxRunning.get());
+
+        // Idle compiler threads are retired.
+        waitUntil("idle compiler threads were not retired", () -> queue.getCompilerThreadCount() == 1);
+    }
+}
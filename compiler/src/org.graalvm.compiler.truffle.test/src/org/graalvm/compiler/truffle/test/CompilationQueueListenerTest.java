@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.graalvm.compiler.truffle.runtime.BackgroundCompileQueue;
+import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntime;
+import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntimeListener;
+import org.graalvm.compiler.truffle.runtime.OptimizedCallTarget;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.RootNode;
+
+public class CompilationQueueListenerTest extends TestWithPolyglotOptions {
+
+    private static final class PolledListener implements GraalTruffleRuntimeListener {
+
+        final OptimizedCallTarget expectedTarget;
+        volatile BackgroundCompileQueue.Priority tier;
+        volatile long queueTime = -1;
+
+        PolledListener(OptimizedCallTarget expectedTarget) {
+            this.expectedTarget = expectedTarget;
+        }
+
+        @Override
+        public void onCompilationPolled(OptimizedCallTarget target, BackgroundCompileQueue.Priority pollTier, long queueTimeNanos, int tierQueueSize) {
+            if (target == expectedTarget) {
+                Assert.assertTrue(tierQueueSize >= 0);
+                this.tier = pollTier;
+                this.queueTime = queueTimeNanos;
+            }
+        }
+    }
+
+    @Test
+    public void testPolledEvent() throws ExecutionException, TimeoutException {
+        setupContext("engine.BackgroundCompilation", "true", "engine.CompileImmediately", "false");
+        GraalTruffleRuntime runtime = (GraalTruffleRuntime) Truffle.getRuntime();
+        OptimizedCallTarget target = (OptimizedCallTarget) runtime.createCallTarget(new RootNode(null) {
+            @Override
+            public Object execute(VirtualFrame frame) {
+                return 42;
+            }
+        });
+        target.call();
+        PolledListener listener = new PolledListener(target);
+        runtime.addListener(listener);
+        try {
+            target.compile(true);
+            runtime.waitForCompilation(target, 60000);
+        } finally {
+            runtime.removeListener(listener);
+        }
+        Assert.assertEquals(BackgroundCompileQueue.Priority.LAST_TIER, listener.tier);
+        Assert.assertTrue(listener.queueTime >= 0);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntime;
+import org.graalvm.compiler.truffle.runtime.OptimizedCallTarget;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.RootNode;
+
+public class PersistentCompilationCacheTest extends TestWithPolyglotOptions {
+
+    private static final class ConstantRootNode extends RootNode {
+
+        ConstantRootNode() {
+            super(null);
+        }
+
+        @Override
+        public Object execute(VirtualFrame frame) {
+            return 42;
+        }
+
+        @Override
+        public String getName() {
+            return "PersistentCompilationCacheTest";
+        }
+    }
+
+    private OptimizedCallTarget setup(Path cacheFile) {
+        return setup(cacheFile, 1000);
+    }
+
+    private OptimizedCallTarget setup(Path cacheFile, int compilationThreshold) {
+        setupContext("engine.CompilationCacheFile", cacheFile.toString(), "engine.BackgroundCompilation", "false", "engine.CompileImmediately", "false",
+                        "engine.MultiTier", "false", "engine.MinInvokeThreshold", "3", "engine.CompilationThreshold", String.valueOf(compilationThreshold));
+        GraalTruffleRuntime runtime = (GraalTruffleRuntime) Truffle.getRuntime();
+        return (OptimizedCallTarget) runtime.createCallTarget(new ConstantRootNode());
+    }
+
+    @Test
+    public void testCompiledInNextRun() throws IOException {
+        Path cacheFile = Files.createTempFile("truffle-compilation-cache", ".bin");
+        try {
+            OptimizedCallTarget target = setup(cacheFile);
+            for (int i = 0; i < 4; i++) {
+                target.call();
+            }
+            Assert.assertFalse(target.isValid());
+            target.compile(true);
+            Assert.assertTrue(target.isValid());
+            // closing the engine writes the cache
+            cleanup();
+            Assert.assertTrue(Files.size(cacheFile) > 0);
+
+            target = setup(cacheFile);
+            for (int i = 0; i < 4; i++) {
+                target.call();
+            }
+            Assert.assertTrue(target.isValid());
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+
+    /**
+     * A call target that reaches the compilation threshold together with the call threshold is
+     * compiled without looking it up in the cache, its key is computed on submission.
+     */
+    @Test
+    public void testRecordedWhenCompiledAtThreshold() throws IOException {
+        Path cacheFile = Files.createTempFile("truffle-compilation-cache", ".bin");
+        try {
+            OptimizedCallTarget target = setup(cacheFile, 3);
+            for (int i = 0; i < 4; i++) {
+                target.call();
+            }
+            Assert.assertTrue(target.isValid());
+            cleanup();
+
+            target = setup(cacheFile);
+            for (int i = 0; i < 4; i++) {
+                target.call();
+            }
+            Assert.assertTrue(target.isValid());
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+
+    /**
+     * A call target compiled without reaching any threshold, e.g., because its profile was seeded,
+     * is recorded as well.
+     */
+    @Test
+    public void testRecordedWhenCompiledDirectly() throws IOException {
+        Path cacheFile = Files.createTempFile("truffle-compilation-cache", ".bin");
+        try {
+            OptimizedCallTarget target = setup(cacheFile);
+            target.compile(true);
+            Assert.assertTrue(target.isValid());
+            cleanup();
+
+            target = setup(cacheFile);
+            for (int i = 0; i < 4; i++) {
+                target.call();
+            }
+            Assert.assertTrue(target.isValid());
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+}
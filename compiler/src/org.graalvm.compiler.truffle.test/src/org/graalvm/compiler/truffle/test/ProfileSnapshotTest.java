@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntime;
+import org.graalvm.compiler.truffle.runtime.OptimizedCallTarget;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.RootNode;
+import com.oracle.truffle.api.source.Source;
+import com.oracle.truffle.api.source.SourceSection;
+import com.oracle.truffle.api.test.polyglot.ProxyLanguage;
+
+public class ProfileSnapshotTest extends TestWithPolyglotOptions {
+
+    private static final SourceSection SECTION = Source.newBuilder(ProxyLanguage.ID, "function", "ProfileSnapshotTest").build().createSection(0, 8);
+
+    private static final class SectionRootNode extends RootNode {
+
+        SectionRootNode() {
+            super(null);
+        }
+
+        @Override
+        public Object execute(VirtualFrame frame) {
+            return 42;
+        }
+
+        @Override
+        public SourceSection getSourceSection() {
+            return SECTION;
+        }
+
+        @Override
+        public String getName() {
+            return "ProfileSnapshotTest";
+        }
+    }
+
+    private OptimizedCallTarget setup(String... options) {
+        setupContext(options);
+        GraalTruffleRuntime runtime = (GraalTruffleRuntime) Truffle.getRuntime();
+        return (OptimizedCallTarget) runtime.createCallTarget(new SectionRootNode());
+    }
+
+    @Test
+    public void testExportImport() throws IOException {
+        Path snapshot = Files.createTempFile("truffle-profile-snapshot", ".bin");
+        try {
+            OptimizedCallTarget target = setup("engine.ProfileSnapshotExport", snapshot.toString(), "engine.BackgroundCompilation", "false", "engine.CompileImmediately", "false");
+            target.call();
+            target.compile(true);
+            Assert.assertTrue(target.isValid());
+            int callCount = target.getCallCount();
+            // closing the engine writes the snapshot
+            cleanup();
+            Assert.assertTrue(Files.size(snapshot) > 0);
+
+            target = setup("engine.ProfileSnapshotImport", snapshot.toString(), "engine.BackgroundCompilation", "false", "engine.CompileImmediately", "false");
+            Assert.assertTrue(target.getCallCount() >= callCount);
+            Assert.assertFalse(target.isValid());
+            target.call();
+            Assert.assertTrue(target.isValid());
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+}
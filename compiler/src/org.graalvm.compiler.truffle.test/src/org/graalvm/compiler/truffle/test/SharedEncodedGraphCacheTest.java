@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.test;
+
+import org.graalvm.compiler.core.test.GraalCompilerTest;
+import org.graalvm.compiler.debug.DebugContext;
+import org.graalvm.compiler.nodes.EncodedGraph;
+import org.graalvm.compiler.nodes.GraphEncoder;
+import org.graalvm.compiler.nodes.StructuredGraph.AllowAssumptions;
+import org.graalvm.compiler.truffle.compiler.SharedEncodedGraphCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import jdk.vm.ci.meta.ResolvedJavaMethod;
+
+public class SharedEncodedGraphCacheTest extends GraalCompilerTest {
+
+    public static int snippet1(int a, int b) {
+        return a * b + 1;
+    }
+
+    public static int snippet2(int a, int b) {
+        return a * b + 2;
+    }
+
+    public static int snippet3(int a, int b) {
+        return a * b + 3;
+    }
+
+    private EncodedGraph encode(String methodName) {
+        return GraphEncoder.encodeSingleGraph(parseEager(methodName, AllowAssumptions.YES), getTarget().arch);
+    }
+
+    private long sizeOf(ResolvedJavaMethod method, EncodedGraph graph) {
+        SharedEncodedGraphCache cache = new SharedEncodedGraphCache(Long.MAX_VALUE);
+        cache.put(getDebugContext(), method, false, graph);
+        return cache.getSize();
+    }
+
+    @Test
+    public void testReuse() {
+        DebugContext debug = getDebugContext();
+        ResolvedJavaMethod method = getResolvedJavaMethod("snippet1");
+        EncodedGraph graph = encode("snippet1");
+        SharedEncodedGraphCache cache = new SharedEncodedGraphCache(Long.MAX_VALUE);
+
+        Assert.assertNull(cache.get(debug, method, false));
+        cache.put(debug, method, false, graph);
+        Assert.assertSame(graph, cache.get(debug, method, false));
+        // Graphs with and without node source positions are cached separately.
+        Assert.assertNull(cache.get(debug, method, true));
+
+        // The first graph put into the cache wins.
+        cache.put(debug, method, false, encode("snippet1"));
+        Assert.assertSame(graph, cache.get(debug, method, false));
+
+        cache.purge();
+        Assert.assertNull(cache.get(debug, method, false));
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        DebugContext debug = getDebugContext();
+        ResolvedJavaMethod method1 = getResolvedJavaMethod("snippet1");
+        ResolvedJavaMethod method2 = getResolvedJavaMethod("snippet2");
+        ResolvedJavaMethod method3 = getResolvedJavaMethod("snippet3");
+        EncodedGraph graph1 = encode("snippet1");
+        EncodedGraph graph2 = encode("snippet2");
+        EncodedGraph graph3 = encode("snippet3");
+        long size1 = sizeOf(method1, graph1);
+        long size2 = sizeOf(method2, graph2);
+        long size3 = sizeOf(method3, graph3);
+
+        // Room for all graphs but one byte, so adding the third graph evicts one graph.
+        SharedEncodedGraphCache cache = new SharedEncodedGraphCache(size1 + size2 + size3 - 1);
+        cache.put(debug, method1, false, graph1);
+        cache.put(debug, method2, false, graph2);
+        Assert.assertSame(graph1, cache.get(debug, method1, false));
+        cache.put(debug, method3, false, graph3);
+
+        Assert.assertNull(cache.get(debug, method2, false));
+        Assert.assertSame(graph1, cache.get(debug, method1, false));
+        Assert.assertSame(graph3, cache.get(debug, method3, false));
+        Assert.assertEquals(size1 + size3, cache.getSize());
+    }
+
+    @Test
+    public void testGraphLargerThanCapacity() {
+        DebugContext debug = getDebugContext();
+        ResolvedJavaMethod method = getResolvedJavaMethod("snippet1");
+        EncodedGraph graph = encode("snippet1");
+        SharedEncodedGraphCache cache = new SharedEncodedGraphCache(sizeOf(method, graph) - 1);
+        cache.put(debug, method, false, graph);
+        Assert.assertNull(cache.get(debug, method, false));
+        Assert.assertEquals(0, cache.getSize());
+    }
+}
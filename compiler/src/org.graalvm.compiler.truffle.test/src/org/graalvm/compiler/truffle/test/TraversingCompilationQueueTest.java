@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.compiler.truffle.common.TruffleCompilationTask;
+import org.graalvm.compiler.truffle.runtime.BackgroundCompileQueue;
+import org.graalvm.compiler.truffle.runtime.BackgroundCompileQueue.Priority;
+import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntime;
+import org.graalvm.compiler.truffle.runtime.GraalTruffleRuntimeListener;
+import org.graalvm.compiler.truffle.runtime.OptimizedCallTarget;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.RootNode;
+
+/**
+ * Tests the scheduling of the traversing compilation queue. Every test uses its own
+ * {@link BackgroundCompileQueue} with a single compiler thread, which is kept busy by a blocking
+ * request while the requests under test are submitted.
+ */
+public class TraversingCompilationQueueTest extends TestWithPolyglotOptions {
+
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private final BackgroundCompileQueue queue = new BackgroundCompileQueue();
+    private final CountDownLatch blockerRelease = new CountDownLatch(1);
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void shutdownQueue() {
+        blockerRelease.countDown();
+        queue.shutdownAndAwaitTermination(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    }
+
+    private void setupTraversingQueue(String agingPeriodMillis, String coldTimeoutMillis) {
+        setupContext("engine.Compilation", "false",
+                        "engine.CompilerThreads", "1",
+                        "engine.TraversingCompilationQueue", "true",
+                        "engine.TraversingQueueAgingPeriod", agingPeriodMillis,
+                        "engine.TraversingQueueColdTimeout", coldTimeoutMillis);
+    }
+
+    private static OptimizedCallTarget createTarget(String name, int calls) {
+        OptimizedCallTarget target = (OptimizedCallTarget) GraalTruffleRuntime.getRuntime().createCallTarget(new RootNode(null) {
+            @Override
+            public Object execute(VirtualFrame frame) {
+                return 42;
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+        });
+        for (int i = 0; i < calls; i++) {
+            target.call();
+        }
+        return target;
+    }
+
+    /**
+     * Occupies the only compiler thread until {@link #blockerRelease} is counted down, so that the
+     * requests submitted afterwards wait in the queue.
+     */
+    private void submitBlocker(OptimizedCallTarget target) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        queue.submitTask(Priority.LAST_TIER, target, new BackgroundCompileQueue.Request() {
+            @Override
+            protected void execute(TruffleCompilationTask task, WeakReference<OptimizedCallTarget> targetRef) {
+                started.countDown();
+                try {
+                    blockerRelease.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Assert.assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private void submit(Priority priority, OptimizedCallTarget target, CountDownLatch done) {
+        queue.submitTask(priority, target, new BackgroundCompileQueue.Request() {
+            @Override
+            protected void execute(TruffleCompilationTask task, WeakReference<OptimizedCallTarget> targetRef) {
+                executed.add(target.getRootNode().getName());
+                done.countDown();
+            }
+        });
+    }
+
+    private void awaitExecuted(CountDownLatch done) throws InterruptedException {
+        blockerRelease.countDown();
+        Assert.assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testHotTargetOvertakesColdTarget() throws InterruptedException {
+        setupTraversingQueue("3600000", "0");
+        submitBlocker(createTarget("blocker", 1));
+        CountDownLatch done = new CountDownLatch(3);
+        submit(Priority.LAST_TIER, createTarget("cold", 1), done);
+        submit(Priority.LAST_TIER, createTarget("warm", 100), done);
+        submit(Priority.LAST_TIER, createTarget("hot", 10000), done);
+        awaitExecuted(done);
+        Assert.assertEquals(Arrays.asList("hot", "warm", "cold"), executed);
+    }
+
+    @Test
+    public void testLowerTierFirst() throws InterruptedException {
+        setupTraversingQueue("3600000", "0");
+        submitBlocker(createTarget("blocker", 1));
+        CountDownLatch done = new CountDownLatch(2);
+        submit(Priority.LAST_TIER, createTarget("lastTier", 10000), done);
+        submit(Priority.FIRST_TIER, createTarget("firstTier", 1), done);
+        awaitExecuted(done);
+        Assert.assertEquals(Arrays.asList("firstTier", "lastTier"), executed);
+    }
+
+    @Test
+    public void testWaitingRequestAges() throws InterruptedException {
+        setupTraversingQueue("1", "0");
+        submitBlocker(createTarget("blocker", 1));
+        CountDownLatch done = new CountDownLatch(2);
+        submit(Priority.LAST_TIER, createTarget("old", 10), done);
+        // With an aging period of one millisecond, the weight of the old request grows by its
+        // call count every millisecond and quickly exceeds the weight of the new request.
+        Thread.sleep(200);
+        submit(Priority.LAST_TIER, createTarget("new", 20), done);
+        awaitExecuted(done);
+        Assert.assertEquals(Arrays.asList("old", "new"), executed);
+    }
+
+    @Test
+    public void testColdTargetIsEvicted() throws InterruptedException {
+        setupTraversingQueue("3600000", "50");
+        OptimizedCallTarget cold = createTarget("cold", 1);
+        OptimizedCallTarget hot = createTarget("hot", 1);
+        List<OptimizedCallTarget> polled = Collections.synchronizedList(new ArrayList<>());
+        GraalTruffleRuntimeListener listener = new GraalTruffleRuntimeListener() {
+            @Override
+            public void onCompilationPolled(OptimizedCallTarget target, Priority tier, long queueTimeNanos, int tierQueueSize) {
+                polled.add(target);
+            }
+        };
+        GraalTruffleRuntime runtime = (GraalTruffleRuntime) Truffle.getRuntime();
+        runtime.addListener(listener);
+        try {
+            submitBlocker(createTarget("blocker", 1));
+            CountDownLatch done = new CountDownLatch(2);
+            submit(Priority.LAST_TIER, cold, done);
+            submit(Priority.LAST_TIER, hot, done);
+            // Both requests exceed the cold timeout, but only the hot target is called again.
+            Thread.sleep(200);
+            hot.call();
+            awaitExecuted(done);
+        } finally {
+            runtime.removeListener(listener);
+        }
+        // Stale requests are handed out first and not reported as polled.
+        Assert.assertEquals(Arrays.asList("cold", "hot"), executed);
+        Assert.assertFalse(polled.contains(cold));
+        Assert.assertTrue(polled.contains(hot));
+    }
+}
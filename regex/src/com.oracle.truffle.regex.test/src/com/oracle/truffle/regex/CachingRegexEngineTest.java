@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.regex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class CachingRegexEngineTest {
+
+    private static CachingRegexEngine createEngine(int maxCacheSize) {
+        return new CachingRegexEngine(null, RegexOptions.DEFAULT, maxCacheSize);
+    }
+
+    @Test
+    public void testHit() {
+        CachingRegexEngine engine = createEngine(16);
+        RegexObject first = engine.compile(new RegexSource("a+b", "g"));
+        RegexObject second = engine.compile(new RegexSource("a+b", "g"));
+        assertSame(first, second);
+        assertEquals(1, engine.getCacheMisses());
+        assertEquals(1, engine.getCacheHits());
+    }
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception {
+        int threads = 8;
+        CachingRegexEngine engine = createEngine(16);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<RegexObject>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return engine.compile(new RegexSource("(x|y)*z"));
+                }));
+            }
+            start.countDown();
+            RegexObject expected = results.get(0).get(1, TimeUnit.MINUTES);
+            for (Future<RegexObject> result : results) {
+                assertSame(expected, result.get(1, TimeUnit.MINUTES));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, engine.getCacheMisses());
+        assertEquals(threads - 1, engine.getCacheHits());
+    }
+
+    @Test
+    public void testSyntaxErrorIsCached() {
+        CachingRegexEngine engine = createEngine(16);
+        for (int i = 0; i < 2; i++) {
+            try {
+                engine.compile(new RegexSource("(a"));
+            } catch (RegexSyntaxException e) {
+                continue;
+            }
+            throw new AssertionError("expected a RegexSyntaxException");
+        }
+        assertEquals(1, engine.getCacheMisses());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        CachingRegexEngine engine = createEngine(4);
+        RegexObject a = engine.compile(new RegexSource("a"));
+        RegexObject b = engine.compile(new RegexSource("b"));
+        engine.compile(new RegexSource("c"));
+        engine.compile(new RegexSource("d"));
+        assertSame(a, engine.compile(new RegexSource("a")));
+        assertEquals(0, engine.getCacheEvictions());
+
+        // Exceeding the maximum size evicts down to three quarters of it: "b" and "c" are the
+        // least recently used entries.
+        engine.compile(new RegexSource("e"));
+        assertEquals(2, engine.getCacheEvictions());
+
+        assertSame(a, engine.compile(new RegexSource("a")));
+        long misses = engine.getCacheMisses();
+        assertNotSame(b, engine.compile(new RegexSource("b")));
+        assertEquals(misses + 1, engine.getCacheMisses());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.regex.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import com.oracle.truffle.regex.CachingRegexEngine;
+import com.oracle.truffle.regex.RegexObject;
+import com.oracle.truffle.regex.RegexOptions;
+import com.oracle.truffle.regex.RegexSource;
+import com.oracle.truffle.regex.UnsupportedRegexException;
+
+/**
+ * Measures the throughput of {@link CachingRegexEngine#compile(RegexSource)} when several threads
+ * create regular expressions concurrently. The number of distinct patterns controls how many
+ * lookups hit the cache.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class CompilationCacheBenchmark extends BenchmarkBase {
+
+    @State(Scope.Benchmark)
+    public static class SharedState {
+
+        @Param({"100", "2000"}) int distinctPatterns;
+
+        CachingRegexEngine engine;
+        RegexSource[] sources;
+
+        @Setup
+        public void setup() {
+            // the compiled regex objects are never executed, so the backing compiler is not needed
+            engine = new CachingRegexEngine(source -> {
+                throw new UnsupportedRegexException("not executed in this benchmark");
+            }, RegexOptions.DEFAULT);
+            sources = new RegexSource[distinctPatterns];
+            for (int i = 0; i < distinctPatterns; i++) {
+                sources[i] = new RegexSource("(\\w+)@" + i + "\\.(com|org)(:\\d+)?", "");
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int next;
+    }
+
+    @Benchmark
+    public RegexObject compile(SharedState shared, ThreadState thread) {
+        RegexSource[] sources = shared.sources;
+        int index = thread.next;
+        thread.next = index + 1 == sources.length ? 0 : index + 1;
+        return shared.engine.compile(sources[index]);
+    }
+}
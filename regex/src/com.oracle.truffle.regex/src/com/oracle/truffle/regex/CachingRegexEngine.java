@@ -40,30 +40,49 @@
  */
 package com.oracle.truffle.regex;
 
+import static com.oracle.truffle.regex.tregex.util.DebugUtil.LOG_COMPILATION_CACHE;
+
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.regex.tregex.TRegexOptions;
 import com.oracle.truffle.regex.util.CompilationResult;
-import com.oracle.truffle.regex.util.LRUCache;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * A {@link RegexEngine} that caches the results of {@link #compile(RegexSource)}. Cache hits do not
+ * take any locks. Concurrent misses on the same {@link RegexSource} are coalesced, so that only one
+ * thread compiles it. If the cache grows beyond {@link TRegexOptions#RegexMaxCacheSize} entries,
+ * the least recently used entries are evicted.
+ */
 public class CachingRegexEngine extends RegexEngine {
 
-    private final Map<RegexSource, CompilationResult<RegexObject>> cache = Collections.synchronizedMap(new LRUCache<>(TRegexOptions.RegexMaxCacheSize));
+    private final ConcurrentHashMap<RegexSource, CacheEntry> cache = new ConcurrentHashMap<>();
+    private final int maxCacheSize;
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
 
     public CachingRegexEngine(RegexCompiler compiler, RegexOptions options) {
+        this(compiler, options, TRegexOptions.RegexMaxCacheSize);
+    }
+
+    public CachingRegexEngine(RegexCompiler compiler, RegexOptions options, int maxCacheSize) {
         super(compiler, options);
+        this.maxCacheSize = maxCacheSize;
     }
 
     @Override
     public RegexObject compile(RegexSource regexSource) throws RegexSyntaxException, UnsupportedRegexException {
-        CompilationResult<RegexObject> result = cacheGet(regexSource);
-        if (result == null) {
-            result = doCompile(regexSource);
-            cachePut(regexSource, result);
-        }
-        return result.unpack();
+        return cacheGetOrCompile(regexSource).unpack();
     }
 
     private CompilationResult<RegexObject> doCompile(RegexSource regexSource) {
@@ -71,12 +90,89 @@ public class CachingRegexEngine extends RegexEngine {
     }
 
     @TruffleBoundary
-    private CompilationResult<RegexObject> cacheGet(RegexSource source) {
-        return cache.get(source);
+    private CompilationResult<RegexObject> cacheGetOrCompile(RegexSource source) {
+        CacheEntry entry = cache.get(source);
+        if (entry == null) {
+            CacheEntry newEntry = new CacheEntry();
+            entry = cache.putIfAbsent(source, newEntry);
+            if (entry == null) {
+                entry = newEntry;
+            }
+        }
+        CompilationResult<RegexObject> result = entry.result;
+        if (result != null) {
+            hits.incrementAndGet();
+            entry.lastAccess = clock.incrementAndGet();
+            return result;
+        }
+        synchronized (entry) {
+            result = entry.result;
+            if (result != null) {
+                hits.incrementAndGet();
+                entry.lastAccess = clock.incrementAndGet();
+                return result;
+            }
+            misses.incrementAndGet();
+            result = doCompile(source);
+            entry.lastAccess = clock.incrementAndGet();
+            entry.result = result;
+        }
+        if (cache.size() > maxCacheSize) {
+            evict();
+        }
+        return result;
     }
 
-    @TruffleBoundary
-    private CompilationResult<RegexObject> cachePut(RegexSource source, CompilationResult<RegexObject> result) {
-        return cache.put(source, result);
+    /**
+     * Removes the least recently used entries until the cache is at three quarters of its maximum
+     * size. Only one thread evicts at a time, the others continue without waiting.
+     */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<Map.Entry<RegexSource, CacheEntry>> compiled = new ArrayList<>(cache.size());
+            for (Map.Entry<RegexSource, CacheEntry> e : cache.entrySet()) {
+                if (e.getValue().result != null) {
+                    compiled.add(e);
+                }
+            }
+            compiled.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+            int targetSize = maxCacheSize - maxCacheSize / 4;
+            int evicted = 0;
+            for (Map.Entry<RegexSource, CacheEntry> e : compiled) {
+                if (cache.size() <= targetSize) {
+                    break;
+                }
+                if (cache.remove(e.getKey(), e.getValue())) {
+                    evicted++;
+                }
+            }
+            evictions.addAndGet(evicted);
+            final int evictedCount = evicted;
+            LOG_COMPILATION_CACHE.fine(() -> String.format("TRegex compilation cache evicted %d entries (%d hits, %d misses, %d evictions)",
+                            evictedCount, hits.get(), misses.get(), evictions.get()));
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    public long getCacheHits() {
+        return hits.get();
+    }
+
+    public long getCacheMisses() {
+        return misses.get();
+    }
+
+    public long getCacheEvictions() {
+        return evictions.get();
+    }
+
+    private static final class CacheEntry {
+
+        volatile CompilationResult<RegexObject> result;
+        volatile long lastAccess;
     }
 }
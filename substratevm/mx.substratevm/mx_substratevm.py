@@ -449,7 +449,7 @@ def native_image_context(common_args=None, hosted_assertions=True, native_image_
             mx.log(timestr() + 'Shutting down completed')
 
 native_image_context.hosted_assertions = ['-J-ea', '-J-esa']
-_native_unittest_features = '--features=com.oracle.svm.test.ImageInfoTest$TestFeature,com.oracle.svm.test.ServiceLoaderTest$TestFeature,com.oracle.svm.test.SecurityServiceTest$TestFeature'
+_native_unittest_features = '--features=com.oracle.svm.test.ImageInfoTest$TestFeature,com.oracle.svm.test.ServiceLoaderTest$TestFeature,com.oracle.svm.test.SecurityServiceTest$TestFeature,com.oracle.svm.test.ResourcesTest$TestFeature'
 
 
 def svm_gate_body(args, tasks):
@@ -482,6 +482,35 @@ def svm_gate_body(args, tasks):
                     # We need the -H:+EnableAllSecurityServices for com.oracle.svm.test.SecurityServiceTest
                     native_unittest(['--build-args', _native_unittest_features, '-H:+EnableAllSecurityServices'] + blacklist_args)
 
+        with Task('pointsto unittests', tasks, tags=[GraalTags.test]) as t:
+            if t:
+                mx_unittest.unittest(['com.oracle.graal.pointsto.typestate'])
+
+        with Task('native unittests with mapped resources', tasks, tags=[GraalTags.test]) as t:
+            if t:
+                native_unittest(['com.oracle.svm.test.ResourcesTest', '--build-args', '--features=com.oracle.svm.test.ResourcesTest$TestFeature', '-H:+MapResourcesFromImage'])
+
+        with Task('native unittests with parallel scavenge', tasks, tags=[GraalTags.test]) as t:
+            if t:
+                native_unittest(['com.oracle.svm.test.gc', '--build-args', '-H:+UseParallelScavenge'])
+                native_unittest(['com.oracle.svm.test.gc.ParallelScavengeStressTest', '--build-args', '-H:+UseParallelScavenge', '-H:+VerifyHeap'])
+
+        with Task('native unittests with mark-compact', tasks, tags=[GraalTags.test]) as t:
+            if t:
+                native_unittest(['com.oracle.svm.test.gc', '--build-args', '-H:+UseMarkCompactOldGeneration', '-H:+VerifyHeap'])
+
+        with Task('native unittests with heap verification', tasks, tags=[GraalTags.test]) as t:
+            if t:
+                native_unittest(['com.oracle.svm.test.gc.TLABSizingTest', '--build-args', '-H:+VerifyHeap'])
+
+        with Task('native unittests with type flow saturation', tasks, tags=[GraalTags.test]) as t:
+            if t:
+                native_unittest(['com.oracle.svm.test.SaturationTest', '--build-args', '--features=com.oracle.svm.test.SaturationTest$TestFeature', '-H:TypeFlowSaturationCutoff=2'])
+
+        with Task('native unittests with flight recorder', tasks, tags=[GraalTags.test]) as t:
+            if t:
+                native_unittest(['com.oracle.svm.test.jfr', '--build-args', '-H:+FlightRecorder'])
+
         with Task('Run Truffle NFI unittests with SVM image', tasks, tags=["svmjunit"]) as t:
             if t:
                 testlib = mx_subst.path_substitutions.substitute('-Dnative.test.lib=<path:truffle:TRUFFLE_TEST_NATIVE>/<lib:nativetest>')
@@ -38,6 +38,7 @@ from glob import glob
 import time
 
 import functools
+import hashlib
 import zipfile
 import mx
 import mx_substratevm
@@ -762,3 +763,84 @@ class ScalaDaCapoNativeImageBenchmarkSuite(mx_graal_benchmark.ScalaDaCapoBenchma
 
 
 mx_benchmark.add_bm_suite(ScalaDaCapoNativeImageBenchmarkSuite())
+
+
+_gc_bench_workloads = ['allocation-rate', 'survivor-ratio', 'large-arrays', 'references', 'pinned-objects']
+_gc_bench_summary_metrics = [
+    ('IncrementalGCCount', 'incremental-gc-count', '#'),
+    ('IncrementalGCNanos', 'incremental-gc-nanos', 'ns'),
+    ('CompleteGCCount', 'complete-gc-count', '#'),
+    ('CompleteGCNanos', 'complete-gc-nanos', 'ns'),
+    ('GCLoadPercent', 'gc-load-percent', '%'),
+    ('AllocatedNormalObjectBytes', 'allocated-memory', 'B'),
+    ('PauseNanosP50', 'pause-p50', 'ns'),
+    ('PauseNanosP90', 'pause-p90', 'ns'),
+    ('PauseNanosP99', 'pause-p99', 'ns'),
+    ('PauseNanosMax', 'pause-max', 'ns'),
+]
+
+
+class SubstrateGCBenchmarkSuite(mx_benchmark.StdOutBenchmarkSuite):
+    """
+    Heap workloads from com.oracle.svm.bench.gc, for measuring changes to the collector of native images.
+    Arguments before '--' are image build options (e.g. -H:+UseParallelScavenge) and select the image,
+    arguments after '--' are passed to each run. Every workload runs in its own process, and the results
+    come from the workload output and from -XX:+PrintGCSummary. Compare runs with the results file:
+
+        mx benchmark svm-gc:* --results-file gc.json -- -H:+UseParallelScavenge --
+    """
+
+    def name(self):
+        return 'svm-gc'
+
+    def group(self):
+        return 'Graal'
+
+    def subgroup(self):
+        return 'substratevm'
+
+    def benchmarkList(self, bmSuiteArgs):
+        return _gc_bench_workloads
+
+    def build_image(self, image_args):
+        image_dir = os.path.join(mx_substratevm.svmbuild_dir(), 'gcbench')
+        image_name = 'gcbench_' + hashlib.sha1(' '.join(image_args).encode('utf-8')).hexdigest()[:12]
+        image_path = os.path.join(image_dir, image_name)
+        if not exists(image_path):
+            classpath = mx.classpath(['SVM_GC_BENCHMARKS'])
+            with mx_substratevm.native_image_context(hosted_assertions=False) as native_image:
+                native_image(['-H:Path=' + image_dir, '-H:Name=' + image_name, '-cp', classpath] + image_args + ['com.oracle.svm.bench.gc.GCBenchmark'])
+        return image_path
+
+    def runAndReturnStdOut(self, benchmarks, bmSuiteArgs):
+        if benchmarks is None or len(benchmarks) != 1:
+            mx.abort('Must specify exactly one benchmark.')
+        image_args, run_args = mx_benchmark.splitArgs(bmSuiteArgs, '--')
+        image = self.build_image(image_args)
+        out = mx.TeeOutputCapture(mx.OutputCapture())
+        returncode = mx.run([image, '-XX:+PrintGCSummary'] + run_args + [benchmarks[0]], out=out, err=out, nonZeroIsFatal=False)
+        dims = {
+            'host-vm': 'svm',
+            'host-vm-config': ' '.join(image_args) or 'default',
+        }
+        return returncode, out.underlying.data, dims
+
+    def rules(self, out, benchmarks, bmSuiteArgs):
+        benchmark = benchmarks[0]
+        prefix = r'^GCBENCH: ' + re.escape(benchmark) + ' '
+        rules = [
+            mx_benchmark.StdOutRule(prefix + r'throughput: (?P<value>[0-9]+(?:\.[0-9]+)?) ops/s$',
+                                    _bench_result(benchmark, 'throughput', ('<value>', float), 'op/s', better='higher')),
+            mx_benchmark.StdOutRule(prefix + r'iteration (?P<iteration>[0-9]+): (?P<value>[0-9]+(?:\.[0-9]+)?) ops/s$',
+                                    _bench_result(benchmark, 'iteration-throughput', ('<value>', float), 'op/s', better='higher',
+                                                  m_iteration=('<iteration>', int))),
+            mx_benchmark.StdOutRule(prefix + r'peak-rss: (?P<value>[0-9]+) bytes$',
+                                    _bench_result(benchmark, 'peak-rss', ('<value>', int), 'B')),
+        ]
+        for summary_name, metric_name, unit in _gc_bench_summary_metrics:
+            rules.append(mx_benchmark.StdOutRule(r'^PrintGCSummary: ' + summary_name + r': (?P<value>-?[0-9]+)$',
+                                                 _bench_result(benchmark, metric_name, ('<value>', int), unit)))
+        return rules
+
+
+mx_benchmark.add_bm_suite(SubstrateGCBenchmarkSuite())
@@ -332,6 +332,18 @@ suite = {
             ],
             "workingSets": "SVM",
         },
+        "com.oracle.graal.pointsto.test": {
+            "subDir": "src",
+            "sourceDirs": ["src"],
+            "dependencies": [
+                "mx:JUNIT",
+                "com.oracle.graal.pointsto",
+            ],
+            "checkstyle": "com.oracle.graal.pointsto",
+            "javaCompliance": "8+",
+            "workingSets": "SVM",
+            "spotbugs": "false",
+        },
         "com.oracle.svm.hosted": {
             "subDir": "src",
             "sourceDirs": ["src"],
@@ -561,6 +573,7 @@ suite = {
             "dependencies": [
                 "mx:JUNIT_TOOL",
                 "sdk:GRAAL_SDK",
+                "SVM",
             ],
             "checkstyle": "com.oracle.svm.core",
             "workingSets": "SVM",
@@ -571,6 +584,18 @@ suite = {
             "spotbugs": "false",
         },
 
+        "com.oracle.svm.bench.gc": {
+            "subDir": "src",
+            "sourceDirs": ["src"],
+            "dependencies": [
+                "sdk:GRAAL_SDK",
+            ],
+            "checkstyle": "com.oracle.svm.core",
+            "workingSets": "SVM",
+            "javaCompliance": "8+",
+            "spotbugs": "false",
+        },
+
         "com.oracle.svm.test.jdk11": {
             "subDir": "src",
             "sourceDirs": ["src"],
@@ -1041,6 +1066,19 @@ suite = {
             ],
         },
 
+        "POINTSTO_TESTS" : {
+          "subDir": "src",
+          "relpath" : True,
+          "dependencies" : [
+            "com.oracle.graal.pointsto.test",
+          ],
+          "distDependencies": [
+            "mx:JUNIT_TOOL",
+            "POINTSTO",
+          ],
+          "testDistribution" : True,
+        },
+
         "SVM_TESTS" : {
           "subDir": "src",
           "relpath" : True,
@@ -1051,10 +1089,23 @@ suite = {
           "distDependencies": [
             "mx:JUNIT_TOOL",
             "sdk:GRAAL_SDK",
+            "SVM",
           ],
           "testDistribution" : True,
         },
 
+        "SVM_GC_BENCHMARKS" : {
+          "subDir": "src",
+          "description" : "Heap workloads for the svm-gc benchmark suite",
+          "dependencies" : [
+            "com.oracle.svm.bench.gc",
+          ],
+          "distDependencies": [
+            "sdk:GRAAL_SDK",
+          ],
+          "maven": False,
+        },
+
         "POLYGLOT_NATIVE_API" : {
             "subDir": "src",
             "dependencies": [
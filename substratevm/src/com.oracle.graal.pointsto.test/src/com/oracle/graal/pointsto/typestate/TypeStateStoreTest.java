@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.graal.pointsto.typestate;
+
+import java.lang.ref.WeakReference;
+import java.util.BitSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.graal.pointsto.typestate.TypeStateStore.Operation;
+import com.oracle.graal.pointsto.typestate.TypeStateStore.WeakInterner;
+
+public class TypeStateStoreTest {
+
+    private static BitSet bits(int... indices) {
+        BitSet result = new BitSet();
+        for (int index : indices) {
+            result.set(index);
+        }
+        return result;
+    }
+
+    @Test
+    public void testEqualValuesAreInterned() {
+        WeakInterner<BitSet> interner = new WeakInterner<>();
+        BitSet first = bits(1, 3, 64);
+        Assert.assertSame(first, interner.intern(first));
+        Assert.assertSame(first, interner.intern(bits(1, 3, 64)));
+        Assert.assertEquals(1, interner.size());
+    }
+
+    @Test
+    public void testDifferentValuesAreNotInterned() {
+        WeakInterner<BitSet> interner = new WeakInterner<>();
+        BitSet first = bits(1, 3);
+        BitSet second = bits(1, 4);
+        Assert.assertSame(first, interner.intern(first));
+        Assert.assertSame(second, interner.intern(second));
+        Assert.assertEquals(2, interner.size());
+    }
+
+    /** The interner does not keep its values alive, and removes their entries once collected. */
+    @Test
+    public void testCollectedValuesAreExpunged() throws InterruptedException {
+        WeakInterner<BitSet> interner = new WeakInterner<>();
+        BitSet kept = interner.intern(bits(2));
+        WeakReference<BitSet> collected = new WeakReference<>(interner.intern(bits(5, 7)));
+        Assert.assertEquals(2, interner.size());
+
+        for (int i = 0; i < 100 && (collected.get() != null || interner.size() > 1); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull(collected.get());
+        Assert.assertEquals(1, interner.size());
+
+        /* An equal value becomes the new canonical value. */
+        BitSet replacement = bits(5, 7);
+        Assert.assertSame(replacement, interner.intern(replacement));
+        Assert.assertSame(kept, interner.intern(bits(2)));
+        Assert.assertEquals(2, interner.size());
+    }
+
+    @Test
+    public void testOperationCacheReturnsRecordedResult() {
+        TypeStateStore store = new TypeStateStore();
+        TypeState s1 = TypeState.forEmpty();
+        TypeState s2 = TypeState.forNull();
+        TypeState result = TypeState.forUnknown();
+        Assert.assertNull(store.lookup(Operation.UNION, s1, s2));
+        store.record(Operation.UNION, s1, s2, result);
+        Assert.assertSame(result, store.lookup(Operation.UNION, s1, s2));
+    }
+
+    /** Entries are keyed by the operation and by the identity and order of the operands. */
+    @Test
+    public void testOperationCacheDistinguishesOperationsAndOperands() {
+        TypeStateStore store = new TypeStateStore();
+        TypeState s1 = TypeState.forEmpty();
+        TypeState s2 = TypeState.forNull();
+        store.record(Operation.SUBTRACTION, s1, s2, TypeState.forUnknown());
+        Assert.assertNull(store.lookup(Operation.INTERSECTION, s1, s2));
+        Assert.assertNull(store.lookup(Operation.SUBTRACTION, s2, s1));
+        Assert.assertNull(store.lookup(Operation.SUBTRACTION, s1, s1));
+    }
+
+    @Test
+    public void testOperationCacheEntriesAreReplaced() {
+        TypeStateStore store = new TypeStateStore();
+        TypeState s1 = TypeState.forEmpty();
+        TypeState s2 = TypeState.forNull();
+        store.record(Operation.UNION, s1, s2, TypeState.forUnknown());
+        store.record(Operation.UNION, s1, s2, s2);
+        Assert.assertSame(s2, store.lookup(Operation.UNION, s1, s2));
+    }
+}
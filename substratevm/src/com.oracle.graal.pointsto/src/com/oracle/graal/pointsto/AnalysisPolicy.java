@@ -28,6 +28,7 @@ import org.graalvm.compiler.nodes.Invoke;
 import org.graalvm.compiler.nodes.java.MethodCallTargetNode;
 import org.graalvm.compiler.options.OptionValues;
 
+import com.oracle.graal.pointsto.api.PointstoOptions;
 import com.oracle.graal.pointsto.flow.AbstractVirtualInvokeTypeFlow;
 import com.oracle.graal.pointsto.flow.ActualReturnTypeFlow;
 import com.oracle.graal.pointsto.flow.TypeFlow;
@@ -48,9 +49,11 @@ import jdk.vm.ci.meta.JavaConstant;
 public abstract class AnalysisPolicy {
 
     protected final OptionValues options;
+    protected final int typeFlowSaturationCutoff;
 
     public AnalysisPolicy(OptionValues options) {
         this.options = options;
+        this.typeFlowSaturationCutoff = PointstoOptions.TypeFlowSaturationCutoff.getValue(options);
     }
 
     /** Provide an analysis context policy. */
@@ -83,6 +86,14 @@ public abstract class AnalysisPolicy {
     /** Note analysis object state merge. */
     public abstract void noteMerge(BigBang bb, AnalysisObject o);
 
+    /**
+     * The number of types above which a type flow is saturated, or -1 if type flows are never
+     * saturated. See {@link TypeFlow#isSaturated()}.
+     */
+    public int typeFlowSaturationCutoff() {
+        return typeFlowSaturationCutoff;
+    }
+
     /** Specifies if an allocation site should be modeled context sensitively. */
     public abstract boolean isContextSensitiveAllocation(BigBang bb, AnalysisType type, AnalysisContext allocationContext);
 
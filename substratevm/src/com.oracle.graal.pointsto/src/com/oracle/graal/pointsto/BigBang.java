@@ -76,8 +76,11 @@ import com.oracle.graal.pointsto.meta.AnalysisMethod;
 import com.oracle.graal.pointsto.meta.AnalysisType;
 import com.oracle.graal.pointsto.meta.AnalysisUniverse;
 import com.oracle.graal.pointsto.meta.HostedProviders;
+import com.oracle.graal.pointsto.reports.AnalysisProfiler;
+import com.oracle.graal.pointsto.reports.AnalysisReportsOptions;
 import com.oracle.graal.pointsto.typestate.PointsToStats;
 import com.oracle.graal.pointsto.typestate.TypeState;
+import com.oracle.graal.pointsto.typestate.TypeStateStore;
 import com.oracle.graal.pointsto.util.CompletionExecutor;
 import com.oracle.graal.pointsto.util.CompletionExecutor.DebugContextRunnable;
 import com.oracle.graal.pointsto.util.Timer;
@@ -110,6 +113,8 @@ public abstract class BigBang {
 
     protected final boolean trackTypeFlowInputs;
     protected final boolean reportAnalysisStatistics;
+    private TypeStateStore typeStateStore;
+    private AnalysisProfiler analysisProfiler;
 
     /**
      * Processing queue.
@@ -156,6 +161,8 @@ public abstract class BigBang {
         if (reportAnalysisStatistics) {
             PointsToStats.init(this);
         }
+        typeStateStore = PointstoOptions.CanonicalizeTypeStates.getValue(options) ? new TypeStateStore() : null;
+        analysisProfiler = AnalysisReportsOptions.PrintAnalysisProfile.getValue(options) ? new AnalysisProfiler() : null;
 
         unsafeLoads = new ConcurrentHashMap<>();
         unsafeStores = new ConcurrentHashMap<>();
@@ -178,6 +185,16 @@ public abstract class BigBang {
         return reportAnalysisStatistics;
     }
 
+    /** Returns the analysis profiler, or null if the analysis is not profiled. */
+    public AnalysisProfiler getAnalysisProfiler() {
+        return analysisProfiler;
+    }
+
+    /** Returns the store that canonicalizes type states, or null if they are not canonicalized. */
+    public TypeStateStore getTypeStateStore() {
+        return typeStateStore;
+    }
+
     public OptionValues getOptions() {
         return options;
     }
@@ -265,6 +282,8 @@ public abstract class BigBang {
         unsafeStores = null;
         unknownTypeFlow = null;
         scannedObjects = null;
+        typeStateStore = null;
+        analysisProfiler = null;
 
         ConstantObjectsProfiler.constantTypes.clear();
 
@@ -520,7 +539,13 @@ public abstract class BigBang {
                 PointsToStats.registerTypeFlowQueuedUpdate(BigBang.this, operation);
 
                 operation.inQueue = false;
-                operation.update(BigBang.this);
+                if (analysisProfiler == null) {
+                    operation.update(BigBang.this);
+                } else {
+                    long start = analysisProfiler.startSection();
+                    operation.update(BigBang.this);
+                    analysisProfiler.registerUpdate(operation, start);
+                }
             }
 
             @Override
@@ -86,12 +86,18 @@ public class PointstoOptions {
     @Option(help = "Track the input for type flows.")//
     public static final OptionKey<Boolean> TrackInputFlows = new OptionKey<>(false);
 
+    @Option(help = "The number of types in the state of a type flow above which the flow is saturated, i.e., its state is widened to all instantiated subtypes of its declared type and further inputs are ignored. -1 disables saturation.")//
+    public static final OptionKey<Integer> TypeFlowSaturationCutoff = new OptionKey<>(-1);
+
     @Option(help = "The maximum size of type and method profiles returned by the static analysis. -1 indicates no limitation.")//
     public static final OptionKey<Integer> AnalysisSizeCutoff = new OptionKey<>(8);
 
     @Option(help = "Report unresolved elements as errors.")//
     public static final OptionKey<Boolean> UnresolvedIsError = new OptionKey<>(true);
 
+    @Option(help = "Intern structurally identical type states and cache the results of type state operations to reduce the analysis memory footprint.")//
+    public static final OptionKey<Boolean> CanonicalizeTypeStates = new OptionKey<>(false);
+
     @Option(help = "Report analysis statistics.")//
     public static final OptionKey<Boolean> PrintPointsToStatistics = new OptionKey<>(false);
 
@@ -38,6 +38,12 @@ public final class AllInstantiatedTypeFlow extends TypeFlow<AnalysisType> {
         return this;
     }
 
+    @Override
+    protected boolean canSaturate() {
+        /* The state of this flow is the source of the saturated state of other flows. */
+        return false;
+    }
+
     @Override
     public String toString() {
         return "AllInstantiated" + super.toString();
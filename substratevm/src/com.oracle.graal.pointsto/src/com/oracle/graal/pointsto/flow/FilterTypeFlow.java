@@ -124,6 +124,12 @@ public class FilterTypeFlow extends TypeFlow<ValueNode> {
         return includeNull;
     }
 
+    @Override
+    protected boolean canSaturate() {
+        /* Saturating would bypass the filter, the declared type is only the filter type. */
+        return false;
+    }
+
     @Override
     public String toString() {
         return "FilterTypeFlow<" + declaredType + ", isAssignable: " + isAssignable + ", includeNull: " + includeNull + ">";
@@ -59,6 +59,12 @@ public class InstanceOfTypeFlow extends TypeFlow<ValueNode> {
         return location;
     }
 
+    @Override
+    protected boolean canSaturate() {
+        /* The state is not bounded by the declared type, see TypeFlow.checkTypeState(). */
+        return false;
+    }
+
     @Override
     public String toString() {
         return "InstanceOfTypeFlow<" + getState() + ">";
@@ -31,15 +31,19 @@ import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import org.graalvm.compiler.graph.Node;
 import org.graalvm.compiler.nodes.StructuredGraph;
 
+import com.oracle.graal.pointsto.AnalysisPolicy;
 import com.oracle.graal.pointsto.BigBang;
 import com.oracle.graal.pointsto.api.PointstoOptions;
 import com.oracle.graal.pointsto.flow.context.AnalysisContext;
 import com.oracle.graal.pointsto.meta.AnalysisMethod;
 import com.oracle.graal.pointsto.meta.AnalysisType;
+import com.oracle.graal.pointsto.reports.AnalysisProfiler;
 import com.oracle.graal.pointsto.typestate.PointsToStats;
 import com.oracle.graal.pointsto.typestate.TypeState;
 import com.oracle.graal.pointsto.util.ConcurrentLightHashSet;
 
+import jdk.vm.ci.meta.JavaKind;
+
 @SuppressWarnings("rawtypes")
 public abstract class TypeFlow<T> {
     private static final AtomicReferenceFieldUpdater<TypeFlow, Object> USE_UPDATER = AtomicReferenceFieldUpdater.newUpdater(TypeFlow.class, Object.class, "uses");
@@ -82,6 +86,14 @@ public abstract class TypeFlow<T> {
 
     public volatile boolean inQueue;
 
+    /**
+     * True if the number of types in the state of this flow exceeded the
+     * {@link AnalysisPolicy#typeFlowSaturationCutoff() saturation cutoff}. The state of a saturated
+     * flow contains all instantiated subtypes of its declared type and is kept up to date by
+     * {@link AnalysisType#updateAssignableTypes}, so inputs to the flow are ignored.
+     */
+    private volatile boolean saturated;
+
     @SuppressWarnings("rawtypes")//
     private static final AtomicReferenceFieldUpdater<TypeFlow, TypeState> STATE_UPDATER = AtomicReferenceFieldUpdater.newUpdater(TypeFlow.class, TypeState.class, "state");
 
@@ -233,7 +245,20 @@ public abstract class TypeFlow<T> {
         TypeState filteredAdd;
         do {
             before = state;
-            filteredAdd = filter(bb, add);
+            if (saturated) {
+                /*
+                 * The state already covers the added types. The objects still need to be merged
+                 * since the saturated state only contains context insensitive objects. Only null
+                 * is not covered by the instantiated subtypes of the declared type.
+                 */
+                bb.analysisPolicy().noteMerge(bb, add);
+                if (before.canBeNull() || !filter(bb, add).canBeNull()) {
+                    return false;
+                }
+                filteredAdd = TypeState.forNull();
+            } else {
+                filteredAdd = filter(bb, add);
+            }
             after = TypeState.forUnion(bb, before, filteredAdd);
             if (after.equals(before)) {
                 return false;
@@ -241,9 +266,17 @@ public abstract class TypeFlow<T> {
         } while (!STATE_UPDATER.compareAndSet(this, before, after));
 
         PointsToStats.registerTypeFlowSuccessfulUpdate(bb, this, add);
+        if (bb.getAnalysisProfiler() != null) {
+            bb.getAnalysisProfiler().registerStateChange(this, after);
+        }
 
         assert !PointstoOptions.ExtendedAsserts.getValue(bb.getOptions()) || checkTypeState(bb, before, after);
 
+        int saturationCutoff = bb.analysisPolicy().typeFlowSaturationCutoff();
+        if (saturationCutoff >= 0 && after.typesCount() > saturationCutoff && canSaturate()) {
+            onSaturated(bb);
+        }
+
         if (postFlow) {
             bb.postFlow(this);
         }
@@ -251,6 +284,56 @@ public abstract class TypeFlow<T> {
         return true;
     }
 
+    public boolean isSaturated() {
+        return saturated;
+    }
+
+    /**
+     * Returns true if this flow can be saturated, i.e., if all types in its state are subtypes of
+     * its declared type.
+     */
+    protected boolean canSaturate() {
+        return declaredType != null && declaredType.getStorageKind() == JavaKind.Object;
+    }
+
+    private void onSaturated(BigBang bb) {
+        synchronized (this) {
+            if (saturated) {
+                return;
+            }
+            saturated = true;
+        }
+        bb.analysisPolicy().noteMerge(bb, state);
+        /*
+         * The bytecode verifier treats interface types like java.lang.Object, so a flow declared
+         * with an interface type can contain objects of any type.
+         */
+        AnalysisType saturationType = ((AnalysisType) declaredType.getElementalType()).isInterface() ? bb.getObjectType() : declaredType;
+        saturationType.registerSaturatedTypeFlow(bb, this);
+        if (bb.getAnalysisProfiler() != null) {
+            bb.getAnalysisProfiler().registerSaturation(this);
+        }
+    }
+
+    /**
+     * Adds the instantiated subtypes of the declared type to the state of a saturated flow, through
+     * the {@link #filter} of the flow. Returns true if the state changed.
+     */
+    public boolean updateSaturatedState(BigBang bb, TypeState assignableTypes) {
+        assert saturated;
+        TypeState filteredTypes = filter(bb, assignableTypes);
+        TypeState before;
+        TypeState after;
+        do {
+            before = state;
+            after = TypeState.forUnion(bb, before, filteredTypes);
+            if (after.equals(before)) {
+                return false;
+            }
+        } while (!STATE_UPDATER.compareAndSet(this, before, after));
+        return true;
+    }
+
     private boolean checkTypeState(BigBang bb, TypeState before, TypeState after) {
         assert PointstoOptions.ExtendedAsserts.getValue(bb.getOptions());
 
@@ -367,8 +450,15 @@ public abstract class TypeFlow<T> {
 
     /** Let the observers that the state has changed. */
     protected void notifyObservers(BigBang bb) {
+        AnalysisProfiler profiler = bb.getAnalysisProfiler();
         for (TypeFlow<?> observer : getObservers()) {
-            observer.onObservedUpdate(bb);
+            if (profiler == null) {
+                observer.onObservedUpdate(bb);
+            } else {
+                long start = profiler.startSection();
+                observer.onObservedUpdate(bb);
+                profiler.registerObservedUpdate(observer, start);
+            }
         }
     }
 
@@ -59,6 +59,7 @@ import com.oracle.graal.pointsto.flow.context.object.ConstantContextSensitiveObj
 import com.oracle.graal.pointsto.infrastructure.OriginalClassProvider;
 import com.oracle.graal.pointsto.infrastructure.WrappedJavaType;
 import com.oracle.graal.pointsto.typestate.TypeState;
+import com.oracle.graal.pointsto.util.ConcurrentLightHashSet;
 
 import jdk.vm.ci.common.JVMCIError;
 import jdk.vm.ci.meta.Assumptions.AssumptionResult;
@@ -79,6 +80,9 @@ public class AnalysisType implements WrappedJavaType, OriginalClassProvider, Com
     private static final AtomicReferenceFieldUpdater<AnalysisType, ConstantContextSensitiveObject> UNIQUE_CONSTANT_UPDATER = //
                     AtomicReferenceFieldUpdater.newUpdater(AnalysisType.class, ConstantContextSensitiveObject.class, "uniqueConstant");
 
+    private static final AtomicReferenceFieldUpdater<AnalysisType, Object> SATURATED_FLOWS_UPDATER = //
+                    AtomicReferenceFieldUpdater.newUpdater(AnalysisType.class, Object.class, "saturatedFlows");
+
     protected final AnalysisUniverse universe;
     private final ResolvedJavaType wrapped;
 
@@ -222,6 +226,7 @@ public class AnalysisType implements WrappedJavaType, OriginalClassProvider, Com
     public void cleanupAfterAnalysis() {
         assignableTypes = null;
         assignableTypesNonNull = null;
+        ConcurrentLightHashSet.clear(this, SATURATED_FLOWS_UPDATER);
         contextInsensitiveAnalysisObject = null;
         constantObjectsCache = null;
         uniqueConstant = null;
@@ -345,6 +350,9 @@ public class AnalysisType implements WrappedJavaType, OriginalClassProvider, Com
     public volatile AllInstantiatedTypeFlow assignableTypes;
     public volatile AllInstantiatedTypeFlow assignableTypesNonNull;
 
+    /** The saturated type flows whose state tracks the assignable types of this type. */
+    @SuppressWarnings("unused") private volatile Object saturatedFlows;
+
     public AllInstantiatedTypeFlow getTypeFlow(BigBang bb, boolean includeNull) {
         if (assignableTypes == null) {
             createTypeFlows(bb);
@@ -377,6 +385,20 @@ public class AnalysisType implements WrappedJavaType, OriginalClassProvider, Com
 
     }
 
+    /**
+     * Registers a saturated type flow whose state must contain all instantiated subtypes of this
+     * type, and adds the currently known subtypes to its state. Null is not added, since it is
+     * already in the state of the flow if it reached the flow.
+     */
+    public void registerSaturatedTypeFlow(BigBang bb, TypeFlow<?> flow) {
+        ConcurrentLightHashSet.addElement(this, SATURATED_FLOWS_UPDATER, flow);
+        flow.updateSaturatedState(bb, getTypeFlow(bb, false).getState());
+    }
+
+    public Collection<TypeFlow<?>> getSaturatedTypeFlows() {
+        return ConcurrentLightHashSet.getElements(this, SATURATED_FLOWS_UPDATER);
+    }
+
     public static void updateAssignableTypes(BigBang bb) {
         /*
          * Update the assignable-state for all types. So do not post any update operations before
@@ -420,7 +442,13 @@ public class AnalysisType implements WrappedJavaType, OriginalClassProvider, Com
                 }
 
                 updateFlow(bb, type.assignableTypes, assignableTypeState, changedFlows);
-                updateFlow(bb, type.assignableTypesNonNull, assignableTypeState.forNonNull(bb), changedFlows);
+                TypeState nonNullTypeState = assignableTypeState.forNonNull(bb);
+                updateFlow(bb, type.assignableTypesNonNull, nonNullTypeState, changedFlows);
+                for (TypeFlow<?> saturatedFlow : type.getSaturatedTypeFlows()) {
+                    if (saturatedFlow.updateSaturatedState(bb, nonNullTypeState)) {
+                        changedFlows.add(saturatedFlow);
+                    }
+                }
             }
         }
 
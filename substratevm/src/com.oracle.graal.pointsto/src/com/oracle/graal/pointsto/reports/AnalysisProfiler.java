@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.graal.pointsto.reports;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.graalvm.compiler.graph.Node;
+import org.graalvm.compiler.nodes.StructuredGraph;
+
+import com.oracle.graal.pointsto.BigBang;
+import com.oracle.graal.pointsto.flow.InvokeTypeFlow;
+import com.oracle.graal.pointsto.flow.TypeFlow;
+import com.oracle.graal.pointsto.flow.context.BytecodeLocation;
+import com.oracle.graal.pointsto.meta.AnalysisMethod;
+import com.oracle.graal.pointsto.typestate.TypeState;
+
+/**
+ * Attributes the cost of the points-to analysis to the type flows, and through them to methods and
+ * invokes.
+ *
+ * For every type flow the profiler records the number of queued updates and the time they took,
+ * the number of observer notifications and the time spent in
+ * {@link TypeFlow#onObservedUpdate(BigBang)}, the maximum number of types in its state, and
+ * whether it was saturated, see {@link TypeFlow#isSaturated()}. The times are exclusive: the time
+ * of the observer notifications that an update or notification triggers is attributed only to the
+ * observers, so that the times of all flows add up to the total time. The report aggregates the
+ * flows of each method (including all its clones) and of each invoke, sorted by cost, as CSV and
+ * JSON, and additionally writes the method costs as folded stacks that flame graph tools accept.
+ */
+public final class AnalysisProfiler {
+
+    private static final String GLOBAL_FLOWS = "<global>";
+
+    private final Map<TypeFlow<?>, FlowProfile> profiles = new ConcurrentHashMap<>();
+
+    /** The sections that are being timed in the current thread, innermost last. */
+    private final ThreadLocal<SectionStack> sections = ThreadLocal.withInitial(SectionStack::new);
+
+    /**
+     * For each open section, the time of the sections that were nested in it, which is subtracted
+     * from its own time.
+     */
+    private static final class SectionStack {
+        long[] nestedNanos = new long[8];
+        int depth;
+
+        void push() {
+            if (depth == nestedNanos.length) {
+                nestedNanos = Arrays.copyOf(nestedNanos, depth * 2);
+            }
+            nestedNanos[depth++] = 0;
+        }
+
+        long pop(long totalNanos) {
+            long nested = nestedNanos[--depth];
+            if (depth > 0) {
+                nestedNanos[depth - 1] += totalNanos;
+            }
+            return totalNanos - nested;
+        }
+    }
+
+    private static final class FlowProfile {
+        final LongAdder updates = new LongAdder();
+        final LongAdder updateNanos = new LongAdder();
+        final LongAdder observerUpdates = new LongAdder();
+        final LongAdder observerNanos = new LongAdder();
+        final AtomicInteger maxTypes = new AtomicInteger();
+        final AtomicInteger saturations = new AtomicInteger();
+    }
+
+    private FlowProfile profile(TypeFlow<?> flow) {
+        return profiles.computeIfAbsent(flow, f -> new FlowProfile());
+    }
+
+    /**
+     * Starts timing an update or observer notification in the current thread, and returns the start
+     * time to pass to {@link #registerUpdate} or {@link #registerObservedUpdate}.
+     */
+    public long startSection() {
+        sections.get().push();
+        return System.nanoTime();
+    }
+
+    /** Records a queued {@link TypeFlow#update(BigBang)} of a flow. */
+    public void registerUpdate(TypeFlow<?> flow, long start) {
+        long nanos = sections.get().pop(System.nanoTime() - start);
+        FlowProfile profile = profile(flow);
+        profile.updates.increment();
+        profile.updateNanos.add(nanos);
+    }
+
+    /** Records a notification of an observer that the flow it observes changed. */
+    public void registerObservedUpdate(TypeFlow<?> observer, long start) {
+        long nanos = sections.get().pop(System.nanoTime() - start);
+        FlowProfile profile = profile(observer);
+        profile.observerUpdates.increment();
+        profile.observerNanos.add(nanos);
+    }
+
+    /** Records a successful change of the state of a flow. */
+    public void registerStateChange(TypeFlow<?> flow, TypeState after) {
+        profile(flow).maxTypes.accumulateAndGet(after.typesCount(), Math::max);
+    }
+
+    /** Records that the state of a flow exceeded the saturation cutoff. */
+    public void registerSaturation(TypeFlow<?> flow) {
+        profile(flow).saturations.incrementAndGet();
+    }
+
+    public static void print(BigBang bb, String path, String reportName) {
+        AnalysisProfiler profiler = bb.getAnalysisProfiler();
+        if (profiler == null) {
+            return;
+        }
+        Map<String, Row> methods = new HashMap<>();
+        Map<String, Row> invokes = new HashMap<>();
+        for (Map.Entry<TypeFlow<?>, FlowProfile> entry : profiler.profiles.entrySet()) {
+            TypeFlow<?> flow = entry.getKey();
+            AnalysisMethod method = methodOf(flow);
+            String methodName = method != null ? method.format("%H.%n(%p)") : GLOBAL_FLOWS;
+            methods.computeIfAbsent(methodName, Row::new).add(entry.getValue());
+            if (flow instanceof InvokeTypeFlow) {
+                InvokeTypeFlow invoke = (InvokeTypeFlow) flow;
+                String location = method != null ? BytecodeLocation.formatLocation(method, invoke.getLocation().getBci()) : GLOBAL_FLOWS;
+                String invokeName = location + " -> " + invoke.getTargetMethod().format("%H.%n(%p)");
+                invokes.computeIfAbsent(invokeName, Row::new).add(entry.getValue());
+            }
+        }
+
+        List<Row> methodRows = sortedByCost(methods);
+        List<Row> invokeRows = sortedByCost(invokes);
+        String reportsPath = path + File.separatorChar + "reports";
+        ReportUtils.report("analysis profile", reportsPath, "analysis_profile_" + reportName, "csv", writer -> {
+            writer.println("kind,element,updates,update_ms,observer_updates,observer_ms,max_types,saturations");
+            printRows(writer, "method", methodRows);
+            printRows(writer, "invoke", invokeRows);
+        });
+        ReportUtils.report("analysis profile (JSON)", reportsPath, "analysis_profile_" + reportName, "json", writer -> {
+            writer.println("{");
+            printJsonRows(writer, "methods", methodRows);
+            writer.println(",");
+            printJsonRows(writer, "invokes", invokeRows);
+            writer.println();
+            writer.println("}");
+        });
+        ReportUtils.report("analysis profile stacks", reportsPath, "analysis_profile_" + reportName, "stacks", writer -> printStacks(writer, methodRows));
+    }
+
+    private static AnalysisMethod methodOf(TypeFlow<?> flow) {
+        if (flow.method() != null) {
+            return flow.method();
+        }
+        Object source = flow.getSource();
+        if (source instanceof Node && ((Node) source).graph() instanceof StructuredGraph) {
+            Object method = ((StructuredGraph) ((Node) source).graph()).method();
+            if (method instanceof AnalysisMethod) {
+                return (AnalysisMethod) method;
+            }
+        }
+        return null;
+    }
+
+    private static List<Row> sortedByCost(Map<String, Row> rows) {
+        List<Row> result = new ArrayList<>(rows.values());
+        result.sort(Comparator.comparingLong(Row::totalNanos).reversed().thenComparing(row -> row.name));
+        return result;
+    }
+
+    private static void printRows(PrintWriter writer, String kind, List<Row> rows) {
+        for (Row row : rows) {
+            writer.format(Locale.ROOT, "%s,\"%s\",%d,%.3f,%d,%.3f,%d,%d%n", kind, row.name.replace("\"", "\"\""), row.updates, row.updateNanos / 1_000_000d, row.observerUpdates,
+                            row.observerNanos / 1_000_000d, row.maxTypes, row.saturations);
+        }
+    }
+
+    private static void printJsonRows(PrintWriter writer, String kind, List<Row> rows) {
+        writer.format("  \"%s\": [", kind);
+        String separator = "";
+        for (Row row : rows) {
+            writer.print(separator);
+            writer.format(Locale.ROOT, "%n    {\"element\": %s, \"updates\": %d, \"update_ms\": %.3f, \"observer_updates\": %d, \"observer_ms\": %.3f, \"max_types\": %d, \"saturations\": %d}",
+                            jsonString(row.name), row.updates, row.updateNanos / 1_000_000d, row.observerUpdates, row.observerNanos / 1_000_000d, row.maxTypes, row.saturations);
+            separator = ",";
+        }
+        writer.print(rows.isEmpty() ? "]" : String.format("%n  ]"));
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Prints one folded stack per method, with the package, class and method as frames and the
+     * time in microseconds as the value.
+     */
+    private static void printStacks(PrintWriter writer, List<Row> methodRows) {
+        for (Row row : methodRows) {
+            long micros = row.totalNanos() / 1000;
+            if (micros == 0) {
+                continue;
+            }
+            String frames;
+            int paren = row.name.indexOf('(');
+            int methodStart = row.name.lastIndexOf('.', paren >= 0 ? paren : row.name.length());
+            if (methodStart > 0) {
+                String className = row.name.substring(0, methodStart);
+                int classStart = className.lastIndexOf('.');
+                String packageName = classStart > 0 ? className.substring(0, classStart) : "<default>";
+                frames = packageName + ';' + className.substring(classStart + 1) + ';' + row.name.substring(methodStart + 1);
+            } else {
+                frames = row.name;
+            }
+            writer.println(frames.replace(' ', '_') + ' ' + micros);
+        }
+    }
+
+    private static final class Row {
+        final String name;
+        long updates;
+        long updateNanos;
+        long observerUpdates;
+        long observerNanos;
+        int maxTypes;
+        int saturations;
+
+        Row(String name) {
+            this.name = name;
+        }
+
+        void add(FlowProfile profile) {
+            updates += profile.updates.sum();
+            updateNanos += profile.updateNanos.sum();
+            observerUpdates += profile.observerUpdates.sum();
+            observerNanos += profile.observerNanos.sum();
+            maxTypes = Math.max(maxTypes, profile.maxTypes.get());
+            saturations += profile.saturations.get();
+        }
+
+        long totalNanos() {
+            return updateNanos + observerNanos;
+        }
+    }
+}
@@ -35,6 +35,9 @@ public class AnalysisReportsOptions {
     @Option(help = "Print analysis call tree, a breadth-first tree reduction of the call graph.")//
     public static final OptionKey<Boolean> PrintAnalysisCallTree = new OptionKey<>(false);
 
+    @Option(help = "Profile the analysis and print the cost of type flow updates per method and invoke, as CSV, JSON and folded flame graph stacks.")//
+    public static final OptionKey<Boolean> PrintAnalysisProfile = new OptionKey<>(false);
+
     @Option(help = "Print boot image object hierarchy.")//
     public static final OptionKey<Boolean> PrintImageObjectTree = new OptionKey<>(false);
 
@@ -74,7 +74,7 @@ public class MultiTypeState extends TypeState {
          * another thread calls clone() the words[] array can be in an inconsistent state.
          */
         TypeStateUtils.trimBitSetToSize(typesBitSet);
-        this.typesBitSet = typesBitSet;
+        this.typesBitSet = TypeStateStore.internTypes(bb, typesBitSet);
         long cardinality = typesBitSet.cardinality();
         assert cardinality < Integer.MAX_VALUE : "We don't expect so much types.";
         this.typesCount = (int) cardinality;
@@ -220,7 +220,7 @@ public class MultiTypeState extends TypeState {
             return this;
         } else {
             /* Just flip the canBeNull flag and copy the rest of the values from this. */
-            return new MultiTypeState(bb, resultCanBeNull, this);
+            return TypeStateStore.intern(bb, new MultiTypeState(bb, resultCanBeNull, this));
         }
     }
 
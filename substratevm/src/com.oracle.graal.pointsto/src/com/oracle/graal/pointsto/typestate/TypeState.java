@@ -42,6 +42,7 @@ import com.oracle.graal.pointsto.flow.context.BytecodeLocation;
 import com.oracle.graal.pointsto.flow.context.object.AnalysisObject;
 import com.oracle.graal.pointsto.meta.AnalysisType;
 import com.oracle.graal.pointsto.typestate.MultiTypeState.Range;
+import com.oracle.graal.pointsto.typestate.TypeStateStore.Operation;
 import com.oracle.graal.pointsto.util.AnalysisError;
 import com.oracle.graal.pointsto.util.BitArrayUtils;
 
@@ -369,7 +370,7 @@ public abstract class TypeState {
              */
             BitSet typesBitSet = (BitSet) exactTypes.clone();
             int properties = bb.analysisPolicy().makePoperties(bb, objectsArray);
-            return new MultiTypeState(bb, canBeNull, properties, typesBitSet, objectsArray);
+            return TypeStateStore.intern(bb, new MultiTypeState(bb, canBeNull, properties, typesBitSet, objectsArray));
         }
     }
 
@@ -402,7 +403,7 @@ public abstract class TypeState {
 
                 BitSet typesBitSet = multiState.typesBitSet;
                 int properties = bb.analysisPolicy().makePoperties(bb, objectsArray);
-                return new MultiTypeState(bb, multiState.canBeNull(), properties, typesBitSet, objectsArray);
+                return TypeStateStore.intern(bb, new MultiTypeState(bb, multiState.canBeNull(), properties, typesBitSet, objectsArray));
             }
         }
     }
@@ -427,7 +428,13 @@ public abstract class TypeState {
             return s1;
         } else if (s2.isNull()) {
             return s1.forCanBeNull(bb, true);
-        } else if (s1 instanceof SingleTypeState && s2 instanceof SingleTypeState) {
+        } else {
+            return doOperation(bb, Operation.UNION, s1, s2);
+        }
+    }
+
+    private static TypeState doUnion(BigBang bb, TypeState s1, TypeState s2) {
+        if (s1 instanceof SingleTypeState && s2 instanceof SingleTypeState) {
             return doUnion(bb, (SingleTypeState) s1, (SingleTypeState) s2);
         } else if (s1 instanceof SingleTypeState && s2 instanceof MultiTypeState) {
             return doUnion(bb, (MultiTypeState) s2, (SingleTypeState) s1);
@@ -456,7 +463,13 @@ public abstract class TypeState {
             return s2;
         } else if (s2.isNull()) {
             return s2.forCanBeNull(bb, s1.canBeNull());
-        } else if (s1 instanceof SingleTypeState && s2 instanceof SingleTypeState) {
+        } else {
+            return doOperation(bb, Operation.INTERSECTION, s1, s2);
+        }
+    }
+
+    private static TypeState doIntersection(BigBang bb, TypeState s1, TypeState s2) {
+        if (s1 instanceof SingleTypeState && s2 instanceof SingleTypeState) {
             return doIntersection(bb, (SingleTypeState) s1, (SingleTypeState) s2);
         } else if (s1 instanceof SingleTypeState && s2 instanceof MultiTypeState) {
             return doIntersection(bb, (SingleTypeState) s1, (MultiTypeState) s2);
@@ -481,7 +494,13 @@ public abstract class TypeState {
             return s1;
         } else if (s2.isNull()) {
             return s1.forCanBeNull(bb, false);
-        } else if (s1 instanceof SingleTypeState && s2 instanceof SingleTypeState) {
+        } else {
+            return doOperation(bb, Operation.SUBTRACTION, s1, s2);
+        }
+    }
+
+    private static TypeState doSubtraction(BigBang bb, TypeState s1, TypeState s2) {
+        if (s1 instanceof SingleTypeState && s2 instanceof SingleTypeState) {
             return doSubtraction(bb, (SingleTypeState) s1, (SingleTypeState) s2);
         } else if (s1 instanceof SingleTypeState && s2 instanceof MultiTypeState) {
             return doSubtraction(bb, (SingleTypeState) s1, (MultiTypeState) s2);
@@ -493,6 +512,42 @@ public abstract class TypeState {
         }
     }
 
+    /**
+     * Performs a binary operation on two non-trivial type states. When the type states are
+     * canonicalized, the result is looked up in, or added to, the operation cache of the
+     * {@link TypeStateStore} and is interned before it is returned.
+     */
+    private static TypeState doOperation(BigBang bb, Operation operation, TypeState s1, TypeState s2) {
+        TypeStateStore store = bb != null ? bb.getTypeStateStore() : null;
+        if (store != null) {
+            TypeState cached = store.lookup(operation, s1, s2);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        TypeState result;
+        switch (operation) {
+            case UNION:
+                result = doUnion(bb, s1, s2);
+                break;
+            case INTERSECTION:
+                result = doIntersection(bb, s1, s2);
+                break;
+            case SUBTRACTION:
+                result = doSubtraction(bb, s1, s2);
+                break;
+            default:
+                throw AnalysisError.shouldNotReachHere();
+        }
+
+        if (store != null) {
+            result = TypeStateStore.intern(bb, result);
+            store.record(operation, s1, s2, result);
+        }
+        return result;
+    }
+
     /* Implementation of union. */
 
     private static TypeState doUnion(BigBang bb, SingleTypeState s1, SingleTypeState s2) {
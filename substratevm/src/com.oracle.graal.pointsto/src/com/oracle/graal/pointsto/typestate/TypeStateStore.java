@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.graal.pointsto.typestate;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.oracle.graal.pointsto.BigBang;
+
+/**
+ * Canonicalizes the type states created during one run of the analysis.
+ *
+ * Structurally identical {@link MultiTypeState}s are created over and over again by the type flows,
+ * and many states with different objects share the same types. The store interns both the states
+ * and their types bit sets in weak tables, so that each distinct state and bit set is retained only
+ * once while some type flow still references it. It also keeps a small direct-mapped cache of the
+ * results of binary type state operations, keyed by the identity of the operands: since type
+ * states are immutable, an operation on the same two states always produces an equal result.
+ */
+public final class TypeStateStore {
+
+    /** The number of entries of the operation cache. Must be a power of two. */
+    private static final int OPERATION_CACHE_SIZE = 4096;
+
+    enum Operation {
+        UNION,
+        INTERSECTION,
+        SUBTRACTION
+    }
+
+    private final WeakInterner<MultiTypeState> states = new WeakInterner<>();
+    private final WeakInterner<BitSet> typesBitSets = new WeakInterner<>();
+    private final AtomicReferenceArray<CachedOperation> operationCache = new AtomicReferenceArray<>(OPERATION_CACHE_SIZE);
+
+    /** Returns the canonical instance of the given state, or the state itself if it is new. */
+    static TypeState intern(BigBang bb, TypeState state) {
+        TypeStateStore store = bb != null ? bb.getTypeStateStore() : null;
+        if (store != null && state instanceof MultiTypeState) {
+            return store.states.intern((MultiTypeState) state);
+        }
+        return state;
+    }
+
+    /**
+     * Returns the canonical instance of the given types bit set. The bit set must not be modified
+     * after it was interned.
+     */
+    static BitSet internTypes(BigBang bb, BitSet typesBitSet) {
+        TypeStateStore store = bb != null ? bb.getTypeStateStore() : null;
+        if (store != null) {
+            return store.typesBitSets.intern(typesBitSet);
+        }
+        return typesBitSet;
+    }
+
+    /** Returns the cached result of the operation on the given states, or null. */
+    TypeState lookup(Operation operation, TypeState s1, TypeState s2) {
+        CachedOperation entry = operationCache.get(cacheIndex(operation, s1, s2));
+        if (entry != null && entry.operation == operation && entry.s1 == s1 && entry.s2 == s2) {
+            return entry.result;
+        }
+        return null;
+    }
+
+    void record(Operation operation, TypeState s1, TypeState s2, TypeState result) {
+        operationCache.set(cacheIndex(operation, s1, s2), new CachedOperation(operation, s1, s2, result));
+    }
+
+    private static int cacheIndex(Operation operation, TypeState s1, TypeState s2) {
+        int hash = System.identityHashCode(s1) * 31 + System.identityHashCode(s2);
+        hash = hash * 31 + operation.ordinal();
+        return (hash ^ (hash >>> 16)) & (OPERATION_CACHE_SIZE - 1);
+    }
+
+    private static final class CachedOperation {
+        final Operation operation;
+        final TypeState s1;
+        final TypeState s2;
+        final TypeState result;
+
+        CachedOperation(Operation operation, TypeState s1, TypeState s2, TypeState result) {
+            this.operation = operation;
+            this.s1 = s1;
+            this.s2 = s2;
+            this.result = result;
+        }
+    }
+
+    /**
+     * A concurrent set of weakly referenced canonical values. Values are compared using their
+     * {@link Object#equals} method, entries whose value was collected are removed lazily.
+     */
+    static final class WeakInterner<T> {
+        private final ConcurrentHashMap<Entry<T>, Entry<T>> table = new ConcurrentHashMap<>();
+        private final ReferenceQueue<T> queue = new ReferenceQueue<>();
+
+        T intern(T value) {
+            expungeStaleEntries();
+            Entry<T> entry = new Entry<>(value, queue);
+            while (true) {
+                Entry<T> existing = table.putIfAbsent(entry, entry);
+                if (existing == null) {
+                    return value;
+                }
+                T canonical = existing.get();
+                if (canonical != null) {
+                    return canonical;
+                }
+                /* The canonical value was collected concurrently, replace its entry. */
+                table.remove(existing, existing);
+            }
+        }
+
+        /**
+         * Returns the number of entries, after removing the entries whose value was collected and
+         * whose reference was already enqueued.
+         */
+        int size() {
+            expungeStaleEntries();
+            return table.size();
+        }
+
+        private void expungeStaleEntries() {
+            Reference<? extends T> stale;
+            while ((stale = queue.poll()) != null) {
+                table.remove(stale);
+            }
+        }
+
+        private static final class Entry<T> extends WeakReference<T> {
+            private final int hash;
+
+            Entry(T value, ReferenceQueue<T> queue) {
+                super(value, queue);
+                this.hash = value.hashCode();
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
+            @Override
+            public boolean equals(Object obj) {
+                if (this == obj) {
+                    return true;
+                }
+                if (!(obj instanceof Entry) || ((Entry<?>) obj).hash != hash) {
+                    return false;
+                }
+                T value = get();
+                return value != null && value.equals(((Entry<?>) obj).get());
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.bench.gc;
+
+/** Allocates small objects that die young, which measures the allocation fast path. */
+final class AllocationRateWorkload extends Workload {
+    private static final int OPERATIONS = 10_000_000;
+
+    static final class Node {
+        final long value;
+        final Node next;
+
+        Node(long value, Node next) {
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    @Override
+    String name() {
+        return "allocation-rate";
+    }
+
+    @Override
+    long runIteration() {
+        Node node = null;
+        for (int i = 0; i < OPERATIONS; i++) {
+            /* Keep short chains so that almost all objects are dead at the next collection. */
+            node = new Node(i, (i & 7) == 0 ? null : node);
+        }
+        GCBenchmark.sink = node;
+        return OPERATIONS;
+    }
+}
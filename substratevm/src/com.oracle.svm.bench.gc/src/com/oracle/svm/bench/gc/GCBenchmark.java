@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.bench.gc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs one heap workload in a native image and prints its results in lines that start with
+ * {@value #PREFIX}, which the {@code svm-gc} suite of {@code mx benchmark} parses. Run the image
+ * with {@code -XX:+PrintGCSummary} to also get the accounting and the pause distribution of the
+ * collector.
+ *
+ * Usage: {@code gcbench [--iterations N] [--warmup N] <workload>}
+ */
+public final class GCBenchmark {
+
+    static final String PREFIX = "GCBENCH: ";
+
+    private static final Map<String, Workload> WORKLOADS = new LinkedHashMap<>();
+
+    static {
+        register(new AllocationRateWorkload());
+        register(new SurvivorRatioWorkload());
+        register(new LargeArrayWorkload());
+        register(new ReferenceWorkload());
+        register(new PinnedObjectWorkload());
+    }
+
+    private static void register(Workload workload) {
+        WORKLOADS.put(workload.name(), workload);
+    }
+
+    /** Keeps the results of workloads alive so that their allocations cannot be eliminated. */
+    static volatile Object sink;
+
+    private GCBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int iterations = 10;
+        int warmup = 3;
+        String name = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--iterations") && i + 1 < args.length) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--warmup") && i + 1 < args.length) {
+                warmup = Integer.parseInt(args[++i]);
+            } else {
+                name = args[i];
+            }
+        }
+        Workload workload = (name == null) ? null : WORKLOADS.get(name);
+        if (workload == null) {
+            System.err.println("Usage: gcbench [--iterations N] [--warmup N] <workload>");
+            System.err.println("Workloads: " + String.join(", ", WORKLOADS.keySet()));
+            System.exit(1);
+            return;
+        }
+
+        workload.setUp();
+        double[] throughputs = new double[iterations];
+        for (int i = -warmup; i < iterations; i++) {
+            long start = System.nanoTime();
+            long operations = workload.runIteration();
+            long nanos = Math.max(System.nanoTime() - start, 1);
+            double throughput = operations * 1e9 / nanos;
+            if (i >= 0) {
+                throughputs[i] = throughput;
+                System.out.printf("%s%s iteration %d: %.2f ops/s%n", PREFIX, workload.name(), i, throughput);
+            }
+        }
+        workload.tearDown();
+
+        if (iterations > 0) {
+            double[] sorted = throughputs.clone();
+            Arrays.sort(sorted);
+            System.out.printf("%s%s throughput: %.2f ops/s%n", PREFIX, workload.name(), sorted[sorted.length / 2]);
+        }
+        long peakRSS = readPeakRSS();
+        if (peakRSS >= 0) {
+            System.out.printf("%s%s peak-rss: %d bytes%n", PREFIX, workload.name(), peakRSS);
+        }
+    }
+
+    /** The peak resident set size of this process, or -1 if it is not available. */
+    private static long readPeakRSS() {
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(status, StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmHWM:")) {
+                    String[] parts = line.substring("VmHWM:".length()).trim().split("\\s+");
+                    return Long.parseLong(parts[0]) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.bench.gc;
+
+/**
+ * Allocates arrays that are larger than the large array threshold, so that each is placed in its
+ * own unaligned chunk, and keeps some of them alive.
+ */
+final class LargeArrayWorkload extends Workload {
+    private static final int OPERATIONS = 20_000;
+    private static final int RETAINED = 64;
+
+    private long[][] retained;
+
+    @Override
+    String name() {
+        return "large-arrays";
+    }
+
+    @Override
+    void setUp() {
+        retained = new long[RETAINED][];
+    }
+
+    @Override
+    long runIteration() {
+        for (int i = 0; i < OPERATIONS; i++) {
+            long[] array = new long[16 * 1024 + (i & 1023) * 64];
+            array[0] = i;
+            if ((i & 15) == 0) {
+                retained[(i >>> 4) % RETAINED] = array;
+            } else {
+                GCBenchmark.sink = array;
+            }
+        }
+        return OPERATIONS;
+    }
+
+    @Override
+    void tearDown() {
+        retained = null;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.bench.gc;
+
+import org.graalvm.nativeimage.PinnedObject;
+
+/**
+ * Allocates while objects are pinned, as code that passes buffers to native code does. Chunks with
+ * pinned objects cannot be evacuated, so this measures how the collector copes with them.
+ */
+final class PinnedObjectWorkload extends Workload {
+    private static final int OPERATIONS = 200_000;
+    private static final int PINNED = 16;
+
+    @Override
+    String name() {
+        return "pinned-objects";
+    }
+
+    @Override
+    long runIteration() {
+        PinnedObject[] pinned = new PinnedObject[PINNED];
+        for (int i = 0; i < OPERATIONS; i++) {
+            int slot = i % PINNED;
+            if (pinned[slot] != null) {
+                pinned[slot].close();
+            }
+            pinned[slot] = PinnedObject.create(new byte[256]);
+            for (int j = 0; j < 16; j++) {
+                GCBenchmark.sink = new byte[64];
+            }
+        }
+        for (PinnedObject p : pinned) {
+            if (p != null) {
+                p.close();
+            }
+        }
+        return OPERATIONS;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.bench.gc;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+
+/**
+ * Maintains a large cache of soft and weak references with a reference queue, like a memory
+ * sensitive cache does. This measures the discovery, processing and enqueuing of references.
+ */
+final class ReferenceWorkload extends Workload {
+    private static final int OPERATIONS = 2_000_000;
+    private static final int CACHE_SIZE = 500_000;
+
+    private Reference<?>[] cache;
+    private ReferenceQueue<Object> queue;
+    private long cleared;
+
+    @Override
+    String name() {
+        return "references";
+    }
+
+    @Override
+    void setUp() {
+        cache = new Reference<?>[CACHE_SIZE];
+        queue = new ReferenceQueue<>();
+    }
+
+    @Override
+    long runIteration() {
+        for (int i = 0; i < OPERATIONS; i++) {
+            int slot = (int) ((i * 2654435761L) % CACHE_SIZE);
+            Reference<?> ref = cache[slot];
+            if (ref == null || ref.get() == null) {
+                Object value = new byte[48];
+                cache[slot] = ((i & 1) == 0) ? new SoftReference<>(value, queue) : new WeakReference<>(value, queue);
+                GCBenchmark.sink = value;
+            }
+            if ((i & 1023) == 0) {
+                while (queue.poll() != null) {
+                    cleared++;
+                }
+            }
+        }
+        return OPERATIONS;
+    }
+
+    @Override
+    void tearDown() {
+        GCBenchmark.sink = cleared;
+        cache = null;
+        queue = null;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.bench.gc;
+
+/**
+ * Keeps a window of recently allocated objects alive, so that a fixed fraction of each young
+ * generation survives one or more collections. This measures copying between survivor spaces and
+ * promotion.
+ */
+final class SurvivorRatioWorkload extends Workload {
+    private static final int OPERATIONS = 5_000_000;
+    private static final int WINDOW = 200_000;
+
+    private Object[] window;
+
+    @Override
+    String name() {
+        return "survivor-ratio";
+    }
+
+    @Override
+    void setUp() {
+        window = new Object[WINDOW];
+    }
+
+    @Override
+    long runIteration() {
+        for (int i = 0; i < OPERATIONS; i++) {
+            byte[] payload = new byte[32 + (i & 63)];
+            if ((i & 3) == 0) {
+                /* A quarter of the objects lives until it falls out of the window. */
+                window[(i >>> 2) % WINDOW] = payload;
+            } else {
+                GCBenchmark.sink = payload;
+            }
+        }
+        return OPERATIONS;
+    }
+
+    @Override
+    void tearDown() {
+        window = null;
+    }
+}
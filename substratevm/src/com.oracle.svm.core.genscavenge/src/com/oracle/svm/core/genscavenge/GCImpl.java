@@ -31,6 +31,7 @@ import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
 import java.lang.ref.Reference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.management.MBeanNotificationInfo;
@@ -73,10 +74,12 @@ import com.oracle.svm.core.heap.CollectionWatcher;
 import com.oracle.svm.core.heap.GC;
 import com.oracle.svm.core.heap.GCCause;
 import com.oracle.svm.core.heap.NoAllocationVerifier;
+import com.oracle.svm.core.heap.ObjectReferenceVisitor;
 import com.oracle.svm.core.heap.ObjectVisitor;
 import com.oracle.svm.core.hub.LayoutEncoding;
 import com.oracle.svm.core.jdk.CleanerSupport;
 import com.oracle.svm.core.jdk.RuntimeSupport;
+import com.oracle.svm.core.jfr.JfrEvents;
 import com.oracle.svm.core.log.Log;
 import com.oracle.svm.core.option.HostedOptionKey;
 import com.oracle.svm.core.os.CommittedMemoryProvider;
@@ -130,8 +133,15 @@ public class GCImpl implements GC {
     private final ThreadLocalMTWalker threadLocalsWalker;
     private final RuntimeCodeCacheWalker runtimeCodeCacheWalker;
     private final RuntimeCodeCacheCleaner runtimeCodeCacheCleaner;
+    private final ParallelScavenge parallelScavenge;
+    private final MarkCompact markCompact;
+    private final IdleHeapUncommitter idleHeapUncommitter;
 
     private CollectionPolicy policy;
+    /**
+     * Whether the phase in progress collects the old generation. Each phase sets it when it starts,
+     * so after a collection it tells whether the collection was complete.
+     */
     private boolean completeCollection;
     private UnsignedWord sizeBefore;
 
@@ -160,6 +170,9 @@ public class GCImpl implements GC {
         this.threadLocalsWalker = createThreadLocalsWalker();
         this.runtimeCodeCacheWalker = new RuntimeCodeCacheWalker(greyToBlackObjRefVisitor);
         this.runtimeCodeCacheCleaner = new RuntimeCodeCacheCleaner();
+        this.parallelScavenge = ParallelScavenge.isEnabled() ? new ParallelScavenge() : null;
+        this.markCompact = MarkCompact.isEnabled() ? new MarkCompact() : null;
+        this.idleHeapUncommitter = IdleHeapUncommitter.isEnabled() ? new IdleHeapUncommitter() : null;
 
         this.blackenImageHeapRootsTimer = new Timer("blackenImageHeapRootsTimer");
         this.blackenDirtyCardRootsTimer = new Timer("blackenDirtyCardRoots");
@@ -172,6 +185,8 @@ public class GCImpl implements GC {
         this.promotePinnedObjectsTimer = new Timer("promotePinnedObjects");
         this.rootScanTimer = new Timer("rootScan");
         this.scanGreyObjectsTimer = new Timer("scanGreyObject");
+        this.parallelScavengeTimer = new Timer("parallelScavenge");
+        this.markCompactTimer = new Timer("markCompact");
         this.verifyAfterTimer = new Timer("verifyAfter");
         this.verifyBeforeTimer = new Timer("verifyBefore");
         this.watchersBeforeTimer = new Timer("watchersBefore");
@@ -237,6 +252,8 @@ public class GCImpl implements GC {
 
         /* Flush chunks from thread-local lists to global lists. */
         ThreadLocalAllocation.disableThreadLocalAllocation();
+        /* Sample the allocation of each thread and size their TLABs for the next cycle. */
+        TLABSizing.endCycle();
         /* Report the heap before the collection. */
         printGCBefore(cause.getName());
         /* Scrub the lists I maintain, before the collection. */
@@ -245,10 +262,26 @@ public class GCImpl implements GC {
         visitWatchersBefore();
 
         /* Collect. */
-        collectImpl(cause.getName());
+        long startTicks = JfrEvents.beginTicks();
+        collectImpl(cause.getName(), false);
 
         /* Check if out of memory. */
         boolean outOfMemory = checkIfOutOfMemory();
+        if (outOfMemory && ReferenceObjectProcessing.haveSoftReferentsBeenKeptAlive()) {
+            /*
+             * Soft references must be cleared before an OutOfMemoryError is thrown. As HotSpot
+             * does, try once more with a complete collection that clears all of them.
+             */
+            final CollectionPolicy oldPolicy = getPolicy();
+            try {
+                setPolicy(alwaysCompletelyInstance);
+                collectImpl(cause.getName(), true);
+            } finally {
+                setPolicy(oldPolicy);
+            }
+            outOfMemory = checkIfOutOfMemory();
+        }
+        JfrEvents.emitGarbageCollection(startTicks, (int) getCollectionEpoch().rawValue(), completeCollection ? "Complete" : "Incremental", cause.getName());
         /* Run any collection watchers after the collection. */
         visitWatchersAfter();
         /* Reset for the next collection. */
@@ -257,6 +290,9 @@ public class GCImpl implements GC {
         printGCAfter(cause.getName());
         /* Note that the collection is finished. */
         finishCollection();
+        if (idleHeapUncommitter != null) {
+            idleHeapUncommitter.noteCollection();
+        }
 
         /* Start the mutator timer. */
         mutatorTimer.open();
@@ -266,7 +302,7 @@ public class GCImpl implements GC {
     }
 
     @SuppressWarnings("try")
-    private void collectImpl(String cause) {
+    private void collectImpl(String cause, boolean clearAllSoftReferences) {
         final Log trace = Log.noopLog().string("[GCImpl.collectImpl:").newline().string("  epoch: ").unsigned(getCollectionEpoch()).string("  cause: ").string(cause).newline();
         final HeapImpl heap = HeapImpl.getHeapImpl();
 
@@ -286,6 +322,7 @@ public class GCImpl implements GC {
             CommittedMemoryProvider.get().beforeGarbageCollection();
 
             getAccounting().beforeCollection();
+            ReferenceObjectProcessing.prepareSoftReferencePolicy(getFreeBytesAfterLastCollection(), clearAllSoftReferences);
 
             try (Timer ct = collectionTimer.open()) {
                 /*
@@ -295,12 +332,21 @@ public class GCImpl implements GC {
                  * find them on the free list.
                  *
                  */
-                if (getPolicy().collectIncrementally()) {
+                completeCollection = false;
+                final boolean scavengedIncrementally = getPolicy().collectIncrementally();
+                if (scavengedIncrementally) {
                     scavenge(true);
                 }
-                completeCollection = getPolicy().collectCompletely();
-                if (completeCollection) {
-                    scavenge(false);
+                if (getPolicy().collectCompletely()) {
+                    if (markCompact != null && !DeoptimizationSupport.enabled()) {
+                        if (!scavengedIncrementally) {
+                            /* Only the old generation is compacted: empty the young generation. */
+                            scavenge(true);
+                        }
+                        compactOldGeneration();
+                    } else {
+                        scavenge(false);
+                    }
                 }
             }
 
@@ -308,6 +354,7 @@ public class GCImpl implements GC {
         }
 
         getAccounting().afterCollection(completeCollection, collectionTimer);
+        ReferenceObjectProcessing.updateSoftReferenceClock();
 
         trace.string("  Verify after: ");
         try (Timer vat = verifyAfterTimer.open()) {
@@ -405,6 +452,9 @@ public class GCImpl implements GC {
                 verboseGCLog.string("]");
                 verboseGCLog.string("]").newline();
             }
+            if (SubstrateOptions.VerboseGC.getValue() || HeapOptions.ResizeTLAB.getValue()) {
+                TLABSizing.log(Log.log());
+            }
         }
     }
 
@@ -516,6 +566,13 @@ public class GCImpl implements GC {
         return completeCollection;
     }
 
+    /** The part of the maximum heap size that was not in use after the last collection. */
+    private UnsignedWord getFreeBytesAfterLastCollection() {
+        UnsignedWord used = getAccounting().getOldGenerationAfterChunkBytes().add(getAccounting().getYoungChunkBytesAfter());
+        UnsignedWord max = HeapPolicy.getMaximumHeapSize();
+        return max.aboveThan(used) ? max.subtract(used) : WordFactory.zero();
+    }
+
     /**
      * Scavenge, either just from dirty roots or from all roots.
      *
@@ -526,6 +583,9 @@ public class GCImpl implements GC {
         try (GreyToBlackObjRefVisitor.Counters gtborv = greyToBlackObjRefVisitor.openCounters()) {
             final Log trace = Log.noopLog().string("[GCImpl.scavenge:").string("  fromDirtyRoots: ").bool(fromDirtyRoots).newline();
 
+            /* Only a scavenge from all roots collects the old generation. */
+            completeCollection = !fromDirtyRoots;
+
             /* Empty the list of DiscoveredReferences before walking the heap. */
             ReferenceObjectProcessing.clearDiscoveredList();
 
@@ -542,6 +602,9 @@ public class GCImpl implements GC {
             /* Process the list of DiscoveredReferences after walking the heap. */
             try (Timer drt = referenceObjectsTimer.open()) {
                 ReferenceObjectProcessing.processDiscoveredReferences();
+                if (parallelScavenge != null && parallelScavenge.hasDiscoveredReferences()) {
+                    parallelScavenge.processDiscoveredReferences();
+                }
             }
 
             trace.string("  Release spaces: ");
@@ -558,6 +621,51 @@ public class GCImpl implements GC {
         }
     }
 
+    /**
+     * Collect the old generation in place, after the young generation has been scavenged into it.
+     * This takes the place of {@link #scavenge(boolean) scavenge(false)} in a complete collection.
+     */
+    @SuppressWarnings("try")
+    private void compactOldGeneration() {
+        final Log trace = Log.noopLog().string("[GCImpl.compactOldGeneration:").newline();
+        completeCollection = true;
+
+        /* Empty the list of DiscoveredReferences before walking the heap. */
+        ReferenceObjectProcessing.clearDiscoveredList();
+
+        try (Timer mct = markCompactTimer.open()) {
+            markCompact.startCollection();
+            /* Chunks with pinned objects do not move: they are kept in toSpace. */
+            promoteIndividualPinnedObjects();
+
+            trace.string("  Mark: ");
+            blackenStackRoots();
+            walkThreadLocals();
+            markCompact.markFromHeapRoots();
+
+            trace.string("  Plan: ");
+            markCompact.plan();
+
+            trace.string("  Update: ");
+            blackenStackRoots();
+            walkThreadLocals();
+            markCompact.updateHeapReferences();
+
+            trace.string("  Move: ");
+            markCompact.finishCollection();
+        }
+
+        trace.string("  Release spaces: ");
+        try (Timer rst = releaseSpacesTimer.open()) {
+            releaseSpaces();
+        }
+
+        trace.string("  Swap spaces: ");
+        swapSpaces();
+
+        trace.string("]").newline();
+    }
+
     /**
      * Visit all the memory that is reserved for runtime compiled code. References from the runtime
      * compiled code to the Java heap must be consider as either strong or weak references,
@@ -654,6 +762,15 @@ public class GCImpl implements GC {
              */
             prepareForPromotion(true);
 
+            /*
+             * The parallel scavenge needs to know which chunks have dirty cards before chunks with
+             * pinned objects are moved to toSpace.
+             */
+            final boolean parallel = (parallelScavenge != null && parallelScavenge.canScavenge());
+            if (parallel) {
+                parallelScavenge.snapshot(oldGen.getToSpace());
+            }
+
             /*
              * Make sure any released objects are in toSpace (because this is an incremental
              * collection). I do this before blackening any roots to make sure the chunks with
@@ -662,30 +779,35 @@ public class GCImpl implements GC {
              */
             promoteIndividualPinnedObjects();
 
-            /*
-             * Blacken Objects that are dirty roots. There are dirty cards in ToSpace. Do this early
-             * so I don't have to walk the cards of individually promoted objects, which will be
-             * visited by the grey object scanner.
-             */
-            blackenDirtyCardRoots();
+            if (parallel) {
+                /* Blacken all roots and visit all promoted Objects with the helper threads. */
+                scavengeInParallel();
+            } else {
+                /*
+                 * Blacken Objects that are dirty roots. There are dirty cards in ToSpace. Do this
+                 * early so I don't have to walk the cards of individually promoted objects, which
+                 * will be visited by the grey object scanner.
+                 */
+                blackenDirtyCardRoots();
 
-            /*
-             * Stack references are grey at the beginning of a collection, so I need to blacken
-             * them.
-             */
-            blackenStackRoots();
+                /*
+                 * Stack references are grey at the beginning of a collection, so I need to blacken
+                 * them.
+                 */
+                blackenStackRoots();
 
-            /* Custom memory regions which contain object references. */
-            walkThreadLocals();
+                /* Custom memory regions which contain object references. */
+                walkThreadLocals();
 
-            /*
-             * Native image Objects are grey at the beginning of a collection, so I need to blacken
-             * them.
-             */
-            blackenImageHeapRoots();
+                /*
+                 * Native image Objects are grey at the beginning of a collection, so I need to
+                 * blacken them.
+                 */
+                blackenImageHeapRoots();
 
-            /* Visit all the Objects promoted since the snapshot, transitively. */
-            scanGreyObjects(true);
+                /* Visit all the Objects promoted since the snapshot, transitively. */
+                scanGreyObjects(true);
+            }
 
             if (DeoptimizationSupport.enabled()) {
                 /* Visit the runtime compiled code, now that we know all the reachable objects. */
@@ -704,6 +826,23 @@ public class GCImpl implements GC {
         trace.string("]").newline();
     }
 
+    /**
+     * The collecting thread blackens the stacks and thread locals while the helper threads of the
+     * {@link ParallelScavenge} start on the other roots, then it joins them until all promoted
+     * Objects are black.
+     */
+    @SuppressWarnings("try")
+    private void scavengeInParallel() {
+        try (Timer pst = parallelScavengeTimer.open()) {
+            parallelScavenge.startScavenge();
+            blackenStackRoots();
+            walkThreadLocals();
+            parallelScavenge.finishScavenge();
+        }
+        /* Take a new snapshot so that later grey scans only see Objects promoted from now on. */
+        prepareForPromotion(true);
+    }
+
     @SuppressWarnings("try")
     private void promoteIndividualPinnedObjects() {
         final Log trace = Log.noopLog().string("[GCImpl.promoteIndividualPinnedObjects:").newline();
@@ -740,7 +879,8 @@ public class GCImpl implements GC {
             trace.string("[blackenStackRoots:").string("  sp: ").hex(sp);
             CodePointer ip = readReturnAddress();
             trace.string("  ip: ").hex(ip).newline();
-            blackenCurrentStack(sp);
+            final FramePointerMapWalker walker = getStackRootsWalker();
+            blackenCurrentStack(sp, walker);
             if (SubstrateOptions.MultiThreaded.getValue()) {
                 /*
                  * Scan the stacks of all the threads. Other threads will be blocked at a safepoint
@@ -756,7 +896,7 @@ public class GCImpl implements GC {
                          */
                         continue;
                     }
-                    blackenStack(vmThread);
+                    blackenStack(vmThread, walker);
                     trace.newline();
                 }
             }
@@ -765,14 +905,32 @@ public class GCImpl implements GC {
         trace.string("]").newline();
     }
 
+    private FramePointerMapWalker getStackRootsWalker() {
+        if (markCompact != null && markCompact.isActive()) {
+            return markCompact.getFrameWalker();
+        } else if (parallelScavenge != null && parallelScavenge.isScavenging()) {
+            return parallelScavenge.getFrameWalker();
+        }
+        return frameWalker;
+    }
+
+    private ObjectReferenceVisitor getRootsVisitor() {
+        if (markCompact != null && markCompact.isActive()) {
+            return markCompact.getRootsVisitor();
+        } else if (parallelScavenge != null && parallelScavenge.isScavenging()) {
+            return parallelScavenge.getRootsVisitor();
+        }
+        return greyToBlackObjRefVisitor;
+    }
+
     @Uninterruptible(reason = "Avoid the virtual call to the visitor.")
-    private void blackenStack(IsolateThread vmThread) {
-        JavaStackWalker.walkThreadInline(vmThread, frameWalker);
+    private static void blackenStack(IsolateThread vmThread, FramePointerMapWalker walker) {
+        JavaStackWalker.walkThreadInline(vmThread, walker);
     }
 
     @Uninterruptible(reason = "Avoid the virtual call to the visitor.")
-    private void blackenCurrentStack(Pointer sp) {
-        JavaStackWalker.walkCurrentThreadInline(sp, frameWalker);
+    private static void blackenCurrentStack(Pointer sp, FramePointerMapWalker walker) {
+        JavaStackWalker.walkCurrentThreadInline(sp, walker);
     }
 
     @SuppressWarnings("try")
@@ -781,7 +939,7 @@ public class GCImpl implements GC {
         if (threadLocalsWalker != null) {
             try (Timer wrm = walkThreadLocalsTimer.open()) {
                 trace.string("[ThreadLocalsWalker:").newline();
-                threadLocalsWalker.walk(greyToBlackObjRefVisitor);
+                threadLocalsWalker.walk(getRootsVisitor());
                 trace.string("]").newline();
             }
         }
@@ -1110,6 +1268,8 @@ public class GCImpl implements GC {
     private final Timer promotePinnedObjectsTimer;
     private final Timer rootScanTimer;
     private final Timer scanGreyObjectsTimer;
+    private final Timer parallelScavengeTimer;
+    private final Timer markCompactTimer;
     private final Timer releaseSpacesTimer;
     private final Timer verifyAfterTimer;
     private final Timer verifyBeforeTimer;
@@ -1137,6 +1297,8 @@ public class GCImpl implements GC {
         blackenImageHeapRootsTimer.reset();
         blackenDirtyCardRootsTimer.reset();
         scanGreyObjectsTimer.reset();
+        parallelScavengeTimer.reset();
+        markCompactTimer.reset();
         referenceObjectsTimer.reset();
         releaseSpacesTimer.reset();
         verifyAfterTimer.reset();
@@ -1163,6 +1325,8 @@ public class GCImpl implements GC {
             logOneTimer(log, "          ", blackenImageHeapRootsTimer);
             logOneTimer(log, "          ", blackenDirtyCardRootsTimer);
             logOneTimer(log, "          ", scanGreyObjectsTimer);
+            logOneTimer(log, "          ", parallelScavengeTimer);
+            logOneTimer(log, "      ", markCompactTimer);
             logOneTimer(log, "      ", referenceObjectsTimer);
             logOneTimer(log, "      ", releaseSpacesTimer);
             logOneTimer(log, "    ", verifyAfterTimer);
@@ -1228,6 +1392,10 @@ public class GCImpl implements GC {
         private UnsignedWord oldObjectBytesBefore;
         private UnsignedWord oldObjectBytesAfter;
         private UnsignedWord normalObjectBytes;
+        /* The times of the most recent collections, for the pause distribution in the summary. */
+        private static final int RECENT_COLLECTIONS = 4096;
+        private final long[] recentCollectionNanos;
+        private long recordedCollections;
 
         @Platforms(Platform.HOSTED_ONLY.class)
         Accounting() {
@@ -1254,6 +1422,8 @@ public class GCImpl implements GC {
             this.oldObjectBytesBefore = WordFactory.zero();
             this.oldObjectBytesAfter = WordFactory.zero();
             this.normalObjectBytes = WordFactory.zero();
+            this.recentCollectionNanos = new long[RECENT_COLLECTIONS];
+            this.recordedCollections = 0L;
         }
 
         @Platforms(Platform.HOSTED_ONLY.class)
@@ -1415,6 +1585,16 @@ public class GCImpl implements GC {
             } else {
                 afterIncrementalCollection(collectionTimer);
             }
+            recentCollectionNanos[(int) (recordedCollections % RECENT_COLLECTIONS)] = collectionTimer.getCollectedNanos();
+            recordedCollections += 1;
+        }
+
+        /** The times of the most recent collections, sorted, in a new array. */
+        long[] getSortedRecentCollectionNanos() {
+            int count = (int) Math.min(recordedCollections, RECENT_COLLECTIONS);
+            long[] result = Arrays.copyOf(recentCollectionNanos, count);
+            Arrays.sort(result);
+            return result;
         }
 
         private void afterIncrementalCollection(Timer collectionTimer) {
@@ -1715,6 +1895,21 @@ public class GCImpl implements GC {
         log.string(prefix).string("GCNanos: ").signed(gcNanos).newline();
         log.string(prefix).string("TotalNanos: ").signed(totalNanos).newline();
         log.string(prefix).string("GCLoadPercent: ").signed(roundedGCLoad).newline();
+
+        /* Print the distribution of the most recent pauses. */
+        final long[] pauses = accounting.getSortedRecentCollectionNanos();
+        if (pauses.length > 0) {
+            log.string(prefix).string("PauseNanosP50: ").signed(percentile(pauses, 50)).newline();
+            log.string(prefix).string("PauseNanosP90: ").signed(percentile(pauses, 90)).newline();
+            log.string(prefix).string("PauseNanosP99: ").signed(percentile(pauses, 99)).newline();
+            log.string(prefix).string("PauseNanosMax: ").signed(pauses[pauses.length - 1]).newline();
+        }
+    }
+
+    /** The nearest-rank percentile of a sorted array. */
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (percent * sorted.length + 99) / 100;
+        return sorted[Math.max(rank - 1, 0)];
     }
 
     @Override
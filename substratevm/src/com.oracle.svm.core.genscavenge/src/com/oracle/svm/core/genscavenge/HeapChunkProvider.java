@@ -42,6 +42,7 @@ import com.oracle.svm.core.jdk.UninterruptibleUtils;
 import com.oracle.svm.core.jdk.UninterruptibleUtils.AtomicUnsigned;
 import com.oracle.svm.core.log.Log;
 import com.oracle.svm.core.os.CommittedMemoryProvider;
+import com.oracle.svm.core.thread.VMOperation;
 import com.oracle.svm.core.thread.VMThreads;
 
 /**
@@ -105,6 +106,18 @@ class HeapChunkProvider {
      * Produce a new AlignedHeapChunk, either from the free list or from the operating system.
      */
     AlignedHeader produceAlignedChunk() {
+        AlignedHeader result = tryProduceAlignedChunk();
+        if (result.isNull()) {
+            throw ALIGNED_OUT_OF_MEMORY_ERROR;
+        }
+        return result;
+    }
+
+    /**
+     * Like {@link #produceAlignedChunk()}, but return null instead of throwing an
+     * {@link OutOfMemoryError} if no memory is available, for callers that can do without a chunk.
+     */
+    AlignedHeader tryProduceAlignedChunk() {
         UnsignedWord chunkSize = HeapPolicy.getAlignedHeapChunkSize();
         log().string("[HeapChunkProvider.produceAlignedChunk  chunk size: ").unsigned(chunkSize).newline();
 
@@ -116,7 +129,8 @@ class HeapChunkProvider {
             noteFirstAllocationTime();
             result = (AlignedHeader) CommittedMemoryProvider.get().allocate(chunkSize, HeapPolicy.getAlignedHeapChunkAlignment(), false);
             if (result.isNull()) {
-                throw ALIGNED_OUT_OF_MEMORY_ERROR;
+                log().string("  no memory]").newline();
+                return WordFactory.nullPointer();
             }
             log().string("  new chunk: ").hex(result).newline();
 
@@ -357,6 +371,27 @@ class HeapChunkProvider {
         return log;
     }
 
+    /**
+     * Releases the physical memory of the object area of the chunks in the unused chunk list, which
+     * keeps them committed and on the list. Must be called at a safepoint so that there are no
+     * competing pops or pushes.
+     *
+     * @return The number of bytes that were released.
+     */
+    UnsignedWord discardUnusedAlignedChunks() {
+        VMOperation.guaranteeInProgressAtSafepoint("Unused chunks must not be popped while discarding them.");
+        UnsignedWord discarded = WordFactory.zero();
+        if (HeapPolicy.getZapConsumedHeapChunks()) {
+            /* Keep the zapped contents. */
+            return discarded;
+        }
+        for (AlignedHeader chunk = unusedAlignedChunks.get(); chunk.isNonNull(); chunk = chunk.getNext()) {
+            Pointer start = AlignedHeapChunk.getAlignedHeapChunkStart(chunk);
+            discarded = discarded.add(CommittedMemoryProvider.get().discard(start, chunk.getEnd().subtract(start)));
+        }
+        return discarded;
+    }
+
     boolean walkHeapChunks(MemoryWalker.Visitor visitor) {
         boolean continueVisiting = true;
         MemoryWalker.HeapChunkAccess<AlignedHeapChunk.AlignedHeader> access = AlignedHeapChunk.getMemoryWalkerAccess();
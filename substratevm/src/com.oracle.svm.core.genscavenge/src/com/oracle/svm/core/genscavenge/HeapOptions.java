@@ -72,4 +72,34 @@ public class HeapOptions {
 
     @Option(help = "Verify dirty cards after each collection.") //
     public static final HostedOptionKey<Boolean> VerifyDirtyCardsAfterCollection = new HostedOptionKey<>(false);
+
+    @Option(help = "Use several threads to scavenge the young generation in incremental collections.")//
+    public static final HostedOptionKey<Boolean> UseParallelScavenge = new HostedOptionKey<>(false);
+
+    @Option(help = "The maximum number of threads, including the collecting thread, that can scavenge in parallel, if +UseParallelScavenge.")//
+    public static final HostedOptionKey<Integer> ParallelScavengeMaxThreads = new HostedOptionKey<>(8);
+
+    @Option(help = "The number of threads, including the collecting thread, that scavenge in parallel, if +UseParallelScavenge. 0 implies the number of processors, at most ParallelScavengeMaxThreads.")//
+    public static final RuntimeOptionKey<Integer> ParallelScavengeThreads = new RuntimeOptionKey<>(0);
+
+    @Option(help = "Collect the old generation with an in-place mark-compact instead of copying it in complete collections. Requires MaxSurvivorSpaces=0.")//
+    public static final HostedOptionKey<Boolean> UseMarkCompactOldGeneration = new HostedOptionKey<>(false);
+
+    @Option(help = "Size the thread-local allocation buffers according to the allocation rate of each thread, and carve small ones from shared chunks.")//
+    public static final RuntimeOptionKey<Boolean> ResizeTLAB = new RuntimeOptionKey<>(false);
+
+    @Option(help = "The number of times a thread should refill its thread-local allocation buffer between collections, if +ResizeTLAB.")//
+    public static final RuntimeOptionKey<Integer> TLABRefillTarget = new RuntimeOptionKey<>(50);
+
+    @Option(help = "The minimum size in bytes of a thread-local allocation buffer, if +ResizeTLAB.")//
+    public static final RuntimeOptionKey<Long> MinTLABSize = new RuntimeOptionKey<>(2048L);
+
+    @Option(help = "The weight in percent of the last collection cycle in the average allocation of a thread, if +ResizeTLAB.")//
+    public static final RuntimeOptionKey<Integer> TLABAllocationWeight = new RuntimeOptionKey<>(35);
+
+    @Option(help = "Release the physical memory of unused heap chunks to the operating system when there has been no collection for this many milliseconds. 0 disables it.")//
+    public static final RuntimeOptionKey<Long> UncommitIdleHeapDelay = new RuntimeOptionKey<>(0L);
+
+    @Option(help = "The number of milliseconds that a soft reference survives since its last access for each megabyte that was free in the heap after the last collection.")//
+    public static final RuntimeOptionKey<Long> SoftRefLRUPolicyMSPerMB = new RuntimeOptionKey<>(1000L);
 }
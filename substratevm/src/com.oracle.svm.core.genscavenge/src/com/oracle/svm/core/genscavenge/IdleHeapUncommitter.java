@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.genscavenge;
+
+import static com.oracle.svm.core.graal.snippets.SubstrateAllocationSnippets.TLAB_TOP_IDENTITY;
+
+import org.graalvm.nativeimage.IsolateThread;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.SubstrateOptions;
+import com.oracle.svm.core.genscavenge.AlignedHeapChunk.AlignedHeader;
+import com.oracle.svm.core.jdk.RuntimeSupport;
+import com.oracle.svm.core.log.Log;
+import com.oracle.svm.core.os.CommittedMemoryProvider;
+import com.oracle.svm.core.thread.JavaVMOperation;
+import com.oracle.svm.core.thread.VMOperation;
+import com.oracle.svm.core.thread.VMThreads;
+import com.oracle.svm.core.util.TimeUtils;
+
+/**
+ * Releases the physical memory of heap chunks that are not needed while the application is idle,
+ * where idle means that there has been no collection for {@link HeapOptions#UncommitIdleHeapDelay}
+ * milliseconds.
+ *
+ * The memory stays committed from the point of view of the heap, so no chunks are freed and the
+ * heap size limits are unchanged: the operating system is only told that the contents of the
+ * memory are no longer needed (see {@link CommittedMemoryProvider#discard}). This covers the object
+ * area of the chunks in the unused chunk list, the free parts of the old generation chunks, and the
+ * free parts of the chunks that threads currently allocate in. The memory is provisioned again
+ * when it is next written to.
+ */
+final class IdleHeapUncommitter {
+
+    /** The time of the end of the last collection, as returned by {@link System#nanoTime()}. */
+    private volatile long lastCollectionNanos;
+
+    /** Whether the memory has already been released since the last collection. */
+    private volatile boolean uncommitted;
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    IdleHeapUncommitter() {
+        RuntimeSupport.getRuntimeSupport().addStartupHook(this::start);
+    }
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    static boolean isEnabled() {
+        return SubstrateOptions.MultiThreaded.getValue();
+    }
+
+    private void start() {
+        if (HeapOptions.UncommitIdleHeapDelay.getValue() <= 0) {
+            return;
+        }
+        lastCollectionNanos = System.nanoTime();
+        Thread thread = new Thread(this::run, "Idle Heap Uncommitter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Called by the collector at the end of each collection. */
+    void noteCollection() {
+        lastCollectionNanos = System.nanoTime();
+        uncommitted = false;
+    }
+
+    private void run() {
+        long delayNanos = TimeUtils.millisToNanos(HeapOptions.UncommitIdleHeapDelay.getValue());
+        while (true) {
+            long idleNanos = System.nanoTime() - lastCollectionNanos;
+            if (idleNanos >= delayNanos && !uncommitted) {
+                JavaVMOperation.enqueueBlockingSafepoint("Uncommit idle heap", this::uncommit);
+                idleNanos = 0;
+            }
+            try {
+                Thread.sleep(TimeUtils.roundNanosToMillis(Math.max(delayNanos - idleNanos, TimeUtils.nanosPerMilli)));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void uncommit() {
+        if (uncommitted) {
+            /* Raced with another request. */
+            return;
+        }
+        UnsignedWord released = HeapChunkProvider.get().discardUnusedAlignedChunks();
+        released = released.add(discardFreeParts(HeapImpl.getHeapImpl().getOldGeneration().getFromSpace().getFirstAlignedHeapChunk()));
+        for (IsolateThread vmThread = VMThreads.firstThread(); vmThread.isNonNull(); vmThread = VMThreads.nextThread(vmThread)) {
+            released = released.add(discardFreePart(ThreadLocalAllocation.regularTLAB.getAddress(vmThread)));
+        }
+        AlignedHeader sharedChunk = ThreadLocalAllocation.getSharedAllocationChunk();
+        if (sharedChunk.isNonNull()) {
+            released = released.add(discard(sharedChunk.getTop(), sharedChunk.getEnd()));
+        }
+        uncommitted = true;
+
+        if (SubstrateOptions.VerboseGC.getValue()) {
+            Log.log().string("[Uncommitted idle heap: ").unsigned(released.unsignedDivide(1024)).string("K]").newline();
+        }
+    }
+
+    private static UnsignedWord discardFreeParts(AlignedHeader firstChunk) {
+        UnsignedWord released = WordFactory.zero();
+        for (AlignedHeader chunk = firstChunk; chunk.isNonNull(); chunk = chunk.getNext()) {
+            released = released.add(discard(chunk.getTop(), chunk.getEnd()));
+        }
+        return released;
+    }
+
+    private static UnsignedWord discardFreePart(ThreadLocalAllocation.Descriptor tlab) {
+        /* While a chunk is the allocation chunk, its top is in the TLAB. */
+        Pointer top = tlab.getAllocationTop(TLAB_TOP_IDENTITY);
+        if (top.isNull() || tlab.getSharedChunk().isNonNull()) {
+            /* A carved TLAB is small, and the rest of the shared chunk is discarded separately. */
+            return WordFactory.zero();
+        }
+        return discard(top, tlab.getAlignedChunk().getEnd());
+    }
+
+    private static UnsignedWord discard(Pointer start, Pointer end) {
+        VMOperation.guaranteeInProgressAtSafepoint("Chunks must not be allocated in while discarding their free parts.");
+        return CommittedMemoryProvider.get().discard(start, end.subtract(start));
+    }
+}
@@ -0,0 +1,568 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.genscavenge;
+
+import java.lang.ref.Reference;
+
+import org.graalvm.compiler.api.replacements.Fold;
+import org.graalvm.compiler.word.Word;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.annotate.AlwaysInline;
+import com.oracle.svm.core.annotate.NeverInline;
+import com.oracle.svm.core.config.ConfigurationValues;
+import com.oracle.svm.core.heap.ObjectReferenceVisitor;
+import com.oracle.svm.core.heap.ObjectVisitor;
+import com.oracle.svm.core.heap.ReferenceAccess;
+import com.oracle.svm.core.hub.InteriorObjRefWalker;
+import com.oracle.svm.core.hub.LayoutEncoding;
+import com.oracle.svm.core.snippets.KnownIntrinsics;
+import com.oracle.svm.core.thread.VMOperation;
+import com.oracle.svm.core.util.UnsignedUtils;
+
+/**
+ * Collects the old generation in place with a sliding mark-compact during complete collections,
+ * so that a complete collection does not need free chunks for a copy of the live old objects.
+ *
+ * The young generation must have been scavenged into the old generation before, so that all
+ * objects that can move are in the aligned chunks of the old from space. The collection then
+ * proceeds in phases:
+ * <ol>
+ * <li>Mark: the remembered set bit, which is set in the header of every old object, is cleared in
+ * the headers of the reachable objects. Chunks of pinned objects and reachable unaligned chunks are
+ * moved to the old to space and stay where they are.</li>
+ * <li>Plan: the new location of every reachable object is computed, sliding the objects towards
+ * the start of the chunk list. The card table of a chunk is not needed during the collection, so it
+ * holds the new location of the first reachable object of each block of
+ * {@link #getBytesPerBlock()} bytes. The new location of any other object is computed from that
+ * with the first object table and a walk of at most one block.</li>
+ * <li>Reference objects are processed, and all references to objects that move are updated.</li>
+ * <li>Move: the objects are copied to their new locations in ascending order, which never
+ * overwrites an object that has not been moved yet.</li>
+ * </ol>
+ * Finally, the card tables and first object tables of the compacted chunks are reconstructed,
+ * which also sets the remembered set bits again, and empty chunks are released.
+ *
+ * The runtime code cache is not updated, so this collector is not used if runtime compilation is
+ * supported.
+ */
+final class MarkCompact {
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    static boolean isEnabled() {
+        return HeapOptions.UseMarkCompactOldGeneration.getValue() && HeapPolicyOptions.MaxSurvivorSpaces.getValue() == 0;
+    }
+
+    private final ObjRefVisitor objRefVisitor;
+    private final CompactingObjectVisitor objectVisitor;
+    private final FramePointerMapWalker frameWalker;
+
+    /* State of a collection. */
+    private Space fromSpace;
+    private Space toSpace;
+    private boolean updating;
+    private Pointer newDiscoveredListHead;
+
+    /*
+     * The mark stack, in segments that are aligned chunks taken from the chunk provider. Its size is
+     * not known in advance, so the segments are not preallocated. If no segment can be produced, an
+     * object is marked without being pushed and the marked objects are scanned again at the end.
+     */
+    private AlignedHeapChunk.AlignedHeader markStackSegment;
+    private Pointer markStackTop;
+    private boolean markStackOverflowed;
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    MarkCompact() {
+        this.objRefVisitor = new ObjRefVisitor(this);
+        this.objectVisitor = new CompactingObjectVisitor(this);
+        this.frameWalker = new FramePointerMapWalker(objRefVisitor);
+    }
+
+    /** The number of cards, and so the number of heap bytes, covered by one block table entry. */
+    @Fold
+    static int getCardsPerBlock() {
+        /* One word of the card table per block: the table is large enough for all blocks. */
+        return ConfigurationValues.getTarget().wordSize;
+    }
+
+    @Fold
+    static UnsignedWord getBytesPerBlock() {
+        return WordFactory.unsigned(CardTable.getMemoryBytesPerEntry()).multiply(getCardsPerBlock());
+    }
+
+    FramePointerMapWalker getFrameWalker() {
+        return frameWalker;
+    }
+
+    ObjectReferenceVisitor getRootsVisitor() {
+        return objRefVisitor;
+    }
+
+    boolean isActive() {
+        return fromSpace != null;
+    }
+
+    /** Start a collection, before chunks of pinned objects are moved to the to space. */
+    void startCollection() {
+        assert VMOperation.isGCInProgress() : "Should only be called from the collector.";
+        assert !isActive();
+        OldGeneration oldGen = HeapImpl.getHeapImpl().getOldGeneration();
+        fromSpace = oldGen.getFromSpace();
+        toSpace = oldGen.getToSpace();
+        updating = false;
+        newDiscoveredListHead = WordFactory.nullPointer();
+        markStackSegment = WordFactory.nullPointer();
+        markStackTop = WordFactory.nullPointer();
+        markStackOverflowed = false;
+    }
+
+    /**
+     * Mark from the roots that are not on the stacks or in thread locals, which the caller visits
+     * with the {@link #getFrameWalker() frame walker} and the {@link #getRootsVisitor() roots
+     * visitor}, and mark the transitive closure of all roots.
+     */
+    void markFromHeapRoots() {
+        assert isActive() && !updating;
+        walkRootObjects();
+        drainMarkStack();
+        while (markStackOverflowed) {
+            markStackOverflowed = false;
+            rescanMarkedObjects();
+        }
+        releaseMarkStack();
+    }
+
+    /** Compute the new locations of the reachable objects and process the reference objects. */
+    void plan() {
+        assert isActive() && !updating;
+        computeNewLocations();
+        ReferenceObjectProcessing.processDiscoveredReferencesForCompaction(this);
+        updating = true;
+    }
+
+    /**
+     * Update the references from the roots that are not on the stacks or in thread locals, which the
+     * caller updates just like it marked them, and from all reachable objects.
+     */
+    void updateHeapReferences() {
+        assert isActive() && updating;
+        walkRootObjects();
+        for (AlignedHeapChunk.AlignedHeader chunk = fromSpace.getFirstAlignedHeapChunk(); chunk.isNonNull(); chunk = chunk.getNext()) {
+            Pointer cur = AlignedHeapChunk.getObjectsStart(chunk);
+            Pointer top = chunk.getTop();
+            while (cur.belowThan(top)) {
+                Object obj = cur.toObject();
+                Pointer next = LayoutEncoding.getObjectEnd(obj);
+                if (isMarked(cur)) {
+                    objectVisitor.visitObjectInline(obj);
+                }
+                cur = next;
+            }
+        }
+        Reference<?> head = HeapImpl.getHeapImpl().getGCImpl().getDiscoveredReferencesListHead();
+        if (head != null) {
+            Pointer headPointer = Word.objectToUntrackedPointer(head);
+            newDiscoveredListHead = isInCompactedChunk(headPointer) ? getNewLocation(headPointer) : headPointer;
+            /* The head is stored again when the object is at its new location. */
+            HeapImpl.getHeapImpl().getGCImpl().setDiscoveredReferencesListHead(null);
+        }
+    }
+
+    /**
+     * Move the reachable objects, reconstruct the remembered sets of the compacted chunks and move
+     * them to the to space. The chunks left in the from space are released by the caller.
+     */
+    void finishCollection() {
+        assert isActive() && updating;
+        moveObjects();
+        if (newDiscoveredListHead.isNonNull()) {
+            HeapImpl.getHeapImpl().getGCImpl().setDiscoveredReferencesListHead((Reference<?>) newDiscoveredListHead.toObject());
+        }
+        AlignedHeapChunk.AlignedHeader chunk = fromSpace.getFirstAlignedHeapChunk();
+        while (chunk.isNonNull()) {
+            AlignedHeapChunk.AlignedHeader next = chunk.getNext();
+            if (chunk.getTop().aboveThan(AlignedHeapChunk.getObjectsStart(chunk))) {
+                CardTable.cleanTableToPointer(AlignedHeapChunk.getCardTableStart(chunk), AlignedHeapChunk.getCardTableLimit(chunk));
+                FirstObjectTable.initializeTableToPointer(AlignedHeapChunk.getFirstObjectTableStart(chunk), AlignedHeapChunk.getFirstObjectTableLimit(chunk));
+                fromSpace.extractAlignedHeapChunk(chunk);
+                toSpace.appendAlignedHeapChunk(chunk);
+                /* Set up the first object table and set the remembered set bits again. */
+                AlignedHeapChunk.constructRememberedSetOfAlignedHeapChunk(chunk);
+            }
+            chunk = next;
+        }
+        fromSpace = null;
+        toSpace = null;
+        updating = false;
+        newDiscoveredListHead = WordFactory.nullPointer();
+    }
+
+    /** Visit the objects of the writable image heap and of the chunks in the to space. */
+    private void walkRootObjects() {
+        ImageHeapInfo imageHeapInfo = HeapImpl.getImageHeapInfo();
+        Pointer cur = Word.objectToUntrackedPointer(imageHeapInfo.firstWritableReferenceObject);
+        Pointer last = Word.objectToUntrackedPointer(imageHeapInfo.lastWritableReferenceObject);
+        while (cur.isNonNull() && cur.belowOrEqual(last)) {
+            Object obj = cur.toObject();
+            objectVisitor.visitObjectInline(obj);
+            cur = LayoutEncoding.getObjectEnd(obj);
+        }
+        /* Chunks of pinned objects: all objects are treated as reachable, as when copying. */
+        for (AlignedHeapChunk.AlignedHeader chunk = toSpace.getFirstAlignedHeapChunk(); chunk.isNonNull(); chunk = chunk.getNext()) {
+            HeapChunk.walkObjectsFromInline(chunk, AlignedHeapChunk.getObjectsStart(chunk), objectVisitor);
+            if (!updating) {
+                drainMarkStack();
+            }
+        }
+        if (updating) {
+            /* The unaligned chunks that were found reachable while marking. */
+            for (UnalignedHeapChunk.UnalignedHeader chunk = toSpace.getFirstUnalignedHeapChunk(); chunk.isNonNull(); chunk = chunk.getNext()) {
+                UnalignedHeapChunk.walkObjectsOfUnalignedHeapChunk(chunk, objectVisitor);
+            }
+        }
+    }
+
+    @AlwaysInline("GC performance")
+    private static boolean isMarked(Pointer p) {
+        return !ObjectHeaderImpl.hasRememberedSet(ObjectHeaderImpl.readHeaderFromPointer(p));
+    }
+
+    /** Is the object in one of the aligned chunks that are compacted? */
+    @AlwaysInline("GC performance")
+    private boolean isInCompactedChunk(Pointer p) {
+        UnsignedWord header = ObjectHeaderImpl.readHeaderFromPointer(p);
+        return ObjectHeaderImpl.isAlignedHeader(p, header) && AlignedHeapChunk.getEnclosingAlignedHeapChunkFromPointer(p).getSpace() == fromSpace;
+    }
+
+    /** Mark an object that is not in the image heap, if it is not marked yet. */
+    @AlwaysInline("GC performance")
+    private void mark(Pointer p) {
+        UnsignedWord header = ObjectHeaderImpl.readHeaderFromPointer(p);
+        if (ObjectHeaderImpl.isAlignedHeader(p, header)) {
+            if (ObjectHeaderImpl.hasRememberedSet(header) && AlignedHeapChunk.getEnclosingAlignedHeapChunkFromPointer(p).getSpace() == fromSpace) {
+                ObjectHeaderImpl.clearRememberedSetBit(p.toObject());
+                pushMarkStack(p);
+            }
+        } else {
+            UnalignedHeapChunk.UnalignedHeader chunk = UnalignedHeapChunk.getEnclosingUnalignedHeapChunkFromPointer(p);
+            if (chunk.getSpace() == fromSpace) {
+                toSpace.promoteUnalignedHeapChunk(chunk, fromSpace);
+                pushMarkStack(p);
+            }
+        }
+    }
+
+    /** Does the object, which is not in the image heap, survive this collection? */
+    boolean isLive(Pointer p) {
+        assert isActive() && !updating;
+        UnsignedWord header = ObjectHeaderImpl.readHeaderFromPointer(p);
+        if (ObjectHeaderImpl.isAlignedHeader(p, header)) {
+            return isMarked(p) || AlignedHeapChunk.getEnclosingAlignedHeapChunkFromPointer(p).getSpace() != fromSpace;
+        }
+        return UnalignedHeapChunk.getEnclosingUnalignedHeapChunkFromPointer(p).getSpace() != fromSpace;
+    }
+
+    /** The location of a live object after this collection. */
+    Pointer getNewLocationIfMoved(Pointer p) {
+        return isInCompactedChunk(p) ? getNewLocation(p) : p;
+    }
+
+    /*
+     * The mark stack.
+     */
+
+    private void pushMarkStack(Pointer p) {
+        UnsignedWord wordSize = WordFactory.unsigned(ConfigurationValues.getTarget().wordSize);
+        if (markStackSegment.isNull() || markStackTop.add(wordSize).aboveThan(markStackSegment.getEnd())) {
+            AlignedHeapChunk.AlignedHeader segment = HeapChunkProvider.get().tryProduceAlignedChunk();
+            if (segment.isNull()) {
+                /* The object is already marked: it is found again by rescanMarkedObjects. */
+                markStackOverflowed = true;
+                return;
+            }
+            segment.setNext(markStackSegment);
+            markStackSegment = segment;
+            markStackTop = AlignedHeapChunk.getObjectsStart(segment);
+        }
+        markStackTop.writeWord(0, p);
+        markStackTop = markStackTop.add(wordSize);
+    }
+
+    private Pointer popMarkStack() {
+        if (markStackSegment.isNull()) {
+            return WordFactory.nullPointer();
+        }
+        if (markStackTop.equal(AlignedHeapChunk.getObjectsStart(markStackSegment))) {
+            AlignedHeapChunk.AlignedHeader next = markStackSegment.getNext();
+            if (next.isNull()) {
+                return WordFactory.nullPointer();
+            }
+            HeapChunkProvider.get().consumeAlignedChunk(markStackSegment);
+            markStackSegment = next;
+            markStackTop = next.getEnd();
+        }
+        markStackTop = markStackTop.subtract(ConfigurationValues.getTarget().wordSize);
+        return markStackTop.readWord(0);
+    }
+
+    private void drainMarkStack() {
+        for (Pointer p = popMarkStack(); p.isNonNull(); p = popMarkStack()) {
+            objectVisitor.visitObjectInline(p.toObject());
+        }
+    }
+
+    /**
+     * Visit all marked objects again after the mark stack overflowed, which marks and pushes the
+     * objects they reference that were not pushed. Visiting an object twice has no other effect:
+     * a reference object is discovered only once.
+     */
+    private void rescanMarkedObjects() {
+        for (AlignedHeapChunk.AlignedHeader chunk = fromSpace.getFirstAlignedHeapChunk(); chunk.isNonNull(); chunk = chunk.getNext()) {
+            Pointer cur = AlignedHeapChunk.getObjectsStart(chunk);
+            while (cur.belowThan(chunk.getTop())) {
+                Object obj = cur.toObject();
+                if (isMarked(cur)) {
+                    objectVisitor.visitObjectInline(obj);
+                    drainMarkStack();
+                }
+                cur = LayoutEncoding.getObjectEnd(obj);
+            }
+        }
+        /* The unaligned chunks that were marked are in the to space. */
+        for (UnalignedHeapChunk.UnalignedHeader chunk = toSpace.getFirstUnalignedHeapChunk(); chunk.isNonNull(); chunk = chunk.getNext()) {
+            UnalignedHeapChunk.walkObjectsOfUnalignedHeapChunk(chunk, objectVisitor);
+            drainMarkStack();
+        }
+    }
+
+    private void releaseMarkStack() {
+        while (markStackSegment.isNonNull()) {
+            AlignedHeapChunk.AlignedHeader next = markStackSegment.getNext();
+            HeapChunkProvider.get().consumeAlignedChunk(markStackSegment);
+            markStackSegment = next;
+        }
+        markStackTop = WordFactory.nullPointer();
+    }
+
+    /*
+     * Planning and moving.
+     */
+
+    @AlwaysInline("GC performance")
+    private static UnsignedWord getBlockIndex(AlignedHeapChunk.AlignedHeader chunk, Pointer p) {
+        return p.subtract(AlignedHeapChunk.getObjectsStart(chunk)).unsignedDivide(getBytesPerBlock());
+    }
+
+    @AlwaysInline("GC performance")
+    private static Pointer getBlockTableEntry(AlignedHeapChunk.AlignedHeader chunk, UnsignedWord blockIndex) {
+        return AlignedHeapChunk.getCardTableStart(chunk).add(blockIndex.multiply(ConfigurationValues.getTarget().wordSize));
+    }
+
+    /**
+     * Slide the reachable objects of each block towards the start of the chunk list. The objects
+     * that start in the same block stay together, so that the block table entry and the sizes of
+     * the marked objects before an object in its block determine its new location.
+     */
+    private void computeNewLocations() {
+        assert UnsignedUtils.roundUp(HeapPolicy.getAlignedHeapChunkSize().subtract(AlignedHeapChunk.getObjectsStartOffset()), getBytesPerBlock()).unsignedDivide(getBytesPerBlock())
+                        .multiply(ConfigurationValues.getTarget().wordSize).belowOrEqual(AlignedHeapChunk.getCardTableSize()) : "The card table must be large enough for the block table";
+        AlignedHeapChunk.AlignedHeader dest = fromSpace.getFirstAlignedHeapChunk();
+        Pointer destTop = dest.isNull() ? WordFactory.nullPointer() : AlignedHeapChunk.getObjectsStart(dest);
+        for (AlignedHeapChunk.AlignedHeader chunk = fromSpace.getFirstAlignedHeapChunk(); chunk.isNonNull(); chunk = chunk.getNext()) {
+            Pointer cur = AlignedHeapChunk.getObjectsStart(chunk);
+            Pointer top = chunk.getTop();
+            while (cur.belowThan(top)) {
+                UnsignedWord blockIndex = getBlockIndex(chunk, cur);
+                Pointer blockLimit = AlignedHeapChunk.getObjectsStart(chunk).add(blockIndex.add(1).multiply(getBytesPerBlock()));
+                UnsignedWord liveBytes = WordFactory.zero();
+                while (cur.belowThan(blockLimit) && cur.belowThan(top)) {
+                    Pointer next = LayoutEncoding.getObjectEnd(cur.toObject());
+                    if (isMarked(cur)) {
+                        liveBytes = liveBytes.add(next.subtract(cur));
+                    }
+                    cur = next;
+                }
+                if (destTop.add(liveBytes).aboveThan(dest.getEnd())) {
+                    /* The objects of a block fit into an empty chunk, and dest is before chunk. */
+                    dest = dest.getNext();
+                    destTop = AlignedHeapChunk.getObjectsStart(dest);
+                }
+                getBlockTableEntry(chunk, blockIndex).writeWord(0, destTop);
+                destTop = destTop.add(liveBytes);
+            }
+        }
+    }
+
+    /** The new location of a reachable object in a compacted chunk, before the objects are moved. */
+    @AlwaysInline("GC performance")
+    private static Pointer getNewLocation(Pointer p) {
+        AlignedHeapChunk.AlignedHeader chunk = AlignedHeapChunk.getEnclosingAlignedHeapChunkFromPointer(p);
+        UnsignedWord blockIndex = getBlockIndex(chunk, p);
+        Pointer result = getBlockTableEntry(chunk, blockIndex).readWord(0);
+        Pointer cur = FirstObjectTable.getImpreciseFirstObjectPointer(AlignedHeapChunk.getFirstObjectTableStart(chunk), AlignedHeapChunk.getObjectsStart(chunk), chunk.getTop(),
+                        blockIndex.multiply(getCardsPerBlock()));
+        while (cur.belowThan(p)) {
+            Pointer next = LayoutEncoding.getObjectEnd(cur.toObject());
+            if (isMarked(cur)) {
+                result = result.add(next.subtract(cur));
+            }
+            cur = next;
+        }
+        assert cur.equal(p) : "Not the start of an object";
+        return result;
+    }
+
+    /**
+     * Copy the reachable objects to their new locations. Every object moves towards the start of
+     * the chunk list, and the objects are visited in that order, so an object is only ever copied
+     * over objects that were already moved or that are unreachable.
+     */
+    private void moveObjects() {
+        AlignedHeapChunk.AlignedHeader dest = WordFactory.nullPointer();
+        Pointer destTop = WordFactory.nullPointer();
+        for (AlignedHeapChunk.AlignedHeader chunk = fromSpace.getFirstAlignedHeapChunk(); chunk.isNonNull(); chunk = chunk.getNext()) {
+            Pointer cur = AlignedHeapChunk.getObjectsStart(chunk);
+            Pointer top = chunk.getTop();
+            Pointer blockLimit = cur;
+            while (cur.belowThan(top)) {
+                /* Read the size before the object is copied, maybe over its own header. */
+                Pointer next = LayoutEncoding.getObjectEnd(cur.toObject());
+                if (isMarked(cur)) {
+                    if (cur.aboveOrEqual(blockLimit)) {
+                        UnsignedWord blockIndex = getBlockIndex(chunk, cur);
+                        blockLimit = AlignedHeapChunk.getObjectsStart(chunk).add(blockIndex.add(1).multiply(getBytesPerBlock()));
+                        Pointer blockDest = getBlockTableEntry(chunk, blockIndex).readWord(0);
+                        AlignedHeapChunk.AlignedHeader blockDestChunk = AlignedHeapChunk.getEnclosingAlignedHeapChunkFromPointer(blockDest);
+                        if (blockDestChunk.notEqual(dest)) {
+                            /* No more objects are moved to dest, and it is not walked anymore. */
+                            if (dest.isNonNull()) {
+                                dest.setTop(destTop);
+                            }
+                            dest = blockDestChunk;
+                        }
+                        destTop = blockDest;
+                    }
+                    UnsignedWord size = next.subtract(cur);
+                    if (destTop.notEqual(cur)) {
+                        UnsignedWord wordSize = WordFactory.unsigned(ConfigurationValues.getTarget().wordSize);
+                        for (UnsignedWord offset = WordFactory.zero(); offset.belowThan(size); offset = offset.add(wordSize)) {
+                            destTop.writeWord(offset, cur.readWord(offset));
+                        }
+                    }
+                    destTop = destTop.add(size);
+                }
+                cur = next;
+            }
+        }
+        /* The chunks after the last one that objects were moved to are empty now. */
+        AlignedHeapChunk.AlignedHeader chunk = fromSpace.getFirstAlignedHeapChunk();
+        if (dest.isNonNull()) {
+            dest.setTop(destTop);
+            chunk = dest.getNext();
+        }
+        for (; chunk.isNonNull(); chunk = chunk.getNext()) {
+            chunk.setTop(AlignedHeapChunk.getObjectsStart(chunk));
+        }
+    }
+
+    /** Marks objects while marking, and updates references to moved objects afterwards. */
+    static final class ObjRefVisitor implements ObjectReferenceVisitor {
+        private final MarkCompact owner;
+
+        @Platforms(Platform.HOSTED_ONLY.class)
+        ObjRefVisitor(MarkCompact owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public boolean visitObjectReference(Pointer objRef, boolean compressed) {
+            return visitObjectReferenceInline(objRef, 0, compressed, null);
+        }
+
+        @Override
+        @AlwaysInline("GC performance")
+        public boolean visitObjectReferenceInline(Pointer objRef, boolean compressed, Object holderObject) {
+            return visitObjectReferenceInline(objRef, 0, compressed, holderObject);
+        }
+
+        @Override
+        @AlwaysInline("GC performance")
+        public boolean visitObjectReferenceInline(Pointer objRef, int innerOffset, boolean compressed) {
+            return visitObjectReferenceInline(objRef, innerOffset, compressed, null);
+        }
+
+        @Override
+        @AlwaysInline("GC performance")
+        public boolean visitObjectReferenceInline(Pointer objRef, int innerOffset, boolean compressed, Object holderObject) {
+            assert innerOffset >= 0;
+            Pointer offsetP = ReferenceAccess.singleton().readObjectAsUntrackedPointer(objRef, compressed);
+            Pointer p = offsetP.subtract(innerOffset);
+            if (p.isNull() || HeapImpl.getHeapImpl().isInImageHeap(p)) {
+                return true;
+            }
+            if (!owner.updating) {
+                owner.mark(p);
+            } else if (owner.isInCompactedChunk(p)) {
+                Pointer newLocation = getNewLocation(p);
+                if (newLocation.notEqual(p)) {
+                    /* Not a checked cast: there is no object at the new location yet. */
+                    ReferenceAccess.singleton().writeObjectAt(objRef, newLocation.add(innerOffset).toObject(), compressed);
+                }
+            }
+            return true;
+        }
+    }
+
+    /** Visits the references of objects, discovering reference objects while marking. */
+    static final class CompactingObjectVisitor implements ObjectVisitor {
+        private final MarkCompact owner;
+
+        @Platforms(Platform.HOSTED_ONLY.class)
+        CompactingObjectVisitor(MarkCompact owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        @NeverInline("Non-performance critical version")
+        public boolean visitObject(Object o) {
+            return visitObjectInline(o);
+        }
+
+        @Override
+        @AlwaysInline("GC performance")
+        public boolean visitObjectInline(Object o) {
+            if (!owner.updating && KnownIntrinsics.readHub(o).isReferenceInstanceClass()) {
+                ReferenceObjectProcessing.discoverIfReference(o, owner.objRefVisitor);
+            }
+            InteriorObjRefWalker.walkObjectInline(o, owner.objRefVisitor);
+            return true;
+        }
+    }
+}
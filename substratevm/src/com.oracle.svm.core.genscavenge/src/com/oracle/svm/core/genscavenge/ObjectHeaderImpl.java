@@ -182,7 +182,7 @@ public class ObjectHeaderImpl extends ObjectHeader {
         }
     }
 
-    private static void writeHeaderToObject(Object o, WordBase header) {
+    static void writeHeaderToObject(Object o, WordBase header) {
         if (getReferenceSize() == Integer.BYTES) {
             ObjectAccess.writeInt(o, getHubOffset(), (int) header.rawValue());
         } else {
@@ -289,6 +289,17 @@ public class ObjectHeaderImpl extends ObjectHeader {
         writeHeaderToObject(o, newHeader);
     }
 
+    /**
+     * Clear the remembered set bit of an object of the old generation. The {@link MarkCompact}
+     * collector uses the cleared bit as its mark, and sets it again when the remembered set of the
+     * compacted chunk is constructed.
+     */
+    static void clearRememberedSetBit(Object o) {
+        UnsignedWord oldHeader = readHeaderFromObject(o);
+        UnsignedWord newHeader = oldHeader.and(REMEMBERED_SET_BIT.not());
+        writeHeaderToObject(o, newHeader);
+    }
+
     public static boolean hasRememberedSet(UnsignedWord header) {
         return header.and(REMEMBERED_SET_BIT).notEqual(0);
     }
@@ -338,7 +349,55 @@ public class ObjectHeaderImpl extends ObjectHeader {
     /** Install in an Object, a forwarding pointer to a different Object. */
     protected static void installForwardingPointer(Object original, Object copy) {
         assert !isPointerToForwardedObject(Word.objectToUntrackedPointer(original));
-        /* Turn the copy Object into a Pointer, and encode that as a forwarding pointer. */
+        UnsignedWord forwardHeader = prepareForwardingHeader(original, copy);
+        writeHeaderToObject(original, forwardHeader);
+        assert isPointerToForwardedObject(Word.objectToUntrackedPointer(original));
+    }
+
+    /**
+     * Atomically replace the header of an object that is not forwarded with a header that has the
+     * forwarded bit set but no forwarding pointer yet. Threads of the {@link ParallelScavenge}
+     * use this to decide which of them copies the object. The winner must then call
+     * {@link #installClaimedForwardingPointer}, the other threads must wait for that.
+     *
+     * @return true if the current thread claimed the object.
+     */
+    static boolean claimObject(Pointer objectPointer, UnsignedWord expectedHeader) {
+        assert !isForwardedHeader(expectedHeader);
+        if (getReferenceSize() == Integer.BYTES) {
+            return objectPointer.logicCompareAndSwapInt(getHubOffset(), (int) expectedHeader.rawValue(), (int) FORWARDED_BIT.rawValue(), LocationIdentity.ANY_LOCATION);
+        } else {
+            return objectPointer.logicCompareAndSwapWord(getHubOffset(), expectedHeader, FORWARDED_BIT, LocationIdentity.ANY_LOCATION);
+        }
+    }
+
+    /** Is this the header of an object that was claimed but is not forwarded yet? */
+    static boolean isClaimedHeader(UnsignedWord header) {
+        return header.equal(FORWARDED_BIT);
+    }
+
+    /**
+     * Install a forwarding pointer in an object that was claimed with {@link #claimObject}. The
+     * header is written atomically after the copy is complete, so that any thread that sees the
+     * forwarding header also sees the contents of the copy.
+     */
+    static void installClaimedForwardingPointer(Object original, Object copy) {
+        Pointer objectPointer = Word.objectToUntrackedPointer(original);
+        UnsignedWord forwardHeader = prepareForwardingHeader(original, copy);
+        boolean installed;
+        if (getReferenceSize() == Integer.BYTES) {
+            installed = objectPointer.logicCompareAndSwapInt(getHubOffset(), (int) FORWARDED_BIT.rawValue(), (int) forwardHeader.rawValue(), LocationIdentity.ANY_LOCATION);
+        } else {
+            installed = objectPointer.logicCompareAndSwapWord(getHubOffset(), FORWARDED_BIT, forwardHeader, LocationIdentity.ANY_LOCATION);
+        }
+        VMError.guarantee(installed, "Object must be claimed by the current thread.");
+    }
+
+    /**
+     * Turn the copy Object into a Pointer, and encode that as a forwarding header. With compressed
+     * references that use a shift, this also stores the forwarding reference in the original.
+     */
+    private static UnsignedWord prepareForwardingHeader(Object original, Object copy) {
         UnsignedWord forwardHeader;
         if (ReferenceAccess.singleton().haveCompressedReferences()) {
             if (ReferenceAccess.singleton().getCompressEncoding().hasShift()) {
@@ -353,8 +412,7 @@ public class ObjectHeaderImpl extends ObjectHeader {
             forwardHeader = Word.objectToUntrackedPointer(copy);
         }
         assert ObjectHeaderImpl.getHeaderBitsFromHeader(forwardHeader).equal(0);
-        writeHeaderToObject(original, forwardHeader.or(FORWARDED_BIT));
-        assert isPointerToForwardedObject(Word.objectToUntrackedPointer(original));
+        return forwardHeader.or(FORWARDED_BIT);
     }
 
     @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
@@ -0,0 +1,829 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.genscavenge;
+
+import static org.graalvm.compiler.nodes.extended.BranchProbabilityNode.SLOW_PATH_PROBABILITY;
+import static org.graalvm.compiler.nodes.extended.BranchProbabilityNode.probability;
+
+import org.graalvm.compiler.nodes.PauseNode;
+import org.graalvm.compiler.nodes.extended.MembarNode;
+import org.graalvm.compiler.word.Word;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.SubstrateOptions;
+import com.oracle.svm.core.annotate.AlwaysInline;
+import com.oracle.svm.core.annotate.NeverInline;
+import com.oracle.svm.core.annotate.RestrictHeapAccess;
+import com.oracle.svm.core.annotate.Uninterruptible;
+import com.oracle.svm.core.heap.ObjectReferenceVisitor;
+import com.oracle.svm.core.heap.ObjectVisitor;
+import com.oracle.svm.core.heap.ReferenceAccess;
+import com.oracle.svm.core.hub.DynamicHub;
+import com.oracle.svm.core.hub.InteriorObjRefWalker;
+import com.oracle.svm.core.hub.LayoutEncoding;
+import com.oracle.svm.core.jdk.RuntimeSupport;
+import com.oracle.svm.core.jdk.UninterruptibleUtils.AtomicInteger;
+import com.oracle.svm.core.locks.VMCondition;
+import com.oracle.svm.core.locks.VMMutex;
+import com.oracle.svm.core.nodes.CFunctionEpilogueNode;
+import com.oracle.svm.core.nodes.CFunctionPrologueNode;
+import com.oracle.svm.core.snippets.KnownIntrinsics;
+import com.oracle.svm.core.thread.VMOperation;
+import com.oracle.svm.core.thread.VMThreads.StatusSupport;
+import com.oracle.svm.core.util.VMError;
+
+import jdk.vm.ci.code.MemoryBarriers;
+
+/**
+ * Scavenges the young generation with several threads during incremental collections.
+ *
+ * The collecting thread blackens the stacks and the thread locals itself, after promoting the
+ * chunks of pinned objects, and then joins the helper threads as worker 0. The helper threads are
+ * started at isolate startup and wait in native code with safepoints ignored, so that they neither
+ * hold up nor get stopped by the safepoint of the collection. The remaining roots, i.e., the dirty
+ * cards of the old generation, the chunks promoted as a whole and the writable part of the image
+ * heap, are claimed chunk by chunk by whichever thread gets to them first.
+ *
+ * Every thread copies objects into its own promotion buffer, an aligned chunk that is linked into
+ * the old generation only when the parallel phase is over. Threads race for an object by
+ * atomically replacing its header with a claimed marker; the winner copies the object and then
+ * publishes the forwarding header, the losers wait for it. A thread scans its own promotion buffer
+ * in Cheney order. A buffer that fills up before it is scanned is pushed onto a shared stack from
+ * which idle threads steal.
+ *
+ * Only the configuration without survivor spaces is supported, in which every live young object is
+ * promoted to the old generation. Complete collections remain serial.
+ */
+final class ParallelScavenge {
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    static boolean isEnabled() {
+        return HeapOptions.UseParallelScavenge.getValue() && SubstrateOptions.MultiThreaded.getValue() && HeapPolicyOptions.MaxSurvivorSpaces.getValue() == 0;
+    }
+
+    private final Worker[] workers;
+    private final FramePointerMapWalker frameWalker;
+
+    /* Coordination with the helper threads, which wait in native code. */
+    private final VMMutex mutex;
+    private final VMCondition workRequested;
+    private final VMCondition workFinished;
+    private int epoch;
+    private volatile int readyHelpers;
+    private int participatingHelpers;
+    private int finishedHelpers;
+    private boolean stopped;
+
+    /* Coordination between the threads that scavenge. */
+    private final AtomicInteger lock;
+    private final AtomicInteger activeThreads;
+    private final AtomicInteger pendingGreyChunks;
+
+    /* Shared state of a scavenge, protected by the spin lock. */
+    private Space toSpace;
+    private AlignedHeapChunk.AlignedHeader lastDirtyAlignedChunk;
+    private UnalignedHeapChunk.UnalignedHeader lastDirtyUnalignedChunk;
+    private AlignedHeapChunk.AlignedHeader nextDirtyAlignedChunk;
+    private UnalignedHeapChunk.UnalignedHeader nextDirtyUnalignedChunk;
+    private AlignedHeapChunk.AlignedHeader nextGreyAlignedChunk;
+    private UnalignedHeapChunk.UnalignedHeader nextGreyUnalignedChunk;
+    private boolean imageHeapClaimed;
+    private AlignedHeapChunk.AlignedHeader greyAlignedChunks;
+    private UnalignedHeapChunk.UnalignedHeader greyUnalignedChunks;
+
+    /** Only accessed by the collecting thread. */
+    private boolean scavenging;
+
+    /** Whether the helper threads process discovered references instead of scavenging. */
+    private boolean processingReferences;
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    ParallelScavenge() {
+        int maxThreads = HeapOptions.ParallelScavengeMaxThreads.getValue();
+        VMError.guarantee(maxThreads >= 1, "ParallelScavengeMaxThreads must be at least 1.");
+        this.workers = new Worker[maxThreads];
+        for (int i = 0; i < maxThreads; i++) {
+            workers[i] = new Worker(this, i);
+        }
+        this.frameWalker = new FramePointerMapWalker(workers[0].objRefVisitor);
+        this.mutex = new VMMutex();
+        this.workRequested = new VMCondition(mutex);
+        this.workFinished = new VMCondition(mutex);
+        this.lock = new AtomicInteger(0);
+        this.activeThreads = new AtomicInteger(0);
+        this.pendingGreyChunks = new AtomicInteger(0);
+
+        RuntimeSupport.getRuntimeSupport().addStartupHook(this::startHelpers);
+        RuntimeSupport.getRuntimeSupport().addTearDownHook(this::stopHelpers);
+    }
+
+    /*
+     * Helper threads.
+     */
+
+    private void startHelpers() {
+        int threads = HeapOptions.ParallelScavengeThreads.getValue();
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        threads = Math.min(threads, workers.length);
+        for (int i = 1; i < threads; i++) {
+            Thread thread = new Thread(workers[i], "Parallel Scavenge " + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void stopHelpers() {
+        signalStop();
+    }
+
+    @Uninterruptible(reason = "Locks without transition.")
+    private void signalStop() {
+        mutex.lockNoTransition();
+        try {
+            stopped = true;
+            workRequested.broadcast();
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Helper threads must not allocate.")
+    @NeverInline("Must not be inlined in a caller that has an exception handler: We only support InvokeNode and not InvokeWithExceptionNode between a CFunctionPrologueNode and CFunctionEpilogueNode.")
+    private static void runHelper(Worker worker) {
+        CFunctionPrologueNode.cFunctionPrologue(StatusSupport.STATUS_IN_NATIVE);
+        helperLoop(worker);
+        CFunctionEpilogueNode.cFunctionEpilogue(StatusSupport.STATUS_IN_NATIVE);
+    }
+
+    /**
+     * The loop of a helper thread. The thread stays in native code with safepoints ignored, so that
+     * it can scavenge while all other threads, including the collecting thread, are at a safepoint.
+     */
+    @Uninterruptible(reason = "Must not stop while in native.")
+    @NeverInline("Provide a return address for the Java frame anchor.")
+    private static void helperLoop(Worker worker) {
+        ParallelScavenge owner = worker.owner;
+        StatusSupport.setStatusIgnoreSafepointsInNative(true);
+
+        owner.mutex.lockNoTransition();
+        try {
+            owner.readyHelpers++;
+            int seenEpoch = owner.epoch;
+            while (!owner.stopped) {
+                if (seenEpoch != owner.epoch) {
+                    seenEpoch = owner.epoch;
+                    owner.mutex.unlock();
+                    owner.workInHelper(worker);
+                    owner.mutex.lockNoTransition();
+                    owner.finishedHelpers++;
+                    if (owner.finishedHelpers == owner.participatingHelpers) {
+                        owner.workFinished.broadcast();
+                    }
+                } else {
+                    owner.workRequested.blockNoTransition();
+                }
+            }
+            owner.readyHelpers--;
+        } finally {
+            owner.mutex.unlock();
+        }
+
+        StatusSupport.setStatusIgnoreSafepointsInNative(false);
+    }
+
+    @Uninterruptible(reason = "Called from a thread in native code, but only while all Java threads are at the safepoint of the collection.", calleeMustBe = false)
+    @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Must not allocate during a collection.")
+    private void workInHelper(Worker worker) {
+        try {
+            if (processingReferences) {
+                worker.processDiscoveredReferences();
+            } else {
+                scavenge(worker);
+            }
+        } catch (Throwable e) {
+            throw VMError.shouldNotReachHere(e);
+        }
+    }
+
+    @Uninterruptible(reason = "Called during a collection, so it must block without a thread status transition.")
+    private void releaseHelpers() {
+        mutex.lockNoTransition();
+        try {
+            participatingHelpers = readyHelpers;
+            finishedHelpers = 0;
+            activeThreads.set(participatingHelpers + 1);
+            epoch++;
+            workRequested.broadcast();
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    @Uninterruptible(reason = "Called during a collection, so it must block without a thread status transition.")
+    private void waitForHelpers() {
+        mutex.lockNoTransition();
+        try {
+            while (finishedHelpers < participatingHelpers) {
+                workFinished.blockNoTransition();
+            }
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /*
+     * Interface for the collecting thread.
+     */
+
+    /** Can the current collection scavenge in parallel? */
+    boolean canScavenge() {
+        return readyHelpers > 0 && !GCImpl.getGCImpl().isCompleteCollection();
+    }
+
+    boolean isScavenging() {
+        return scavenging;
+    }
+
+    FramePointerMapWalker getFrameWalker() {
+        return frameWalker;
+    }
+
+    ObjectReferenceVisitor getRootsVisitor() {
+        return workers[0].objRefVisitor;
+    }
+
+    /**
+     * Remember which chunks of the to-space have dirty cards. Must be called before any chunk is
+     * promoted as a whole, because those chunks are scanned completely instead.
+     */
+    void snapshot(Space space) {
+        assert VMOperation.isGCInProgress() && !scavenging;
+        toSpace = space;
+        lastDirtyAlignedChunk = space.getLastAlignedHeapChunk();
+        lastDirtyUnalignedChunk = space.getLastUnalignedHeapChunk();
+    }
+
+    /** Start the helper threads. The collecting thread can blacken its roots in the meantime. */
+    void startScavenge() {
+        assert VMOperation.isGCInProgress() && !scavenging && toSpace != null;
+        if (lastDirtyAlignedChunk.isNonNull()) {
+            nextDirtyAlignedChunk = toSpace.getFirstAlignedHeapChunk();
+            nextGreyAlignedChunk = lastDirtyAlignedChunk.getNext();
+        } else {
+            nextDirtyAlignedChunk = WordFactory.nullPointer();
+            nextGreyAlignedChunk = toSpace.getFirstAlignedHeapChunk();
+        }
+        if (lastDirtyUnalignedChunk.isNonNull()) {
+            nextDirtyUnalignedChunk = toSpace.getFirstUnalignedHeapChunk();
+            nextGreyUnalignedChunk = lastDirtyUnalignedChunk.getNext();
+        } else {
+            nextDirtyUnalignedChunk = WordFactory.nullPointer();
+            nextGreyUnalignedChunk = toSpace.getFirstUnalignedHeapChunk();
+        }
+        greyAlignedChunks = WordFactory.nullPointer();
+        greyUnalignedChunks = WordFactory.nullPointer();
+        pendingGreyChunks.set(0);
+        imageHeapClaimed = false;
+        scavenging = true;
+        releaseHelpers();
+    }
+
+    /**
+     * Scavenge with the collecting thread until there is no work left, and then wait for the
+     * helper threads. Afterwards, all promoted objects are black and part of the to-space.
+     */
+    void finishScavenge() {
+        assert scavenging;
+        scavenge(workers[0]);
+        waitForHelpers();
+        scavenging = false;
+        VMError.guarantee(greyAlignedChunks.isNull() && greyUnalignedChunks.isNull(), "Grey chunks left after parallel scavenge.");
+        for (Worker worker : workers) {
+            AlignedHeapChunk.AlignedHeader aChunk = worker.scannedAlignedChunks;
+            while (aChunk.isNonNull()) {
+                AlignedHeapChunk.AlignedHeader next = aChunk.getNext();
+                toSpace.appendAlignedHeapChunk(aChunk);
+                aChunk = next;
+            }
+            UnalignedHeapChunk.UnalignedHeader uChunk = worker.scannedUnalignedChunks;
+            while (uChunk.isNonNull()) {
+                UnalignedHeapChunk.UnalignedHeader next = uChunk.getNext();
+                toSpace.appendUnalignedHeapChunk(uChunk);
+                uChunk = next;
+            }
+            worker.reset();
+        }
+        toSpace = null;
+    }
+
+    /** Did any thread discover references in the last scavenge? */
+    boolean hasDiscoveredReferences() {
+        for (Worker worker : workers) {
+            if (!worker.discoveredReferences.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Process the references that each thread discovered during the scavenge, in parallel, and
+     * move the references whose referents did not survive to the list of the collector.
+     */
+    void processDiscoveredReferences() {
+        assert VMOperation.isGCInProgress() && !scavenging;
+        processingReferences = true;
+        releaseHelpers();
+        workers[0].processDiscoveredReferences();
+        waitForHelpers();
+        processingReferences = false;
+        for (Worker worker : workers) {
+            /* Threads that were not ready for this phase left their list unprocessed. */
+            worker.processDiscoveredReferences();
+            worker.discoveredReferences.transferToCollector();
+            worker.referencesProcessed = false;
+        }
+    }
+
+    /*
+     * Scavenging, done by all threads.
+     */
+
+    private void scavenge(Worker worker) {
+        do {
+            scanRoots(worker);
+            worker.drainLocalGreyObjects();
+            while (stealGreyChunk(worker)) {
+                worker.drainLocalGreyObjects();
+            }
+        } while (!offerTermination());
+        worker.retirePromotionBuffer();
+        assert worker.partialChunk.isNull() && worker.bufferChunk.isNull();
+    }
+
+    @NeverInline("Split the GC into reasonable compilation units")
+    private void scanRoots(Worker worker) {
+        for (AlignedHeapChunk.AlignedHeader aChunk = claimDirtyAlignedChunk(); aChunk.isNonNull(); aChunk = claimDirtyAlignedChunk()) {
+            AlignedHeapChunk.walkDirtyObjectsOfAlignedHeapChunk(aChunk, worker.objectVisitor, true);
+            worker.drainLocalGreyObjects();
+        }
+        for (UnalignedHeapChunk.UnalignedHeader uChunk = claimDirtyUnalignedChunk(); uChunk.isNonNull(); uChunk = claimDirtyUnalignedChunk()) {
+            UnalignedHeapChunk.walkDirtyObjectsOfUnalignedHeapChunk(uChunk, worker.objectVisitor, true);
+            worker.drainLocalGreyObjects();
+        }
+        for (AlignedHeapChunk.AlignedHeader aChunk = claimPinnedAlignedChunk(); aChunk.isNonNull(); aChunk = claimPinnedAlignedChunk()) {
+            HeapChunk.walkObjectsFromInline(aChunk, AlignedHeapChunk.getAlignedHeapChunkStart(aChunk), worker.objectVisitor);
+            worker.drainLocalGreyObjects();
+        }
+        for (UnalignedHeapChunk.UnalignedHeader uChunk = claimPinnedUnalignedChunk(); uChunk.isNonNull(); uChunk = claimPinnedUnalignedChunk()) {
+            UnalignedHeapChunk.walkObjectsOfUnalignedHeapChunk(uChunk, worker.objectVisitor);
+            worker.drainLocalGreyObjects();
+        }
+        if (claimImageHeap()) {
+            ImageHeapInfo imageHeapInfo = HeapImpl.getImageHeapInfo();
+            Pointer cur = Word.objectToUntrackedPointer(imageHeapInfo.firstWritableReferenceObject);
+            Pointer last = Word.objectToUntrackedPointer(imageHeapInfo.lastWritableReferenceObject);
+            while (cur.isNonNull() && cur.belowOrEqual(last)) {
+                Object obj = cur.toObject();
+                worker.objectVisitor.visitObjectInline(obj);
+                cur = LayoutEncoding.getObjectEnd(obj);
+            }
+            worker.drainLocalGreyObjects();
+        }
+    }
+
+    private AlignedHeapChunk.AlignedHeader claimDirtyAlignedChunk() {
+        acquireLock();
+        try {
+            AlignedHeapChunk.AlignedHeader result = nextDirtyAlignedChunk;
+            if (result.isNonNull()) {
+                nextDirtyAlignedChunk = (result == lastDirtyAlignedChunk) ? WordFactory.nullPointer() : result.getNext();
+            }
+            return result;
+        } finally {
+            releaseLock();
+        }
+    }
+
+    private UnalignedHeapChunk.UnalignedHeader claimDirtyUnalignedChunk() {
+        acquireLock();
+        try {
+            UnalignedHeapChunk.UnalignedHeader result = nextDirtyUnalignedChunk;
+            if (result.isNonNull()) {
+                nextDirtyUnalignedChunk = (result == lastDirtyUnalignedChunk) ? WordFactory.nullPointer() : result.getNext();
+            }
+            return result;
+        } finally {
+            releaseLock();
+        }
+    }
+
+    /** The chunks after the snapshot were promoted as a whole because they contain pinned objects. */
+    private AlignedHeapChunk.AlignedHeader claimPinnedAlignedChunk() {
+        acquireLock();
+        try {
+            AlignedHeapChunk.AlignedHeader result = nextGreyAlignedChunk;
+            if (result.isNonNull()) {
+                nextGreyAlignedChunk = result.getNext();
+            }
+            return result;
+        } finally {
+            releaseLock();
+        }
+    }
+
+    private UnalignedHeapChunk.UnalignedHeader claimPinnedUnalignedChunk() {
+        acquireLock();
+        try {
+            UnalignedHeapChunk.UnalignedHeader result = nextGreyUnalignedChunk;
+            if (result.isNonNull()) {
+                nextGreyUnalignedChunk = result.getNext();
+            }
+            return result;
+        } finally {
+            releaseLock();
+        }
+    }
+
+    private boolean claimImageHeap() {
+        acquireLock();
+        try {
+            boolean result = !imageHeapClaimed;
+            imageHeapClaimed = true;
+            return result;
+        } finally {
+            releaseLock();
+        }
+    }
+
+    private void pushGreyChunk(AlignedHeapChunk.AlignedHeader aChunk) {
+        acquireLock();
+        try {
+            aChunk.setNext(greyAlignedChunks);
+            greyAlignedChunks = aChunk;
+            pendingGreyChunks.incrementAndGet();
+        } finally {
+            releaseLock();
+        }
+    }
+
+    /** Steal a grey chunk from the shared stacks, scan it, and keep it as a scanned chunk. */
+    private boolean stealGreyChunk(Worker worker) {
+        AlignedHeapChunk.AlignedHeader aChunk;
+        UnalignedHeapChunk.UnalignedHeader uChunk = WordFactory.nullPointer();
+        acquireLock();
+        try {
+            aChunk = greyAlignedChunks;
+            if (aChunk.isNonNull()) {
+                greyAlignedChunks = aChunk.getNext();
+                pendingGreyChunks.decrementAndGet();
+            } else {
+                uChunk = greyUnalignedChunks;
+                if (uChunk.isNonNull()) {
+                    greyUnalignedChunks = uChunk.getNext();
+                    pendingGreyChunks.decrementAndGet();
+                }
+            }
+        } finally {
+            releaseLock();
+        }
+        if (aChunk.isNonNull()) {
+            aChunk.setNext(WordFactory.nullPointer());
+            HeapChunk.walkObjectsFromInline(aChunk, AlignedHeapChunk.getAlignedHeapChunkStart(aChunk), worker.objectVisitor);
+            worker.addScannedChunk(aChunk);
+            return true;
+        } else if (uChunk.isNonNull()) {
+            uChunk.setNext(WordFactory.nullPointer());
+            UnalignedHeapChunk.walkObjectsOfUnalignedHeapChunk(uChunk, worker.objectVisitor);
+            worker.addScannedChunk(uChunk);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called by a thread that ran out of work. Returns true once all threads ran out of work, or
+     * false if there is shared work again that the thread should steal.
+     */
+    private boolean offerTermination() {
+        activeThreads.decrementAndGet();
+        while (true) {
+            if (pendingGreyChunks.get() > 0) {
+                activeThreads.incrementAndGet();
+                return false;
+            }
+            if (activeThreads.get() == 0) {
+                return true;
+            }
+            PauseNode.pause();
+        }
+    }
+
+    AlignedHeapChunk.AlignedHeader requestPromotionBufferChunk() {
+        acquireLock();
+        try {
+            return toSpace.requestPromotionBufferChunk();
+        } finally {
+            releaseLock();
+        }
+    }
+
+    private void acquireLock() {
+        while (!lock.compareAndSet(0, 1)) {
+            PauseNode.pause();
+        }
+    }
+
+    private void releaseLock() {
+        lock.set(0);
+    }
+
+    /**
+     * Promote the object, or find its copy if it was promoted already, possibly by another thread.
+     */
+    @AlwaysInline("GC performance")
+    private Object promoteObject(Pointer p, UnsignedWord initialHeader, Worker worker) {
+        UnsignedWord header = initialHeader;
+        while (true) {
+            if (ObjectHeaderImpl.isForwardedHeader(header)) {
+                return waitForForwardedObject(p, header);
+            }
+            Object original = p.toObject();
+            if (ObjectHeaderImpl.isUnalignedHeader(p, header)) {
+                promoteUnalignedChunk(UnalignedHeapChunk.getEnclosingUnalignedHeapChunk(original));
+                return original;
+            }
+            if (!AlignedHeapChunk.getEnclosingAlignedHeapChunk(original).getSpace().isFrom()) {
+                return original;
+            }
+            /* The size must be computed before claiming, because claiming destroys the header. */
+            DynamicHub hub = ObjectHeaderImpl.getObjectHeaderImpl().dynamicHubFromObjectHeader(header);
+            int encoding = hub.getLayoutEncoding();
+            UnsignedWord size = LayoutEncoding.isArray(encoding) ? LayoutEncoding.getArraySize(encoding, KnownIntrinsics.readArrayLength(original))
+                            : LayoutEncoding.getInstanceSize(encoding);
+            if (ObjectHeaderImpl.claimObject(p, header)) {
+                return toSpace.promoteAlignedObjectParallel(original, header, size, worker);
+            }
+            header = ObjectHeaderImpl.readHeaderFromPointer(p);
+        }
+    }
+
+    private static Object waitForForwardedObject(Pointer p, UnsignedWord initialHeader) {
+        UnsignedWord header = initialHeader;
+        while (probability(SLOW_PATH_PROBABILITY, ObjectHeaderImpl.isClaimedHeader(header))) {
+            PauseNode.pause();
+            /* Make sure that the header is read again. */
+            MembarNode.memoryBarrier(MemoryBarriers.LOAD_LOAD);
+            header = ObjectHeaderImpl.readHeaderFromPointer(p);
+        }
+        /* The forwarding header is published after the copy, so read the copy only afterwards. */
+        MembarNode.memoryBarrier(MemoryBarriers.LOAD_LOAD);
+        return ObjectHeaderImpl.getForwardedObject(p);
+    }
+
+    private void promoteUnalignedChunk(UnalignedHeapChunk.UnalignedHeader uChunk) {
+        acquireLock();
+        try {
+            if (toSpace.promoteUnalignedHeapChunkParallel(uChunk)) {
+                uChunk.setNext(greyUnalignedChunks);
+                greyUnalignedChunks = uChunk;
+                pendingGreyChunks.incrementAndGet();
+            }
+        } finally {
+            releaseLock();
+        }
+    }
+
+    /** The state of one thread that scavenges. */
+    static final class Worker implements Runnable {
+        private final ParallelScavenge owner;
+        private final int index;
+        final ObjRefVisitor objRefVisitor;
+        final GreyObjectVisitor objectVisitor;
+
+        /** The references that this thread discovered, so that no lock is needed. */
+        final ReferenceObjectProcessing.DiscoveredList discoveredReferences;
+        private boolean referencesProcessed;
+
+        /** The chunk that this thread copies objects into, and the first object not scanned yet. */
+        private AlignedHeapChunk.AlignedHeader bufferChunk;
+        private Pointer bufferScanPointer;
+
+        /** A retired promotion buffer that was only partially scanned. */
+        private AlignedHeapChunk.AlignedHeader partialChunk;
+        private Pointer partialScanPointer;
+
+        /** Chunks with only black objects, linked by their next field. */
+        private AlignedHeapChunk.AlignedHeader scannedAlignedChunks;
+        private UnalignedHeapChunk.UnalignedHeader scannedUnalignedChunks;
+
+        @Platforms(Platform.HOSTED_ONLY.class)
+        Worker(ParallelScavenge owner, int index) {
+            this.owner = owner;
+            this.index = index;
+            this.objRefVisitor = new ObjRefVisitor(this);
+            this.objectVisitor = new GreyObjectVisitor(this);
+            this.discoveredReferences = new ReferenceObjectProcessing.DiscoveredList();
+        }
+
+        @Override
+        public void run() {
+            assert index > 0 : "Worker 0 is the collecting thread.";
+            runHelper(this);
+        }
+
+        Pointer allocatePromotionMemory(Space space, UnsignedWord size) {
+            assert space == owner.toSpace;
+            Pointer result = WordFactory.nullPointer();
+            if (bufferChunk.isNonNull()) {
+                result = AlignedHeapChunk.allocateMemory(bufferChunk, size);
+            }
+            if (result.isNull()) {
+                retirePromotionBuffer();
+                AlignedHeapChunk.AlignedHeader aChunk = owner.requestPromotionBufferChunk();
+                if (aChunk.isNull()) {
+                    throw VMError.shouldNotReachHere("Promotion failure");
+                }
+                bufferChunk = aChunk;
+                bufferScanPointer = AlignedHeapChunk.getAlignedHeapChunkStart(aChunk);
+                result = AlignedHeapChunk.allocateMemory(aChunk, size);
+                if (result.isNull()) {
+                    throw VMError.shouldNotReachHere("Promotion failure");
+                }
+            }
+            return result;
+        }
+
+        /** Give up the current promotion buffer, handing over its unscanned objects if necessary. */
+        void retirePromotionBuffer() {
+            AlignedHeapChunk.AlignedHeader aChunk = bufferChunk;
+            if (aChunk.isNull()) {
+                return;
+            }
+            Pointer scanPointer = bufferScanPointer;
+            bufferChunk = WordFactory.nullPointer();
+            bufferScanPointer = WordFactory.nullPointer();
+            if (scanPointer.equal(aChunk.getTop())) {
+                addScannedChunk(aChunk);
+            } else if (scanPointer.equal(AlignedHeapChunk.getAlignedHeapChunkStart(aChunk))) {
+                owner.pushGreyChunk(aChunk);
+            } else {
+                /* At most one buffer is scanned at a time, so it is the only partial one. */
+                VMError.guarantee(partialChunk.isNull(), "Only one partially scanned promotion buffer.");
+                partialChunk = aChunk;
+                partialScanPointer = scanPointer;
+            }
+        }
+
+        /** Scan the objects that this thread promoted, until there are none left. */
+        @NeverInline("Split the GC into reasonable compilation units")
+        void drainLocalGreyObjects() {
+            while (true) {
+                if (partialChunk.isNonNull()) {
+                    AlignedHeapChunk.AlignedHeader aChunk = partialChunk;
+                    Pointer scanPointer = partialScanPointer;
+                    partialChunk = WordFactory.nullPointer();
+                    partialScanPointer = WordFactory.nullPointer();
+                    HeapChunk.walkObjectsFromInline(aChunk, scanPointer, objectVisitor);
+                    addScannedChunk(aChunk);
+                } else if (bufferChunk.isNonNull() && bufferScanPointer.belowThan(bufferChunk.getTop())) {
+                    Object obj = bufferScanPointer.toObject();
+                    /* Advance first: visiting the object can retire the buffer. */
+                    bufferScanPointer = bufferScanPointer.add(LayoutEncoding.getSizeFromObject(obj));
+                    objectVisitor.visitObjectInline(obj);
+                } else {
+                    return;
+                }
+            }
+        }
+
+        void processDiscoveredReferences() {
+            if (!referencesProcessed) {
+                discoveredReferences.process();
+                referencesProcessed = true;
+            }
+        }
+
+        void addScannedChunk(AlignedHeapChunk.AlignedHeader aChunk) {
+            aChunk.setNext(scannedAlignedChunks);
+            scannedAlignedChunks = aChunk;
+        }
+
+        void addScannedChunk(UnalignedHeapChunk.UnalignedHeader uChunk) {
+            uChunk.setNext(scannedUnalignedChunks);
+            scannedUnalignedChunks = uChunk;
+        }
+
+        void reset() {
+            assert bufferChunk.isNull() && partialChunk.isNull();
+            scannedAlignedChunks = WordFactory.nullPointer();
+            scannedUnalignedChunks = WordFactory.nullPointer();
+        }
+    }
+
+    /**
+     * The equivalent of {@link GreyToBlackObjRefVisitor} for incremental collections without
+     * survivor spaces: old objects are not moved and all young objects are promoted to the old
+     * generation, so no cards need to be dirtied.
+     */
+    static final class ObjRefVisitor implements ObjectReferenceVisitor {
+        private final Worker worker;
+
+        @Platforms(Platform.HOSTED_ONLY.class)
+        ObjRefVisitor(Worker worker) {
+            this.worker = worker;
+        }
+
+        @Override
+        public boolean visitObjectReference(Pointer objRef, boolean compressed) {
+            return visitObjectReferenceInline(objRef, 0, compressed, null);
+        }
+
+        @Override
+        @AlwaysInline("GC performance")
+        public boolean visitObjectReferenceInline(Pointer objRef, boolean compressed, Object holderObject) {
+            return visitObjectReferenceInline(objRef, 0, compressed, holderObject);
+        }
+
+        @Override
+        @AlwaysInline("GC performance")
+        public boolean visitObjectReferenceInline(Pointer objRef, int innerOffset, boolean compressed) {
+            return visitObjectReferenceInline(objRef, innerOffset, compressed, null);
+        }
+
+        @Override
+        @AlwaysInline("GC performance")
+        public boolean visitObjectReferenceInline(Pointer objRef, int innerOffset, boolean compressed, Object holderObject) {
+            assert innerOffset >= 0;
+            Pointer offsetP = ReferenceAccess.singleton().readObjectAsUntrackedPointer(objRef, compressed);
+            Pointer p = offsetP.subtract(innerOffset);
+            if (p.isNull() || HeapImpl.getHeapImpl().isInImageHeap(p)) {
+                return true;
+            }
+            UnsignedWord header = ObjectHeaderImpl.readHeaderFromPointer(p);
+            if (ObjectHeaderImpl.hasRememberedSet(header)) {
+                /* Old objects do not move in an incremental collection. */
+                return true;
+            }
+            Object obj = p.toObject();
+            Object copy = worker.owner.promoteObject(p, header, worker);
+            if (copy != obj) {
+                Object offsetCopy = (innerOffset == 0) ? copy : Word.objectToUntrackedPointer(copy).add(innerOffset).toObject();
+                ReferenceAccess.singleton().writeObjectAt(objRef, offsetCopy, compressed);
+            }
+            return true;
+        }
+    }
+
+    /** The equivalent of {@link GreyToBlackObjectVisitor} for the threads that scavenge. */
+    static final class GreyObjectVisitor implements ObjectVisitor {
+        private final Worker worker;
+
+        @Platforms(Platform.HOSTED_ONLY.class)
+        GreyObjectVisitor(Worker worker) {
+            this.worker = worker;
+        }
+
+        @Override
+        @NeverInline("Non-performance critical version")
+        public boolean visitObject(Object o) {
+            return visitObjectInline(o);
+        }
+
+        @Override
+        @AlwaysInline("GC performance")
+        public boolean visitObjectInline(Object o) {
+            ReferenceObjectProcessing.discoverIfReference(o, worker.objRefVisitor, worker.discoveredReferences);
+            InteriorObjRefWalker.walkObjectInline(o, worker.objRefVisitor);
+            return true;
+        }
+    }
+}
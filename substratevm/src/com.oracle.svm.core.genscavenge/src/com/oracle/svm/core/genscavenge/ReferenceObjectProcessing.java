@@ -28,33 +28,108 @@ import static org.graalvm.compiler.nodes.extended.BranchProbabilityNode.SLOW_PAT
 import static org.graalvm.compiler.nodes.extended.BranchProbabilityNode.probability;
 
 import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
 
 import org.graalvm.compiler.word.Word;
 import org.graalvm.word.Pointer;
 import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
 
 import com.oracle.svm.core.SubstrateOptions;
 import com.oracle.svm.core.annotate.AlwaysInline;
 import com.oracle.svm.core.annotate.RestrictHeapAccess;
+import com.oracle.svm.core.heap.ObjectReferenceVisitor;
+import com.oracle.svm.core.heap.ReferenceAccess;
 import com.oracle.svm.core.heap.ReferenceInternals;
 import com.oracle.svm.core.heap.ReferenceQueueInternals;
 import com.oracle.svm.core.hub.DynamicHub;
 import com.oracle.svm.core.log.Log;
 import com.oracle.svm.core.snippets.KnownIntrinsics;
+import com.oracle.svm.core.util.TimeUtils;
 
 /** Discovers and handles {@link Reference} objects during garbage collection. */
 public class ReferenceObjectProcessing {
 
+    /** The value of the soft reference clock during the current collection. */
+    private static long softReferenceClock;
+
+    /**
+     * The maximum age of a soft reference whose referent is kept alive in this collection, or -1 if
+     * all soft references are cleared.
+     */
+    private static long maxSoftReferenceAgeMillis;
+
+    /** Whether the referent of at least one soft reference was kept alive in this collection. */
+    private static boolean softReferentsKeptAlive;
+
+    /** Whether {@link #softReferenceClockOriginNanos} has been set. */
+    private static boolean softReferenceClockStarted;
+
+    /** The time of the first collection, which is the origin of the soft reference clock. */
+    private static long softReferenceClockOriginNanos;
+
+    /**
+     * Decides which soft references are cleared in the next collection, using the LRU policy of
+     * HotSpot: for each megabyte that is free in the heap, a soft reference that has not been
+     * accessed for {@link HeapOptions#SoftRefLRUPolicyMSPerMB} milliseconds keeps its referent
+     * alive. All other soft references are treated like weak references. If
+     * {@code clearAllSoftReferences} is true, all soft references are treated like weak references,
+     * which is necessary before an {@link OutOfMemoryError} can be thrown.
+     */
+    static void prepareSoftReferencePolicy(UnsignedWord freeBytes, boolean clearAllSoftReferences) {
+        if (!softReferenceClockStarted) {
+            softReferenceClockOriginNanos = System.nanoTime();
+            softReferenceClockStarted = true;
+        }
+        softReferenceClock = ReferenceInternals.getSoftReferenceClock();
+        softReferentsKeptAlive = false;
+        if (clearAllSoftReferences) {
+            maxSoftReferenceAgeMillis = -1;
+        } else {
+            long freeMegabytes = freeBytes.unsignedDivide(WordFactory.unsigned(1024 * 1024)).rawValue();
+            maxSoftReferenceAgeMillis = freeMegabytes * HeapOptions.SoftRefLRUPolicyMSPerMB.getValue();
+        }
+    }
+
+    /**
+     * Returns true if the referent of a soft reference was kept alive by the policy in the last
+     * collection, i.e., if a collection that clears all soft references could free more memory.
+     */
+    static boolean haveSoftReferentsBeenKeptAlive() {
+        return softReferentsKeptAlive;
+    }
+
+    /**
+     * Advances the soft reference clock after a collection. There is no record of when the isolate
+     * started, so the clock counts from the first collection, which underestimates the age of soft
+     * references that were not accessed since before then.
+     */
+    static void updateSoftReferenceClock() {
+        long elapsedMillis = TimeUtils.divideNanosToMillis(TimeUtils.nanoSecondsSince(softReferenceClockOriginNanos));
+        ReferenceInternals.setSoftReferenceClock(elapsedMillis);
+    }
+
+    /**
+     * Discovers a reference object and adds it to the list of the collector. The referent of a soft
+     * reference that is kept alive by the policy is visited with the given visitor, like a strong
+     * reference would be, and is then updated like the referents of the other discovered references.
+     */
     @AlwaysInline("GC performance")
-    public static void discoverIfReference(Object object) {
+    public static void discoverIfReference(Object object, ObjectReferenceVisitor refVisitor) {
+        discoverIfReference(object, refVisitor, null);
+    }
+
+    /** Like {@link #discoverIfReference(Object, ObjectReferenceVisitor)}, but into a local list. */
+    @AlwaysInline("GC performance")
+    static void discoverIfReference(Object object, ObjectReferenceVisitor refVisitor, DiscoveredList list) {
         assert object != null;
         DynamicHub hub = KnownIntrinsics.readHub(object);
         if (probability(SLOW_PATH_PROBABILITY, hub.isReferenceInstanceClass())) {
-            handleDiscoverableReference(object);
+            handleDiscoverableReference(object, refVisitor, list);
         }
     }
 
-    private static void handleDiscoverableReference(Object obj) {
+    private static void handleDiscoverableReference(Object obj, ObjectReferenceVisitor refVisitor, DiscoveredList list) {
         Reference<?> dr = KnownIntrinsics.convertUnknownValue(obj, Reference.class);
         Log trace = Log.noopLog().string("[ReferenceObjectProcessing.handleDiscoverableReference:");
         trace.string("  dr: ").object(dr);
@@ -67,13 +142,30 @@ public class ReferenceObjectProcessing {
             if (trace.isEnabled()) {
                 trace.string("  referent: ").hex(ReferenceInternals.getReferentPointer(dr));
             }
-            addToDiscoveredList(dr);
+            boolean added = (list == null) ? addToDiscoveredList(dr) : list.add(dr);
+            if (added && isReferentKeptAlive(dr)) {
+                trace.string("  kept alive");
+                refVisitor.visitObjectReference(ReferenceInternals.getReferentFieldAddress(dr), ReferenceAccess.singleton().haveCompressedReferences());
+            }
         } else {
             trace.string("  uninitialized");
         }
         trace.string("]").newline();
     }
 
+    private static boolean isReferentKeptAlive(Reference<?> dr) {
+        if (!(dr instanceof SoftReference) || maxSoftReferenceAgeMillis < 0 || ReferenceInternals.getReferentPointer(dr).isNull()) {
+            return false;
+        }
+        long age = softReferenceClock - ReferenceInternals.getSoftReferenceTimestamp((SoftReference<?>) dr);
+        if (age <= maxSoftReferenceAgeMillis) {
+            /* Threads of a parallel scavenge can race here, but they all store the same value. */
+            softReferentsKeptAlive = true;
+            return true;
+        }
+        return false;
+    }
+
     public static Reference<?> getGCDiscoveredListHead() {
         return HeapImpl.getHeapImpl().getGCImpl().getDiscoveredReferencesListHead();
     }
@@ -88,17 +180,18 @@ public class ReferenceObjectProcessing {
         trace.string("]");
     }
 
-    private static void addToDiscoveredList(Reference<?> dr) {
+    private static boolean addToDiscoveredList(Reference<?> dr) {
         final Log trace = Log.noopLog().string("[ReferenceObjectProcessing.addToDiscoveredList:").string("  this: ").object(dr).string("  referent: ")
                         .hex(ReferenceInternals.getReferentPointer(dr));
         if (ReferenceInternals.isDiscovered(dr)) {
             trace.string("  already on list]").newline();
-            return;
+            return false;
         }
         trace.newline().string("  [adding to list:").string("  oldList: ").object(getGCDiscoveredListHead());
         setGCDiscoveredListHead(ReferenceInternals.setNextDiscovered(dr, getGCDiscoveredListHead()));
         trace.string("  new list: ").object(getGCDiscoveredListHead()).string("]");
         trace.string("]").newline();
+        return true;
     }
 
     /**
@@ -127,6 +220,33 @@ public class ReferenceObjectProcessing {
         trace.string("]").newline();
     }
 
+    /**
+     * The equivalent of {@link #processDiscoveredReferences} for a {@link MarkCompact} collection,
+     * after the new locations of the objects have been computed but before any object has been
+     * moved. Live referents are updated to their new locations. Cards do not need to be dirtied
+     * because the remembered sets of all compacted chunks are reconstructed.
+     */
+    static void processDiscoveredReferencesForCompaction(MarkCompact collector) {
+        final Log trace = Log.noopLog().string("[ReferenceObjectProcessing.processDiscoveredReferencesForCompaction: ").string("  discoveredList: ").object(getGCDiscoveredListHead()).newline();
+        Reference<?> newList = null;
+        for (Reference<?> current = popDiscoveredReference(); current != null; current = popDiscoveredReference()) {
+            final Pointer refPointer = ReferenceInternals.getReferentPointer(current);
+            trace.string("  [current: ").object(current).string("  referent before: ").hex(refPointer).string("]").newline();
+            if (refPointer.isNull()) {
+                newList = ReferenceInternals.setNextDiscovered(current, newList);
+            } else if (HeapImpl.getHeapImpl().isInImageHeap(refPointer)) {
+                /* The referent is live and does not move. */
+            } else if (collector.isLive(refPointer)) {
+                ReferenceInternals.setReferentPointer(current, collector.getNewLocationIfMoved(refPointer));
+            } else {
+                ReferenceInternals.clear(current);
+                newList = ReferenceInternals.setNextDiscovered(current, newList);
+            }
+        }
+        setGCDiscoveredListHead(newList);
+        trace.string("]").newline();
+    }
+
     /**
      * Determine if the referent is live, updating the reference field, and dirtying cards.
      *
@@ -220,6 +340,64 @@ public class ReferenceObjectProcessing {
         return true;
     }
 
+    /**
+     * A list of discovered references that is private to one thread of a {@link ParallelScavenge},
+     * so that threads do not contend for the list of the collector. The lists are processed in
+     * parallel and then moved to the list of the collector.
+     */
+    static final class DiscoveredList {
+        private Reference<?> head;
+        private Reference<?> tail;
+
+        boolean isEmpty() {
+            return head == null;
+        }
+
+        boolean add(Reference<?> dr) {
+            if (ReferenceInternals.isDiscovered(dr)) {
+                return false;
+            }
+            if (head == null) {
+                tail = dr;
+            }
+            head = ReferenceInternals.setNextDiscovered(dr, head);
+            return true;
+        }
+
+        /** The equivalent of {@link #processDiscoveredReferences} for this list only. */
+        void process() {
+            Reference<?> newHead = null;
+            Reference<?> newTail = null;
+            Reference<?> current = head;
+            while (current != null) {
+                Reference<?> next = ReferenceInternals.getNextDiscovered(current);
+                ReferenceInternals.clearDiscovered(current);
+                if (!processReferent(current)) {
+                    if (newHead == null) {
+                        newTail = current;
+                    }
+                    newHead = ReferenceInternals.setNextDiscovered(current, newHead);
+                    HeapImpl.getHeapImpl().dirtyCardIfNecessary(current, newHead);
+                }
+                current = next;
+            }
+            head = newHead;
+            tail = newTail;
+        }
+
+        /** Moves the references of this list to the front of the list of the collector. */
+        void transferToCollector() {
+            if (head != null) {
+                Reference<?> collectorHead = getGCDiscoveredListHead();
+                ReferenceInternals.setNextDiscovered(tail, collectorHead);
+                HeapImpl.getHeapImpl().dirtyCardIfNecessary(tail, collectorHead);
+                setGCDiscoveredListHead(head);
+                head = null;
+                tail = null;
+            }
+        }
+    }
+
     /** Takes the discovered references from the collector and distributes them to their queues. */
     static final class Scatterer {
         private Scatterer() {
@@ -229,25 +407,19 @@ public class ReferenceObjectProcessing {
         static void distributeReferences() {
             final Log trace = Log.noopLog().string("[ReferenceObjectProcessing.Scatterer.distributeReferences:").newline();
             // Put discovered references on their queues
-            for (Reference<?> dr = ReferenceObjectProcessing.getGCDiscoveredListHead(); dr != null; dr = ReferenceInternals.getNextDiscovered(dr)) {
-                enqueueReference(dr, trace);
+            if (trace.isEnabled()) {
+                for (Reference<?> dr = ReferenceObjectProcessing.getGCDiscoveredListHead(); dr != null; dr = ReferenceInternals.getNextDiscovered(dr)) {
+                    trace.string("  ref: ").object(dr).newline();
+                }
             }
+            // Do not call ref.enqueue() because it can be overridden and might allocate or throw
+            ReferenceQueueInternals.enqueueDiscoveredReferences(ReferenceObjectProcessing.getGCDiscoveredListHead());
             if (SubstrateOptions.MultiThreaded.getValue()) { // notify waiters on ReferenceQueue
                 trace.string("  broadcasting").newline();
                 ReferenceQueueInternals.signalWaiters();
             }
             trace.string("]").newline();
         }
-
-        private static <T> void enqueueReference(Reference<T> ref, Log trace) {
-            trace.string("  ref: ").object(ref);
-            // Do not call ref.enqueue() because it can be overridden and might allocate or throw
-            boolean enqueued = ReferenceInternals.enqueue(ref);
-            if (enqueued) {
-                trace.string(" (enqueued)");
-            }
-            trace.newline();
-        }
     }
 
 }
@@ -672,6 +672,69 @@ public class Space {
         return copy;
     }
 
+    /**
+     * Promote an aligned Object to this Space from a thread of the {@link ParallelScavenge}. The
+     * caller has already claimed the original, so its header no longer describes the object: the
+     * original header and the size are passed in. The copy goes into the promotion buffer of the
+     * thread, a chunk that only becomes part of this Space at the end of the parallel phase.
+     */
+    Object promoteAlignedObjectParallel(Object original, UnsignedWord originalHeader, UnsignedWord size, ParallelScavenge.Worker worker) {
+        assert VMOperation.isGCInProgress();
+        assert ObjectHeaderImpl.isClaimedHeader(ObjectHeaderImpl.readHeaderFromObject(original));
+
+        Pointer copyMemory = worker.allocatePromotionMemory(this, size);
+        final Pointer originalMemory = Word.objectToUntrackedPointer(original);
+        UnsignedWord offset = WordFactory.zero();
+        while (probability(FREQUENT_PROBABILITY, offset.belowThan(size))) {
+            copyMemory.writeWord(offset, originalMemory.readWord(offset));
+            offset = offset.add(ConfigurationValues.getTarget().wordSize);
+        }
+        Object copy = copyMemory.toObject();
+        /* The original has the claimed header, the copy needs the real one. */
+        ObjectHeaderImpl.writeHeaderToObject(copy, originalHeader);
+        AlignedHeapChunk.setUpRememberedSetForObjectOfAlignedHeapChunk(AlignedHeapChunk.getEnclosingAlignedHeapChunk(copy), copy);
+
+        ObjectHeaderImpl.installClaimedForwardingPointer(original, copy);
+        return copy;
+    }
+
+    /**
+     * Get a chunk for the promotion buffer of a thread of the {@link ParallelScavenge}. The chunk
+     * already belongs to this Space, but it is not linked into the chunk list until
+     * {@link #appendAlignedHeapChunk} is called when the parallel phase is over. The caller must
+     * make sure that no other thread requests a chunk at the same time.
+     */
+    AlignedHeapChunk.AlignedHeader requestPromotionBufferChunk() {
+        assert VMOperation.isGCInProgress() : "Should only be called from the collector.";
+        final AlignedHeapChunk.AlignedHeader aChunk = HeapChunkProvider.get().produceAlignedChunk();
+        if (aChunk.isNonNull()) {
+            aChunk.setSpace(this);
+            aChunk.setPrevious(WordFactory.nullPointer());
+            aChunk.setNext(WordFactory.nullPointer());
+        }
+        return aChunk;
+    }
+
+    /**
+     * Promote an UnalignedHeapChunk to this Space from a thread of the {@link ParallelScavenge}, if
+     * no other thread did so already. Like a promotion buffer, the chunk is only linked into this
+     * Space at the end of the parallel phase. The caller must make sure that no other thread
+     * promotes a chunk at the same time.
+     *
+     * @return true if the chunk was promoted by this call.
+     */
+    boolean promoteUnalignedHeapChunkParallel(UnalignedHeapChunk.UnalignedHeader chunk) {
+        Space originalSpace = chunk.getSpace();
+        if (!originalSpace.isFrom()) {
+            return false;
+        }
+        assert this != originalSpace;
+        originalSpace.extractUnalignedHeapChunk(chunk);
+        chunk.setSpace(this);
+        UnalignedHeapChunk.setUpRememberedSetOfUnalignedHeapChunk(chunk);
+        return true;
+    }
+
     /** Promote an AlignedHeapChunk by moving it to this space, if necessary. */
     private void promoteAlignedHeapChunk(AlignedHeapChunk.AlignedHeader chunk, Space originalSpace) {
         assert this != originalSpace && originalSpace.isFrom();
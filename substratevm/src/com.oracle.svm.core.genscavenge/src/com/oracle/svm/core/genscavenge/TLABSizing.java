@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.genscavenge;
+
+import static com.oracle.svm.core.graal.snippets.SubstrateAllocationSnippets.TLAB_TOP_IDENTITY;
+
+import org.graalvm.nativeimage.IsolateThread;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.SubstrateOptions;
+import com.oracle.svm.core.annotate.Uninterruptible;
+import com.oracle.svm.core.config.ConfigurationValues;
+import com.oracle.svm.core.genscavenge.ThreadLocalAllocation.Descriptor;
+import com.oracle.svm.core.log.Log;
+import com.oracle.svm.core.thread.VMOperation;
+import com.oracle.svm.core.thread.VMThreads;
+import com.oracle.svm.core.util.UnsignedUtils;
+
+/**
+ * Adaptive sizing and statistics of thread-local allocation buffers.
+ *
+ * By default, a thread allocates in an aligned chunk that it owns, and its TLAB spans the whole
+ * chunk. With {@link HeapOptions#ResizeTLAB}, the size of the TLAB is set according to the
+ * allocation rate of the thread, so that the thread refills its TLAB about
+ * {@link HeapOptions#TLABRefillTarget} times between collections. A TLAB that is smaller than a
+ * chunk is carved from a chunk that is shared by all threads. When such a TLAB is retired, its
+ * unused part is given back to the shared chunk if no other TLAB was carved after it, and is
+ * otherwise filled with a filler array, which is counted as waste. So threads that allocate little
+ * do not keep a whole chunk each until the next collection.
+ *
+ * The allocation rate of each thread is sampled at every collection and smoothed with an
+ * exponentially weighted average. A desired size of 0 means that the TLAB spans the whole chunk,
+ * which is the case for new threads and when resizing is disabled.
+ */
+final class TLABSizing {
+
+    /* Statistics of the last collection cycle, updated at a safepoint. */
+    private static int cycleThreads;
+    private static long cycleRefills;
+    private static long cycleSlowPathAllocations;
+    private static UnsignedWord cycleAllocatedBytes;
+    private static UnsignedWord cycleWastedBytes;
+    private static UnsignedWord cycleMinDesiredSize;
+    private static UnsignedWord cycleMaxDesiredSize;
+
+    private TLABSizing() {
+    }
+
+    /** Returns true if the TLAB is carved from the shared chunk instead of spanning a chunk. */
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    static boolean isCarved(Descriptor tlab) {
+        return tlab.getDesiredSize().notEqual(0);
+    }
+
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    static void recordRefill(Descriptor tlab) {
+        tlab.setRefills(tlab.getRefills() + 1);
+    }
+
+    /** Records space that was left unused at the end of a TLAB or chunk. */
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    static void recordWaste(Descriptor tlab, UnsignedWord waste) {
+        tlab.setWastedBytes(tlab.getWastedBytes().add(waste));
+    }
+
+    /** Records the bytes that were allocated since {@link Descriptor#getExtentStart()}. */
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    static void recordAllocation(Descriptor tlab, Pointer top) {
+        Pointer extentStart = tlab.getExtentStart();
+        if (extentStart.isNonNull()) {
+            tlab.setAllocatedBytes(tlab.getAllocatedBytes().add(top.subtract(extentStart)));
+        }
+    }
+
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    static void recordSlowPathAllocation(Descriptor tlab) {
+        tlab.setSlowPathAllocations(tlab.getSlowPathAllocations() + 1);
+    }
+
+    /**
+     * Collects the statistics of all threads for the cycle that ends with the current collection,
+     * and computes the desired TLAB sizes for the next cycle. Must be called after the TLABs have
+     * been retired.
+     */
+    static void endCycle() {
+        VMOperation.guaranteeInProgress("TLABSizing.endCycle");
+        cycleThreads = 0;
+        cycleRefills = 0;
+        cycleSlowPathAllocations = 0;
+        cycleAllocatedBytes = WordFactory.zero();
+        cycleWastedBytes = WordFactory.zero();
+        cycleMinDesiredSize = UnsignedUtils.MAX_VALUE;
+        cycleMaxDesiredSize = WordFactory.zero();
+        if (SubstrateOptions.MultiThreaded.getValue()) {
+            for (IsolateThread vmThread = VMThreads.firstThread(); vmThread.isNonNull(); vmThread = VMThreads.nextThread(vmThread)) {
+                endCycle(ThreadLocalAllocation.regularTLAB.getAddress(vmThread));
+            }
+        } else {
+            endCycle(ThreadLocalAllocation.regularTLAB.getAddress(WordFactory.nullPointer()));
+        }
+    }
+
+    private static void endCycle(Descriptor tlab) {
+        assert tlab.getAllocationTop(TLAB_TOP_IDENTITY).isNull() : "TLAB must be retired";
+        UnsignedWord allocated = tlab.getAllocatedBytes();
+        cycleThreads++;
+        cycleRefills += tlab.getRefills();
+        cycleSlowPathAllocations += tlab.getSlowPathAllocations();
+        cycleAllocatedBytes = cycleAllocatedBytes.add(allocated);
+        cycleWastedBytes = cycleWastedBytes.add(tlab.getWastedBytes());
+
+        UnsignedWord desiredSize = WordFactory.zero();
+        if (HeapOptions.ResizeTLAB.getValue()) {
+            long average = updateAverage(tlab.getAverageAllocatedBytes().rawValue(), allocated.rawValue(), HeapOptions.TLABAllocationWeight.getValue());
+            tlab.setAverageAllocatedBytes(WordFactory.unsigned(average));
+            desiredSize = WordFactory.unsigned(computeDesiredSize(average, HeapOptions.TLABRefillTarget.getValue(), HeapOptions.MinTLABSize.getValue(),
+                            ConfigurationValues.getObjectLayout().getAlignment(), getMaxSize().rawValue()));
+        }
+        tlab.setDesiredSize(desiredSize);
+        UnsignedWord effectiveSize = desiredSize.equal(0) ? getMaxSize() : desiredSize;
+        cycleMinDesiredSize = UnsignedUtils.min(cycleMinDesiredSize, effectiveSize);
+        cycleMaxDesiredSize = UnsignedUtils.max(cycleMaxDesiredSize, effectiveSize);
+
+        tlab.setAllocatedBytes(WordFactory.zero());
+        tlab.setWastedBytes(WordFactory.zero());
+        tlab.setRefills(0);
+        tlab.setSlowPathAllocations(0);
+    }
+
+    /** Returns the average allocation after a cycle in which {@code allocated} bytes were allocated. */
+    static long updateAverage(long average, long allocated, long weightPercent) {
+        if (average == 0) {
+            return allocated;
+        }
+        return (weightPercent * allocated + (100 - weightPercent) * average) / 100;
+    }
+
+    /**
+     * Returns the desired size of a TLAB for a thread that allocates {@code averageAllocatedBytes}
+     * per cycle, or 0 if the TLAB should span a whole chunk of {@code maxSize} bytes.
+     */
+    static long computeDesiredSize(long averageAllocatedBytes, long refillTarget, long minSize, long alignment, long maxSize) {
+        long size = Math.max(averageAllocatedBytes / Math.max(1, refillTarget), minSize);
+        size = (size + alignment - 1) / alignment * alignment;
+        /* A TLAB that is as large as the chunk is not carved from the shared chunk. */
+        return size < maxSize ? size : 0;
+    }
+
+    private static UnsignedWord getMaxSize() {
+        return HeapPolicy.getAlignedHeapChunkSize().subtract(AlignedHeapChunk.getObjectsStartOffset());
+    }
+
+    /** Prints the statistics of the last cycle, on one line. */
+    static void log(Log log) {
+        if (cycleThreads == 0) {
+            return;
+        }
+        log.string("[TLAB: ").signed(cycleThreads).string(" threads, ");
+        log.signed(cycleRefills).string(" refills, ");
+        log.unsigned(cycleAllocatedBytes.unsignedDivide(1024)).string("K allocated, ");
+        log.unsigned(cycleWastedBytes.unsignedDivide(1024)).string("K wasted, ");
+        log.signed(cycleSlowPathAllocations).string(" slow-path allocations, size ");
+        log.unsigned(cycleMinDesiredSize.unsignedDivide(1024)).string("K..").unsigned(cycleMaxDesiredSize.unsignedDivide(1024)).string("K]").newline();
+    }
+}
@@ -46,6 +46,8 @@ import org.graalvm.word.WordFactory;
 import com.oracle.svm.core.SubstrateOptions;
 import com.oracle.svm.core.annotate.RestrictHeapAccess;
 import com.oracle.svm.core.annotate.Uninterruptible;
+import com.oracle.svm.core.config.ConfigurationValues;
+import com.oracle.svm.core.config.ObjectLayout;
 import com.oracle.svm.core.genscavenge.AlignedHeapChunk.AlignedHeader;
 import com.oracle.svm.core.genscavenge.UnalignedHeapChunk.UnalignedHeader;
 import com.oracle.svm.core.genscavenge.graal.nodes.FormatArrayNode;
@@ -53,6 +55,9 @@ import com.oracle.svm.core.genscavenge.graal.nodes.FormatObjectNode;
 import com.oracle.svm.core.graal.snippets.DeoptTester;
 import com.oracle.svm.core.hub.DynamicHub;
 import com.oracle.svm.core.hub.LayoutEncoding;
+import com.oracle.svm.core.jdk.UninterruptibleUtils;
+import com.oracle.svm.core.jfr.JfrEvents;
+import com.oracle.svm.core.locks.VMMutex;
 import com.oracle.svm.core.log.Log;
 import com.oracle.svm.core.snippets.KnownIntrinsics;
 import com.oracle.svm.core.snippets.SubstrateForeignCallTarget;
@@ -61,8 +66,11 @@ import com.oracle.svm.core.thread.VMThreads;
 import com.oracle.svm.core.threadlocal.FastThreadLocalBytes;
 import com.oracle.svm.core.threadlocal.FastThreadLocalFactory;
 import com.oracle.svm.core.threadlocal.FastThreadLocalWord;
+import com.oracle.svm.core.util.UnsignedUtils;
 import com.oracle.svm.core.util.VMError;
 
+import jdk.vm.ci.meta.JavaKind;
+
 /**
  * Bump-pointer allocation from thread-local top and end Pointers.
  *
@@ -99,6 +107,57 @@ public final class ThreadLocalAllocation {
 
         @RawField
         void setAllocationEnd(Pointer end, LocationIdentity endIdentity);
+
+        /** The allocation top when the allocation end was last set, see {@link TLABSizing}. */
+        @RawField
+        Pointer getExtentStart();
+
+        @RawField
+        void setExtentStart(Pointer start);
+
+        /** The shared chunk from which the current TLAB is carved, or null. */
+        @RawField
+        AlignedHeader getSharedChunk();
+
+        @RawField
+        void setSharedChunk(AlignedHeader chunk);
+
+        /** The desired size of a carved TLAB, or 0 for a TLAB that spans a whole chunk. */
+        @RawField
+        UnsignedWord getDesiredSize();
+
+        @RawField
+        void setDesiredSize(UnsignedWord size);
+
+        @RawField
+        UnsignedWord getAllocatedBytes();
+
+        @RawField
+        void setAllocatedBytes(UnsignedWord bytes);
+
+        @RawField
+        UnsignedWord getAverageAllocatedBytes();
+
+        @RawField
+        void setAverageAllocatedBytes(UnsignedWord bytes);
+
+        @RawField
+        UnsignedWord getWastedBytes();
+
+        @RawField
+        void setWastedBytes(UnsignedWord bytes);
+
+        @RawField
+        int getRefills();
+
+        @RawField
+        void setRefills(int refills);
+
+        @RawField
+        int getSlowPathAllocations();
+
+        @RawField
+        void setSlowPathAllocations(int allocations);
     }
 
     /** TLAB for regular allocations. */
@@ -107,6 +166,15 @@ public final class ThreadLocalAllocation {
     /** A thread-local free list of aligned chunks. */
     protected static final FastThreadLocalWord<AlignedHeader> freeList = FastThreadLocalFactory.createWord();
 
+    /**
+     * The aligned chunk from which TLABs that are smaller than a chunk are carved, see
+     * {@link TLABSizing}, and the list of shared chunks that are full. Both are only accessed with
+     * {@link #SHARED_CHUNK_MUTEX} held, or at a safepoint.
+     */
+    private static final UninterruptibleUtils.AtomicPointer<AlignedHeader> sharedChunk = new UninterruptibleUtils.AtomicPointer<>();
+    private static final UninterruptibleUtils.AtomicPointer<AlignedHeader> fullSharedChunks = new UninterruptibleUtils.AtomicPointer<>();
+    private static final VMMutex SHARED_CHUNK_MUTEX = new VMMutex();
+
     private static final OutOfMemoryError arrayAllocationTooLarge = new OutOfMemoryError("Array allocation too large.");
 
     private ThreadLocalAllocation() {
@@ -159,14 +227,18 @@ public final class ThreadLocalAllocation {
         // Policy: Possibly collect before this allocation.
         HeapImpl.getHeapImpl().getHeapPolicy().getCollectOnAllocationPolicy().maybeCauseCollection();
 
-        /*
-         * On this path allocation failed in the 'allocation chunk', thus we refill it, i.e.., add a
-         * new allocation chunk at the front of the TLAB's aligned chunks.
-         */
-        AlignedHeader newChunk = prepareNewAllocationChunk(tlab);
-
         UnsignedWord size = LayoutEncoding.getInstanceSize(hub.getLayoutEncoding());
-        Object result = allocateNewInstanceUninterruptibly(hub, tlab, rememberedSet, size, newChunk);
+        /* First try to carve a new TLAB from the shared chunk. */
+        Object result = allocateNewInstanceUninterruptibly(hub, tlab, rememberedSet, size, WordFactory.nullPointer());
+        if (result == null) {
+            /*
+             * The allocation chunk is full, thus we refill it, i.e.., add a new allocation chunk at
+             * the front of the TLAB's aligned chunks, or install a new shared chunk.
+             */
+            AlignedHeader newChunk = prepareNewAllocationChunk(tlab);
+            result = allocateNewInstanceUninterruptibly(hub, tlab, rememberedSet, size, newChunk);
+        }
+        JfrEvents.emitObjectAllocationInNewTLAB(DynamicHub.toClass(hub).getName(), size.rawValue(), getTLABSize(tlab));
 
         log().string("  ThreadLocalAllocation.allocateNewInstance returns ").object(result).string(" .. ").hex(LayoutEncoding.getObjectEnd(result)).string("]").newline();
 
@@ -175,16 +247,16 @@ public final class ThreadLocalAllocation {
         return result;
     }
 
+    /**
+     * Allocates in the new chunk, or, if {@code newChunk} is null, in a TLAB that is carved from
+     * the current shared chunk. Returns null if a new chunk is needed.
+     */
     @Uninterruptible(reason = "Holds uninitialized memory, modifies TLAB")
     private static Object allocateNewInstanceUninterruptibly(DynamicHub hub, ThreadLocalAllocation.Descriptor tlab, boolean rememberedSet, UnsignedWord size, AlignedHeader newChunk) {
-        registerNewAllocationChunk(tlab, newChunk);
-
-        /*
-         * Allocate the memory. We must have a chunk, because we just registered one and we are
-         * still in the same block of uninterruptible code.
-         */
-        Pointer memory = allocateMemory(tlab, size);
-        assert memory.isNonNull();
+        Pointer memory = allocateMemoryInAllocationChunk(tlab, size, newChunk);
+        if (memory.isNull()) {
+            return null;
+        }
 
         /* Install the DynamicHub and zero the fields. */
         return FormatObjectNode.formatObject(memory, DynamicHub.toClass(hub), rememberedSet, true, true);
@@ -242,10 +314,15 @@ public final class ThreadLocalAllocation {
             /* Large arrays go into their own unaligned chunk. */
             UnalignedHeapChunk.UnalignedHeader uChunk = HeapChunkProvider.get().produceUnalignedChunk(size);
             result = allocateLargeArray(hub, length, size, uChunk, tlab, rememberedSet);
+            JfrEvents.emitObjectAllocationOutsideTLAB(DynamicHub.toClass(hub).getName(), size.rawValue());
         } else {
             /* Small arrays go into the regular aligned chunk. */
-            AlignedHeader newChunk = prepareNewAllocationChunk(tlab);
-            result = allocateSmallArray(hub, length, size, tlab, rememberedSet, newChunk);
+            result = allocateSmallArray(hub, length, size, tlab, rememberedSet, WordFactory.nullPointer());
+            if (result == null) {
+                AlignedHeader newChunk = prepareNewAllocationChunk(tlab);
+                result = allocateSmallArray(hub, length, size, tlab, rememberedSet, newChunk);
+            }
+            JfrEvents.emitObjectAllocationInNewTLAB(DynamicHub.toClass(hub).getName(), size.rawValue(), getTLABSize(tlab));
         }
         log().string("  ThreadLocalAllocation.allocateNewArray returns ").object(result).string(" .. ").hex(LayoutEncoding.getObjectEnd(result)).string("]").newline();
 
@@ -255,14 +332,10 @@ public final class ThreadLocalAllocation {
 
     @Uninterruptible(reason = "Holds uninitialized memory, modifies TLAB")
     private static Object allocateSmallArray(DynamicHub hub, int length, UnsignedWord size, ThreadLocalAllocation.Descriptor tlab, boolean rememberedSet, AlignedHeader newChunk) {
-        registerNewAllocationChunk(tlab, newChunk);
-
-        /*
-         * Allocate the memory. We must have a chunk, because we just registered one and we are
-         * still in the same block of uninterruptible code.
-         */
-        Pointer memory = allocateMemory(tlab, size);
-        assert memory.isNonNull();
+        Pointer memory = allocateMemoryInAllocationChunk(tlab, size, newChunk);
+        if (memory.isNull()) {
+            return null;
+        }
         /* Install the DynamicHub and length, and zero the elements. */
         return FormatArrayNode.formatArray(memory, DynamicHub.toClass(hub), length, rememberedSet, false, true, true);
     }
@@ -281,6 +354,147 @@ public final class ThreadLocalAllocation {
         return FormatArrayNode.formatArray(memory, DynamicHub.toClass(hub), length, rememberedSet, true, true, true);
     }
 
+    @Uninterruptible(reason = "Returns uninitialized memory, modifies TLAB", callerMustBe = true)
+    private static Pointer allocateMemoryInAllocationChunk(Descriptor tlab, UnsignedWord size, AlignedHeader newChunk) {
+        if (newChunk.isNull()) {
+            TLABSizing.recordSlowPathAllocation(tlab);
+        }
+        if (TLABSizing.isCarved(tlab)) {
+            return allocateMemoryInSharedChunk(tlab, size, newChunk);
+        }
+        if (newChunk.isNull()) {
+            /* A TLAB that spans its chunk can only be refilled with a new chunk. */
+            return WordFactory.nullPointer();
+        }
+        registerNewAllocationChunk(tlab, newChunk);
+
+        /*
+         * Allocate the memory. We must have a chunk, because we just registered one and we are
+         * still in the same block of uninterruptible code.
+         */
+        Pointer memory = allocateMemory(tlab, size);
+        assert memory.isNonNull();
+        return memory;
+    }
+
+    /**
+     * Retires the current TLAB, carves a new one from the shared chunk and allocates there. If the
+     * shared chunk has no room, {@code newChunk} becomes the shared chunk, or, if it is null, null
+     * is returned.
+     *
+     * A carved TLAB ends {@link #getFillerSize() filler size} bytes before the memory that was
+     * carved for it, so that its rest can always be filled when it is retired.
+     */
+    @Uninterruptible(reason = "Returns uninitialized memory, modifies TLAB", callerMustBe = true)
+    private static Pointer allocateMemoryInSharedChunk(Descriptor tlab, UnsignedWord size, AlignedHeader newChunk) {
+        retireAllocationChunk(tlab);
+
+        UnsignedWord reserve = getFillerSize();
+        UnsignedWord tlabSize = UnsignedUtils.max(tlab.getDesiredSize(), size).add(reserve);
+        AlignedHeader spareChunk = newChunk;
+        AlignedHeader chunk;
+        Pointer start;
+        Pointer end;
+        SHARED_CHUNK_MUTEX.lockNoTransition();
+        try {
+            chunk = sharedChunk.get();
+            if (chunk.isNull() || chunk.getEnd().subtract(chunk.getTop()).belowThan(size.add(reserve))) {
+                if (spareChunk.isNull()) {
+                    return WordFactory.nullPointer();
+                }
+                if (chunk.isNonNull()) {
+                    chunk.setNext(fullSharedChunks.get());
+                    fullSharedChunks.set(chunk);
+                }
+                chunk = spareChunk;
+                spareChunk = WordFactory.nullPointer();
+                sharedChunk.set(chunk);
+            }
+            start = chunk.getTop();
+            end = start.add(UnsignedUtils.min(tlabSize, chunk.getEnd().subtract(start)));
+            chunk.setTop(end);
+        } finally {
+            SHARED_CHUNK_MUTEX.unlock();
+        }
+        if (spareChunk.isNonNull()) {
+            /* Another thread installed a new shared chunk in the meantime. */
+            pushToThreadLocalFreeList(spareChunk);
+        }
+
+        TLABSizing.recordRefill(tlab);
+        tlab.setSharedChunk(chunk);
+        tlab.setExtentStart(start);
+        tlab.setAllocationTop(start, TLAB_TOP_IDENTITY);
+        tlab.setAllocationEnd(end.subtract(reserve), TLAB_END_IDENTITY);
+        return allocateMemory(tlab, size);
+    }
+
+    /**
+     * Retires a TLAB that is carved from a shared chunk. Its unused part is given back to the chunk
+     * if no other TLAB was carved after it, and is filled with a filler array otherwise, so that
+     * the objects of the chunk can still be walked.
+     */
+    @Uninterruptible(reason = "Modifies TLAB")
+    private static void retireSharedAllocation(Descriptor tlab, Pointer allocationTop) {
+        AlignedHeader chunk = tlab.getSharedChunk();
+        Pointer carvedEnd = tlab.getAllocationEnd(TLAB_END_IDENTITY).add(getFillerSize());
+        boolean givenBack;
+        SHARED_CHUNK_MUTEX.lockNoTransition();
+        try {
+            givenBack = chunk.getTop().equal(carvedEnd);
+            if (givenBack) {
+                chunk.setTop(allocationTop);
+            }
+        } finally {
+            SHARED_CHUNK_MUTEX.unlock();
+        }
+        if (!givenBack) {
+            UnsignedWord rest = carvedEnd.subtract(allocationTop);
+            formatFiller(allocationTop, rest);
+            TLABSizing.recordWaste(tlab, rest);
+        }
+        tlab.setSharedChunk(WordFactory.nullPointer());
+    }
+
+    /** The size of the smallest filler array, which is reserved at the end of carved TLABs. */
+    @Fold
+    static UnsignedWord getFillerSize() {
+        return WordFactory.unsigned(ConfigurationValues.getObjectLayout().getArraySize(JavaKind.Int, 0));
+    }
+
+    /** Formats an int array that covers exactly {@code size} bytes at {@code memory}. */
+    @Uninterruptible(reason = "Formats an object in memory that is not yet parseable.", callerMustBe = true)
+    private static void formatFiller(Pointer memory, UnsignedWord size) {
+        ObjectLayout layout = ConfigurationValues.getObjectLayout();
+        assert size.aboveOrEqual(getFillerSize()) && UnsignedUtils.isAMultiple(size, WordFactory.unsigned(layout.getAlignment()));
+        int length = (int) (size.rawValue() - layout.getArrayBaseOffset(JavaKind.Int)) >> layout.getArrayIndexShift(JavaKind.Int);
+        FormatArrayNode.formatArray(memory, int[].class, length, false, false, false, false);
+    }
+
+    /** Appends the shared chunks to the space, after all carved TLABs have been retired. */
+    private static void flushSharedChunks(Space space) {
+        AlignedHeader chunk = sharedChunk.get();
+        sharedChunk.set(WordFactory.nullPointer());
+        if (chunk.isNonNull()) {
+            chunk.setNext(fullSharedChunks.get());
+        } else {
+            chunk = fullSharedChunks.get();
+        }
+        fullSharedChunks.set(WordFactory.nullPointer());
+        while (chunk.isNonNull()) {
+            AlignedHeader next = chunk.getNext();
+            log().string("  shared chunk ").hex(chunk).newline();
+            space.appendAlignedHeapChunk(chunk);
+            chunk = next;
+        }
+    }
+
+    /** Returns the current shared chunk, which must only be used at a safepoint. */
+    static AlignedHeader getSharedAllocationChunk() {
+        VMOperation.guaranteeInProgressAtSafepoint("The shared chunk changes outside of safepoints.");
+        return sharedChunk.get();
+    }
+
     /**
      * The implementation of the AllocationSnippets.fastAllocateImpl(Unsigned).
      * <p>
@@ -327,6 +541,8 @@ public final class ThreadLocalAllocation {
         } else {
             disableThreadLocalAllocation(WordFactory.nullPointer());
         }
+        /* No TLABs are carved from the shared chunks anymore. */
+        flushSharedChunks(HeapImpl.getHeapImpl().getAllocationSpace());
     }
 
     public static void disableThreadLocalAllocation(IsolateThread vmThread) {
@@ -351,6 +567,8 @@ public final class ThreadLocalAllocation {
         }
         freeHeapChunks(regularTLAB.getAddress(thread));
         HeapChunkProvider.freeAlignedChunkList(freeList.get());
+        HeapChunkProvider.freeAlignedChunkList(sharedChunk.get());
+        HeapChunkProvider.freeAlignedChunkList(fullSharedChunks.get());
     }
 
     @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
@@ -520,7 +738,10 @@ public final class ThreadLocalAllocation {
      * allocation failed) add a new allocation chunk at the front of the TLAB's aligned chunks.
      */
     private static AlignedHeader prepareNewAllocationChunk(Descriptor tlab) {
-        retireAllocationChunk(tlab);
+        if (!TLABSizing.isCarved(tlab)) {
+            /* A carved TLAB has already been retired when it was found that the shared chunk is full. */
+            retireAllocationChunkForRefill(tlab);
+        }
 
         /*
          * Get a new chunk, either from the thread-local free list, or if that is empty, from the
@@ -547,6 +768,31 @@ public final class ThreadLocalAllocation {
         resumeAllocationChunk(tlab);
     }
 
+    /** Retire the current allocation chunk, and account for the space left in it as waste. */
+    @Uninterruptible(reason = "Modifies TLAB")
+    private static void retireAllocationChunkForRefill(Descriptor tlab) {
+        Pointer allocationTop = tlab.getAllocationTop(TLAB_TOP_IDENTITY);
+        UnsignedWord waste = WordFactory.zero();
+        if (allocationTop.isNonNull()) {
+            waste = tlab.getAlignedChunk().getEnd().subtract(allocationTop);
+        }
+        TLABSizing.recordRefill(tlab);
+        TLABSizing.recordWaste(tlab, waste);
+        retireAllocationChunk(tlab);
+    }
+
+    /**
+     * The size of the current TLAB, from where allocation in it started to its end, or 0 if the
+     * thread has no TLAB because a collection retired it in the meantime.
+     */
+    private static long getTLABSize(Descriptor tlab) {
+        Pointer start = tlab.getExtentStart();
+        if (start.isNull()) {
+            return 0;
+        }
+        return tlab.getAllocationEnd(TLAB_END_IDENTITY).subtract(start).rawValue();
+    }
+
     /**
      * Retire the current allocation chunk of current TLAB.
      */
@@ -554,6 +800,16 @@ public final class ThreadLocalAllocation {
     private static void retireAllocationChunk(Descriptor tlab) {
         Pointer allocationTop = tlab.getAllocationTop(TLAB_TOP_IDENTITY);
         if (allocationTop.isNonNull()) {
+            TLABSizing.recordAllocation(tlab, allocationTop);
+            tlab.setExtentStart(WordFactory.nullPointer());
+
+            if (tlab.getSharedChunk().isNonNull()) {
+                retireSharedAllocation(tlab, allocationTop);
+                tlab.setAllocationTop(WordFactory.nullPointer(), TLAB_TOP_IDENTITY);
+                tlab.setAllocationEnd(WordFactory.nullPointer(), TLAB_END_IDENTITY);
+                return;
+            }
+
             AlignedHeader alignedChunk = tlab.getAlignedChunk();
 
             assert alignedChunk.getTop().isNull();
@@ -580,7 +836,9 @@ public final class ThreadLocalAllocation {
 
         AlignedHeader alignedChunk = tlab.getAlignedChunk();
         if (alignedChunk.isNonNull()) {
-            tlab.setAllocationTop(alignedChunk.getTop(), TLAB_TOP_IDENTITY);
+            Pointer top = alignedChunk.getTop();
+            tlab.setAllocationTop(top, TLAB_TOP_IDENTITY);
+            tlab.setExtentStart(top);
             /*
              * It happens that prefetch instructions access memory outside the TLAB. At the moment,
              * this is not an issue as we only support architectures where the prefetch instructions
@@ -621,5 +879,23 @@ public final class ThreadLocalAllocation {
         public static boolean isHeadThreadLocalFreeList(AlignedHeader alignedChunk) {
             return freeList.get().equal(alignedChunk);
         }
+
+        /** Returns the desired TLAB size of the current thread, or 0 if its TLAB spans a chunk. */
+        public static UnsignedWord getDesiredTLABSize() {
+            return regularTLAB.getAddress().getDesiredSize();
+        }
+
+        /** Returns true if the current TLAB of the current thread is carved from a shared chunk. */
+        public static boolean isTLABCarved() {
+            return regularTLAB.getAddress().getSharedChunk().isNonNull();
+        }
+
+        public static long updateAverage(long average, long allocated, long weightPercent) {
+            return TLABSizing.updateAverage(average, allocated, weightPercent);
+        }
+
+        public static long computeDesiredSize(long averageAllocatedBytes, long refillTarget, long minSize, long alignment, long maxSize) {
+            return TLABSizing.computeDesiredSize(averageAllocatedBytes, refillTarget, minSize, alignment, maxSize);
+        }
     }
 }
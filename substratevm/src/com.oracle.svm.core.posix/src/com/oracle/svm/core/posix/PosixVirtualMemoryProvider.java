@@ -24,6 +24,7 @@
  */
 package com.oracle.svm.core.posix;
 
+import static com.oracle.svm.core.posix.headers.Mman.MADV_DONTNEED;
 import static com.oracle.svm.core.posix.headers.Mman.MAP_ANON;
 import static com.oracle.svm.core.posix.headers.Mman.MAP_FAILED;
 import static com.oracle.svm.core.posix.headers.Mman.MAP_FIXED;
@@ -33,6 +34,7 @@ import static com.oracle.svm.core.posix.headers.Mman.PROT_EXEC;
 import static com.oracle.svm.core.posix.headers.Mman.PROT_NONE;
 import static com.oracle.svm.core.posix.headers.Mman.PROT_READ;
 import static com.oracle.svm.core.posix.headers.Mman.PROT_WRITE;
+import static com.oracle.svm.core.posix.headers.Mman.NoTransitions.madvise;
 import static com.oracle.svm.core.posix.headers.Mman.NoTransitions.mmap;
 import static com.oracle.svm.core.posix.headers.Mman.NoTransitions.mprotect;
 import static com.oracle.svm.core.posix.headers.Mman.NoTransitions.munmap;
@@ -144,6 +146,16 @@ public class PosixVirtualMemoryProvider implements VirtualMemoryProvider {
         return result.notEqual(MAP_FAILED()) ? 0 : -1;
     }
 
+    /**
+     * Uses {@code MADV_DONTNEED}, after which private anonymous memory reads as zero on Linux. Other
+     * systems might retain the contents, which the contract of this method permits.
+     */
+    @Override
+    @Uninterruptible(reason = "May be called from uninterruptible code.", mayBeInlined = true)
+    public int discard(PointerBase start, UnsignedWord nbytes) {
+        return madvise(start, nbytes, MADV_DONTNEED());
+    }
+
     @Override
     @Uninterruptible(reason = "May be called from uninterruptible code.", mayBeInlined = true)
     public int free(PointerBase start, UnsignedWord nbytes) {
@@ -70,6 +70,12 @@ public class Mman {
     @CConstant
     public static native PointerBase MAP_FAILED();
 
+    @CConstant
+    public static native int MADV_DONTNEED();
+
+    @CConstant
+    public static native int MADV_WILLNEED();
+
     @CFunction
     public static native Pointer mmap(PointerBase addr, UnsignedWord len, int prot, int flags, int fd, long offset);
 
@@ -85,5 +91,8 @@ public class Mman {
 
         @CFunction(transition = Transition.NO_TRANSITION)
         public static native int mprotect(PointerBase addr, UnsignedWord len, int prot);
+
+        @CFunction(transition = Transition.NO_TRANSITION)
+        public static native int madvise(PointerBase addr, UnsignedWord len, int advice);
     }
 }
@@ -34,13 +34,18 @@ import static com.oracle.svm.core.Isolates.IMAGE_HEAP_WRITABLE_END;
 import static com.oracle.svm.core.posix.headers.LibC.free;
 import static com.oracle.svm.core.posix.headers.LibC.malloc;
 import static com.oracle.svm.core.posix.headers.LibC.memcpy;
+import static com.oracle.svm.core.posix.headers.Mman.MADV_WILLNEED;
+import static com.oracle.svm.core.posix.headers.Mman.NoTransitions.madvise;
 import static com.oracle.svm.core.posix.linux.ProcFSSupport.findMapping;
+import static com.oracle.svm.core.util.PointerUtils.roundDown;
 import static com.oracle.svm.core.util.PointerUtils.roundUp;
 import static com.oracle.svm.core.util.UnsignedUtils.isAMultiple;
 import static org.graalvm.word.WordFactory.signed;
 import static org.graalvm.word.WordFactory.unsigned;
 
+import org.graalvm.compiler.api.replacements.Fold;
 import org.graalvm.compiler.nodes.extended.MembarNode;
+import org.graalvm.compiler.options.Option;
 import org.graalvm.compiler.word.Word;
 import org.graalvm.nativeimage.ImageSingletons;
 import org.graalvm.nativeimage.StackValue;
@@ -62,6 +67,7 @@ import com.oracle.svm.core.c.CGlobalData;
 import com.oracle.svm.core.c.CGlobalDataFactory;
 import com.oracle.svm.core.c.function.CEntryPointErrors;
 import com.oracle.svm.core.heap.Heap;
+import com.oracle.svm.core.option.HostedOptionKey;
 import com.oracle.svm.core.os.ImageHeapProvider;
 import com.oracle.svm.core.os.VirtualMemoryProvider;
 import com.oracle.svm.core.os.VirtualMemoryProvider.Access;
@@ -70,6 +76,7 @@ import com.oracle.svm.core.posix.headers.Fcntl;
 import com.oracle.svm.core.posix.headers.LibC;
 import com.oracle.svm.core.posix.headers.Unistd;
 import com.oracle.svm.core.posix.headers.linux.LinuxStat;
+import com.oracle.svm.core.util.UserError;
 
 import jdk.vm.ci.code.MemoryBarriers;
 
@@ -77,6 +84,7 @@ import jdk.vm.ci.code.MemoryBarriers;
 class LinuxImageHeapProviderFeature implements Feature {
     @Override
     public void duringSetup(DuringSetupAccess access) {
+        LinuxImageHeapProvider.getPrefetchedPartitions();
         if (!ImageSingletons.contains(ImageHeapProvider.class)) {
             ImageSingletons.add(ImageHeapProvider.class, new LinuxImageHeapProvider());
         }
@@ -95,9 +103,20 @@ class LinuxImageHeapProviderFeature implements Feature {
  * have not been modified, as well as lazily load them only when needed.
  *
  * The implementation avoids dirtying the pages of the original, and only referencing what is
- * strictly required.
+ * strictly required. Partitions of the image heap that are known to be accessed soon after isolate
+ * creation can be prefetched with {@link Options#PrefetchImageHeapPartitions}, which lets the kernel
+ * read them ahead instead of faulting them in one page at a time.
  */
 public class LinuxImageHeapProvider implements ImageHeapProvider {
+    public static class Options {
+        @Option(help = "Comma-separated list of image heap partitions to prefetch when an isolate is created: 'readonly', 'relocatable', 'writable', or 'all'.")//
+        public static final HostedOptionKey<String> PrefetchImageHeapPartitions = new HostedOptionKey<>("");
+    }
+
+    private static final int PREFETCH_READ_ONLY = 1 << 0;
+    private static final int PREFETCH_RELOCATABLE = 1 << 1;
+    private static final int PREFETCH_WRITABLE = 1 << 2;
+
     private static final CGlobalData<CCharPointer> PROC_SELF_MAPS = CGlobalDataFactory.createCString("/proc/self/maps");
     private static final CGlobalData<CCharPointer> PROC_VERSION = CGlobalDataFactory.createCString("/proc/version");
     private static final CGlobalData<CCharPointer> PROC_VERSION_WSL_SUBSTRING = CGlobalDataFactory.createCString("Microsoft");
@@ -140,6 +159,7 @@ public class LinuxImageHeapProvider implements ImageHeapProvider {
                 if (VirtualMemoryProvider.get().protect(writableBegin, writableSize, Access.READ | Access.WRITE) != 0) {
                     return CEntryPointErrors.PROTECT_HEAP_FAILED;
                 }
+                prefetchPartitions(imageHeapBegin);
                 basePointer.write(imageHeapBegin);
                 if (endPointer.isNonNull()) {
                     endPointer.write(IMAGE_HEAP_END.get());
@@ -269,6 +289,7 @@ public class LinuxImageHeapProvider implements ImageHeapProvider {
             return CEntryPointErrors.PROTECT_HEAP_FAILED;
         }
 
+        prefetchPartitions(heap);
         basePointer.write(heap.subtract(imageHeapOffsetInAddressSpace));
         if (endPointer.isNonNull()) {
             endPointer.write(roundUp(heap.add(imageHeapSizeInFile), pageSize));
@@ -276,6 +297,67 @@ public class LinuxImageHeapProvider implements ImageHeapProvider {
         return CEntryPointErrors.NO_ERROR;
     }
 
+    @Fold
+    static int getPrefetchedPartitions() {
+        int partitions = 0;
+        for (String name : Options.PrefetchImageHeapPartitions.getValue().split(",")) {
+            switch (name.trim()) {
+                case "":
+                    break;
+                case "readonly":
+                    partitions |= PREFETCH_READ_ONLY;
+                    break;
+                case "relocatable":
+                    partitions |= PREFETCH_RELOCATABLE;
+                    break;
+                case "writable":
+                    partitions |= PREFETCH_WRITABLE;
+                    break;
+                case "all":
+                    partitions |= PREFETCH_READ_ONLY | PREFETCH_RELOCATABLE | PREFETCH_WRITABLE;
+                    break;
+                default:
+                    throw UserError.abort("Invalid image heap partition '%s' in option %s. Valid values are 'readonly', 'relocatable', 'writable', and 'all'.",
+                                    name.trim(), Options.PrefetchImageHeapPartitions.getName());
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * Advises the kernel to read ahead the selected partitions of the image heap mapped at
+     * {@code heap}. Failures are ignored because the pages are faulted in on demand anyway.
+     */
+    @Uninterruptible(reason = "Called during isolate initialization.")
+    private static void prefetchPartitions(Pointer heap) {
+        int partitions = getPrefetchedPartitions();
+        if (partitions == 0) {
+            return;
+        }
+        Pointer imageHeapBegin = IMAGE_HEAP_BEGIN.get();
+        if ((partitions & PREFETCH_READ_ONLY) != 0) {
+            /* The read-only partitions are around the relocatable partition. */
+            prefetch(heap, imageHeapBegin, imageHeapBegin, IMAGE_HEAP_RELOCATABLE_BEGIN.get());
+            prefetch(heap, imageHeapBegin, IMAGE_HEAP_RELOCATABLE_END.get(), IMAGE_HEAP_WRITABLE_BEGIN.get());
+        }
+        if ((partitions & PREFETCH_RELOCATABLE) != 0) {
+            prefetch(heap, imageHeapBegin, IMAGE_HEAP_RELOCATABLE_BEGIN.get(), IMAGE_HEAP_RELOCATABLE_END.get());
+        }
+        if ((partitions & PREFETCH_WRITABLE) != 0) {
+            prefetch(heap, imageHeapBegin, IMAGE_HEAP_WRITABLE_BEGIN.get(), IMAGE_HEAP_WRITABLE_END.get());
+        }
+    }
+
+    @Uninterruptible(reason = "Called during isolate initialization.")
+    private static void prefetch(Pointer heap, Pointer imageHeapBegin, Pointer partitionBegin, Pointer partitionEnd) {
+        UnsignedWord pageSize = VirtualMemoryProvider.get().getGranularity();
+        Pointer begin = roundDown(heap.add(partitionBegin.subtract(imageHeapBegin)), pageSize);
+        Pointer end = heap.add(partitionEnd.subtract(imageHeapBegin));
+        if (end.aboveThan(begin)) {
+            madvise(begin, end.subtract(begin), MADV_WILLNEED());
+        }
+    }
+
     @Override
     @Uninterruptible(reason = "Called during isolate tear-down.")
     public int freeImageHeap(PointerBase imageHeap) {
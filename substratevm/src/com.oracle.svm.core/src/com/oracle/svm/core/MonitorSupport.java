@@ -36,6 +36,8 @@ import org.graalvm.compiler.core.common.SuppressFBWarnings;
 import org.graalvm.compiler.serviceprovider.GraalUnsafeAccess;
 import org.graalvm.compiler.word.BarrieredAccess;
 import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
 import org.graalvm.nativeimage.hosted.Feature;
 
 import com.oracle.svm.core.annotate.Alias;
@@ -48,6 +50,8 @@ import com.oracle.svm.core.annotate.TargetClass;
 import com.oracle.svm.core.annotate.Uninterruptible;
 import com.oracle.svm.core.heap.ObjectHeader;
 import com.oracle.svm.core.hub.DynamicHub;
+import com.oracle.svm.core.jfr.FlightRecorder;
+import com.oracle.svm.core.jfr.JfrEvents;
 import com.oracle.svm.core.snippets.KnownIntrinsics;
 import com.oracle.svm.core.snippets.SubstrateForeignCallTarget;
 import com.oracle.svm.core.stack.StackOverflowCheck;
@@ -69,6 +73,14 @@ import sun.misc.Unsafe;
  * (and thus need a monitor) and assigns a monitor offset to point to the slot for the monitor. The
  * monitor is implemented with a {@link ReentrantLock}.
  * <p>
+ * Locking an object that is not locked by another thread does not need a {@link ReentrantLock}:
+ * the slot then holds the owning {@link Thread} itself (a <em>thin lock</em>), which is installed
+ * and removed with a compare-and-swap. The lock is <em>inflated</em> to a {@link ReentrantLock}
+ * when it is contended, when the owner locks it recursively, or when the owner calls
+ * {@link #wait()} or {@link #notify()} on it. The {@link ReentrantLock} is created with the owner
+ * of the thin lock as its owner, so that the inflation can be done by a contending thread. Once
+ * inflated, a lock stays inflated.
+ * <p>
  * There are a few exceptions: {@link String} and {@link DynamicHub} objects never have monitor
  * fields because we want instances in the image heap to be immutable. Arrays never have monitor
  * fields because it would increase the size of every array and it is not possible to distinguish
@@ -77,28 +89,47 @@ import sun.misc.Unsafe;
  * <p>
  * Synchronization on {@link String}, arrays, and other types not detected by the static analysis
  * (like synchronization via JNI) fall back to a monitor stored in {@link #additionalMonitors}.
+ * These monitors are never thin. The secondary storage is split into stripes by the identity hash
+ * code of the object, so that threads synchronizing on different objects rarely wait for each
+ * other.
  * <p>
  * Because so few objects are receivers of {@link #wait()} and {@link #notify()} calls[citation
- * needed], condition variables for those objects are kept in {@link #additionalConditions}.
+ * needed], condition variables for those objects are kept in the secondary storage as well.
  */
 public class MonitorSupport {
 
     private static final Unsafe UNSAFE = GraalUnsafeAccess.getUnsafe();
+    /** The number of stripes of the secondary storage, must be a power of 2. */
+    private static final int ADDITIONAL_STRIPES = 32;
+
     /**
-     * Secondary storage for monitor slots.
-     *
-     * Synchronized to prevent concurrent access and modification.
+     * Secondary storage for monitor slots and condition variable slots. The stripe of an object is
+     * selected by its identity hash code.
      */
-    private final Map<Object, ReentrantLock> additionalMonitors = new WeakIdentityHashMap<>();
-    private final ReentrantLock additionalMonitorsLock = new ReentrantLock();
+    private final AdditionalMonitors[] additionalMonitors;
 
     /**
-     * Secondary storage for condition variable slots.
+     * One stripe of the secondary storage.
      *
-     * Synchronized to prevent concurrent access and modification.
+     * Synchronized on {@link #lock} to prevent concurrent access and modification.
      */
-    private final Map<Object, Condition> additionalConditions = new WeakIdentityHashMap<>();
-    private final ReentrantLock additionalConditionsLock = new ReentrantLock();
+    private static final class AdditionalMonitors {
+        final ReentrantLock lock = new ReentrantLock();
+        final Map<Object, ReentrantLock> monitors = new WeakIdentityHashMap<>();
+        final Map<Object, Condition> conditions = new WeakIdentityHashMap<>();
+    }
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    MonitorSupport() {
+        additionalMonitors = new AdditionalMonitors[ADDITIONAL_STRIPES];
+        for (int i = 0; i < ADDITIONAL_STRIPES; i++) {
+            additionalMonitors[i] = new AdditionalMonitors();
+        }
+    }
+
+    private AdditionalMonitors additionalMonitorsFor(Object obj) {
+        return additionalMonitors[System.identityHashCode(obj) & (ADDITIONAL_STRIPES - 1)];
+    }
 
     /**
      * Called from {@code Unsafe.park} when changing the current thread's state before parking the
@@ -159,8 +190,20 @@ public class MonitorSupport {
 
         ReentrantLock lockObject = null;
         try {
+            if (tryThinLock(obj)) {
+                return;
+            }
             lockObject = ImageSingletons.lookup(MonitorSupport.class).getOrCreateMonitor(obj, true);
-            lockObject.lock();
+            if (FlightRecorder.isRecording()) {
+                /* The monitors are not fair, so trying first does not change the order. */
+                if (!lockObject.tryLock()) {
+                    long startTicks = JfrEvents.beginTicks();
+                    lockObject.lock();
+                    JfrEvents.emitJavaMonitorEnter(startTicks, obj.getClass().getName());
+                }
+            } else {
+                lockObject.lock();
+            }
         } catch (Throwable ex) {
             /*
              * The foreign call from snippets to this method does not have an exception edge. So we
@@ -211,6 +254,9 @@ public class MonitorSupport {
 
         ReentrantLock lockObject = null;
         try {
+            if (tryThinUnlock(obj)) {
+                return;
+            }
             lockObject = ImageSingletons.lookup(MonitorSupport.class).getOrCreateMonitor(obj, true);
             lockObject.unlock();
         } catch (Throwable ex) {
@@ -240,6 +286,13 @@ public class MonitorSupport {
             return;
         }
 
+        int monitorOffset = ObjectHeader.readDynamicHubFromObject(obj).getMonitorOffset();
+        if (monitorOffset != 0 && readMonitorSlot(obj, monitorOffset) instanceof Thread) {
+            /* A thin lock: its owner is the content of the slot. */
+            UNSAFE.putObjectVolatile(obj, monitorOffset, thread);
+            return;
+        }
+
         Target_java_util_concurrent_locks_ReentrantLock lock = SubstrateUtil.cast(getOrCreateMonitor(obj, true), Target_java_util_concurrent_locks_ReentrantLock.class);
         Target_java_util_concurrent_locks_AbstractOwnableSynchronizer sync = SubstrateUtil.cast(lock.sync, Target_java_util_concurrent_locks_AbstractOwnableSynchronizer.class);
 
@@ -262,9 +315,11 @@ public class MonitorSupport {
             return true;
         }
 
+        if (isThinLockedByCurrentThread(obj)) {
+            return true;
+        }
         ReentrantLock lockObject = getOrCreateMonitor(obj, false);
         return lockObject != null && lockObject.isHeldByCurrentThread();
-
     }
 
     /**
@@ -330,7 +385,8 @@ public class MonitorSupport {
 
     /** Return the lock of the receiver. */
     private ReentrantLock ensureLocked(Object receiver) {
-        ReentrantLock lockObject = getOrCreateMonitor(receiver, false);
+        /* A thin lock held by this thread is inflated, because a condition needs the lock. */
+        ReentrantLock lockObject = getOrCreateMonitor(receiver, isThinLockedByCurrentThread(receiver));
         /*
          * If the monitor field is null then it has not been locked by this thread. If there is a
          * monitor, make sure it is locked by this thread.
@@ -341,33 +397,77 @@ public class MonitorSupport {
         return lockObject;
     }
 
-    /* Method is public so that white-box test cases can use it. */
+    /**
+     * Locks the monitor of the object as a thin lock if it is neither locked nor inflated. Returns
+     * false if the monitor must be locked via its {@link ReentrantLock} instead.
+     */
+    private static boolean tryThinLock(Object obj) {
+        int monitorOffset = ObjectHeader.readDynamicHubFromObject(obj).getMonitorOffset();
+        Thread current = Thread.currentThread();
+        return monitorOffset != 0 && current != null && UNSAFE.compareAndSwapObject(obj, monitorOffset, null, current);
+    }
+
+    /**
+     * Unlocks the monitor of the object if it is a thin lock. Returns false if the monitor must be
+     * unlocked via its {@link ReentrantLock}, also if the lock was inflated while it was held.
+     */
+    private static boolean tryThinUnlock(Object obj) {
+        int monitorOffset = ObjectHeader.readDynamicHubFromObject(obj).getMonitorOffset();
+        Thread current = Thread.currentThread();
+        return monitorOffset != 0 && current != null && UNSAFE.compareAndSwapObject(obj, monitorOffset, current, null);
+    }
+
+    private static boolean isThinLockedByCurrentThread(Object obj) {
+        int monitorOffset = ObjectHeader.readDynamicHubFromObject(obj).getMonitorOffset();
+        return monitorOffset != 0 && readMonitorSlot(obj, monitorOffset) == Thread.currentThread();
+    }
+
+    private static Object readMonitorSlot(Object obj, int monitorOffset) {
+        return KnownIntrinsics.convertUnknownValue(BarrieredAccess.readObject(obj, monitorOffset), Object.class);
+    }
+
+    /**
+     * Returns the {@link ReentrantLock} of the object. If {@code createIfNotExisting} is true, a
+     * thin lock is inflated, and a new lock is created if the object has never been locked.
+     * Otherwise, null is returned in both cases.
+     */
     private ReentrantLock getOrCreateMonitor(Object obj, boolean createIfNotExisting) {
         final DynamicHub hub = ObjectHeader.readDynamicHubFromObject(obj);
         final int monitorOffset = hub.getMonitorOffset();
         if (monitorOffset != 0) {
             /* The common case: memory for the monitor reserved in the object. */
-            final ReentrantLock existingMonitor = KnownIntrinsics.convertUnknownValue(BarrieredAccess.readObject(obj, monitorOffset), ReentrantLock.class);
-            if (existingMonitor != null || !createIfNotExisting) {
-                assert existingMonitor == null || isMonitorLock(existingMonitor);
-                return existingMonitor;
-            }
-            /* Atomically put a new lock in place of the null at the monitorOffset. */
-            final ReentrantLock newMonitor = newMonitorLock();
-            if (UNSAFE.compareAndSwapObject(obj, monitorOffset, null, newMonitor)) {
-                return newMonitor;
+            while (true) {
+                final Object existing = readMonitorSlot(obj, monitorOffset);
+                if (existing instanceof ReentrantLock) {
+                    final ReentrantLock existingMonitor = (ReentrantLock) existing;
+                    assert isMonitorLock(existingMonitor);
+                    return existingMonitor;
+                }
+                if (!createIfNotExisting) {
+                    return null;
+                }
+                final ReentrantLock newMonitor = newMonitorLock();
+                if (existing != null) {
+                    /* Inflate the thin lock: the new lock is held by the owner of the thin lock. */
+                    final Thread owner = (Thread) existing;
+                    newMonitor.lock();
+                    if (owner != Thread.currentThread()) {
+                        SubstrateUtil.cast(SubstrateUtil.cast(newMonitor, Target_java_util_concurrent_locks_ReentrantLock.class).sync,
+                                        Target_java_util_concurrent_locks_AbstractOwnableSynchronizer.class).setExclusiveOwnerThread(owner);
+                    }
+                }
+                /* Atomically put the new lock in place. */
+                if (UNSAFE.compareAndSwapObject(obj, monitorOffset, existing, newMonitor)) {
+                    return newMonitor;
+                }
+                /* We lost a race: the lock was inflated, or a thin lock was acquired or released. */
             }
-            /* We lost the race, use the lock some other thread installed. */
-            return KnownIntrinsics.convertUnknownValue(BarrieredAccess.readObject(obj, monitorOffset), ReentrantLock.class);
         } else {
             /* No memory reserved for a lock in the object, fall back to our secondary storage. */
-            /*
-             * Lock the monitor map and maybe add a monitor for this object. This serialization
-             * might be a scalability problem.
-             */
-            additionalMonitorsLock.lock();
+            final AdditionalMonitors stripe = additionalMonitorsFor(obj);
+            stripe.lock.lock();
             try {
-                final ReentrantLock existingEntry = additionalMonitors.get(obj);
+                final ReentrantLock existingEntry = stripe.monitors.get(obj);
                 if (existingEntry != null) {
                     assert isMonitorLock(existingEntry);
                     return existingEntry;
@@ -377,11 +477,11 @@ public class MonitorSupport {
                     return null;
                 }
                 final ReentrantLock newEntry = newMonitorLock();
-                final ReentrantLock previousEntry = additionalMonitors.put(obj, newEntry);
+                final ReentrantLock previousEntry = stripe.monitors.put(obj, newEntry);
                 VMError.guarantee(previousEntry == null, "MonitorSupport.getOrCreateMonitor: Replaced monitor");
                 return newEntry;
             } finally {
-                additionalMonitorsLock.unlock();
+                stripe.lock.unlock();
             }
         }
     }
@@ -408,13 +508,10 @@ public class MonitorSupport {
 
     private Condition getOrCreateCondition(Object obj, ReentrantLock lock, boolean createIfNotExisting) {
         /* No memory reserved for a condition in the object, use secondary storage. */
-        /*
-         * Lock the condition map and maybe add a condition for this object. This serialization
-         * might be a scalability problem.
-         */
-        additionalConditionsLock.lock();
+        final AdditionalMonitors stripe = additionalMonitorsFor(obj);
+        stripe.lock.lock();
         try {
-            final Condition existingEntry = additionalConditions.get(obj);
+            final Condition existingEntry = stripe.conditions.get(obj);
             if (existingEntry != null) {
                 assert isMonitorCondition(existingEntry);
                 return existingEntry;
@@ -424,11 +521,11 @@ public class MonitorSupport {
                 return null;
             }
             final Condition newEntry = newMonitorCondition(lock);
-            final Condition previousEntry = additionalConditions.put(obj, newEntry);
+            final Condition previousEntry = stripe.conditions.put(obj, newEntry);
             VMError.guarantee(previousEntry == null, "MonitorSupport.getOrCreateCondition: Replaced condition");
             return newEntry;
         } finally {
-            additionalConditionsLock.unlock();
+            stripe.lock.unlock();
         }
     }
 
@@ -25,6 +25,7 @@
 package com.oracle.svm.core.heap;
 
 import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
 
 import org.graalvm.compiler.debug.GraalError;
 import org.graalvm.compiler.serviceprovider.GraalUnsafeAccess;
@@ -128,6 +129,25 @@ public final class ReferenceInternals {
         cast(instance).isDiscovered = newIsDiscovered;
     }
 
+    /** Address of field {@link Target_java_lang_ref_Reference#rawReferent} in the instance. */
+    public static <T> Pointer getReferentFieldAddress(Reference<T> instance) {
+        return Word.objectToUntrackedPointer(instance).add(WordFactory.signed(Target_java_lang_ref_Reference.rawReferentFieldOffset));
+    }
+
+    /** The clock that {@link SoftReference#get()} copies into the timestamp of the reference. */
+    public static long getSoftReferenceClock() {
+        return Target_java_lang_ref_SoftReference.clock;
+    }
+
+    public static void setSoftReferenceClock(long value) {
+        Target_java_lang_ref_SoftReference.clock = value;
+    }
+
+    /** The value of the soft reference clock when the reference was created or last accessed. */
+    public static <T> long getSoftReferenceTimestamp(SoftReference<T> instance) {
+        return SubstrateUtil.cast(instance, Target_java_lang_ref_SoftReference.class).timestamp;
+    }
+
     /** Address of field {@link Target_java_lang_ref_Reference#nextDiscovered} in the instance. */
     public static <T> Pointer getNextDiscoveredFieldPointer(Reference<T> instance) {
         return Word.objectToUntrackedPointer(instance).add(WordFactory.signed(Target_java_lang_ref_Reference.nextDiscoveredFieldOffset));
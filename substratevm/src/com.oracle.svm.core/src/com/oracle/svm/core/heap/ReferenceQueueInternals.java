@@ -82,6 +82,49 @@ public final class ReferenceQueueInternals {
         return true;
     }
 
+    /**
+     * Enqueues the references of a list that is linked via their discovered field, like
+     * {@link ReferenceInternals#enqueue} does for each of them, but pushes each run of consecutive
+     * references for the same queue with a single atomic operation. Must only be called during a
+     * collection, when no other thread can access a queue.
+     */
+    public static void enqueueDiscoveredReferences(Reference<?> list) {
+        assert VMOperation.isGCInProgress() : "Must only be called during garbage collection";
+        Target_java_lang_ref_ReferenceQueue<?> runQueue = null;
+        Reference<?> runFirst = null;
+        Reference<?> runLast = null;
+        for (Reference<?> ref = list; ref != null; ref = ReferenceInternals.getNextDiscovered(ref)) {
+            Target_java_lang_ref_ReferenceQueue<?> queue = ReferenceInternals.clearFutureQueue(ref);
+            if (queue == null) {
+                /* Not registered with a queue, or already enqueued. */
+                continue;
+            }
+            assert !ReferenceInternals.isEnqueued(ref) : "Trying to enqueue a Reference that is already on a queue";
+            if (queue != runQueue) {
+                if (runQueue != null) {
+                    pushRun(runQueue, runFirst, runLast);
+                }
+                runQueue = queue;
+                runLast = ref;
+            } else {
+                ReferenceInternals.setQueueNext(ref, runFirst);
+            }
+            runFirst = ref;
+        }
+        if (runQueue != null) {
+            pushRun(runQueue, runFirst, runLast);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void pushRun(Target_java_lang_ref_ReferenceQueue<T> instance, Reference<?> first, Reference<?> last) {
+        Reference<? extends T> head;
+        do {
+            head = getHead(instance);
+            ReferenceInternals.setQueueNext(last, head);
+        } while (!instance.queueHead.compareAndSet(head, (Reference<? extends T>) first));
+    }
+
     public static <T> boolean isEmpty(ReferenceQueue<T> instance) {
         return getHead(cast(instance)) == null;
     }
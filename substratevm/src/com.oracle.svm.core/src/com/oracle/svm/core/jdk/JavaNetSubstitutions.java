@@ -26,7 +26,6 @@ package com.oracle.svm.core.jdk;
 
 // Checkstyle: allow reflection
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
@@ -185,15 +184,9 @@ public final class JavaNetSubstitutions {
 
                     @Override
                     public InputStream getInputStream() throws IOException {
-                        Resources.ResourcesSupport support = ImageSingletons.lookup(Resources.ResourcesSupport.class);
                         // remove "protcol:" from url to get the resource name
                         String resName = url.toString().substring(1 + JavaNetSubstitutions.RESOURCE_PROTOCOL.length());
-                        final List<byte[]> bytes = support.resources.get(resName);
-                        if (bytes == null || bytes.size() < 1) {
-                            return null;
-                        } else {
-                            return new ByteArrayInputStream(bytes.get(0));
-                        }
+                        return Resources.getAsStream(resName);
                     }
                 };
             }
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.jdk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.graalvm.compiler.api.replacements.Fold;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+import org.graalvm.nativeimage.c.type.CTypeConversion;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.annotate.RestrictHeapAccess;
+import com.oracle.svm.core.c.CGlobalData;
+import com.oracle.svm.core.c.CGlobalDataFactory;
+import com.oracle.svm.core.util.VMError;
+
+/**
+ * Resources that are stored in a read-only section of the image instead of the image heap (see
+ * {@link Resources.Options#MapResourcesFromImage}). The contents of a resource are accessed as a
+ * direct {@link ByteBuffer} on the mapped image, so they are never copied into the Java heap.
+ *
+ * The section starts with a hash table that maps each resource name to its entries. The table is
+ * built with a perfect hash function that uses hash and displace: a first hash of a name selects a
+ * bucket, and the displacement of that bucket is the seed of a second hash that selects the slot.
+ * The displacements are chosen at build time so that no two names are in the same slot, so a lookup
+ * needs to compare only a single name. Building the table takes time that is linear in the number of
+ * names in practice. All values are 32-bit integers in the byte order of the target.
+ *
+ * <pre>
+ * header:        bucket mask, slot mask, offset of the entries
+ * displacements: (bucket mask + 1) * [seed]
+ * slots:         (slot mask + 1) * [name offset, name length in chars, first entry, entry count]
+ * entries:       [data offset, data length]
+ * names:         UTF-16 characters
+ * data:          the contents of the resources
+ * </pre>
+ */
+public final class MappedResources {
+    public static final String SECTION_BEGIN_SYMBOL_NAME = "__svm_resources_begin";
+
+    private static final CGlobalData<Pointer> SECTION_BEGIN = CGlobalDataFactory.forSymbol(SECTION_BEGIN_SYMBOL_NAME);
+
+    private static final int HEADER_SIZE = 12;
+    private static final int DISPLACEMENT_SIZE = 4;
+    private static final int SLOT_SIZE = 16;
+    private static final int ENTRY_SIZE = 8;
+
+    private MappedResources() {
+    }
+
+    @Fold
+    public static boolean isEnabled() {
+        return Resources.Options.MapResourcesFromImage.getValue();
+    }
+
+    static int hash(String name, int seed) {
+        int h = (seed * 0x9E3779B9) ^ 0x811C9DC5;
+        for (int i = 0; i < name.length(); i++) {
+            h = (h ^ charAt(name, i)) * 0x01000193;
+        }
+        /* The finalizer of MurmurHash3, so that all bits of the seed affect the low bits. */
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    /** Returns the number of entries for the name, i.e., the number of resources with that name. */
+    static int getCount(String name) {
+        Pointer slot = findSlot(name);
+        return slot.isNull() ? 0 : slot.readInt(12);
+    }
+
+    /** Returns the contents of an entry for the name as a read-only direct buffer, or null. */
+    static ByteBuffer get(String name, int index) {
+        Pointer slot = findSlot(name);
+        if (slot.isNull() || index >= slot.readInt(12)) {
+            return null;
+        }
+        Pointer begin = SECTION_BEGIN.get();
+        Pointer entry = begin.add(begin.readInt(8)).add((slot.readInt(8) + index) * ENTRY_SIZE);
+        return CTypeConversion.asByteBuffer(begin.add(entry.readInt(0)), entry.readInt(4)).asReadOnlyBuffer();
+    }
+
+    private static Pointer findSlot(String name) {
+        Pointer begin = SECTION_BEGIN.get();
+        int bucketMask = begin.readInt(0);
+        int slotMask = begin.readInt(4);
+        int displacement = begin.readInt(HEADER_SIZE + (hash(name, 0) & bucketMask) * DISPLACEMENT_SIZE);
+        int slotsOffset = HEADER_SIZE + (bucketMask + 1) * DISPLACEMENT_SIZE;
+        Pointer slot = begin.add(slotsOffset + (hash(name, displacement) & slotMask) * SLOT_SIZE);
+        if (slot.readInt(12) == 0 || slot.readInt(4) != name.length()) {
+            return WordFactory.nullPointer();
+        }
+        Pointer chars = begin.add(slot.readInt(0));
+        for (int i = 0; i < name.length(); i++) {
+            if (chars.readChar(i * Character.BYTES) != charAt(name, i)) {
+                return WordFactory.nullPointer();
+            }
+        }
+        return slot;
+    }
+
+    @RestrictHeapAccess(access = RestrictHeapAccess.Access.UNRESTRICTED, overridesCallers = true, reason = "String.charAt can allocate exception, but we know that our access is in bounds")
+    private static char charAt(String s, int index) {
+        return s.charAt(index);
+    }
+
+    /** Collects the resources at image build time and creates the contents of the section. */
+    @Platforms(Platform.HOSTED_ONLY.class)
+    public static final class Builder {
+        /** The number of displacements to try for a bucket before the table is made larger. */
+        private static final int MAX_DISPLACEMENT = 1 << 16;
+
+        private final Map<String, List<byte[]>> resources = new LinkedHashMap<>();
+
+        void add(String name, byte[] contents) {
+            resources.computeIfAbsent(name, n -> new ArrayList<>()).add(contents);
+        }
+
+        public byte[] build(ByteOrder byteOrder) {
+            String[] names = resources.keySet().toArray(new String[0]);
+            /* On average, 4 names per bucket and a load factor of at most 0.8 for the slots. */
+            int bucketCount = powerOfTwoAtLeast(names.length / 4);
+            int tableSize = powerOfTwoAtLeast(names.length + names.length / 4);
+            int[] displacements = new int[bucketCount];
+            int[] slotOfName = new int[names.length];
+            while (!assignSlots(names, bucketCount - 1, tableSize - 1, displacements, slotOfName)) {
+                /* Some bucket could not be placed, which is very unlikely: make the table larger. */
+                tableSize <<= 1;
+            }
+
+            int entryCount = 0;
+            long namesSize = 0;
+            long dataSize = 0;
+            for (Map.Entry<String, List<byte[]>> e : resources.entrySet()) {
+                entryCount += e.getValue().size();
+                namesSize += e.getKey().length() * Character.BYTES;
+                for (byte[] contents : e.getValue()) {
+                    dataSize += contents.length;
+                }
+            }
+            long slotsOffset = HEADER_SIZE + (long) bucketCount * DISPLACEMENT_SIZE;
+            long entriesOffset = slotsOffset + (long) tableSize * SLOT_SIZE;
+            long namesOffset = entriesOffset + (long) entryCount * ENTRY_SIZE;
+            long dataOffset = (namesOffset + namesSize + Long.BYTES - 1) & ~(Long.BYTES - 1);
+            long size = dataOffset + dataSize;
+            VMError.guarantee(size <= Integer.MAX_VALUE, "The resources are too large to be mapped from the image: " + size + " bytes");
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size).order(byteOrder);
+            buffer.putInt(0, bucketCount - 1);
+            buffer.putInt(4, tableSize - 1);
+            buffer.putInt(8, (int) entriesOffset);
+            for (int i = 0; i < bucketCount; i++) {
+                buffer.putInt(HEADER_SIZE + i * DISPLACEMENT_SIZE, displacements[i]);
+            }
+            int entry = 0;
+            int namePosition = (int) namesOffset;
+            int dataPosition = (int) dataOffset;
+            for (int i = 0; i < names.length; i++) {
+                List<byte[]> entries = resources.get(names[i]);
+                int slot = (int) slotsOffset + slotOfName[i] * SLOT_SIZE;
+                buffer.putInt(slot, namePosition);
+                buffer.putInt(slot + 4, names[i].length());
+                buffer.putInt(slot + 8, entry);
+                buffer.putInt(slot + 12, entries.size());
+                for (int j = 0; j < names[i].length(); j++) {
+                    buffer.putChar(namePosition, names[i].charAt(j));
+                    namePosition += Character.BYTES;
+                }
+                for (byte[] contents : entries) {
+                    int entryPosition = (int) entriesOffset + entry * ENTRY_SIZE;
+                    buffer.putInt(entryPosition, dataPosition);
+                    buffer.putInt(entryPosition + 4, contents.length);
+                    buffer.position(dataPosition);
+                    buffer.put(contents);
+                    dataPosition += contents.length;
+                    entry++;
+                }
+            }
+            return buffer.array();
+        }
+
+        private static int powerOfTwoAtLeast(int value) {
+            return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+        }
+
+        /**
+         * Places the buckets in the order of decreasing size, each with the first displacement for
+         * which all of its names go to free slots. Returns false if a bucket cannot be placed.
+         */
+        private static boolean assignSlots(String[] names, int bucketMask, int slotMask, int[] displacements, int[] slotOfName) {
+            List<List<Integer>> buckets = new ArrayList<>();
+            for (int i = 0; i <= bucketMask; i++) {
+                buckets.add(new ArrayList<>());
+            }
+            for (int i = 0; i < names.length; i++) {
+                buckets.get(hash(names[i], 0) & bucketMask).add(i);
+            }
+            Integer[] order = new Integer[buckets.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> buckets.get(b).size() - buckets.get(a).size());
+
+            boolean[] used = new boolean[slotMask + 1];
+            Arrays.fill(displacements, 0);
+            for (int bucket : order) {
+                List<Integer> members = buckets.get(bucket);
+                if (members.isEmpty()) {
+                    break;
+                }
+                int displacement = 1;
+                while (!tryPlace(names, members, displacement, slotMask, used, slotOfName)) {
+                    displacement++;
+                    if (displacement > MAX_DISPLACEMENT) {
+                        return false;
+                    }
+                }
+                displacements[bucket] = displacement;
+            }
+            return true;
+        }
+
+        private static boolean tryPlace(String[] names, List<Integer> members, int displacement, int slotMask, boolean[] used, int[] slotOfName) {
+            for (int j = 0; j < members.size(); j++) {
+                int name = members.get(j);
+                int slot = hash(names[name], displacement) & slotMask;
+                if (used[slot]) {
+                    /* Release the slots that were taken by the previous names of this bucket. */
+                    for (int k = 0; k < j; k++) {
+                        used[slotOfName[members.get(k)]] = false;
+                    }
+                    return false;
+                }
+                used[slot] = true;
+                slotOfName[name] = slot;
+            }
+            return true;
+        }
+    }
+}
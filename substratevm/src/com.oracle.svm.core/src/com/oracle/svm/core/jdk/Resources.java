@@ -31,11 +31,15 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.graalvm.compiler.options.Option;
 import org.graalvm.nativeimage.hosted.Feature;
 import org.graalvm.nativeimage.ImageSingletons;
 import org.graalvm.nativeimage.Platform;
@@ -43,6 +47,7 @@ import org.graalvm.nativeimage.Platforms;
 
 import com.oracle.svm.core.annotate.AutomaticFeature;
 import com.oracle.svm.core.hub.DynamicHub;
+import com.oracle.svm.core.option.HostedOptionKey;
 import com.oracle.svm.core.util.VMError;
 
 /**
@@ -51,9 +56,18 @@ import com.oracle.svm.core.util.VMError;
  *
  * Registered resources are then available from {@link DynamicHub#getResource classes} and
  * {@link Target_java_lang_ClassLoader class loaders}.
+ *
+ * By default, the resources are byte arrays in the image heap. With
+ * {@link Options#MapResourcesFromImage}, they are stored in a separate section of the image instead
+ * (see {@link MappedResources}).
  */
 public final class Resources {
 
+    public static class Options {
+        @Option(help = "Store resources in a read-only section of the image instead of the image heap, and access them without copying.")//
+        public static final HostedOptionKey<Boolean> MapResourcesFromImage = new HostedOptionKey<>(false);
+    }
+
     static class ResourcesSupport {
         final Map<String, List<byte[]>> resources = new HashMap<>();
     }
@@ -63,6 +77,9 @@ public final class Resources {
         @Override
         public void afterRegistration(AfterRegistrationAccess access) {
             ImageSingletons.add(ResourcesSupport.class, new ResourcesSupport());
+            if (MappedResources.isEnabled()) {
+                ImageSingletons.add(MappedResources.Builder.class, new MappedResources.Builder());
+            }
         }
     }
 
@@ -71,8 +88,6 @@ public final class Resources {
 
     @Platforms(Platform.HOSTED_ONLY.class)
     public static void registerResource(String name, InputStream is) {
-        ResourcesSupport support = ImageSingletons.lookup(ResourcesSupport.class);
-
         byte[] arr = new byte[4096];
         int pos = 0;
         try {
@@ -95,6 +110,11 @@ public final class Resources {
         byte[] res = new byte[pos];
         System.arraycopy(arr, 0, res, 0, pos);
 
+        if (MappedResources.isEnabled()) {
+            ImageSingletons.lookup(MappedResources.Builder.class).add(name, res);
+            return;
+        }
+        ResourcesSupport support = ImageSingletons.lookup(ResourcesSupport.class);
         List<byte[]> list = support.resources.get(name);
         if (list == null) {
             list = new ArrayList<>();
@@ -103,11 +123,83 @@ public final class Resources {
         list.add(res);
     }
 
+    /**
+     * Returns the contents of all resources with the given name, or null if there are none. When
+     * resources are mapped from the image, the contents are copied into new arrays, so the methods
+     * below should be preferred.
+     */
     public static List<byte[]> get(String name) {
+        if (MappedResources.isEnabled()) {
+            int count = MappedResources.getCount(name);
+            if (count == 0) {
+                return null;
+            }
+            List<byte[]> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ByteBuffer buffer = MappedResources.get(name, i);
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                result.add(bytes);
+            }
+            return result;
+        }
         return ImageSingletons.lookup(ResourcesSupport.class).resources.get(name);
     }
 
+    /** Returns the contents of the first resource with the given name as a read-only buffer. */
+    public static ByteBuffer getByteBuffer(String name) {
+        if (MappedResources.isEnabled()) {
+            return MappedResources.get(name, 0);
+        }
+        List<byte[]> arr = get(name);
+        return arr == null ? null : ByteBuffer.wrap(arr.get(0)).asReadOnlyBuffer();
+    }
+
+    /** Returns a stream on the contents of the first resource with the given name. */
+    public static InputStream getAsStream(String name) {
+        if (MappedResources.isEnabled()) {
+            ByteBuffer buffer = MappedResources.get(name, 0);
+            return buffer == null ? null : new ByteBufferInputStream(buffer);
+        }
+        List<byte[]> arr = get(name);
+        return arr == null ? null : new ByteArrayInputStream(arr.get(0));
+    }
+
+    /** Returns a URL for the first resource with the given name. */
+    public static URL getURL(String name) {
+        if (MappedResources.isEnabled()) {
+            ByteBuffer buffer = MappedResources.get(name, 0);
+            return buffer == null ? null : createURL(name, buffer);
+        }
+        List<byte[]> arr = get(name);
+        return arr == null ? null : createURL(name, arr.get(0));
+    }
+
+    /** Returns URLs for all resources with the given name. */
+    public static Enumeration<URL> getURLs(String name) {
+        List<URL> res = new ArrayList<>();
+        if (MappedResources.isEnabled()) {
+            int count = MappedResources.getCount(name);
+            for (int i = 0; i < count; i++) {
+                res.add(createURL(name, MappedResources.get(name, i)));
+            }
+        } else {
+            List<byte[]> arr = get(name);
+            if (arr == null) {
+                return Collections.emptyEnumeration();
+            }
+            for (byte[] data : arr) {
+                res.add(createURL(name, data));
+            }
+        }
+        return Collections.enumeration(res);
+    }
+
     public static URL createURL(String name, byte[] resourceBytes) {
+        return createURL(name, ByteBuffer.wrap(resourceBytes));
+    }
+
+    private static URL createURL(String name, ByteBuffer resourceBuffer) {
         class Conn extends URLConnection {
             Conn(URL url) {
                 super(url);
@@ -119,12 +211,12 @@ public final class Resources {
 
             @Override
             public InputStream getInputStream() throws IOException {
-                return new ByteArrayInputStream(resourceBytes);
+                return new ByteBufferInputStream(resourceBuffer.duplicate());
             }
 
             @Override
             public long getContentLengthLong() {
-                return resourceBytes.length;
+                return resourceBuffer.remaining();
             }
         }
 
@@ -139,4 +231,43 @@ public final class Resources {
             throw new IllegalStateException(ex);
         }
     }
+
+    /** A stream on the remaining contents of a buffer, which reads without copying the buffer. */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
 }
@@ -24,9 +24,7 @@
  */
 package com.oracle.svm.core.jdk;
 
-import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.util.List;
 
 import com.oracle.svm.core.annotate.Delete;
 import com.oracle.svm.core.annotate.Substitute;
@@ -39,8 +37,7 @@ public final class Target_java_lang_Module {
     @Substitute
     @TargetElement(name = "getResourceAsStream")
     public InputStream getResourceAsStream(String name) {
-        List<byte[]> arr = Resources.get(name);
-        return arr == null ? null : new ByteArrayInputStream(arr.get(0));
+        return Resources.getAsStream(name);
     }
 
     /*
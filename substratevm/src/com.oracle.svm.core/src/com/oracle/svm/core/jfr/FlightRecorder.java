@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.jfr;
+
+import java.io.IOException;
+
+import org.graalvm.compiler.api.replacements.Fold;
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.IsolateThread;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+import org.graalvm.nativeimage.ProcessProperties;
+import org.graalvm.nativeimage.hosted.Feature;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.annotate.Uninterruptible;
+import com.oracle.svm.core.jdk.RuntimeSupport;
+import com.oracle.svm.core.log.Log;
+import com.oracle.svm.core.thread.JavaVMOperation;
+
+/**
+ * Records events of the VM, such as garbage collections, safepoints and contended monitors, into
+ * a file in the format of the JDK Flight Recorder, so that the file can be inspected with the
+ * usual tools.
+ *
+ * Threads record events into thread-local native buffers (see {@link JfrBuffers}). A flusher
+ * thread periodically collects the events of all threads in a VM operation, and writes them to
+ * the recording file outside of the safepoint. Recordings can be started and stopped at run time,
+ * or for the whole execution with {@link FlightRecorderOptions#StartFlightRecording}.
+ */
+public final class FlightRecorder {
+
+    @Fold
+    public static boolean isEnabled() {
+        return FlightRecorderOptions.FlightRecorder.getValue();
+    }
+
+    @Fold
+    static FlightRecorder singleton() {
+        return ImageSingletons.lookup(FlightRecorder.class);
+    }
+
+    /** Returns true if a recording is active, i.e., if events should be recorded. */
+    public static boolean isRecording() {
+        return isEnabled() && singleton().recording;
+    }
+
+    /** Starts a recording into the file with the given name. */
+    public static void startRecording(String path) throws IOException {
+        if (!isEnabled()) {
+            throw new UnsupportedOperationException("The flight recorder is not included in this image. Enable it with the option -H:+" + FlightRecorderOptions.FlightRecorder.getName());
+        }
+        singleton().start(path);
+    }
+
+    /** Stops the active recording, if any, and completes its file. */
+    public static void stopRecording() throws IOException {
+        if (isEnabled()) {
+            singleton().stop();
+        }
+    }
+
+    /** Hands the events of a thread that is detaching over to the recording. */
+    @Uninterruptible(reason = "Called from uninterruptible code.")
+    public static void detachThread(IsolateThread thread) {
+        if (isEnabled()) {
+            JfrBuffers.releaseThreadBuffer(thread);
+        }
+    }
+
+    private volatile boolean recording;
+    private JfrChunkWriter writer;
+    private Thread flusher;
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    FlightRecorder() {
+    }
+
+    private synchronized void start(String path) throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("A recording is already active.");
+        }
+        JfrBuffers.initialize(WordFactory.unsigned(FlightRecorderOptions.FlightRecorderBufferSize.getValue()), FlightRecorderOptions.FlightRecorderBufferCount.getValue());
+        writer = new JfrChunkWriter(path);
+        JavaVMOperation.enqueueBlockingSafepoint("FlightRecorderStart", () -> {
+            JfrBuffers.discardEvents();
+            recording = true;
+        });
+        flusher = new Thread(this::flushPeriodically, "Flight Recorder");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    private void stop() throws IOException {
+        Thread flusherThread;
+        synchronized (this) {
+            if (writer == null) {
+                return;
+            }
+            JavaVMOperation.enqueueBlockingSafepoint("FlightRecorderStop", () -> {
+                recording = false;
+                JfrBuffers.collectThreadBuffers();
+            });
+            flusherThread = flusher;
+            flusher = null;
+        }
+        flusherThread.interrupt();
+        try {
+            flusherThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                writeFullBuffers();
+                writer.close();
+            } finally {
+                writer = null;
+            }
+        }
+    }
+
+    private void flushPeriodically() {
+        long period = FlightRecorderOptions.FlightRecorderFlushPeriod.getValue();
+        while (recording) {
+            try {
+                Thread.sleep(period);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                flush();
+            } catch (IOException e) {
+                Log.log().string("Flight recorder: writing the recording failed: ").string(e.getMessage()).newline();
+                recording = false;
+                return;
+            }
+        }
+    }
+
+    private synchronized void flush() throws IOException {
+        if (!recording) {
+            return;
+        }
+        JavaVMOperation.enqueueBlockingSafepoint("FlightRecorderFlush", JfrBuffers::collectThreadBuffers);
+        writeFullBuffers();
+        if (writer.getChunkSize() > FlightRecorderOptions.FlightRecorderMaxChunkSize.getValue()) {
+            writer.rotate();
+        }
+    }
+
+    private void writeFullBuffers() throws IOException {
+        JfrBuffer buffers = JfrBuffers.takeFullBuffers();
+        try {
+            writer.write(buffers);
+        } finally {
+            JfrBuffers.releaseBuffers(buffers);
+        }
+    }
+}
+
+@AutomaticFeature
+class FlightRecorderFeature implements Feature {
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return FlightRecorder.isEnabled();
+    }
+
+    @Override
+    public void afterRegistration(AfterRegistrationAccess access) {
+        ImageSingletons.add(FlightRecorder.class, new FlightRecorder());
+    }
+
+    @Override
+    public void beforeAnalysis(BeforeAnalysisAccess access) {
+        RuntimeSupport.getRuntimeSupport().addStartupHook(() -> {
+            if (FlightRecorderOptions.StartFlightRecording.getValue()) {
+                String path = FlightRecorderOptions.FlightRecorderFile.getValue().replace("%p", String.valueOf(ProcessProperties.getProcessID()));
+                try {
+                    FlightRecorder.startRecording(path);
+                } catch (IOException e) {
+                    Log.log().string("Flight recorder: starting the recording failed: ").string(e.getMessage()).newline();
+                }
+            }
+        });
+        RuntimeSupport.getRuntimeSupport().addShutdownHook(() -> {
+            try {
+                FlightRecorder.stopRecording();
+            } catch (IOException e) {
+                Log.log().string("Flight recorder: completing the recording failed: ").string(e.getMessage()).newline();
+            }
+        });
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.jfr;
+
+import org.graalvm.compiler.options.Option;
+import org.graalvm.compiler.options.OptionType;
+
+import com.oracle.svm.core.option.HostedOptionKey;
+import com.oracle.svm.core.option.RuntimeOptionKey;
+
+public class FlightRecorderOptions {
+    @Option(help = "Include support for recording VM events to a file in the JFR format.", type = OptionType.User)//
+    public static final HostedOptionKey<Boolean> FlightRecorder = new HostedOptionKey<>(false);
+
+    @Option(help = "Start a flight recording when the VM starts, if +FlightRecorder.", type = OptionType.User)//
+    public static final RuntimeOptionKey<Boolean> StartFlightRecording = new RuntimeOptionKey<>(false);
+
+    @Option(help = "The file that a flight recording started at VM startup is written to. %p is replaced with the process id.", type = OptionType.User)//
+    public static final RuntimeOptionKey<String> FlightRecorderFile = new RuntimeOptionKey<>("svm-recording-%p.jfr");
+
+    @Option(help = "The period in milliseconds after which the events of all threads are written to the recording file.")//
+    public static final RuntimeOptionKey<Long> FlightRecorderFlushPeriod = new RuntimeOptionKey<>(1000L);
+
+    @Option(help = "The size in bytes after which a new chunk of the recording file is started.")//
+    public static final RuntimeOptionKey<Long> FlightRecorderMaxChunkSize = new RuntimeOptionKey<>(12L * 1024L * 1024L);
+
+    @Option(help = "The size in bytes of each event buffer. Threads write events into their own buffer.")//
+    public static final RuntimeOptionKey<Long> FlightRecorderBufferSize = new RuntimeOptionKey<>(64L * 1024L);
+
+    @Option(help = "The number of event buffers. Events are dropped when all buffers are in use.")//
+    public static final RuntimeOptionKey<Integer> FlightRecorderBufferCount = new RuntimeOptionKey<>(128);
+}
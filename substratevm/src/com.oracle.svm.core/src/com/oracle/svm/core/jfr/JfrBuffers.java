@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.jfr;
+
+import org.graalvm.compiler.nodes.PauseNode;
+import org.graalvm.nativeimage.IsolateThread;
+import org.graalvm.nativeimage.UnmanagedMemory;
+import org.graalvm.nativeimage.c.struct.SizeOf;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.MemoryUtil;
+import com.oracle.svm.core.annotate.Uninterruptible;
+import com.oracle.svm.core.jdk.UninterruptibleUtils;
+import com.oracle.svm.core.thread.VMOperation;
+import com.oracle.svm.core.thread.VMThreads;
+import com.oracle.svm.core.threadlocal.FastThreadLocalFactory;
+import com.oracle.svm.core.threadlocal.FastThreadLocalWord;
+
+/**
+ * The event buffers of the {@link FlightRecorder}. A fixed number of buffers is allocated when
+ * recording starts for the first time and reused afterwards, so that events can be recorded
+ * without allocating, e.g., during a garbage collection.
+ *
+ * A buffer is free, owned by a thread, or full, i.e., waiting to be written to the recording.
+ * Buffers change hands under a spin lock in uninterruptible code. Only the owning thread writes
+ * into its buffer, and other threads read the committed events of a thread's buffer only at a
+ * safepoint. Since a thread replaces its buffer in uninterruptible code, a safepoint never sees
+ * a buffer in the middle of being replaced, but it may see a thread in the middle of writing an
+ * event after the committed position, which is why it only copies committed events.
+ */
+final class JfrBuffers {
+    private static final FastThreadLocalWord<JfrBuffer> threadBuffer = FastThreadLocalFactory.createWord();
+
+    private static final UninterruptibleUtils.AtomicInteger lock = new UninterruptibleUtils.AtomicInteger(0);
+    private static final UninterruptibleUtils.AtomicLong droppedEvents = new UninterruptibleUtils.AtomicLong(0);
+
+    private static JfrBuffer freeBuffers;
+    private static JfrBuffer fullBuffers;
+    private static JfrBuffer lastFullBuffer;
+    private static UnsignedWord bufferSize;
+
+    private JfrBuffers() {
+    }
+
+    /** Allocate the buffers, if that has not been done before. */
+    static void initialize(UnsignedWord size, int count) {
+        if (bufferSize.notEqual(0)) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            JfrBuffer buffer = UnmanagedMemory.malloc(SizeOf.unsigned(JfrBuffer.class).add(size));
+            buffer.setSize(size);
+            reset(buffer);
+            pushFree(buffer);
+        }
+        bufferSize = size;
+    }
+
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    static Pointer getDataStart(JfrBuffer buffer) {
+        return ((Pointer) buffer).add(SizeOf.unsigned(JfrBuffer.class));
+    }
+
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    static Pointer getDataEnd(JfrBuffer buffer) {
+        return getDataStart(buffer).add(buffer.getSize());
+    }
+
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    private static void reset(JfrBuffer buffer) {
+        buffer.setFlushed(getDataStart(buffer));
+        buffer.setCommitted(getDataStart(buffer));
+        buffer.setNext(WordFactory.nullPointer());
+    }
+
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    private static boolean hasData(JfrBuffer buffer) {
+        return buffer.getCommitted().aboveThan(buffer.getFlushed());
+    }
+
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    static JfrBuffer getThreadBuffer() {
+        return threadBuffer.get();
+    }
+
+    /**
+     * Returns the buffer of the current thread if it has room for {@code size} more bytes after
+     * the committed position. Otherwise, the buffer is replaced, and the null pointer is returned
+     * if no free buffer is available.
+     */
+    @Uninterruptible(reason = "Replaces the buffer of the current thread, which may be read at a safepoint.")
+    static JfrBuffer reserve(int size) {
+        JfrBuffer buffer = threadBuffer.get();
+        if (buffer.isNonNull() && buffer.getCommitted().add(size).belowOrEqual(getDataEnd(buffer))) {
+            return buffer;
+        }
+        acquireLock();
+        try {
+            if (buffer.isNonNull()) {
+                retire(buffer);
+            }
+            buffer = popFree();
+            threadBuffer.set(buffer);
+        } finally {
+            releaseLock();
+        }
+        if (buffer.isNull() || WordFactory.unsigned(size).aboveThan(buffer.getSize())) {
+            droppedEvents.incrementAndGet();
+            return WordFactory.nullPointer();
+        }
+        return buffer;
+    }
+
+    /** Hand the buffer of a thread that detaches back, with its events. */
+    @Uninterruptible(reason = "Called from uninterruptible code.")
+    static void releaseThreadBuffer(IsolateThread thread) {
+        JfrBuffer buffer = threadBuffer.get(thread);
+        if (buffer.isNonNull()) {
+            threadBuffer.set(thread, WordFactory.nullPointer());
+            acquireLock();
+            try {
+                retire(buffer);
+            } finally {
+                releaseLock();
+            }
+        }
+    }
+
+    /**
+     * Copy the committed events of all threads into full buffers, as far as free buffers are
+     * available. Must be called at a safepoint.
+     */
+    static void collectThreadBuffers() {
+        assert VMOperation.isInProgressAtSafepoint();
+        for (IsolateThread thread = VMThreads.firstThread(); thread.isNonNull(); thread = VMThreads.nextThread(thread)) {
+            JfrBuffer buffer = threadBuffer.get(thread);
+            if (buffer.isNonNull() && hasData(buffer)) {
+                copyCommittedEvents(buffer);
+            }
+        }
+    }
+
+    @Uninterruptible(reason = "Accesses the buffer lists.")
+    private static void copyCommittedEvents(JfrBuffer buffer) {
+        acquireLock();
+        try {
+            JfrBuffer copy = popFree();
+            if (copy.isNonNull()) {
+                UnsignedWord size = buffer.getCommitted().subtract(buffer.getFlushed());
+                MemoryUtil.copyConjointMemoryAtomic(buffer.getFlushed(), getDataStart(copy), size);
+                copy.setCommitted(getDataStart(copy).add(size));
+                buffer.setFlushed(buffer.getCommitted());
+                appendFull(copy);
+            }
+        } finally {
+            releaseLock();
+        }
+    }
+
+    /**
+     * Drop the events of all threads that have not been collected, e.g., the events of a previous
+     * recording. Must be called at a safepoint.
+     */
+    static void discardEvents() {
+        assert VMOperation.isInProgressAtSafepoint();
+        for (IsolateThread thread = VMThreads.firstThread(); thread.isNonNull(); thread = VMThreads.nextThread(thread)) {
+            JfrBuffer buffer = threadBuffer.get(thread);
+            if (buffer.isNonNull()) {
+                buffer.setFlushed(buffer.getCommitted());
+            }
+        }
+        releaseBuffers(takeFullBuffers());
+        droppedEvents.set(0);
+    }
+
+    /** Take all full buffers, in the order in which they became full. */
+    @Uninterruptible(reason = "Accesses the buffer lists.")
+    static JfrBuffer takeFullBuffers() {
+        acquireLock();
+        try {
+            JfrBuffer result = fullBuffers;
+            fullBuffers = WordFactory.nullPointer();
+            lastFullBuffer = WordFactory.nullPointer();
+            return result;
+        } finally {
+            releaseLock();
+        }
+    }
+
+    /** Make buffers that were taken with {@link #takeFullBuffers} available again. */
+    @Uninterruptible(reason = "Accesses the buffer lists.")
+    static void releaseBuffers(JfrBuffer list) {
+        acquireLock();
+        try {
+            JfrBuffer buffer = list;
+            while (buffer.isNonNull()) {
+                JfrBuffer next = buffer.getNext();
+                reset(buffer);
+                pushFree(buffer);
+                buffer = next;
+            }
+        } finally {
+            releaseLock();
+        }
+    }
+
+    static long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    private static void retire(JfrBuffer buffer) {
+        if (hasData(buffer)) {
+            appendFull(buffer);
+        } else {
+            reset(buffer);
+            pushFree(buffer);
+        }
+    }
+
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    private static void appendFull(JfrBuffer buffer) {
+        buffer.setNext(WordFactory.nullPointer());
+        if (lastFullBuffer.isNull()) {
+            fullBuffers = buffer;
+        } else {
+            lastFullBuffer.setNext(buffer);
+        }
+        lastFullBuffer = buffer;
+    }
+
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    private static void pushFree(JfrBuffer buffer) {
+        buffer.setNext(freeBuffers);
+        freeBuffers = buffer;
+    }
+
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    private static JfrBuffer popFree() {
+        JfrBuffer result = freeBuffers;
+        if (result.isNonNull()) {
+            freeBuffers = result.getNext();
+            result.setNext(WordFactory.nullPointer());
+        }
+        return result;
+    }
+
+    @Uninterruptible(reason = "Must not be interrupted while holding the lock.", mayBeInlined = true)
+    private static void acquireLock() {
+        while (!lock.compareAndSet(0, 1)) {
+            PauseNode.pause();
+        }
+    }
+
+    @Uninterruptible(reason = "Must not be interrupted while holding the lock.", mayBeInlined = true)
+    private static void releaseLock() {
+        lock.set(0);
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.jfr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.graalvm.nativeimage.c.type.CTypeConversion;
+import org.graalvm.word.Pointer;
+
+/**
+ * Writes a recording file in the format of the JDK Flight Recorder. A recording consists of
+ * chunks, each of which starts with a header and contains events, followed by a checkpoint event
+ * with the (empty) constant pools and a metadata event that describes the event types.
+ */
+final class JfrChunkWriter {
+    private static final byte[] MAGIC = {'F', 'L', 'R', 0};
+    private static final short MAJOR_VERSION = 2;
+    private static final short MINOR_VERSION = 0;
+    private static final int HEADER_SIZE = 68;
+    /** The integers in the events of this chunk are compressed. */
+    private static final int FEATURE_COMPRESSED_INTEGERS = 1;
+
+    private static final long METADATA_TYPE_ID = 0;
+    private static final long CHECKPOINT_TYPE_ID = 1;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+
+    private long chunkStartPosition;
+    private long chunkStartNanos;
+    private long chunkStartTicks;
+    private long metadataId;
+
+    JfrChunkWriter(String path) throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        startChunk();
+    }
+
+    /** The number of bytes written to the current chunk so far. */
+    long getChunkSize() throws IOException {
+        return channel.position() - chunkStartPosition;
+    }
+
+    /** Writes the committed events of a list of buffers. */
+    void write(JfrBuffer buffers) throws IOException {
+        for (JfrBuffer buffer = buffers; buffer.isNonNull(); buffer = buffer.getNext()) {
+            Pointer start = buffer.getFlushed();
+            int size = (int) buffer.getCommitted().subtract(start).rawValue();
+            if (size > 0) {
+                writeFully(CTypeConversion.asByteBuffer(start, size));
+            }
+        }
+    }
+
+    /** Completes the current chunk and starts a new one in the same file. */
+    void rotate() throws IOException {
+        finishChunk();
+        startChunk();
+    }
+
+    void close() throws IOException {
+        try {
+            finishChunk();
+        } finally {
+            file.close();
+        }
+    }
+
+    private void startChunk() throws IOException {
+        chunkStartPosition = channel.position();
+        chunkStartNanos = System.currentTimeMillis() * 1_000_000L;
+        chunkStartTicks = JfrTicks.now();
+        writeHeader(0, 0, 0, 0);
+    }
+
+    private void finishChunk() throws IOException {
+        long durationTicks = JfrTicks.now() - chunkStartTicks;
+        long checkpointOffset = getChunkSize();
+        writeFully(ByteBuffer.wrap(checkpointEvent()));
+        long metadataOffset = getChunkSize();
+        writeFully(ByteBuffer.wrap(metadataEvent()));
+        long chunkSize = getChunkSize();
+        long end = channel.position();
+        channel.position(chunkStartPosition);
+        writeHeader(chunkSize, checkpointOffset, metadataOffset, durationTicks);
+        channel.position(end);
+    }
+
+    private void writeHeader(long chunkSize, long checkpointOffset, long metadataOffset, long durationTicks) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC);
+        header.putShort(MAJOR_VERSION);
+        header.putShort(MINOR_VERSION);
+        header.putLong(chunkSize);
+        header.putLong(checkpointOffset);
+        header.putLong(metadataOffset);
+        header.putLong(chunkStartNanos);
+        header.putLong(JfrTicks.toNanos(durationTicks));
+        header.putLong(chunkStartTicks);
+        header.putLong(JfrTicks.TICKS_PER_SECOND);
+        header.putInt(FEATURE_COMPRESSED_INTEGERS);
+        header.flip();
+        writeFully(header);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /** A checkpoint event without constant pools, since all strings are written inline. */
+    private byte[] checkpointEvent() {
+        EventOutput out = new EventOutput();
+        out.putLong(CHECKPOINT_TYPE_ID);
+        out.putLong(JfrTicks.now());
+        out.putLong(0); // duration
+        out.putLong(0); // delta to the previous checkpoint: none
+        out.putByte((byte) 0); // checkpoint kind
+        out.putInt(0); // number of constant pools
+        return out.toEventBytes();
+    }
+
+    private byte[] metadataEvent() {
+        Element metadata = new Element("metadata");
+        for (JfrType type : JfrType.values()) {
+            metadata.add(new Element("class").attribute("name", type.name).attribute("id", String.valueOf(type.id)));
+        }
+        for (JfrEvent event : JfrEvent.values()) {
+            Element eventClass = metadata.add(new Element("class"));
+            eventClass.attribute("name", event.eventName).attribute("id", String.valueOf(event.id)).attribute("superType", "jdk.jfr.Event");
+            eventClass.add(field("startTime", JfrType.LONG));
+            if (event.hasDuration) {
+                eventClass.add(field("duration", JfrType.LONG));
+            }
+            for (int i = 0; i < event.fields.length; i += 2) {
+                eventClass.add(field((String) event.fields[i], (JfrType) event.fields[i + 1]));
+            }
+        }
+        Element region = new Element("region");
+        region.attribute("locale", Locale.getDefault().toString());
+        region.attribute("gmtOffset", String.valueOf(TimeZone.getDefault().getRawOffset()));
+        Element root = new Element("root");
+        root.add(metadata);
+        root.add(region);
+
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> stringIndex = new LinkedHashMap<>();
+        root.collectStrings(strings, stringIndex);
+
+        EventOutput out = new EventOutput();
+        out.putLong(METADATA_TYPE_ID);
+        out.putLong(JfrTicks.now());
+        out.putLong(0); // duration
+        out.putLong(++metadataId);
+        out.putInt(strings.size());
+        for (String s : strings) {
+            out.putString(s);
+        }
+        root.write(out, stringIndex);
+        return out.toEventBytes();
+    }
+
+    private static Element field(String name, JfrType type) {
+        return new Element("field").attribute("name", name).attribute("class", String.valueOf(type.id));
+    }
+
+    /** An element of the metadata, whose names and attributes refer to a pool of strings. */
+    private static final class Element {
+        final String name;
+        final Map<String, String> attributes = new LinkedHashMap<>();
+        final List<Element> children = new ArrayList<>();
+
+        Element(String name) {
+            this.name = name;
+        }
+
+        Element attribute(String key, String value) {
+            attributes.put(key, value);
+            return this;
+        }
+
+        Element add(Element child) {
+            children.add(child);
+            return child;
+        }
+
+        void collectStrings(List<String> strings, Map<String, Integer> stringIndex) {
+            intern(name, strings, stringIndex);
+            for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                intern(entry.getKey(), strings, stringIndex);
+                intern(entry.getValue(), strings, stringIndex);
+            }
+            for (Element child : children) {
+                child.collectStrings(strings, stringIndex);
+            }
+        }
+
+        private static void intern(String s, List<String> strings, Map<String, Integer> stringIndex) {
+            if (!stringIndex.containsKey(s)) {
+                stringIndex.put(s, strings.size());
+                strings.add(s);
+            }
+        }
+
+        void write(EventOutput out, Map<String, Integer> stringIndex) {
+            out.putInt(stringIndex.get(name));
+            out.putInt(attributes.size());
+            for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                out.putInt(stringIndex.get(entry.getKey()));
+                out.putInt(stringIndex.get(entry.getValue()));
+            }
+            out.putInt(children.size());
+            for (Element child : children) {
+                child.write(out, stringIndex);
+            }
+        }
+    }
+
+    /**
+     * Collects the contents of an event that is written by the recorder itself, with the same
+     * encoding that {@link JfrEventWriter} uses for events in thread buffers.
+     */
+    private static final class EventOutput {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        void putByte(byte value) {
+            bytes.write(value);
+        }
+
+        void putLong(long value) {
+            long v = value;
+            for (int i = 0; i < 8; i++) {
+                if ((v & ~0x7FL) == 0) {
+                    bytes.write((int) v);
+                    return;
+                }
+                bytes.write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            bytes.write((int) v);
+        }
+
+        void putInt(int value) {
+            putLong(value & 0xFFFFFFFFL);
+        }
+
+        void putString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            putByte(JfrEventWriter.JfrStringEncoding.UTF8);
+            putInt(utf8.length);
+            bytes.write(utf8, 0, utf8.length);
+        }
+
+        /** Returns the event, prefixed with its size. */
+        byte[] toEventBytes() {
+            int size = JfrEventWriter.SIZE_FIELD_BYTES + bytes.size();
+            byte[] result = new byte[size];
+            for (int i = 0; i < JfrEventWriter.SIZE_FIELD_BYTES - 1; i++) {
+                result[i] = (byte) (((size >>> (7 * i)) & 0x7F) | 0x80);
+            }
+            result[JfrEventWriter.SIZE_FIELD_BYTES - 1] = (byte) (size >>> (7 * (JfrEventWriter.SIZE_FIELD_BYTES - 1)));
+            byte[] contents = bytes.toByteArray();
+            System.arraycopy(contents, 0, result, JfrEventWriter.SIZE_FIELD_BYTES, contents.length);
+            return result;
+        }
+    }
+}
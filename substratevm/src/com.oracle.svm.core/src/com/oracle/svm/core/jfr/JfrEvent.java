@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.jfr;
+
+/**
+ * The events that the {@link FlightRecorder} records, with the names and fields of the
+ * corresponding JDK Flight Recorder events, so that existing tools can read the recordings. Every
+ * event starts with its start time, followed by its duration unless it is an instant event, and
+ * then the fields listed here, in that order.
+ */
+enum JfrEvent {
+    GarbageCollection(100, "jdk.GarbageCollection", true,
+                    "gcId", JfrType.INT,
+                    "name", JfrType.STRING,
+                    "cause", JfrType.STRING,
+                    "sumOfPauses", JfrType.LONG,
+                    "longestPause", JfrType.LONG),
+    SafepointBegin(101, "jdk.SafepointBegin", true,
+                    "safepointId", JfrType.LONG,
+                    "totalThreadCount", JfrType.INT),
+    SafepointEnd(102, "jdk.SafepointEnd", true,
+                    "safepointId", JfrType.LONG),
+    ExecuteVMOperation(103, "jdk.ExecuteVMOperation", true,
+                    "operation", JfrType.STRING,
+                    "safepoint", JfrType.BOOLEAN),
+    JavaMonitorEnter(104, "jdk.JavaMonitorEnter", true,
+                    "monitorClass", JfrType.STRING),
+    ObjectAllocationInNewTLAB(105, "jdk.ObjectAllocationInNewTLAB", false,
+                    "objectClass", JfrType.STRING,
+                    "allocationSize", JfrType.LONG,
+                    "tlabSize", JfrType.LONG),
+    ObjectAllocationOutsideTLAB(106, "jdk.ObjectAllocationOutsideTLAB", false,
+                    "objectClass", JfrType.STRING,
+                    "allocationSize", JfrType.LONG);
+
+    final long id;
+    final String eventName;
+    final boolean hasDuration;
+    /** Alternating field names and {@link JfrType types}. */
+    final Object[] fields;
+
+    JfrEvent(long id, String eventName, boolean hasDuration, Object... fields) {
+        this.id = id;
+        this.eventName = eventName;
+        this.hasDuration = hasDuration;
+        this.fields = fields;
+    }
+}
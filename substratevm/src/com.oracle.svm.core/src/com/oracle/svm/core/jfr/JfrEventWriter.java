@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.jfr;
+
+import org.graalvm.word.Pointer;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.annotate.RestrictHeapAccess;
+
+/**
+ * Writes events into the buffer of the current thread, in the format of the JDK Flight Recorder:
+ * every event starts with its size and its type id, and all integers are compressed, i.e., written
+ * with 7 bits per byte and the highest bit set in all but the last byte.
+ *
+ * An event is written after the committed position of the buffer and becomes visible to the
+ * {@link FlightRecorder} only when {@link #endEvent} advances the committed position. Since the
+ * size of an event is only known at the end, its size is written with a fixed width of
+ * {@link #SIZE_FIELD_BYTES} bytes. The values of an event must be computed before
+ * {@link #beginEvent}, because computing them must not record another event into the same buffer.
+ */
+final class JfrEventWriter {
+    static final int SIZE_FIELD_BYTES = 4;
+    static final int MAX_STRING_LENGTH = 256;
+
+    /** Enough room for an event with up to 8 integer fields and 2 strings. */
+    static final int MAX_EVENT_SIZE = SIZE_FIELD_BYTES + 8 * 9 + 2 * (5 + 3 * MAX_STRING_LENGTH);
+
+    private JfrEventWriter() {
+    }
+
+    /**
+     * Reserves room for an event and writes its header. Returns the position at which the fields
+     * of the event are written, or the null pointer if the event must be dropped.
+     */
+    static Pointer beginEvent(JfrEvent event, long startTicks) {
+        JfrBuffer buffer = JfrBuffers.reserve(MAX_EVENT_SIZE);
+        if (buffer.isNull()) {
+            return WordFactory.nullPointer();
+        }
+        Pointer p = buffer.getCommitted().add(SIZE_FIELD_BYTES);
+        p = putLong(p, event.id);
+        return putLong(p, startTicks);
+    }
+
+    /** Completes the event that starts at the committed position and ends before {@code end}. */
+    static void endEvent(Pointer end) {
+        JfrBuffer buffer = JfrBuffers.getThreadBuffer();
+        Pointer start = buffer.getCommitted();
+        putPaddedInt(start, (int) end.subtract(start).rawValue());
+        buffer.setCommitted(end);
+    }
+
+    static Pointer putLong(Pointer p, long value) {
+        Pointer q = p;
+        long v = value;
+        for (int i = 0; i < 8; i++) {
+            if ((v & ~0x7FL) == 0) {
+                q.writeByte(0, (byte) v);
+                return q.add(1);
+            }
+            q.writeByte(0, (byte) (v | 0x80));
+            q = q.add(1);
+            v >>>= 7;
+        }
+        /* The ninth byte holds the remaining 8 bits. */
+        q.writeByte(0, (byte) v);
+        return q.add(1);
+    }
+
+    static Pointer putInt(Pointer p, int value) {
+        return putLong(p, value & 0xFFFFFFFFL);
+    }
+
+    static Pointer putBoolean(Pointer p, boolean value) {
+        p.writeByte(0, (byte) (value ? 1 : 0));
+        return p.add(1);
+    }
+
+    /** Strings are written as arrays of characters, and truncated to {@link #MAX_STRING_LENGTH}. */
+    static Pointer putString(Pointer p, String value) {
+        if (value == null) {
+            return putByte(p, JfrStringEncoding.NULL);
+        }
+        int length = Math.min(value.length(), MAX_STRING_LENGTH);
+        Pointer q = putByte(p, JfrStringEncoding.CHAR_ARRAY);
+        q = putInt(q, length);
+        for (int i = 0; i < length; i++) {
+            q = putInt(q, charAt(value, i));
+        }
+        return q;
+    }
+
+    private static Pointer putByte(Pointer p, byte value) {
+        p.writeByte(0, value);
+        return p.add(1);
+    }
+
+    /** Writes a compressed integer that always occupies {@link #SIZE_FIELD_BYTES} bytes. */
+    static void putPaddedInt(Pointer p, int value) {
+        assert value >>> (7 * SIZE_FIELD_BYTES) == 0;
+        for (int i = 0; i < SIZE_FIELD_BYTES - 1; i++) {
+            p.writeByte(i, (byte) (((value >>> (7 * i)) & 0x7F) | 0x80));
+        }
+        p.writeByte(SIZE_FIELD_BYTES - 1, (byte) (value >>> (7 * (SIZE_FIELD_BYTES - 1))));
+    }
+
+    @RestrictHeapAccess(access = RestrictHeapAccess.Access.UNRESTRICTED, overridesCallers = true, reason = "String.charAt can allocate exception, but we know that our access is in bounds")
+    private static char charAt(String s, int index) {
+        return s.charAt(index);
+    }
+
+    /** The encodings of strings in a recording. */
+    static final class JfrStringEncoding {
+        static final byte NULL = 0;
+        static final byte EMPTY = 1;
+        static final byte CONSTANT_POOL = 2;
+        static final byte UTF8 = 3;
+        static final byte CHAR_ARRAY = 4;
+        static final byte LATIN1 = 5;
+
+        private JfrStringEncoding() {
+        }
+    }
+}
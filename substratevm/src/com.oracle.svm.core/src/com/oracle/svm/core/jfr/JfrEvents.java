@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.jfr;
+
+import org.graalvm.word.Pointer;
+
+/**
+ * Records the events of the {@link FlightRecorder}. All methods return immediately when no
+ * recording is active. The callers compute the start time of an event with {@link #beginTicks}, so
+ * that no time is measured when no recording is active.
+ */
+public final class JfrEvents {
+    private JfrEvents() {
+    }
+
+    /** Returns the current time in ticks if a recording is active, or 0 otherwise. */
+    public static long beginTicks() {
+        return FlightRecorder.isRecording() ? JfrTicks.now() : 0L;
+    }
+
+    public static void emitGarbageCollection(long startTicks, int gcId, String name, String cause) {
+        if (!FlightRecorder.isRecording() || startTicks == 0) {
+            return;
+        }
+        long duration = JfrTicks.now() - startTicks;
+        Pointer p = JfrEventWriter.beginEvent(JfrEvent.GarbageCollection, startTicks);
+        if (p.isNull()) {
+            return;
+        }
+        p = JfrEventWriter.putLong(p, duration);
+        p = JfrEventWriter.putInt(p, gcId);
+        p = JfrEventWriter.putString(p, name);
+        p = JfrEventWriter.putString(p, cause);
+        /* Every collection is a single pause. */
+        p = JfrEventWriter.putLong(p, duration);
+        p = JfrEventWriter.putLong(p, duration);
+        JfrEventWriter.endEvent(p);
+    }
+
+    /**
+     * Records that all threads have been stopped. The duration of the event is the time it took
+     * to stop them.
+     */
+    public static void emitSafepointBegin(long startTicks, long safepointId, int totalThreadCount) {
+        if (!FlightRecorder.isRecording() || startTicks == 0) {
+            return;
+        }
+        Pointer p = JfrEventWriter.beginEvent(JfrEvent.SafepointBegin, startTicks);
+        if (p.isNull()) {
+            return;
+        }
+        p = JfrEventWriter.putLong(p, JfrTicks.now() - startTicks);
+        p = JfrEventWriter.putLong(p, safepointId);
+        p = JfrEventWriter.putInt(p, totalThreadCount);
+        JfrEventWriter.endEvent(p);
+    }
+
+    /** Records that all threads have been released. */
+    public static void emitSafepointEnd(long startTicks, long safepointId) {
+        if (!FlightRecorder.isRecording() || startTicks == 0) {
+            return;
+        }
+        Pointer p = JfrEventWriter.beginEvent(JfrEvent.SafepointEnd, startTicks);
+        if (p.isNull()) {
+            return;
+        }
+        p = JfrEventWriter.putLong(p, JfrTicks.now() - startTicks);
+        p = JfrEventWriter.putLong(p, safepointId);
+        JfrEventWriter.endEvent(p);
+    }
+
+    public static void emitExecuteVMOperation(long startTicks, String operation, boolean safepoint) {
+        if (!FlightRecorder.isRecording() || startTicks == 0) {
+            return;
+        }
+        Pointer p = JfrEventWriter.beginEvent(JfrEvent.ExecuteVMOperation, startTicks);
+        if (p.isNull()) {
+            return;
+        }
+        p = JfrEventWriter.putLong(p, JfrTicks.now() - startTicks);
+        p = JfrEventWriter.putString(p, operation);
+        p = JfrEventWriter.putBoolean(p, safepoint);
+        JfrEventWriter.endEvent(p);
+    }
+
+    /** Records that a thread had to wait for a monitor. */
+    public static void emitJavaMonitorEnter(long startTicks, String monitorClass) {
+        if (!FlightRecorder.isRecording() || startTicks == 0) {
+            return;
+        }
+        Pointer p = JfrEventWriter.beginEvent(JfrEvent.JavaMonitorEnter, startTicks);
+        if (p.isNull()) {
+            return;
+        }
+        p = JfrEventWriter.putLong(p, JfrTicks.now() - startTicks);
+        p = JfrEventWriter.putString(p, monitorClass);
+        JfrEventWriter.endEvent(p);
+    }
+
+    /** Records an allocation that required a new thread-local allocation buffer. */
+    public static void emitObjectAllocationInNewTLAB(String objectClass, long allocationSize, long tlabSize) {
+        if (!FlightRecorder.isRecording()) {
+            return;
+        }
+        Pointer p = JfrEventWriter.beginEvent(JfrEvent.ObjectAllocationInNewTLAB, JfrTicks.now());
+        if (p.isNull()) {
+            return;
+        }
+        p = JfrEventWriter.putString(p, objectClass);
+        p = JfrEventWriter.putLong(p, allocationSize);
+        p = JfrEventWriter.putLong(p, tlabSize);
+        JfrEventWriter.endEvent(p);
+    }
+
+    /** Records an allocation outside of thread-local allocation buffers. */
+    public static void emitObjectAllocationOutsideTLAB(String objectClass, long allocationSize) {
+        if (!FlightRecorder.isRecording()) {
+            return;
+        }
+        Pointer p = JfrEventWriter.beginEvent(JfrEvent.ObjectAllocationOutsideTLAB, JfrTicks.now());
+        if (p.isNull()) {
+            return;
+        }
+        p = JfrEventWriter.putString(p, objectClass);
+        p = JfrEventWriter.putLong(p, allocationSize);
+        JfrEventWriter.endEvent(p);
+    }
+}
@@ -36,6 +36,7 @@ import org.graalvm.word.WordFactory;
 
 import com.oracle.svm.core.annotate.Uninterruptible;
 import com.oracle.svm.core.c.function.CEntryPointCreateIsolateParameters;
+import com.oracle.svm.core.util.PointerUtils;
 
 /**
  * A provider of ranges of committed memory, which is virtual memory that is backed by physical
@@ -105,6 +106,32 @@ public interface CommittedMemoryProvider {
     @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
     boolean free(PointerBase start, UnsignedWord nbytes, UnsignedWord alignment, boolean executable);
 
+    /**
+     * Indicate that the contents of a part of a block of committed memory that was allocated with
+     * {@link #allocate} are no longer needed, so that the operating system can reclaim the physical
+     * memory. The memory remains accessible, but its contents are undefined afterwards. Only the
+     * {@linkplain #getGranularity() granularity}-aligned pages that are entirely within the range
+     * are discarded.
+     *
+     * @param start The start of the range.
+     * @param nbytes The size of the range in bytes.
+     * @return The number of bytes that were discarded, which is zero if the operation is not
+     *         supported or the range does not span an entire page.
+     */
+    default UnsignedWord discard(PointerBase start, UnsignedWord nbytes) {
+        UnsignedWord granularity = getGranularity();
+        Pointer pagedStart = PointerUtils.roundUp(start, granularity);
+        Pointer pagedEnd = PointerUtils.roundDown(((Pointer) start).add(nbytes), granularity);
+        if (pagedEnd.belowOrEqual(pagedStart)) {
+            return WordFactory.zero();
+        }
+        UnsignedWord pagedSize = pagedEnd.subtract(pagedStart);
+        if (VirtualMemoryProvider.get().discard(pagedStart, pagedSize) != 0) {
+            return WordFactory.zero();
+        }
+        return pagedSize;
+    }
+
     /**
      * Called by the garbage collector before a collection is started, as an opportunity to perform
      * lazy operations, sanity checks or clean-ups.
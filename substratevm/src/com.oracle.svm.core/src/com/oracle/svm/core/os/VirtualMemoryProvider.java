@@ -163,6 +163,23 @@ public interface VirtualMemoryProvider {
      */
     int uncommit(PointerBase start, UnsignedWord nbytes);
 
+    /**
+     * Indicate that the contents of a committed address range, or of a subrange of a committed
+     * address range, are no longer needed, so that the physical memory provisioned for it can be
+     * reclaimed. Unlike with {@link #uncommit}, the range remains committed and can be accessed
+     * afterwards, but its contents are undefined.
+     *
+     * @param start The start of the address range to be discarded, which must be a multiple of the
+     *            {@linkplain #getGranularity() granularity}.
+     * @param nbytes The size in bytes of the address range to be discarded, which must be a
+     *            multiple of the {@linkplain #getGranularity() granularity}.
+     * @return 0 when successful, or a non-zero implementation-specific error code, which includes
+     *         when the operation is not supported.
+     */
+    default int discard(@SuppressWarnings("unused") PointerBase start, @SuppressWarnings("unused") UnsignedWord nbytes) {
+        return -1;
+    }
+
     /**
      * Free an entire reserved address range (which may be committed or partially committed). No
      * subrange of a reserved range and no non-reserved range must be specified, or undefined
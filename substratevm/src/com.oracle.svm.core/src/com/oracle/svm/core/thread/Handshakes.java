@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.thread;
+
+import org.graalvm.compiler.api.replacements.Fold;
+import org.graalvm.compiler.options.Option;
+import org.graalvm.nativeimage.CurrentIsolate;
+import org.graalvm.nativeimage.IsolateThread;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.annotate.RestrictHeapAccess;
+import com.oracle.svm.core.annotate.Uninterruptible;
+import com.oracle.svm.core.jdk.UninterruptibleUtils;
+import com.oracle.svm.core.locks.VMMutex;
+import com.oracle.svm.core.log.Log;
+import com.oracle.svm.core.option.HostedOptionKey;
+import com.oracle.svm.core.thread.VMThreads.StatusSupport;
+import com.oracle.svm.core.threadlocal.FastThreadLocalFactory;
+import com.oracle.svm.core.threadlocal.FastThreadLocalObject;
+import com.oracle.svm.core.threadlocal.FastThreadLocalWord;
+import com.oracle.svm.core.util.TimeUtils;
+
+/**
+ * Thread-local handshakes: a {@link HandshakeClosure} is executed by a single target thread (or by
+ * each thread of a set) at its next safepoint check, while all other threads keep running.
+ *
+ * The requesting thread installs the closure in a thread-local slot of the target and forces the
+ * target into the {@linkplain Safepoint#enterSlowPathSafepointCheck slow path} of its next
+ * safepoint check, where the target executes the closure itself. Therefore, a handshake can only
+ * complete while the target executes Java code. If the target is in native code, blocked, exits, or
+ * does not reach a safepoint check within a short time, the handshake is cancelled and the caller
+ * is expected to fall back to a {@linkplain JavaVMOperation#enqueueBlockingSafepoint global
+ * safepoint}.
+ *
+ * The target is sent to the slow path in the same way as when its recurring callback is due, so
+ * handshakes are only available if {@linkplain ThreadingSupportImpl#isRecurringCallbackSupported()
+ * recurring callbacks are supported}.
+ */
+public final class Handshakes {
+
+    public static class Options {
+        @Option(help = "Use thread-local handshakes instead of global safepoints for operations that only affect a single thread.")//
+        public static final HostedOptionKey<Boolean> UseThreadLocalHandshakes = new HostedOptionKey<>(true);
+    }
+
+    /** An operation executed by the target thread of a handshake. */
+    @FunctionalInterface
+    public interface HandshakeClosure {
+        /**
+         * Executed by the target thread. The stack pointer of the frame that was interrupted by the
+         * handshake is available via {@link Handshakes#getInterruptedStackPointer()}.
+         */
+        void run();
+    }
+
+    private static final class Request {
+        static final int PENDING = 0;
+        static final int CLAIMED = 1;
+        static final int DONE = 2;
+        static final int CANCELLED = 3;
+
+        final HandshakeClosure closure;
+        final Thread target;
+        final UninterruptibleUtils.AtomicInteger state = new UninterruptibleUtils.AtomicInteger(PENDING);
+
+        Request(HandshakeClosure closure, Thread target) {
+            this.closure = closure;
+            this.target = target;
+        }
+    }
+
+    /** The maximum time that a requesting thread waits for a target to claim a handshake. */
+    private static final long CLAIM_TIMEOUT_NANOS = TimeUtils.millisToNanos(100);
+
+    private static final FastThreadLocalObject<Request> pendingRequest = FastThreadLocalFactory.createObject(Request.class);
+    private static final FastThreadLocalWord<Pointer> interruptedStackPointer = FastThreadLocalFactory.createWord();
+
+    private Handshakes() {
+    }
+
+    @Fold
+    public static boolean isEnabled() {
+        return Options.UseThreadLocalHandshakes.getValue() && ThreadingSupportImpl.isRecurringCallbackSupported();
+    }
+
+    /**
+     * Executes the closure on the target thread and waits until it has finished. Returns false if
+     * the handshake could not be completed, in which case the closure was not executed at all.
+     */
+    public static boolean execute(Thread target, HandshakeClosure closure) {
+        return execute(new Thread[]{target}, closure)[0];
+    }
+
+    /**
+     * Executes the closure on each of the target threads and waits until all of them have finished
+     * or have been cancelled. The targets execute the closure concurrently. The result indicates for
+     * each target whether the closure was executed.
+     */
+    public static boolean[] execute(Thread[] targets, HandshakeClosure closure) {
+        Request[] requests = new Request[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            requests[i] = new Request(closure, targets[i]);
+        }
+
+        if (isEnabled()) {
+            long startNanos = System.nanoTime();
+            install(requests);
+            while (poll(requests, startNanos)) {
+                Thread.yield();
+            }
+        }
+
+        boolean[] result = new boolean[requests.length];
+        for (int i = 0; i < requests.length; i++) {
+            result[i] = requests[i].state.get() == Request.DONE;
+        }
+        return result;
+    }
+
+    /** Valid only while a {@link HandshakeClosure} is executed. */
+    public static Pointer getInterruptedStackPointer() {
+        Pointer sp = interruptedStackPointer.get();
+        assert sp.isNonNull() : "no handshake in progress";
+        return sp;
+    }
+
+    /**
+     * Holding the {@link VMThreads#THREAD_MUTEX} prevents safepoints, so the targets cannot exit
+     * while their requests are installed. The mutex is locked with a transition, because a thread
+     * that blocks on it in Java state would prevent a concurrent safepoint from ever starting.
+     */
+    private static void install(Request[] requests) {
+        try (VMMutex lock = VMThreads.THREAD_MUTEX.lock()) {
+            for (Request request : requests) {
+                IsolateThread vmThread = findTarget(request.target);
+                if (vmThread.isNull() || !pendingRequest.compareAndSet(vmThread, null, request)) {
+                    /* The target is not available, or another handshake is pending for it. */
+                    request.state.compareAndSet(Request.PENDING, Request.CANCELLED);
+                } else {
+                    Safepoint.requestSafepointCheck(vmThread);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cancels requests whose target can no longer claim them, and re-requests a safepoint check for
+     * all others in case of a lost update. Returns true while there are unfinished requests.
+     */
+    private static boolean poll(Request[] requests, long startNanos) {
+        boolean timedOut = System.nanoTime() - startNanos > CLAIM_TIMEOUT_NANOS;
+        boolean unfinished = false;
+        try (VMMutex lock = VMThreads.THREAD_MUTEX.lock()) {
+            for (Request request : requests) {
+                int state = request.state.get();
+                if (state == Request.CLAIMED) {
+                    unfinished = true;
+                } else if (state == Request.PENDING) {
+                    IsolateThread vmThread = findTarget(request.target);
+                    if (vmThread.isNull() || timedOut || StatusSupport.getStatusVolatile(vmThread) != StatusSupport.STATUS_IN_JAVA) {
+                        if (request.state.compareAndSet(Request.PENDING, Request.CANCELLED)) {
+                            if (vmThread.isNonNull()) {
+                                pendingRequest.compareAndSet(vmThread, request, null);
+                            }
+                        } else {
+                            /* The target claimed the request in the meantime. */
+                            unfinished = true;
+                        }
+                    } else {
+                        Safepoint.requestSafepointCheck(vmThread);
+                        unfinished = true;
+                    }
+                }
+            }
+        }
+        return unfinished;
+    }
+
+    @Uninterruptible(reason = "Must not stop at a safepoint check while walking the thread list.")
+    private static IsolateThread findTarget(Thread target) {
+        VMThreads.THREAD_MUTEX.assertIsOwner("Must hold mutex while walking the thread list.");
+        for (IsolateThread vmThread = VMThreads.firstThread(); vmThread.isNonNull(); vmThread = VMThreads.nextThread(vmThread)) {
+            if (JavaThreads.currentThread.get(vmThread) == target) {
+                if (vmThread == CurrentIsolate.getCurrentThread() || StatusSupport.isStatusIgnoreSafepoints(vmThread)) {
+                    /* The requesting thread itself, or a thread that is detaching. */
+                    return WordFactory.nullPointer();
+                }
+                return vmThread;
+            }
+        }
+        return WordFactory.nullPointer();
+    }
+
+    /**
+     * Called by every thread in the slow path of a safepoint check. The handshake stays pending if
+     * the thread is currently not allowed to execute arbitrary Java code.
+     */
+    @Uninterruptible(reason = "Must not contain safepoint checks.")
+    static void executePendingHandshake(Pointer interruptedSP) {
+        Request request = pendingRequest.get();
+        if (request == null || VMOperation.isInProgress() || ThreadingSupportImpl.isRecurringCallbackPaused()) {
+            return;
+        }
+        pendingRequest.compareAndSet(request, null);
+        if (!request.state.compareAndSet(Request.PENDING, Request.CLAIMED)) {
+            /* Cancelled by the requesting thread. */
+            return;
+        }
+
+        interruptedStackPointer.set(interruptedSP);
+        try {
+            invokeClosure(request.closure);
+        } finally {
+            interruptedStackPointer.set(WordFactory.nullPointer());
+            request.state.set(Request.DONE);
+        }
+    }
+
+    @Uninterruptible(reason = "Required by caller, but does not apply to callee.", calleeMustBe = false)
+    @RestrictHeapAccess(reason = "Callee may allocate", access = RestrictHeapAccess.Access.UNRESTRICTED, overridesCallers = true)
+    private static void invokeClosure(HandshakeClosure closure) {
+        try {
+            closure.run();
+        } catch (Throwable t) {
+            Log.log().string("Exception caught in handshake (ignored): ").object(t).newline();
+        }
+    }
+}
@@ -539,6 +539,14 @@ public abstract class JavaThreads {
     }
 
     static StackTraceElement[] getStackTrace(Thread thread) {
+        if (Handshakes.isEnabled()) {
+            /* Only the target thread needs to stop, so try to avoid a global safepoint. */
+            StackTraceHandshake handshake = new StackTraceHandshake();
+            if (Handshakes.execute(thread, handshake)) {
+                return handshake.result;
+            }
+        }
+
         StackTraceElement[][] result = new StackTraceElement[1][0];
         JavaVMOperation.enqueueBlockingSafepoint("getStackTrace", () -> {
             for (IsolateThread cur = VMThreads.firstThread(); cur.isNonNull(); cur = VMThreads.nextThread(cur)) {
@@ -561,6 +569,16 @@ public abstract class JavaThreads {
         return result;
     }
 
+    private static final class StackTraceHandshake implements Handshakes.HandshakeClosure {
+        StackTraceElement[] result;
+
+        @Override
+        public void run() {
+            /* Start at the interrupted frame so that no handshake frames show up. */
+            result = StackTraceUtils.getStackTrace(false, Handshakes.getInterruptedStackPointer());
+        }
+    }
+
     @NeverInline("Starting a stack walk in the caller frame")
     private static StackTraceElement[] getStackTrace(IsolateThread thread) {
         if (thread == CurrentIsolate.getCurrentThread()) {
@@ -52,6 +52,8 @@ import com.oracle.svm.core.annotate.StubCallingConvention;
 import com.oracle.svm.core.annotate.Uninterruptible;
 import com.oracle.svm.core.heap.Heap;
 import com.oracle.svm.core.jdk.UninterruptibleUtils;
+import com.oracle.svm.core.jfr.FlightRecorder;
+import com.oracle.svm.core.jfr.JfrEvents;
 import com.oracle.svm.core.log.Log;
 import com.oracle.svm.core.nodes.CFunctionEpilogueNode;
 import com.oracle.svm.core.nodes.CFunctionPrologueNode;
@@ -59,6 +61,7 @@ import com.oracle.svm.core.nodes.CodeSynchronizationNode;
 import com.oracle.svm.core.nodes.SafepointCheckNode;
 import com.oracle.svm.core.option.HostedOptionKey;
 import com.oracle.svm.core.option.RuntimeOptionKey;
+import com.oracle.svm.core.snippets.KnownIntrinsics;
 import com.oracle.svm.core.snippets.SnippetRuntime;
 import com.oracle.svm.core.snippets.SnippetRuntime.SubstrateForeignCallDescriptor;
 import com.oracle.svm.core.snippets.SubstrateForeignCallTarget;
@@ -346,6 +349,26 @@ public final class Safepoint {
         return safepointRequested.getVolatile(vmThread);
     }
 
+    /**
+     * Makes another thread enter the slow path of its next safepoint check without requesting a
+     * safepoint, so that it can execute {@linkplain Handshakes thread-local work}. Like
+     * {@link ThreadingSupportImpl#resumeRecurringCallbackAtNextSafepoint()}, this only lowers the
+     * counter so that the next decrement by the thread itself reaches 0, which the slow path then
+     * handles like an expired callback interval. The counter is never set to 0 or negated, so a
+     * concurrent safepoint request is not affected. Must be called while holding
+     * {@link VMThreads#THREAD_MUTEX} so that no safepoint can be in progress.
+     */
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    static void requestSafepointCheck(IsolateThread vmThread) {
+        VMThreads.THREAD_MUTEX.assertIsOwner("Must hold mutex to request a safepoint check.");
+        assert ThreadingSupportImpl.isRecurringCallbackSupported() : "the counter is only decremented if recurring callbacks are supported";
+        int value = safepointRequested.getVolatile(vmThread);
+        if (value > 1) {
+            /* A failed CAS means that the thread is already on its way to the slow path. */
+            safepointRequested.compareAndSet(vmThread, value, 1);
+        }
+    }
+
     /**
      * Returns the memory location identity for {@link #safepointRequested}.
      */
@@ -375,6 +398,10 @@ public final class Safepoint {
              */
             slowPathSafepointCheck(StatusSupport.STATUS_IN_JAVA, false);
 
+            if (Handshakes.isEnabled()) {
+                Handshakes.executePendingHandshake(KnownIntrinsics.readCallerStackPointer());
+            }
+
         } catch (SafepointException se) {
             /* This exception is intended to be thrown from safepoint checks, at one's own risk */
             throw se.inner;
@@ -514,6 +541,12 @@ public final class Safepoint {
         /** The thread requesting a safepoint. */
         private volatile IsolateThread requestingThread;
 
+        /** The number of safepoints so far, which identifies the current safepoint in events. */
+        private long safepointId;
+
+        /** When the current safepoint was requested, if a flight recording is active. */
+        private long safepointStartTicks;
+
         @Platforms(Platform.HOSTED_ONLY.class)
         private Master() {
             this.safepointState = NOT_AT_SAFEPOINT;
@@ -538,6 +571,8 @@ public final class Safepoint {
             }
 
             requestingThread = CurrentIsolate.getCurrentThread();
+            safepointId++;
+            safepointStartTicks = JfrEvents.beginTicks();
             Statistics.reset();
             Statistics.setStartNanos();
             ImageSingletons.lookup(Heap.class).prepareForSafepoint();
@@ -546,6 +581,9 @@ public final class Safepoint {
             waitForSafepoints(reason);
             Statistics.setFrozenNanos();
             safepointState = AT_SAFEPOINT;
+            if (FlightRecorder.isRecording()) {
+                JfrEvents.emitSafepointBegin(safepointStartTicks, safepointId, countThreads());
+            }
             return lock;
         }
 
@@ -555,10 +593,12 @@ public final class Safepoint {
             assert SubstrateOptions.MultiThreaded.getValue() : "Should only thaw from a safepoint when multi-threaded.";
             assert VMOperationControl.mayExecuteVmOperations();
 
+            long thawStartTicks = JfrEvents.beginTicks();
             safepointState = NOT_AT_SAFEPOINT;
             releaseSafepoints(reason);
             ImageSingletons.lookup(Heap.class).endSafepoint();
             Statistics.setThawedNanos();
+            JfrEvents.emitSafepointEnd(thawStartTicks, safepointId);
             requestingThread = WordFactory.nullPointer();
 
             if (unlock) {
@@ -569,6 +609,14 @@ public final class Safepoint {
             VMThreads.singleton().cleanupExitedOsThreads();
         }
 
+        private static int countThreads() {
+            int count = 0;
+            for (IsolateThread thread = VMThreads.firstThread(); thread.isNonNull(); thread = VMThreads.nextThread(thread)) {
+                count++;
+            }
+            return count;
+        }
+
         private static boolean isMyself(IsolateThread thread) {
             return thread == CurrentIsolate.getCurrentThread();
         }
@@ -31,6 +31,7 @@ import org.graalvm.nativeimage.IsolateThread;
 import com.oracle.svm.core.SubstrateOptions;
 import com.oracle.svm.core.annotate.RestrictHeapAccess;
 import com.oracle.svm.core.annotate.Uninterruptible;
+import com.oracle.svm.core.jfr.JfrEvents;
 import com.oracle.svm.core.log.Log;
 import com.oracle.svm.core.thread.VMOperationControl.OpInProgress;
 import com.oracle.svm.core.util.VMError;
@@ -83,6 +84,7 @@ public abstract class VMOperation {
         IsolateThread prevQueuingThread = control.getInProgress().getQueuingThread();
         IsolateThread prevExecutingThread = control.getInProgress().getExecutingThread();
 
+        long startTicks = JfrEvents.beginTicks();
         control.setInProgress(this, getQueuingThread(data), CurrentIsolate.getCurrentThread());
         try {
             trace.string("[Executing operation ").string(name);
@@ -93,6 +95,7 @@ public abstract class VMOperation {
             throw VMError.shouldNotReachHere(t);
         } finally {
             control.setInProgress(prevOperation, prevQueuingThread, prevExecutingThread);
+            JfrEvents.emitExecuteVMOperation(startTicks, name, getCausesSafepoint());
         }
     }
 
@@ -44,6 +44,7 @@ import com.oracle.svm.core.c.function.CFunctionOptions;
 import com.oracle.svm.core.heap.Heap;
 import com.oracle.svm.core.jdk.UninterruptibleUtils;
 import com.oracle.svm.core.jdk.UninterruptibleUtils.AtomicWord;
+import com.oracle.svm.core.jfr.FlightRecorder;
 import com.oracle.svm.core.locks.VMCondition;
 import com.oracle.svm.core.locks.VMMutex;
 import com.oracle.svm.core.threadlocal.FastThreadLocalFactory;
@@ -332,6 +333,7 @@ public abstract class VMThreads {
     private static void releaseThread(IsolateThread thread) {
         THREAD_MUTEX.guaranteeIsOwner("This mutex must be locked to prevent that a GC is triggered while detaching a thread from the heap");
         Heap.getHeap().detachThread(thread);
+        FlightRecorder.detachThread(thread);
         singleton().freeIsolateThread(thread);
         // After that point, the freed thread must not access Object data in the Java heap.
     }
@@ -660,6 +662,22 @@ public abstract class VMThreads {
             safepointsDisabledTL.setVolatile(1);
         }
 
+        /**
+         * Make a thread that is in native code immune to safepoints, or undo that before it returns
+         * to Java code. The {@link #THREAD_MUTEX} is held while the status changes, so that no
+         * safepoint can be in progress.
+         */
+        @Uninterruptible(reason = "Called from uninterruptible code.")
+        public static void setStatusIgnoreSafepointsInNative(boolean ignore) {
+            assert isStatusNativeOrSafepoint() : "Must be in native code.";
+            THREAD_MUTEX.lockNoTransition();
+            try {
+                safepointsDisabledTL.setVolatile(ignore ? 1 : 0);
+            } finally {
+                THREAD_MUTEX.unlock();
+            }
+        }
+
         public static boolean isValidStatus(int status) {
             return status > STATUS_ILLEGAL && status <= MAX_STATUS;
         }
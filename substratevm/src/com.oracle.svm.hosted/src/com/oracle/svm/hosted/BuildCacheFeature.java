@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.hosted;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.graalvm.collections.UnmodifiableMapCursor;
+import org.graalvm.compiler.bytecode.BytecodeStream;
+import org.graalvm.compiler.bytecode.Bytecodes;
+import org.graalvm.compiler.options.Option;
+import org.graalvm.compiler.options.OptionKey;
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.hosted.Feature;
+
+import com.oracle.graal.pointsto.infrastructure.WrappedConstantPool;
+import com.oracle.graal.pointsto.meta.AnalysisMethod;
+import com.oracle.graal.pointsto.util.AnalysisError;
+import com.oracle.svm.core.LinkerInvocation;
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.option.HostedOptionKey;
+import com.oracle.svm.core.option.HostedOptionValues;
+import com.oracle.svm.core.util.UserError;
+import com.oracle.svm.core.util.VMError;
+import com.oracle.svm.hosted.FeatureImpl.AfterAnalysisAccessImpl;
+import com.oracle.svm.hosted.c.codegen.CCompilerInvoker;
+
+import jdk.vm.ci.meta.JavaConstant;
+import jdk.vm.ci.meta.JavaType;
+
+/**
+ * Maintains a build cache directory that records the inputs of an image build, so that a rebuild
+ * can tell which methods changed since the previous build of the same image, and can reuse the
+ * linked image of the previous build.
+ *
+ * Every method that the static analysis found to be implementation-invoked gets a fingerprint that
+ * covers its bytecode, the classes, members and constants that the bytecode refers to, the
+ * substitution that is in effect for it and its modifiers. The hosted options are fingerprinted as
+ * a whole, since a changed option can affect any method. After the image is written, the
+ * fingerprints are compared against the cache of the previous build and the cache is replaced. When
+ * no input changed, the image is also checked to be bit-for-bit identical to the previous one.
+ *
+ * The linker step is reused: if the linker command, the C compiler, the contents of the object file
+ * and of the other input files and libraries are the same as in the previous build, the linked
+ * image is copied from the cache instead of running the linker again. Libraries that are found only
+ * in the default search path of the linker are identified by their name, not by their contents.
+ * The analysis and compilation results are not reused: they refer to objects of the hosted universe
+ * and the image heap, which cannot be persisted across builds in this code base.
+ */
+@AutomaticFeature
+public class BuildCacheFeature implements Feature {
+
+    public static class Options {
+        @Option(help = "Directory in which inputs of image builds are cached to detect the methods that changed since the previous build and to reuse the linked image. Disabled when empty.")//
+        public static final HostedOptionKey<String> BuildCacheDirectory = new HostedOptionKey<>("");
+    }
+
+    private static final String OPTIONS_ENTRY = "options";
+    private static final String IMAGE_ENTRY = "image";
+    private static final String METHOD_ENTRY = "method";
+    private static final String LINK_ENTRY = "link";
+
+    private final Map<String, String> methodFingerprints = new TreeMap<>();
+    private String optionsFingerprint;
+    private String linkFingerprint;
+
+    /** Returns the feature if the build cache is enabled, or null. */
+    public static BuildCacheFeature singletonOrNull() {
+        return ImageSingletons.contains(BuildCacheFeature.class) ? ImageSingletons.lookup(BuildCacheFeature.class) : null;
+    }
+
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return !Options.BuildCacheDirectory.getValue().isEmpty();
+    }
+
+    @Override
+    public void afterRegistration(AfterRegistrationAccess access) {
+        ImageSingletons.add(BuildCacheFeature.class, this);
+    }
+
+    @Override
+    public void afterAnalysis(AfterAnalysisAccess a) {
+        AfterAnalysisAccessImpl access = (AfterAnalysisAccessImpl) a;
+        for (AnalysisMethod method : access.getUniverse().getMethods()) {
+            if (method.isImplementationInvoked()) {
+                methodFingerprints.put(method.getQualifiedName(), fingerprint(method));
+            }
+        }
+        optionsFingerprint = fingerprintOptions();
+    }
+
+    /**
+     * Called before the linker is run. If the linker inputs are the same as in the previous build,
+     * copies the linked image of the previous build to the output file and returns true, so that
+     * the linker does not need to run.
+     */
+    public boolean reuseLinkedImage(LinkerInvocation inv, Path tempDirectory) {
+        Path outputFile = inv.getOutputFile();
+        Path cacheFile = cacheFile(outputFile);
+        Path linkedImage = linkedImageFile(outputFile);
+        try {
+            linkFingerprint = fingerprintLink(inv, tempDirectory);
+            if (!Files.exists(cacheFile) || !Files.exists(linkedImage) || !linkFingerprint.equals(readCache(cacheFile).get(LINK_ENTRY))) {
+                return false;
+            }
+            Files.copy(linkedImage, outputFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        } catch (IOException ex) {
+            /* Fall back to linking, and do not record this build's linker inputs. */
+            linkFingerprint = null;
+            return false;
+        }
+        System.out.println("Build cache: reused the linked image of the previous build");
+        return true;
+    }
+
+    /** Called after the linker has produced the image, to keep a copy for the next build. */
+    public void linkedImageWritten(LinkerInvocation inv) {
+        Path outputFile = inv.getOutputFile();
+        Path linkedImage = linkedImageFile(outputFile);
+        try {
+            Files.createDirectories(linkedImage.getParent());
+            Files.copy(outputFile, linkedImage, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        } catch (IOException ex) {
+            throw UserError.abort(ex, "Could not update the build cache " + linkedImage + ": " + ex.getMessage());
+        }
+    }
+
+    private static Path cacheFile(Path imagePath) {
+        return Paths.get(Options.BuildCacheDirectory.getValue()).toAbsolutePath().resolve(imagePath.getFileName() + ".buildcache");
+    }
+
+    private static Path linkedImageFile(Path imagePath) {
+        return Paths.get(Options.BuildCacheDirectory.getValue()).toAbsolutePath().resolve(imagePath.getFileName() + ".linked");
+    }
+
+    @Override
+    public void afterImageWrite(AfterImageWriteAccess access) {
+        Path imagePath = access.getImagePath();
+        Path cacheFile = cacheFile(imagePath);
+        try {
+            String imageFingerprint = fingerprintFile(imagePath);
+            if (Files.exists(cacheFile)) {
+                reportChanges(readCache(cacheFile), imageFingerprint);
+            }
+            Files.createDirectories(cacheFile.getParent());
+            Files.write(cacheFile, createCache(imageFingerprint), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw UserError.abort(ex, "Could not update the build cache " + cacheFile + ": " + ex.getMessage());
+        }
+    }
+
+    private void reportChanges(Map<String, String> previous, String imageFingerprint) {
+        int unchanged = 0;
+        int changed = 0;
+        int added = 0;
+        for (Map.Entry<String, String> entry : methodFingerprints.entrySet()) {
+            String previousFingerprint = previous.get(METHOD_ENTRY + ' ' + entry.getKey());
+            if (previousFingerprint == null) {
+                added++;
+            } else if (previousFingerprint.equals(entry.getValue())) {
+                unchanged++;
+            } else {
+                changed++;
+            }
+        }
+        boolean optionsChanged = !optionsFingerprint.equals(previous.get(OPTIONS_ENTRY));
+        int removed = 0;
+        for (String key : previous.keySet()) {
+            if (key.startsWith(METHOD_ENTRY + ' ') && !methodFingerprints.containsKey(key.substring(METHOD_ENTRY.length() + 1))) {
+                removed++;
+            }
+        }
+
+        System.out.printf("Build cache: %d methods unchanged, %d changed, %d new, %d removed%s%n", unchanged, changed, added, removed, optionsChanged ? ", options changed" : "");
+        if (!optionsChanged && changed == 0 && added == 0 && removed == 0) {
+            boolean identical = imageFingerprint.equals(previous.get(IMAGE_ENTRY));
+            System.out.println(identical ? "Build cache: image is bit-for-bit identical to the previous build"
+                            : "Build cache: Warning: image differs from the previous build although no input changed");
+        }
+    }
+
+    private List<String> createCache(String imageFingerprint) {
+        List<String> lines = new ArrayList<>();
+        lines.add(OPTIONS_ENTRY + ' ' + optionsFingerprint);
+        lines.add(IMAGE_ENTRY + ' ' + imageFingerprint);
+        if (linkFingerprint != null) {
+            lines.add(LINK_ENTRY + ' ' + linkFingerprint);
+        }
+        for (Map.Entry<String, String> entry : methodFingerprints.entrySet()) {
+            lines.add(METHOD_ENTRY + ' ' + entry.getValue() + ' ' + entry.getKey());
+        }
+        return lines;
+    }
+
+    /**
+     * Reads a cache file into a map from entry keys to fingerprints. Method entries are keyed by
+     * {@link #METHOD_ENTRY} followed by the qualified method name.
+     */
+    private static Map<String, String> readCache(Path cacheFile) throws IOException {
+        Map<String, String> result = new TreeMap<>();
+        for (String line : Files.readAllLines(cacheFile, StandardCharsets.UTF_8)) {
+            String[] parts = line.split(" ", 3);
+            if (parts.length == 3 && parts[0].equals(METHOD_ENTRY)) {
+                result.put(METHOD_ENTRY + ' ' + parts[2], parts[1]);
+            } else if (parts.length == 2) {
+                result.put(parts[0], parts[1]);
+            }
+        }
+        return result;
+    }
+
+    private static String fingerprint(AnalysisMethod method) {
+        MessageDigest digest = newDigest();
+        digest.update(method.getQualifiedName().getBytes(StandardCharsets.UTF_8));
+        /* Substituted and annotated methods are wrapped by a different class than originals. */
+        digest.update(method.getWrapped().getClass().getName().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) method.getModifiers());
+        digest.update((byte) (method.getModifiers() >>> 8));
+        byte[] code = method.getCode();
+        if (code != null) {
+            digest.update(code);
+            fingerprintReferences(method, code, digest);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * The bytecode refers to classes, members and constants by their index in the constant pool,
+     * which says nothing about what they are. So the referenced entries are resolved and their
+     * names, signatures and values are included too.
+     */
+    private static void fingerprintReferences(AnalysisMethod method, byte[] code, MessageDigest digest) {
+        WrappedConstantPool pool = (WrappedConstantPool) method.getConstantPool();
+        BytecodeStream stream = new BytecodeStream(code);
+        for (int opcode = stream.currentBC(); opcode != Bytecodes.END; stream.next(), opcode = stream.currentBC()) {
+            String reference;
+            try {
+                reference = describeReference(pool, stream, opcode);
+            } catch (LinkageError | AnalysisError | RuntimeException ex) {
+                /* The entry cannot be resolved, which is part of the behavior of the method. */
+                reference = "unresolvable " + ex.getClass().getName();
+            }
+            if (reference != null) {
+                digest.update(reference.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static String describeReference(WrappedConstantPool pool, BytecodeStream stream, int opcode) {
+        switch (opcode) {
+            case Bytecodes.INVOKEVIRTUAL:
+            case Bytecodes.INVOKESPECIAL:
+            case Bytecodes.INVOKESTATIC:
+            case Bytecodes.INVOKEINTERFACE:
+                return pool.lookupMethodInWrapped(stream.readCPI(), opcode).format("%H.%n(%P)%R");
+            case Bytecodes.INVOKEDYNAMIC:
+                return pool.lookupMethodInWrapped(stream.readCPI4(), opcode).format("%H.%n(%P)%R");
+            case Bytecodes.GETSTATIC:
+            case Bytecodes.PUTSTATIC:
+            case Bytecodes.GETFIELD:
+            case Bytecodes.PUTFIELD:
+                return pool.lookupFieldInWrapped(stream.readCPI(), null, opcode).format("%H.%n:%T");
+            case Bytecodes.NEW:
+            case Bytecodes.ANEWARRAY:
+            case Bytecodes.CHECKCAST:
+            case Bytecodes.INSTANCEOF:
+            case Bytecodes.MULTIANEWARRAY:
+                return pool.lookupTypeInWrapped(stream.readCPI(), opcode).toJavaName();
+            case Bytecodes.LDC:
+            case Bytecodes.LDC_W:
+            case Bytecodes.LDC2_W:
+                Object constant = pool.lookupConstant(stream.readCPI());
+                if (constant instanceof JavaType) {
+                    return ((JavaType) constant).toJavaName();
+                }
+                return ((JavaConstant) constant).getJavaKind() + " " + ((JavaConstant) constant).toValueString();
+            default:
+                return null;
+        }
+    }
+
+    private static String fingerprintOptions() {
+        Map<String, String> values = new TreeMap<>();
+        UnmodifiableMapCursor<OptionKey<?>, Object> cursor = HostedOptionValues.singleton().getMap().getEntries();
+        while (cursor.advance()) {
+            if (cursor.getKey() != Options.BuildCacheDirectory) {
+                Object value = cursor.getValue();
+                values.put(cursor.getKey().getName(), value instanceof Object[] ? Arrays.toString((Object[]) value) : String.valueOf(value));
+            }
+        }
+        MessageDigest digest = newDigest();
+        digest.update(values.toString().getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Fingerprints everything that the linker reads: its command line, with the temporary directory
+     * of this build replaced, the C compiler, and the contents of the input files and of the
+     * libraries that are found in the library paths.
+     */
+    private static String fingerprintLink(LinkerInvocation inv, Path tempDirectory) throws IOException {
+        MessageDigest digest = newDigest();
+        String tempPath = tempDirectory.toString();
+        for (String arg : inv.getCommand()) {
+            digest.update(arg.replace(tempPath, "<temp>").getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        digest.update(ImageSingletons.lookup(CCompilerInvoker.class).compilerInfo.toString().getBytes(StandardCharsets.UTF_8));
+        for (Path input : inv.getInputFiles()) {
+            updateWithFile(digest, tempDirectory.resolve(input));
+        }
+        for (String library : inv.getLinkedLibraries()) {
+            if (library.startsWith("-")) {
+                continue;
+            }
+            for (String libPath : inv.getLibPaths()) {
+                for (String fileName : new String[]{"lib" + library + ".a", "lib" + library + ".so", "lib" + library + ".dylib", library + ".lib"}) {
+                    Path file = tempDirectory.resolve(libPath).resolve(fileName);
+                    if (Files.isRegularFile(file)) {
+                        digest.update(fileName.getBytes(StandardCharsets.UTF_8));
+                        updateWithFile(digest, file);
+                    }
+                }
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static String fingerprintFile(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        updateWithFile(digest, file);
+        return toHex(digest.digest());
+    }
+
+    private static void updateWithFile(MessageDigest digest, Path file) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw VMError.shouldNotReachHere(ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >>> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return result.toString();
+    }
+}
@@ -91,6 +91,7 @@ import com.oracle.svm.core.graal.code.CGlobalDataReference;
 import com.oracle.svm.core.image.AbstractImageHeapLayouter.ImageHeapLayout;
 import com.oracle.svm.core.image.ImageHeapLayouter;
 import com.oracle.svm.core.image.ImageHeapPartition;
+import com.oracle.svm.core.jdk.MappedResources;
 import com.oracle.svm.core.meta.SubstrateObjectConstant;
 import com.oracle.svm.core.util.UserError;
 import com.oracle.svm.hosted.NativeImageOptions;
@@ -482,6 +483,15 @@ public abstract class NativeBootImage extends AbstractBootImage {
                 writer.writeHeap(debug, roDataBuffer, rwDataBuffer);
             }
 
+            // - Resources go in their own read-only section, if they are not in the heap.
+            if (MappedResources.isEnabled()) {
+                byte[] resources = ImageSingletons.lookup(MappedResources.Builder.class).build(objectFile.getByteOrder());
+                ProgbitsSectionImpl resourcesImpl = new BasicProgbitsSectionImpl(resources);
+                Section resourcesSection = objectFile.newProgbitsSection(SectionName.SVM_RESOURCES.getFormatDependentName(objectFile.getFormat()), objectFile.getPageSize(), false, false,
+                                resourcesImpl);
+                defineDataSymbol(MappedResources.SECTION_BEGIN_SYMBOL_NAME, resourcesSection, 0);
+            }
+
             // Mark the sections with the relocations from the maps.
             markRelocationSitesFromMaps(textBuffer, textImpl);
             markRelocationSitesFromMaps(roDataBuffer, roDataImpl);
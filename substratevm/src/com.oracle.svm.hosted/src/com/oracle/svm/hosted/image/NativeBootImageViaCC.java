@@ -53,6 +53,7 @@ import com.oracle.svm.core.c.libc.LibCBase;
 import com.oracle.svm.core.option.OptionUtils;
 import com.oracle.svm.core.util.UserError;
 import com.oracle.svm.core.util.VMError;
+import com.oracle.svm.hosted.BuildCacheFeature;
 import com.oracle.svm.hosted.FeatureImpl.BeforeImageWriteAccessImpl;
 import com.oracle.svm.hosted.NativeImageOptions;
 import com.oracle.svm.hosted.c.NativeLibraries;
@@ -382,6 +383,10 @@ public abstract class NativeBootImageViaCC extends NativeBootImage {
                     System.out.printf("Testing Mach-O debuginfo generation - SKIP %s%n", commandLine);
                     return inv;
                 } else {
+                    BuildCacheFeature buildCache = BuildCacheFeature.singletonOrNull();
+                    if (buildCache != null && buildCache.reuseLinkedImage(inv, tempDirectory)) {
+                        return inv;
+                    }
                     ProcessBuilder pb = new ProcessBuilder().command(cmd);
                     pb.directory(tempDirectory.toFile());
                     pb.redirectErrorStream(true);
@@ -402,6 +407,9 @@ public abstract class NativeBootImageViaCC extends NativeBootImage {
                     if (status != 0) {
                         throw handleLinkerFailure("Linker command exited with " + status, commandLine, output.toString());
                     }
+                    if (buildCache != null) {
+                        buildCache.linkedImageWritten(inv);
+                    }
                 }
             }
             return inv;
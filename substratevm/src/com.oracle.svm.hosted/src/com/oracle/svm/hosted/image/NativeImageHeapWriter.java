@@ -29,7 +29,13 @@ import static com.oracle.svm.core.util.VMError.shouldNotReachHere;
 import java.lang.reflect.Array;
 import java.lang.reflect.Modifier;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.graalvm.compiler.core.common.CompressEncoding;
 import org.graalvm.compiler.core.common.NumUtil;
@@ -48,6 +54,7 @@ import com.oracle.svm.core.heap.Heap;
 import com.oracle.svm.core.heap.ObjectHeader;
 import com.oracle.svm.core.hub.DynamicHub;
 import com.oracle.svm.core.image.AbstractImageHeapLayouter.ImageHeapLayout;
+import com.oracle.svm.core.image.ImageHeapPartition;
 import com.oracle.svm.core.meta.SubstrateObjectConstant;
 import com.oracle.svm.core.util.UserError;
 import com.oracle.svm.core.util.VMError;
@@ -65,16 +72,25 @@ import jdk.vm.ci.meta.ResolvedJavaMethod;
 
 /**
  * Writes the native image heap into one or multiple {@link RelocatableBuffer}s.
+ *
+ * When called from a thread of a {@link java.util.concurrent.ForkJoinPool}, such as the image
+ * build pool, the objects are written in parallel: they are grouped by their
+ * {@link ImageHeapPartition} and each group is split into tasks of consecutive objects. Every object
+ * occupies a disjoint region of its buffer, so the tasks never write the same bytes and only the
+ * relocation maps of the buffers are shared.
  */
 public final class NativeImageHeapWriter {
+    /** The number of objects written by a single task when the heap is written in parallel. */
+    private static final int OBJECTS_PER_WRITE_TASK = 4096;
+
     private final NativeImageHeap heap;
     private final ImageHeapLayout heapLayout;
-    private long sectionOffsetOfARelocatablePointer;
+    private final AtomicLong sectionOffsetOfARelocatablePointer;
 
     public NativeImageHeapWriter(NativeImageHeap heap, ImageHeapLayout heapLayout) {
         this.heap = heap;
         this.heapLayout = heapLayout;
-        this.sectionOffsetOfARelocatablePointer = -1;
+        this.sectionOffsetOfARelocatablePointer = new AtomicLong(-1);
     }
 
     /**
@@ -84,15 +100,37 @@ public final class NativeImageHeapWriter {
     @SuppressWarnings("try")
     public long writeHeap(DebugContext debug, final RelocatableBuffer roBuffer, final RelocatableBuffer rwBuffer) {
         try (Indent perHeapIndent = debug.logAndIndent("BootImageHeap.writeHeap:")) {
-            for (ObjectInfo info : heap.getObjects()) {
-                assert !heap.isBlacklisted(info.getObject());
-                writeObject(info, roBuffer, rwBuffer);
+            if (ForkJoinTask.inForkJoinPool()) {
+                ForkJoinTask.invokeAll(createWriteTasks(roBuffer, rwBuffer));
+            } else {
+                for (ObjectInfo info : heap.getObjects()) {
+                    writeObject(info, roBuffer, rwBuffer);
+                }
             }
             // Only static fields that are writable get written to the native image heap,
             // the read-only static fields have been inlined into the code.
             writeStaticFields(rwBuffer);
         }
-        return sectionOffsetOfARelocatablePointer;
+        return sectionOffsetOfARelocatablePointer.get();
+    }
+
+    private List<ForkJoinTask<?>> createWriteTasks(RelocatableBuffer roBuffer, RelocatableBuffer rwBuffer) {
+        Map<ImageHeapPartition, List<ObjectInfo>> objectsByPartition = new HashMap<>();
+        for (ObjectInfo info : heap.getObjects()) {
+            objectsByPartition.computeIfAbsent(info.getPartition(), partition -> new ArrayList<>()).add(info);
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (List<ObjectInfo> objects : objectsByPartition.values()) {
+            for (int start = 0; start < objects.size(); start += OBJECTS_PER_WRITE_TASK) {
+                List<ObjectInfo> range = objects.subList(start, Math.min(start + OBJECTS_PER_WRITE_TASK, objects.size()));
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    for (ObjectInfo info : range) {
+                        writeObject(info, roBuffer, rwBuffer);
+                    }
+                }));
+            }
+        }
+        return tasks;
     }
 
     private void writeStaticFields(RelocatableBuffer buffer) {
@@ -206,17 +244,21 @@ public final class NativeImageHeapWriter {
     private void addDirectRelocationWithoutAddend(RelocatableBuffer buffer, int index, int size, Object target) {
         assert !NativeImageHeap.spawnIsolates() || heapLayout.isReadOnlyRelocatable(index);
         buffer.addDirectRelocationWithoutAddend(index, size, target);
-        if (sectionOffsetOfARelocatablePointer == -1) {
-            sectionOffsetOfARelocatablePointer = index;
-        }
+        recordRelocatablePointer(index);
     }
 
     private void addDirectRelocationWithAddend(RelocatableBuffer buffer, int index, DynamicHub target, long objectHeaderBits) {
         assert !NativeImageHeap.spawnIsolates() || heapLayout.isReadOnlyRelocatable(index);
         buffer.addDirectRelocationWithAddend(index, referenceSize(), objectHeaderBits, target);
-        if (sectionOffsetOfARelocatablePointer == -1) {
-            sectionOffsetOfARelocatablePointer = index;
-        }
+        recordRelocatablePointer(index);
+    }
+
+    /**
+     * Remembers the lowest offset of a relocatable pointer, so that the result does not depend on
+     * the order in which parallel tasks write their objects.
+     */
+    private void recordRelocatablePointer(int index) {
+        sectionOffsetOfARelocatablePointer.accumulateAndGet(index, (current, offset) -> (current == -1) ? offset : Math.min(current, offset));
     }
 
     /**
@@ -286,6 +328,7 @@ public final class NativeImageHeapWriter {
     }
 
     private void writeObject(ObjectInfo info, final RelocatableBuffer roBuffer, final RelocatableBuffer rwBuffer) {
+        assert !heap.isBlacklisted(info.getObject());
         /*
          * Write a reference from the object to its hub. This lives at layout.getHubOffset() from
          * the object base.
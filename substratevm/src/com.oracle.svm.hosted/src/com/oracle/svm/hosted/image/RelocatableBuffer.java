@@ -29,7 +29,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.graalvm.compiler.core.common.NumUtil;
 import org.graalvm.compiler.serviceprovider.BufferUtil;
@@ -190,7 +190,7 @@ public final class RelocatableBuffer {
         this.size = size;
         final int intSize = NumUtil.safeToInt(size);
         this.buffer = ByteBuffer.wrap(new byte[intSize]).order(byteOrder);
-        this.map = new TreeMap<>();
+        this.map = new ConcurrentSkipListMap<>();
     }
 
     // Immutable fields.
@@ -201,8 +201,11 @@ public final class RelocatableBuffer {
     protected final long size;
     /** The ByteBuffer itself. */
     protected final ByteBuffer buffer;
-    /** The map itself. */
-    private final TreeMap<Integer, RelocatableBuffer.Info> map;
+    /**
+     * The map itself. It is sorted like a TreeMap, but relocations can be added concurrently when
+     * the image heap is written in parallel.
+     */
+    private final ConcurrentSkipListMap<Integer, RelocatableBuffer.Info> map;
 
     // Constants.
 
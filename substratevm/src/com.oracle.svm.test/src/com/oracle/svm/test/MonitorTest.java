@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks the monitors of objects that have a monitor slot, which start as thin locks and are
+ * inflated when they are contended, locked recursively, or waited on.
+ */
+public class MonitorTest {
+
+    private static final int THREADS = 8;
+    private static final int INCREMENTS = 100_000;
+    private static final int RECURSION_DEPTH = 10_000;
+
+    /** Synchronizes on itself, so that the static analysis gives it a monitor slot. */
+    static final class Counter {
+        private long value;
+        private boolean ready;
+
+        synchronized void increment() {
+            value++;
+        }
+
+        synchronized long get() {
+            return value;
+        }
+
+        synchronized void lockRecursively(int depth) {
+            Assert.assertTrue(Thread.holdsLock(this));
+            if (depth > 0) {
+                lockRecursively(depth - 1);
+            }
+            Assert.assertTrue(Thread.holdsLock(this));
+        }
+
+        synchronized void awaitReady() throws InterruptedException {
+            while (!ready) {
+                wait();
+            }
+        }
+
+        synchronized void setReady() {
+            ready = true;
+            notifyAll();
+        }
+    }
+
+    private static Thread start(Runnable runnable, Throwable[] failures, int index) {
+        Thread thread = new Thread(() -> {
+            try {
+                runnable.run();
+            } catch (Throwable t) {
+                failures[index] = t;
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void joinAll(Thread[] threads, Throwable[] failures) throws Throwable {
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.MINUTES.toMillis(1));
+            Assert.assertFalse("thread did not finish", thread.isAlive());
+        }
+        for (Throwable failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    @Test
+    public void testInflationUnderContention() throws Throwable {
+        Counter counter = new Counter();
+        Throwable[] failures = new Throwable[THREADS];
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            threads[i] = start(() -> {
+                for (int j = 0; j < INCREMENTS; j++) {
+                    counter.increment();
+                }
+            }, failures, i);
+        }
+        joinAll(threads, failures);
+        Assert.assertEquals((long) THREADS * INCREMENTS, counter.get());
+        Assert.assertFalse(Thread.holdsLock(counter));
+    }
+
+    @Test
+    public void testInflationByContenderWhileThinLocked() throws Throwable {
+        Counter counter = new Counter();
+        CountDownLatch contenderStarted = new CountDownLatch(1);
+        Throwable[] failures = new Throwable[1];
+        Thread contender;
+        synchronized (counter) {
+            /* Locked without contention: a thin lock. */
+            Assert.assertTrue(Thread.holdsLock(counter));
+            contender = start(() -> {
+                contenderStarted.countDown();
+                /* Blocks, and inflates the thin lock on behalf of its owner. */
+                counter.increment();
+                Assert.assertFalse(Thread.holdsLock(counter));
+            }, failures, 0);
+            contenderStarted.await();
+            /* Give the contender time to block on the lock. */
+            Thread.sleep(100);
+            Assert.assertTrue(Thread.holdsLock(counter));
+            Assert.assertEquals(0, counter.value);
+        }
+        Assert.assertFalse(Thread.holdsLock(counter));
+        joinAll(new Thread[]{contender}, failures);
+        Assert.assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void testWaitAndNotifyOnThinLock() throws Throwable {
+        Counter counter = new Counter();
+        Throwable[] failures = new Throwable[THREADS];
+        Thread[] waiters = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            waiters[i] = start(() -> {
+                try {
+                    counter.awaitReady();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }, failures, i);
+        }
+        counter.setReady();
+        joinAll(waiters, failures);
+
+        Counter fresh = new Counter();
+        synchronized (fresh) {
+            /* Notifying and waiting with a timeout on a thin lock inflate it while it is held. */
+            fresh.notify();
+            fresh.wait(1);
+            Assert.assertTrue(Thread.holdsLock(fresh));
+        }
+        Assert.assertFalse(Thread.holdsLock(fresh));
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void testNotifyWithoutLock() {
+        new Counter().notify();
+    }
+
+    @Test
+    public void testDeepRecursion() throws Throwable {
+        Counter counter = new Counter();
+        counter.lockRecursively(RECURSION_DEPTH);
+        Assert.assertFalse(Thread.holdsLock(counter));
+
+        /* Every recursive lock was released: another thread can lock the object. */
+        Throwable[] failures = new Throwable[1];
+        joinAll(new Thread[]{start(counter::increment, failures, 0)}, failures);
+        Assert.assertEquals(1, counter.get());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.graalvm.nativeimage.hosted.Feature;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.svm.core.jdk.Resources;
+
+/**
+ * Looks up many resources that are registered at image build time, including resources with the
+ * same name and names that are not registered. This covers the hash table of resources that are
+ * mapped from the image when the image is built with {@code -H:+MapResourcesFromImage}.
+ */
+public class ResourcesTest {
+    private static final int RESOURCE_COUNT = 5000;
+    private static final int DUPLICATED_EVERY = 100;
+
+    public static class TestFeature implements Feature {
+        @Override
+        public void beforeAnalysis(BeforeAnalysisAccess access) {
+            for (int i = 0; i < RESOURCE_COUNT; i++) {
+                Resources.registerResource(name(i), new ByteArrayInputStream(contents(i, 0)));
+                if (i % DUPLICATED_EVERY == 0) {
+                    Resources.registerResource(name(i), new ByteArrayInputStream(contents(i, 1)));
+                }
+            }
+        }
+    }
+
+    static String name(int i) {
+        return "com/oracle/svm/test/resources/r" + (i % 17) + "/resource" + i + ".txt";
+    }
+
+    static byte[] contents(int i, int copy) {
+        return ("resource " + i + " copy " + copy).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testLookupOfManyResources() throws IOException {
+        for (int i = 0; i < RESOURCE_COUNT; i++) {
+            List<byte[]> all = Resources.get(name(i));
+            Assert.assertNotNull(name(i), all);
+            Assert.assertEquals(i % DUPLICATED_EVERY == 0 ? 2 : 1, all.size());
+            for (int copy = 0; copy < all.size(); copy++) {
+                Assert.assertArrayEquals(contents(i, copy), all.get(copy));
+            }
+
+            ByteBuffer buffer = Resources.getByteBuffer(name(i));
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            Assert.assertArrayEquals(contents(i, 0), bytes);
+
+            try (InputStream stream = Resources.getAsStream(name(i))) {
+                ByteArrayOutputStream read = new ByteArrayOutputStream();
+                for (int b = stream.read(); b != -1; b = stream.read()) {
+                    read.write(b);
+                }
+                Assert.assertArrayEquals(contents(i, 0), read.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void testLookupOfMissingResources() {
+        for (int i = RESOURCE_COUNT; i < 2 * RESOURCE_COUNT; i++) {
+            Assert.assertNull(Resources.get(name(i)));
+            Assert.assertNull(Resources.getByteBuffer(name(i)));
+            Assert.assertNull(Resources.getAsStream(name(i)));
+        }
+        Assert.assertNull(Resources.get(""));
+        Assert.assertNull(Resources.get(name(0) + "x"));
+        Assert.assertNull(Resources.get(name(0).substring(1)));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import org.graalvm.nativeimage.hosted.Feature;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.graal.pointsto.BigBang;
+import com.oracle.graal.pointsto.flow.TypeFlow;
+import com.oracle.graal.pointsto.meta.AnalysisType;
+import com.oracle.graal.pointsto.typestate.TypeState;
+import com.oracle.svm.hosted.FeatureImpl.DuringAnalysisAccessImpl;
+
+/**
+ * Tests the saturation of type flows when the image is built with a small
+ * {@code -H:TypeFlowSaturationCutoff}. The {@link TestFeature} saturates a flow during the analysis
+ * and checks that a type that is instantiated later still reaches the flow through
+ * {@link AnalysisType#updateAssignableTypes}. A failed check fails the image build.
+ */
+public class SaturationTest {
+
+    abstract static class Shape {
+        abstract int corners();
+    }
+
+    static final class Triangle extends Shape {
+        @Override
+        int corners() {
+            return 3;
+        }
+    }
+
+    static final class Square extends Shape {
+        @Override
+        int corners() {
+            return 4;
+        }
+    }
+
+    static final class Circle extends Shape {
+        @Override
+        int corners() {
+            return 0;
+        }
+    }
+
+    /** Only instantiated by the {@link TestFeature} after the flow is saturated. */
+    static final class Hexagon extends Shape {
+        @Override
+        int corners() {
+            return 6;
+        }
+    }
+
+    private static final class ShapeFlow extends TypeFlow<Object> {
+        ShapeFlow(AnalysisType declaredType) {
+            super(null, declaredType);
+        }
+    }
+
+    public static class TestFeature implements Feature {
+        private static final int MAX_ROUNDS = 10;
+
+        private ShapeFlow flow;
+        private int rounds;
+        private boolean verified;
+
+        @Override
+        public void beforeAnalysis(BeforeAnalysisAccess access) {
+            access.registerAsInHeap(Triangle.class);
+            access.registerAsInHeap(Square.class);
+            access.registerAsInHeap(Circle.class);
+        }
+
+        @Override
+        public void duringAnalysis(DuringAnalysisAccess a) {
+            DuringAnalysisAccessImpl access = (DuringAnalysisAccessImpl) a;
+            BigBang bb = access.getBigBang();
+            int cutoff = bb.analysisPolicy().typeFlowSaturationCutoff();
+            if (cutoff < 0 || verified) {
+                return;
+            }
+            if (flow == null) {
+                check(cutoff < 3, "the saturation cutoff must be below 3, but is " + cutoff);
+                flow = new ShapeFlow(type(access, Shape.class));
+                flow.addState(bb, TypeState.forExactType(bb, type(access, Triangle.class), false), false);
+                flow.addState(bb, TypeState.forExactType(bb, type(access, Square.class), false), false);
+                flow.addState(bb, TypeState.forExactType(bb, type(access, Circle.class), false), false);
+                check(flow.isSaturated(), "the flow must be saturated");
+                check(!flow.getState().canBeNull(), "the saturated state must not contain null that did not reach the flow");
+
+                access.registerAsInHeap(Hexagon.class);
+                access.requireAnalysisIteration();
+            } else if (flow.getState().containsType(type(access, Hexagon.class))) {
+                check(!flow.getState().canBeNull(), "the types of the declared type must be added without null");
+                flow.addState(bb, TypeState.forNull(), false);
+                check(flow.getState().canBeNull(), "null that reaches a saturated flow must be added");
+                verified = true;
+            } else {
+                check(++rounds < MAX_ROUNDS, "the later instantiated type did not reach the saturated flow");
+                access.requireAnalysisIteration();
+            }
+        }
+
+        @Override
+        public void afterAnalysis(AfterAnalysisAccess access) {
+            check(flow == null || verified, "the later instantiated type did not reach the saturated flow");
+        }
+
+        private static AnalysisType type(DuringAnalysisAccessImpl access, Class<?> clazz) {
+            return access.getMetaAccess().lookupJavaType(clazz);
+        }
+
+        private static void check(boolean condition, String message) {
+            if (!condition) {
+                throw new AssertionError("SaturationTest: " + message);
+            }
+        }
+    }
+
+    private static int corners(Shape shape) {
+        return shape.corners();
+    }
+
+    /** The parameter of {@link #corners} is saturated, so the calls must not be devirtualized. */
+    @Test
+    public void testCallsThroughSaturatedFlow() {
+        Shape[] shapes = {new Triangle(), new Square(), new Circle()};
+        int sum = 0;
+        for (Shape shape : shapes) {
+            sum += corners(shape);
+        }
+        Assert.assertEquals(7, sum);
+    }
+}
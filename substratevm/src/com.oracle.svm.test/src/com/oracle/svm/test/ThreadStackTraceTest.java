@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Takes stack traces of a thread that is busy in Java code, which uses a thread-local handshake,
+ * while another thread keeps forcing garbage collections, i.e., global safepoints.
+ */
+public class ThreadStackTraceTest {
+
+    private static volatile boolean stop;
+    private static volatile long sink;
+
+    @Test
+    public void testGetStackTraceOfBusyThreadDuringCollections() throws InterruptedException {
+        stop = false;
+        CountDownLatch started = new CountDownLatch(1);
+        Thread busy = new Thread(() -> busyLoop(started), "busy");
+        Thread collector = new Thread(() -> {
+            while (!stop) {
+                System.gc();
+            }
+        }, "collector");
+        busy.start();
+        collector.start();
+        try {
+            started.await();
+            for (int i = 0; i < 500; i++) {
+                StackTraceElement[] trace = busy.getStackTrace();
+                Assert.assertTrue("empty stack trace", trace.length > 0);
+                boolean inBusyLoop = false;
+                for (StackTraceElement element : trace) {
+                    inBusyLoop |= element.getMethodName().equals("busyLoop");
+                    String className = element.getClassName();
+                    Assert.assertFalse("handshake frame in stack trace: " + element, className.startsWith("com.oracle.svm.core.thread.Handshakes") || className.equals("com.oracle.svm.core.thread.Safepoint"));
+                }
+                Assert.assertTrue("busyLoop is not on the stack", inBusyLoop);
+            }
+        } finally {
+            stop = true;
+            busy.join();
+            collector.join();
+        }
+    }
+
+    private static void busyLoop(CountDownLatch started) {
+        started.countDown();
+        long value = 0;
+        while (!stop) {
+            Object[] garbage = new Object[16];
+            value += garbage.length + System.identityHashCode(garbage);
+        }
+        sink = value;
+    }
+}
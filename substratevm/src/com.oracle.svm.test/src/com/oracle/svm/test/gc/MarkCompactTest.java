@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test.gc;
+
+import java.lang.ref.WeakReference;
+
+import org.graalvm.nativeimage.PinnedObject;
+import org.graalvm.word.Pointer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the objects of the old generation survive complete collections intact. In images
+ * that are built with {@code -H:+UseMarkCompactOldGeneration}, the old generation is compacted in
+ * place, so the surviving objects move over the gaps that the dropped objects leave behind.
+ */
+public class MarkCompactTest {
+
+    private static final int OBJECTS = 100_000;
+    /** Enough elements that the mark stack needs more than one aligned chunk. */
+    private static final int WIDE_ARRAY_LENGTH = 1024 * 1024;
+
+    static final class Element {
+        final int value;
+        final int[] payload;
+        Element next;
+
+        Element(int value) {
+            this.value = value;
+            this.payload = new int[1 + value % 37];
+            this.payload[payload.length - 1] = value;
+        }
+
+        void check(int expected) {
+            Assert.assertEquals(expected, value);
+            Assert.assertEquals(1 + expected % 37, payload.length);
+            Assert.assertEquals(expected, payload[payload.length - 1]);
+        }
+    }
+
+    /** Allocates the elements and promotes them to the old generation. */
+    private static Element[] allocateOld() {
+        Element[] elements = new Element[OBJECTS];
+        for (int i = 0; i < OBJECTS; i++) {
+            elements[i] = new Element(i);
+        }
+        /* Link each element to the one after it, and the last one back to the first. */
+        for (int i = 0; i < OBJECTS; i++) {
+            elements[i].next = elements[(i + 1) % OBJECTS];
+        }
+        System.gc();
+        return elements;
+    }
+
+    /** Drops all elements that are not a multiple of the given stride. */
+    private static void drop(Element[] elements, int stride) {
+        for (int i = 0; i < OBJECTS; i++) {
+            if (i % stride != 0) {
+                elements[i] = null;
+            } else {
+                elements[i].next = null;
+            }
+        }
+    }
+
+    @Test
+    public void testSurvivorsAfterCompaction() {
+        Element[] elements = allocateOld();
+        int[] hashCodes = new int[OBJECTS];
+        for (int i = 0; i < OBJECTS; i++) {
+            hashCodes[i] = System.identityHashCode(elements[i]);
+        }
+        drop(elements, 3);
+        /* Link the survivors again, across the gaps. */
+        for (int i = 0; i + 3 < OBJECTS; i += 3) {
+            elements[i].next = elements[i + 3];
+        }
+        System.gc();
+        System.gc();
+
+        for (int i = 0; i < OBJECTS; i += 3) {
+            Element element = elements[i];
+            element.check(i);
+            Assert.assertEquals(hashCodes[i], System.identityHashCode(element));
+            if (i + 3 < OBJECTS) {
+                Assert.assertSame(elements[i + 3], element.next);
+            } else {
+                Assert.assertNull(element.next);
+            }
+        }
+    }
+
+    @Test
+    public void testWeakReferencesAfterCompaction() {
+        Element[] elements = allocateOld();
+        WeakReference<?>[] references = new WeakReference<?>[OBJECTS];
+        for (int i = 0; i < OBJECTS; i++) {
+            references[i] = new WeakReference<>(elements[i]);
+        }
+        System.gc();
+        drop(elements, 2);
+        System.gc();
+
+        for (int i = 0; i < OBJECTS; i++) {
+            if (i % 2 == 0) {
+                Assert.assertSame(elements[i], references[i].get());
+                elements[i].check(i);
+            } else {
+                Assert.assertNull(references[i].get());
+            }
+        }
+    }
+
+    @Test
+    public void testPinnedObjectsDoNotMove() {
+        Element[] elements = allocateOld();
+        int[] pinnedArray = elements[OBJECTS / 2].payload;
+        try (PinnedObject pinned = PinnedObject.create(pinnedArray)) {
+            Pointer address = pinned.addressOfArrayElement(0);
+            drop(elements, 5);
+            System.gc();
+            Assert.assertEquals(address.rawValue(), pinned.addressOfArrayElement(0).rawValue());
+            Assert.assertEquals(OBJECTS / 2, address.readInt((pinnedArray.length - 1) * Integer.BYTES));
+        }
+        for (int i = 0; i < OBJECTS; i += 5) {
+            elements[i].check(i);
+        }
+    }
+
+    @Test
+    public void testWideArrayAfterCompaction() {
+        Object[] wide = new Object[WIDE_ARRAY_LENGTH];
+        for (int i = 0; i < WIDE_ARRAY_LENGTH; i++) {
+            wide[i] = new Element(i);
+        }
+        System.gc();
+        for (int i = 1; i < WIDE_ARRAY_LENGTH; i += 2) {
+            wide[i] = null;
+        }
+        System.gc();
+
+        for (int i = 0; i < WIDE_ARRAY_LENGTH; i++) {
+            if (i % 2 == 0) {
+                ((Element) wide[i]).check(i);
+            } else {
+                Assert.assertNull(wide[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test.gc;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.svm.core.heap.GCCause;
+import com.oracle.svm.core.heap.Heap;
+
+/**
+ * Allocates object graphs from many threads while another thread collects continuously. The
+ * graphs reference each other across threads and include large arrays, and are checked after
+ * every round and at the end. In images that are built with {@code -H:+UseParallelScavenge}, the
+ * incremental collections are parallel, and with {@code -H:+VerifyHeap} the heap is verified
+ * before and after each collection.
+ */
+public class ParallelScavengeStressTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 40;
+    private static final int TREE_DEPTH = 10;
+    /** Every so many nodes get an array that is allocated in its own unaligned chunk. */
+    private static final int LARGE_ARRAY_EVERY = 500;
+    private static final int LARGE_ARRAY_LENGTH = 512 * 1024;
+
+    static final class Node {
+        final int value;
+        final byte[] payload;
+        Node left;
+        Node right;
+        /** The left subtree of a tree that was built by another thread, or null. */
+        Node foreign;
+
+        Node(int value, int payloadLength) {
+            this.value = value;
+            this.payload = new byte[payloadLength];
+            this.payload[0] = (byte) value;
+            this.payload[payloadLength - 1] = (byte) (value >>> 8);
+        }
+    }
+
+    private final AtomicReferenceArray<Node> trees = new AtomicReferenceArray<>(THREADS);
+
+    private static int payloadLength(int value) {
+        return value % LARGE_ARRAY_EVERY == 0 ? LARGE_ARRAY_LENGTH : 1 + value % 61;
+    }
+
+    private static Node build(int seed, int depth, int[] counter) {
+        int value = seed * 100_000 + counter[0]++;
+        Node node = new Node(value, payloadLength(value));
+        if (depth > 0) {
+            node.left = build(seed, depth - 1, counter);
+            node.right = build(seed, depth - 1, counter);
+        }
+        return node;
+    }
+
+    /** Checks the tree in the same order in which {@link #build} allocated it. */
+    private static void check(Node node, int seed, int depth, int[] counter) {
+        int value = seed * 100_000 + counter[0]++;
+        Assert.assertEquals(value, node.value);
+        Assert.assertEquals(payloadLength(value), node.payload.length);
+        Assert.assertEquals((byte) value, node.payload[0]);
+        Assert.assertEquals((byte) (value >>> 8), node.payload[node.payload.length - 1]);
+        if (depth > 0) {
+            check(node.left, seed, depth - 1, counter);
+            check(node.right, seed, depth - 1, counter);
+        } else {
+            Assert.assertNull(node.left);
+            Assert.assertNull(node.right);
+        }
+    }
+
+    private static int seed(int thread, int round) {
+        return thread * ROUNDS + round;
+    }
+
+    /** Checks a tree of the given thread, whose seed is encoded in the value of its root. */
+    private static void checkTree(Node root, int thread) {
+        int seed = root.value / 100_000;
+        Assert.assertEquals(thread, seed / ROUNDS);
+        check(root, seed, TREE_DEPTH, new int[1]);
+    }
+
+    /** Checks the left subtree of a tree of the given thread, if it is not null. */
+    private static void checkForeign(Node left, int thread) {
+        if (left == null) {
+            return;
+        }
+        int seed = left.value / 100_000;
+        Assert.assertEquals(thread, seed / ROUNDS);
+        check(left, seed, TREE_DEPTH - 1, new int[]{1});
+    }
+
+    @Test
+    public void testAllocationFromManyThreadsDuringCollections() throws Throwable {
+        AtomicBoolean done = new AtomicBoolean();
+        Thread collector = new Thread(() -> {
+            while (!done.get()) {
+                Heap.getHeap().getGC().collect(GCCause.UnitTest);
+                Thread.yield();
+            }
+        });
+        collector.start();
+
+        Throwable[] failures = new Throwable[THREADS];
+        Thread[] allocators = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            int thread = i;
+            allocators[i] = new Thread(() -> {
+                try {
+                    for (int round = 0; round < ROUNDS; round++) {
+                        Node root = build(seed(thread, round), TREE_DEPTH, new int[1]);
+                        /* Link to the tree of the next thread, so that graphs span threads. */
+                        Node other = trees.get((thread + 1) % THREADS);
+                        root.foreign = other != null ? other.left : null;
+                        checkForeign(root.foreign, (thread + 1) % THREADS);
+                        trees.set(thread, root);
+                        check(root, seed(thread, round), TREE_DEPTH, new int[1]);
+                    }
+                } catch (Throwable t) {
+                    failures[thread] = t;
+                }
+            });
+            allocators[i].start();
+        }
+        for (Thread allocator : allocators) {
+            allocator.join();
+        }
+        done.set(true);
+        collector.join();
+        for (Throwable failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        System.gc();
+        for (int i = 0; i < THREADS; i++) {
+            Node root = trees.get(i);
+            checkTree(root, i);
+            Assert.assertEquals(seed(i, ROUNDS - 1), root.value / 100_000);
+            checkForeign(root.foreign, (i + 1) % THREADS);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test.gc;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.svm.core.genscavenge.HeapPolicy;
+import com.oracle.svm.core.heap.GCCause;
+import com.oracle.svm.core.heap.Heap;
+
+/**
+ * Tests the discovery, clearing and enqueuing of reference objects. The collections are requested
+ * with {@link GCCause#UnitTest}, so that they start with an incremental collection, which is
+ * parallel in images that are built with {@code -H:+UseParallelScavenge}.
+ */
+public class ReferenceProcessingTest {
+
+    private static final int THREADS = 4;
+    private static final int REFERENCES_PER_THREAD = 10_000;
+
+    private static void collect() {
+        Heap.getHeap().getGC().collect(GCCause.UnitTest);
+    }
+
+    /**
+     * References are created by several threads, so that a parallel scavenge discovers them into
+     * several thread-local lists. Only the references whose referents are unreachable must be
+     * cleared and enqueued, each of them exactly once.
+     */
+    @Test
+    public void testDiscoveryFromManyThreads() throws InterruptedException {
+        ReferenceQueue<Object> queue = new ReferenceQueue<>();
+        List<List<WeakReference<Object>>> references = new ArrayList<>();
+        List<List<Object>> retained = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            List<WeakReference<Object>> threadReferences = new ArrayList<>();
+            List<Object> threadRetained = new ArrayList<>();
+            references.add(threadReferences);
+            retained.add(threadRetained);
+            threads.add(new Thread(() -> createReferences(queue, threadReferences, threadRetained)));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        collect();
+
+        Set<Reference<?>> expected = new HashSet<>();
+        for (int t = 0; t < THREADS; t++) {
+            List<WeakReference<Object>> threadReferences = references.get(t);
+            for (int i = 0; i < threadReferences.size(); i++) {
+                WeakReference<Object> reference = threadReferences.get(i);
+                if (i % 2 == 0) {
+                    Assert.assertSame(retained.get(t).get(i / 2), reference.get());
+                } else {
+                    Assert.assertNull(reference.get());
+                    expected.add(reference);
+                }
+            }
+        }
+        assertEnqueuedExactly(queue, expected);
+    }
+
+    private static void createReferences(ReferenceQueue<Object> queue, List<WeakReference<Object>> references, List<Object> retained) {
+        for (int i = 0; i < REFERENCES_PER_THREAD; i++) {
+            Object referent = new Object();
+            if (i % 2 == 0) {
+                retained.add(referent);
+            }
+            references.add(new WeakReference<>(referent, queue));
+        }
+    }
+
+    /**
+     * The collector enqueues runs of references with the same queue at once. References with
+     * different queues are interleaved here so that the runs are short, and each reference must
+     * end up on its own queue.
+     */
+    @Test
+    public void testEnqueueIntoInterleavedQueues() throws InterruptedException {
+        List<ReferenceQueue<Object>> queues = new ArrayList<>();
+        List<Set<Reference<?>>> expected = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            queues.add(new ReferenceQueue<>());
+            expected.add(new HashSet<>());
+        }
+        List<WeakReference<Object>> unqueued = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            /* Runs of varying length, and some references without a queue in between. */
+            int q = (i / (1 + i % 5)) % (queues.size() + 1);
+            if (q < queues.size()) {
+                expected.get(q).add(new WeakReference<>(new Object(), queues.get(q)));
+            } else {
+                unqueued.add(new WeakReference<>(new Object()));
+            }
+        }
+
+        collect();
+
+        for (WeakReference<Object> reference : unqueued) {
+            Assert.assertNull(reference.get());
+            Assert.assertFalse(reference.isEnqueued());
+        }
+        for (int q = 0; q < queues.size(); q++) {
+            for (Reference<?> reference : expected.get(q)) {
+                Assert.assertNull(reference.get());
+            }
+            assertEnqueuedExactly(queues.get(q), expected.get(q));
+        }
+    }
+
+    private static void assertEnqueuedExactly(ReferenceQueue<Object> queue, Set<Reference<?>> expected) throws InterruptedException {
+        Set<Reference<?>> enqueued = new HashSet<>();
+        for (Reference<?> reference = queue.remove(1000); reference != null; reference = queue.poll()) {
+            Assert.assertTrue("enqueued twice: " + reference, enqueued.add(reference));
+        }
+        Assert.assertTrue("unexpected references on the queue", expected.containsAll(enqueued));
+        Assert.assertEquals(expected.size(), enqueued.size());
+    }
+
+    /** A soft reference that was accessed recently survives while the heap has room. */
+    @Test
+    public void testRecentlyUsedSoftReferenceIsRetained() {
+        SoftReference<Object> reference = new SoftReference<>(new byte[1024]);
+        for (int i = 0; i < 3; i++) {
+            collect();
+            Assert.assertNotNull("cleared although the heap has room", reference.get());
+        }
+    }
+
+    /**
+     * Soft references must be cleared before an {@link OutOfMemoryError} is thrown, even if they
+     * were accessed right before each collection, which makes the LRU policy keep them alive.
+     */
+    @Test
+    public void testSoftReferencesAreClearedBeforeOutOfMemory() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        UnsignedWord previousMaximum = HeapPolicy.setMaximumHeapSize(WordFactory.unsigned(used + 64L * 1024 * 1024));
+        List<SoftReference<byte[]>> softReferences = new ArrayList<>();
+        List<byte[]> strong = new ArrayList<>();
+        boolean outOfMemory = false;
+        try {
+            for (int i = 0; i < 16; i++) {
+                softReferences.add(new SoftReference<>(new byte[1024 * 1024]));
+            }
+            while (true) {
+                for (SoftReference<byte[]> reference : softReferences) {
+                    reference.get();
+                }
+                strong.add(new byte[1024 * 1024]);
+            }
+        } catch (OutOfMemoryError e) {
+            outOfMemory = true;
+        } finally {
+            strong.clear();
+            HeapPolicy.setMaximumHeapSize(previousMaximum);
+        }
+        Assert.assertTrue(outOfMemory);
+        for (SoftReference<byte[]> reference : softReferences) {
+            Assert.assertNull("soft reference not cleared before OutOfMemoryError", reference.get());
+        }
+    }
+}
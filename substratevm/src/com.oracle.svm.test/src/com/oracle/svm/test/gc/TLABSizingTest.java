@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test.gc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+import org.graalvm.nativeimage.RuntimeOptions;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.svm.core.genscavenge.HeapPolicy;
+import com.oracle.svm.core.genscavenge.ThreadLocalAllocation;
+import com.oracle.svm.core.heap.GCCause;
+import com.oracle.svm.core.heap.Heap;
+
+/**
+ * Tests the adaptive sizing of thread-local allocation buffers, and the allocation in TLABs that
+ * are carved from shared chunks. Images that are built with {@code -H:+VerifyHeap} also check that
+ * the shared chunks can be walked, i.e., that the unused parts of TLABs are filled.
+ */
+public class TLABSizingTest {
+
+    private static final int THREADS = 8;
+    private static final int OBJECTS_PER_THREAD = 20_000;
+
+    private static void collect() {
+        Heap.getHeap().getGC().collect(GCCause.UnitTest);
+    }
+
+    @Test
+    public void testFirstCycleIsTakenAsAverage() {
+        Assert.assertEquals(4096, ThreadLocalAllocation.TestingBackdoor.updateAverage(0, 4096, 35));
+    }
+
+    @Test
+    public void testAverageIsWeighted() {
+        Assert.assertEquals(1000 + 35 * 10, ThreadLocalAllocation.TestingBackdoor.updateAverage(1000, 2000, 35));
+        Assert.assertEquals(2000, ThreadLocalAllocation.TestingBackdoor.updateAverage(1000, 2000, 100));
+        Assert.assertEquals(1000, ThreadLocalAllocation.TestingBackdoor.updateAverage(1000, 2000, 0));
+    }
+
+    @Test
+    public void testDesiredSizeMeetsRefillTarget() {
+        Assert.assertEquals(20 * 1024, ThreadLocalAllocation.TestingBackdoor.computeDesiredSize(50 * 20 * 1024, 50, 2048, 8, 1024 * 1024));
+    }
+
+    @Test
+    public void testDesiredSizeIsAligned() {
+        Assert.assertEquals(4104, ThreadLocalAllocation.TestingBackdoor.computeDesiredSize(4097, 1, 2048, 8, 1024 * 1024));
+    }
+
+    @Test
+    public void testDesiredSizeIsAtLeastMinimum() {
+        Assert.assertEquals(2048, ThreadLocalAllocation.TestingBackdoor.computeDesiredSize(0, 50, 2048, 8, 1024 * 1024));
+        Assert.assertEquals(2048, ThreadLocalAllocation.TestingBackdoor.computeDesiredSize(1000, 0, 2048, 8, 1024 * 1024));
+    }
+
+    @Test
+    public void testDesiredSizeOfChunkSpansChunk() {
+        Assert.assertEquals(0, ThreadLocalAllocation.TestingBackdoor.computeDesiredSize(50L * 1024 * 1024, 50, 2048, 8, 1024 * 1024));
+        Assert.assertEquals(0, ThreadLocalAllocation.TestingBackdoor.computeDesiredSize(1024 * 1024, 1, 2048, 8, 1024 * 1024));
+    }
+
+    /**
+     * Threads that allocate little get small TLABs after a collection, which are carved from shared
+     * chunks. The objects allocated in them survive the next collections unchanged.
+     */
+    @Test
+    public void testAllocationInCarvedTLABs() throws Throwable {
+        RuntimeOptions.set("ResizeTLAB", true);
+        try {
+            CyclicBarrier barrier = new CyclicBarrier(THREADS + 1);
+            Worker[] workers = new Worker[THREADS];
+            for (int i = 0; i < THREADS; i++) {
+                workers[i] = new Worker(i, barrier);
+                workers[i].start();
+            }
+
+            /* The first cycle samples the allocation of each thread. */
+            barrier.await();
+            collect();
+            barrier.await();
+            /* The threads allocate in carved TLABs. */
+            barrier.await();
+            collect();
+            collect();
+            barrier.await();
+
+            for (Worker worker : workers) {
+                worker.join();
+                if (worker.failure != null) {
+                    throw worker.failure;
+                }
+                long desiredSize = worker.desiredSize;
+                Assert.assertTrue("desired size " + desiredSize, desiredSize > 0 && desiredSize < HeapPolicy.getAlignedHeapChunkSize().rawValue());
+                Assert.assertTrue(worker.carved);
+            }
+        } finally {
+            RuntimeOptions.set("ResizeTLAB", false);
+            collect();
+        }
+    }
+
+    private static final class Worker extends Thread {
+        private final int id;
+        private final CyclicBarrier barrier;
+        private final List<int[]> objects = new ArrayList<>();
+        private long desiredSize;
+        private boolean carved;
+        private Throwable failure;
+
+        Worker(int id, CyclicBarrier barrier) {
+            this.id = id;
+            this.barrier = barrier;
+        }
+
+        @Override
+        public void run() {
+            try {
+                allocate(100);
+                barrier.await();
+                barrier.await();
+
+                int[] first = new int[]{id, -1};
+                carved = ThreadLocalAllocation.TestingBackdoor.isTLABCarved();
+                desiredSize = ThreadLocalAllocation.TestingBackdoor.getDesiredTLABSize().rawValue();
+                objects.add(first);
+                /* Many refills, with objects of different sizes. */
+                allocate(OBJECTS_PER_THREAD);
+                barrier.await();
+                barrier.await();
+
+                verify();
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+
+        private void allocate(int count) {
+            for (int i = 0; i < count; i++) {
+                int[] array = new int[2 + i % 37];
+                array[0] = id;
+                array[1] = objects.size();
+                objects.add(array);
+            }
+        }
+
+        private void verify() {
+            for (int i = 0; i < objects.size(); i++) {
+                int[] array = objects.get(i);
+                Assert.assertEquals(id, array[0]);
+                if (array[1] >= 0) {
+                    Assert.assertEquals(i, array[1]);
+                }
+            }
+        }
+    }
+}
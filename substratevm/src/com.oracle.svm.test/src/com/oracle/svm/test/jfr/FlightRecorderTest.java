@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test.jfr;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.oracle.svm.core.jfr.FlightRecorder;
+
+/**
+ * Records into a file and parses the chunks of the recording, in the same way as the tools of the
+ * JDK Flight Recorder do. Requires an image that is built with {@code -H:+FlightRecorder}.
+ */
+public class FlightRecorderTest {
+    private static final int HEADER_SIZE = 68;
+    private static final long METADATA_TYPE_ID = 0;
+    private static final long CHECKPOINT_TYPE_ID = 1;
+    private static final long GARBAGE_COLLECTION_TYPE_ID = 100;
+
+    @Test
+    public void testRecordingCanBeParsed() throws Exception {
+        Assume.assumeTrue("the flight recorder is not included in this image", FlightRecorder.isEnabled());
+
+        File file = File.createTempFile("recording", ".jfr");
+        try {
+            long startMillis = System.currentTimeMillis();
+            long startNanos = System.nanoTime();
+            FlightRecorder.startRecording(file.getPath());
+            List<byte[]> garbage = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                garbage.add(new byte[1024]);
+            }
+            System.gc();
+            Assert.assertEquals(1000, garbage.size());
+            FlightRecorder.stopRecording();
+            long elapsedNanos = System.nanoTime() - startNanos;
+
+            ByteBuffer recording = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            Assert.assertTrue("the recording is empty", recording.hasRemaining());
+            List<Long> eventTypes = new ArrayList<>();
+            while (recording.hasRemaining()) {
+                parseChunk(recording.slice(), startMillis, elapsedNanos, eventTypes);
+                recording.position(recording.position() + (int) recording.getLong(recording.position() + 8));
+            }
+            Assert.assertTrue("no garbage collection was recorded", eventTypes.contains(GARBAGE_COLLECTION_TYPE_ID));
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    private static void parseChunk(ByteBuffer chunk, long startMillis, long elapsedNanos, List<Long> eventTypes) {
+        Assert.assertTrue(chunk.remaining() >= HEADER_SIZE);
+        Assert.assertEquals('F', chunk.get());
+        Assert.assertEquals('L', chunk.get());
+        Assert.assertEquals('R', chunk.get());
+        Assert.assertEquals(0, chunk.get());
+        Assert.assertEquals(2, chunk.getShort());
+        Assert.assertEquals(0, chunk.getShort());
+        long chunkSize = chunk.getLong();
+        long checkpointOffset = chunk.getLong();
+        long metadataOffset = chunk.getLong();
+        long chunkStartNanos = chunk.getLong();
+        long durationNanos = chunk.getLong();
+        long chunkStartTicks = chunk.getLong();
+        long ticksPerSecond = chunk.getLong();
+        chunk.getInt(); // features
+
+        Assert.assertTrue("chunk size " + chunkSize, chunkSize > HEADER_SIZE && chunkSize <= chunk.limit());
+        Assert.assertTrue("checkpoint offset " + checkpointOffset, checkpointOffset >= HEADER_SIZE && checkpointOffset < metadataOffset);
+        Assert.assertTrue("metadata offset " + metadataOffset, metadataOffset < chunkSize);
+        Assert.assertTrue("chunk start " + chunkStartNanos, chunkStartNanos >= (startMillis - 1000) * 1_000_000L);
+        Assert.assertTrue("duration " + durationNanos, durationNanos >= 0 && durationNanos <= elapsedNanos);
+        Assert.assertTrue(chunkStartTicks != 0);
+        Assert.assertEquals(1_000_000_000L, ticksPerSecond);
+
+        /* Walk all events by their sizes: they must end exactly at the end of the chunk. */
+        boolean sawCheckpoint = false;
+        boolean sawMetadata = false;
+        int position = HEADER_SIZE;
+        while (position < chunkSize) {
+            chunk.position(position);
+            long size = readCompressedLong(chunk);
+            long type = readCompressedLong(chunk);
+            Assert.assertTrue("event size " + size + " at " + position, size > 0 && position + size <= chunkSize);
+            if (position == checkpointOffset) {
+                Assert.assertEquals(CHECKPOINT_TYPE_ID, type);
+                sawCheckpoint = true;
+            } else if (position == metadataOffset) {
+                Assert.assertEquals(METADATA_TYPE_ID, type);
+                sawMetadata = true;
+            } else {
+                eventTypes.add(type);
+            }
+            position += size;
+        }
+        Assert.assertEquals(chunkSize, position);
+        Assert.assertTrue(sawCheckpoint);
+        Assert.assertTrue(sawMetadata);
+    }
+
+    private static long readCompressedLong(ByteBuffer buffer) {
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            byte b = buffer.get();
+            result |= (b & 0x7FL) << (7 * i);
+            if (b >= 0) {
+                return result;
+            }
+        }
+        return result | ((buffer.get() & 0xFFL) << 56);
+    }
+}
@@ -26,7 +26,9 @@ package com.oracle.truffle.tools.profiler.test;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -50,8 +52,10 @@ import com.oracle.truffle.api.instrumentation.Tag;
 import com.oracle.truffle.api.nodes.DirectCallNode;
 import com.oracle.truffle.api.nodes.Node;
 import com.oracle.truffle.api.source.SourceSection;
+import com.oracle.truffle.api.test.ReflectionUtils;
 import com.oracle.truffle.tools.profiler.CPUSampler;
 import com.oracle.truffle.tools.profiler.ProfilerNode;
+import com.oracle.truffle.tools.profiler.StackTraceEntry;
 
 public class CPUSamplerTest extends AbstractProfilerTest {
 
@@ -146,6 +150,75 @@ public class CPUSamplerTest extends AbstractProfilerTest {
         Assert.assertTrue(children.size() == 0);
     }
 
+    @Test
+    public void testCorrectRootStructureWithoutShadowStack() {
+
+        sampler.setFilter(NO_INTERNAL_ROOT_TAG_FILTER);
+        sampler.setUseShadowStack(false);
+        Assert.assertFalse(sampler.isUseShadowStack());
+        sampler.setCollecting(true);
+        for (int i = 0; i < executionCount; i++) {
+            eval(defaultSourceForSampling);
+        }
+        sampler.setCollecting(false);
+
+        Collection<ProfilerNode<CPUSampler.Payload>> children = sampler.getRootNodes();
+        Assert.assertEquals(1, children.size());
+        ProfilerNode<CPUSampler.Payload> program = children.iterator().next();
+        Assert.assertEquals("", program.getRootName());
+
+        ProfilerNode<CPUSampler.Payload> baz = null;
+        for (ProfilerNode<CPUSampler.Payload> child : program.getChildren()) {
+            Assert.assertTrue("baz".equals(child.getRootName()) || "bar".equals(child.getRootName()));
+            if ("baz".equals(child.getRootName())) {
+                baz = child;
+            }
+        }
+        Assert.assertNotNull(baz);
+
+        children = baz.getChildren();
+        Assert.assertEquals(1, children.size());
+        ProfilerNode<CPUSampler.Payload> bar = children.iterator().next();
+        Assert.assertEquals("bar", bar.getRootName());
+
+        children = bar.getChildren();
+        Assert.assertEquals(1, children.size());
+        ProfilerNode<CPUSampler.Payload> foo = children.iterator().next();
+        Assert.assertEquals("foo", foo.getRootName());
+        Assert.assertNotEquals(0, foo.getPayload().getSelfHitCount());
+        Assert.assertTrue(foo.getChildren().isEmpty());
+    }
+
+    @Test
+    public void testSamplingWithoutShadowStackInstrumentation() throws InterruptedException {
+        sampler.setFilter(NO_INTERNAL_ROOT_TAG_FILTER);
+        sampler.setUseShadowStack(false);
+        // only the first tick of the sampler thread requests samples
+        sampler.setPeriod(TimeUnit.HOURS.toMillis(1));
+        sampler.setCollecting(true);
+        Assert.assertNull(ReflectionUtils.getField(sampler, "shadowStack"));
+        Assert.assertNull(ReflectionUtils.getField(sampler, "stacksBinding"));
+        Object poller = ReflectionUtils.getField(sampler, "stackPoller");
+        Assert.assertNotNull(poller);
+        while (ReflectionUtils.getField(poller, "pollBinding") == null) {
+            Thread.sleep(1);
+        }
+
+        for (int i = 0; i < 2; i++) {
+            eval(defaultSource);
+            Assert.assertNull("the poll must be detached once the only thread answered", ReflectionUtils.getField(poller, "pollBinding"));
+            Map<Thread, List<StackTraceEntry>> sample = sampler.takeSample();
+            List<StackTraceEntry> stack = sample.get(Thread.currentThread());
+            Assert.assertNotNull(stack);
+            Assert.assertEquals(1, stack.size());
+            Assert.assertEquals("", stack.get(0).getRootName());
+            // taking a sample starts a new round
+            Assert.assertNotNull(ReflectionUtils.getField(poller, "pollBinding"));
+        }
+        sampler.setCollecting(false);
+        Assert.assertNull(ReflectionUtils.getField(poller, "pollBinding"));
+    }
+
     final Source defaultRecursiveSourceForSampling = makeSource("ROOT(" +
                     "DEFINE(rfoo,ROOT(BLOCK(RECURSIVE_CALL(foo, 10),SLEEP(1))))," +
                     "DEFINE(rbar,ROOT(BLOCK(STATEMENT,LOOP(10, CALL(foo)))))," +
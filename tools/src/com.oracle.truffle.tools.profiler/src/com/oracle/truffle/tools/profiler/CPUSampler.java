@@ -212,8 +212,11 @@ public final class CPUSampler implements Closeable {
     private TimerTask samplerTask;
 
     private volatile ShadowStack shadowStack;
+    private volatile StackPoller stackPoller;
     private volatile EventBinding<?> stacksBinding;
 
+    private boolean useShadowStack = true;
+
     private final Map<Thread, ProfilerNode<Payload>> rootNodes = new HashMap<>();
 
     private final Env env;
@@ -359,6 +362,30 @@ public final class CPUSampler implements Closeable {
         return stackLimit;
     }
 
+    /**
+     * Sets whether the sampler maintains a shadow stack. With a shadow stack every call and return
+     * of a sampled root updates a per-thread stack, which the sampler reads at any time. Without a
+     * shadow stack, nothing is instrumented between samples. For each sample, a poll is attached to
+     * the sampled nodes until every thread that executes them walked its own guest frames, which
+     * makes calls cheaper but means that threads which do not execute guest code are not sampled.
+     * Both modes produce the same {@link #getRootNodes() call trees}. Enabled by default.
+     *
+     * @param useShadowStack whether a shadow stack should be used
+     * @since 20.1
+     */
+    public synchronized void setUseShadowStack(boolean useShadowStack) {
+        enterChangeConfig();
+        this.useShadowStack = useShadowStack;
+    }
+
+    /**
+     * @return whether the sampler maintains a shadow stack
+     * @since 20.1
+     */
+    public synchronized boolean isUseShadowStack() {
+        return useShadowStack;
+    }
+
     /**
      * Sets the {@link SourceSectionFilter filter} for the sampler. The sampler will only observe
      * parts of the executed source code that is specified by the filter.
@@ -541,13 +568,21 @@ public final class CPUSampler implements Closeable {
      * @since 19.0
      */
     public Map<Thread, List<StackTraceEntry>> takeSample() {
+        StackPoller localStackPoller = stackPoller;
         ShadowStack localShadowStack = shadowStack;
-        if (localShadowStack == null) {
-            localShadowStack = initializeShadowStack();
+        if (localShadowStack == null && localStackPoller == null) {
+            synchronized (this) {
+                initializeShadowStack();
+                localStackPoller = stackPoller;
+                localShadowStack = shadowStack;
+            }
         }
         if (delaySamplingUntilNonInternalLangInit && !nonInternalLanguageContextInitialized) {
             return Collections.emptyMap();
         }
+        if (localStackPoller != null) {
+            return takePolledSample(localStackPoller);
+        }
         assert localShadowStack != null;
         Map<Thread, List<StackTraceEntry>> stacks = new HashMap<>();
         for (ShadowStack.ThreadLocalStack stack : localShadowStack.getStacks()) {
@@ -566,6 +601,25 @@ public final class CPUSampler implements Closeable {
         return Collections.unmodifiableMap(stacks);
     }
 
+    private Map<Thread, List<StackTraceEntry>> takePolledSample(StackPoller localStackPoller) {
+        Map<Thread, List<StackTraceEntry>> stacks = new HashMap<>();
+        for (StackPoller.ThreadSamples samples : localStackPoller.getThreadSamples()) {
+            if (samples.stackOverflowed) {
+                stackOverflowed = true;
+                continue;
+            }
+            StackPoller.Sample sample = samples.lastSample;
+            if (sample != null && sample.stack.length > 0) {
+                final List<StackTraceEntry> stackTraceEntries = Arrays.asList(sample.stack.clone());
+                Collections.reverse(stackTraceEntries);
+                stacks.put(samples.thread, Collections.unmodifiableList(stackTraceEntries));
+            }
+        }
+        // without a shadow stack threads only capture their stack when asked to
+        localStackPoller.requestSamples(System.currentTimeMillis());
+        return Collections.unmodifiableMap(stacks);
+    }
+
     static Map<Thread, StackTraceElement[]> toStackTraceElement(Map<Thread, List<StackTraceEntry>> sample) {
         Map<Thread, StackTraceElement[]> converted = new HashMap<>();
         for (Entry<Thread, List<StackTraceEntry>> entry : sample.entrySet()) {
@@ -576,12 +630,16 @@ public final class CPUSampler implements Closeable {
 
     private synchronized ShadowStack initializeShadowStack() {
         ShadowStack localShadowStack = shadowStack;
-        if (localShadowStack == null) {
+        if (localShadowStack == null && stackPoller == null) {
             assert stacksBinding == null;
             SourceSectionFilter f = this.filter;
             if (f == null) {
                 f = DEFAULT_FILTER;
             }
+            if (!useShadowStack) {
+                this.stackPoller = new StackPoller(stackLimit, f, combine(f, mode), mode == Mode.EXCLUDE_INLINED_ROOTS, env.getInstrumenter());
+                return null;
+            }
             this.shadowStack = localShadowStack = new ShadowStack(stackLimit, f, env.getInstrumenter(), TruffleLogger.getLogger(CPUSamplerInstrument.ID));
             this.stacksBinding = this.shadowStack.install(env.getInstrumenter(), combine(f, mode), mode == Mode.EXCLUDE_INLINED_ROOTS);
         }
@@ -637,16 +695,18 @@ public final class CPUSampler implements Closeable {
     }
 
     private void invalidateStack() {
-        ShadowStack localShadowStack = this.shadowStack;
-        if (localShadowStack != null) {
+        if (this.shadowStack != null || this.stackPoller != null) {
             synchronized (this) {
-                localShadowStack = this.shadowStack;
-                if (localShadowStack != null) {
+                if (this.shadowStack != null || this.stackPoller != null) {
                     if (stacksBinding != null) {
                         stacksBinding.dispose();
                         stacksBinding = null;
                     }
+                    if (stackPoller != null) {
+                        stackPoller.dispose();
+                    }
                     shadowStack = null;
+                    stackPoller = null;
                 } else {
                     assert stacksBinding == null;
                 }
@@ -666,23 +726,43 @@ public final class CPUSampler implements Closeable {
             ShadowStack localShadowStack = shadowStack;
             if (localShadowStack != null) {
                 for (ShadowStack.ThreadLocalStack stack : localShadowStack.getStacks()) {
-                    ProfilerNode<Payload> threadNode;
-                    synchronized (CPUSampler.this) {
-                        threadNode = rootNodes.computeIfAbsent(stack.getThread(), new Function<Thread, ProfilerNode<Payload>>() {
-                            @Override
-                            public ProfilerNode<Payload> apply(Thread thread) {
-                                return new ProfilerNode<>();
-                            }
-                        });
-                    }
+                    ProfilerNode<Payload> threadNode = getThreadNode(stack.getThread());
                     sampleTaken |= sample(stack, timestamp, threadNode);
                 }
             }
+            StackPoller localStackPoller = stackPoller;
+            if (localStackPoller != null) {
+                for (StackPoller.ThreadSamples samples : localStackPoller.getThreadSamples()) {
+                    if (samples.stackOverflowed) {
+                        stackOverflowed = true;
+                    }
+                    List<StackPoller.Sample> polled = samples.drain();
+                    if (polled.isEmpty()) {
+                        continue;
+                    }
+                    ProfilerNode<Payload> threadNode = getThreadNode(samples.thread);
+                    for (StackPoller.Sample sample : polled) {
+                        sampleTaken |= sample(sample.stack, sample.timestamp, threadNode);
+                    }
+                }
+                localStackPoller.requestSamples(timestamp);
+            }
             if (sampleTaken) {
                 samplesTaken.incrementAndGet();
             }
         }
 
+        private ProfilerNode<Payload> getThreadNode(Thread thread) {
+            synchronized (CPUSampler.this) {
+                return rootNodes.computeIfAbsent(thread, new Function<Thread, ProfilerNode<Payload>>() {
+                    @Override
+                    public ProfilerNode<Payload> apply(Thread t) {
+                        return new ProfilerNode<>();
+                    }
+                });
+            }
+        }
+
         boolean sample(ShadowStack.ThreadLocalStack stack, long timestamp, ProfilerNode<Payload> threadNode) {
             if (stack.hasStackOverflowed()) {
                 stackOverflowed = true;
@@ -696,6 +776,13 @@ public final class CPUSampler implements Closeable {
             if (stackFrames == null || stackFrames.length == 0) {
                 return false;
             }
+            return sample(stackFrames, timestamp, threadNode);
+        }
+
+        boolean sample(StackTraceEntry[] stackFrames, long timestamp, ProfilerNode<Payload> threadNode) {
+            if (stackFrames.length == 0) {
+                return false;
+            }
             synchronized (CPUSampler.this) {
                 // now traverse the stack and insert the path into the tree
                 ProfilerNode<Payload> treeNode = threadNode;
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.tools.profiler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.EventBinding;
+import com.oracle.truffle.api.instrumentation.EventContext;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNode;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNodeFactory;
+import com.oracle.truffle.api.instrumentation.Instrumenter;
+import com.oracle.truffle.api.instrumentation.SourceSectionFilter;
+import com.oracle.truffle.api.instrumentation.StandardTags;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.NodeCost;
+
+/**
+ * Stack sampling without a {@link ShadowStack}. Nothing is instrumented between samples. For each
+ * sample the sampler thread {@link #requestSamples(long) starts a round}, which attaches a poll to
+ * the sampled nodes. Every thread that enters a sampled node then walks its own guest frames using
+ * {@link com.oracle.truffle.api.TruffleRuntime#iterateFrames} once per round. The captured stacks
+ * are stored in a per-thread ring buffer that the sampler thread {@link ThreadSamples#drain()
+ * drains}. As soon as every known thread took its sample, the poll is detached again, like the
+ * cancellation of a context detaches its listener.
+ *
+ * Truffle has no guest safepoints, so attaching the poll is what interrupts the threads. It
+ * invalidates the compiled code of the sampled roots once per round.
+ *
+ * Threads that do not execute sampled nodes during a round, for example because they are blocked,
+ * do not answer it. They are forgotten until they answer a later round, so that they do not keep
+ * the poll attached.
+ */
+final class StackPoller {
+
+    private static final int BUFFER_SIZE = 64;
+
+    private final ConcurrentHashMap<Thread, ThreadSamples> threads = new ConcurrentHashMap<>();
+    private final int stackLimit;
+    private final SourceSectionFilter sourceSectionFilter;
+    private final SourceSectionFilter pollFilter;
+    private final boolean ignoreInlinedRoots;
+    private final Instrumenter instrumenter;
+
+    private volatile long round;
+    private volatile long requestTimestamp;
+    private EventBinding<?> pollBinding;
+    private boolean disposed;
+
+    StackPoller(int stackLimit, SourceSectionFilter sourceSectionFilter, SourceSectionFilter pollFilter, boolean ignoreInlinedRoots, Instrumenter instrumenter) {
+        this.stackLimit = stackLimit;
+        this.sourceSectionFilter = sourceSectionFilter;
+        this.pollFilter = pollFilter;
+        this.ignoreInlinedRoots = ignoreInlinedRoots;
+        this.instrumenter = instrumenter;
+    }
+
+    Collection<ThreadSamples> getThreadSamples() {
+        return threads.values();
+    }
+
+    /**
+     * Starts a new round: every thread takes a sample the next time it enters a sampled node.
+     */
+    synchronized void requestSamples(long timestamp) {
+        if (disposed) {
+            return;
+        }
+        long previous = round;
+        threads.values().removeIf(samples -> samples.answeredRound != previous);
+        requestTimestamp = timestamp;
+        round = previous + 1;
+        if (pollBinding == null) {
+            pollBinding = instrumenter.attachExecutionEventFactory(pollFilter, new ExecutionEventNodeFactory() {
+                public ExecutionEventNode create(EventContext context) {
+                    if (context.getInstrumentedNode().getSourceSection() == null) {
+                        return null;
+                    }
+                    return new PollNode(StackPoller.this, context, ignoreInlinedRoots);
+                }
+            });
+        }
+    }
+
+    /** Detaches the poll if every known thread answered the given round. */
+    private synchronized void roundAnswered(long answered) {
+        if (answered != round || pollBinding == null) {
+            return;
+        }
+        for (ThreadSamples samples : threads.values()) {
+            if (samples.answeredRound != answered) {
+                return;
+            }
+        }
+        pollBinding.dispose();
+        pollBinding = null;
+    }
+
+    synchronized void dispose() {
+        disposed = true;
+        if (pollBinding != null) {
+            pollBinding.dispose();
+            pollBinding = null;
+        }
+    }
+
+    private ThreadSamples getThreadSamples(Thread thread) {
+        ThreadSamples samples = threads.get(thread);
+        if (samples == null) {
+            samples = new ThreadSamples(thread);
+            ThreadSamples previous = threads.putIfAbsent(thread, samples);
+            if (previous != null) {
+                samples = previous;
+            }
+        }
+        return samples;
+    }
+
+    private void poll(Node instrumentedNode, byte topState) {
+        long current = round;
+        ThreadSamples samples = getThreadSamples(Thread.currentThread());
+        if (samples.answeredRound == current) {
+            return;
+        }
+        samples.answeredRound = current;
+        takeSample(samples, instrumentedNode, topState, requestTimestamp);
+        roundAnswered(current);
+    }
+
+    private void takeSample(ThreadSamples samples, Node instrumentedNode, byte topState, long timestamp) {
+        ArrayList<StackTraceEntry> entries = new ArrayList<>();
+        addEntries(entries, instrumentedNode, topState);
+        Truffle.getRuntime().iterateFrames(frame -> {
+            Node callNode = frame.getCallNode();
+            if (callNode != null) {
+                addEntries(entries, callNode.getParent(), frame.isVirtualFrame() ? StackTraceEntry.STATE_COMPILED : StackTraceEntry.STATE_INTERPRETED);
+            }
+            return null;
+        });
+        boolean overflowed = entries.size() > stackLimit;
+        if (overflowed) {
+            samples.stackOverflowed = true;
+            return;
+        }
+        Collections.reverse(entries);
+        samples.offer(new Sample(entries.toArray(new StackTraceEntry[entries.size()]), timestamp));
+    }
+
+    private void addEntries(ArrayList<StackTraceEntry> entries, Node node, byte state) {
+        Node current = node;
+        while (current != null) {
+            if (sourceSectionFilter.includes(current) && current.getSourceSection() != null) {
+                entries.add(new StackTraceEntry(instrumenter, current, state));
+            }
+            current = current.getParent();
+        }
+    }
+
+    static final class Sample {
+        final StackTraceEntry[] stack;
+        final long timestamp;
+
+        Sample(StackTraceEntry[] stack, long timestamp) {
+            this.stack = stack;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Samples of a single thread. The ring buffer has a single producer, the sampled thread, and a
+     * single consumer, the sampler thread, so it needs no locks. Samples are dropped if the
+     * buffer is full.
+     */
+    static final class ThreadSamples {
+
+        final Thread thread;
+        volatile long answeredRound;
+        volatile boolean stackOverflowed;
+        volatile Sample lastSample;
+
+        private final AtomicReferenceArray<Sample> buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+        private volatile long head;
+        private volatile long tail;
+
+        ThreadSamples(Thread thread) {
+            this.thread = thread;
+        }
+
+        private void offer(Sample sample) {
+            lastSample = sample;
+            long h = head;
+            if (h - tail >= BUFFER_SIZE) {
+                return;
+            }
+            buffer.set((int) (h % BUFFER_SIZE), sample);
+            head = h + 1;
+        }
+
+        List<Sample> drain() {
+            long t = tail;
+            long h = head;
+            if (t == h) {
+                return Collections.emptyList();
+            }
+            List<Sample> result = new ArrayList<>((int) (h - t));
+            for (long i = t; i < h; i++) {
+                int index = (int) (i % BUFFER_SIZE);
+                result.add(buffer.get(index));
+                buffer.set(index, null);
+            }
+            tail = h;
+            return result;
+        }
+    }
+
+    private static final class PollNode extends ExecutionEventNode {
+
+        private final StackPoller poller;
+        private final Node instrumentedNode;
+        private final boolean isAttachedToRootTag;
+        private final boolean ignoreInlinedRoots;
+
+        PollNode(StackPoller poller, EventContext context, boolean ignoreInlinedRoots) {
+            this.poller = poller;
+            this.instrumentedNode = context.getInstrumentedNode();
+            this.isAttachedToRootTag = context.hasTag(StandardTags.RootTag.class);
+            this.ignoreInlinedRoots = ignoreInlinedRoots;
+        }
+
+        @Override
+        protected void onEnter(VirtualFrame frame) {
+            if (CompilerDirectives.inCompiledCode() && ignoreInlinedRoots && isAttachedToRootTag && !CompilerDirectives.inCompilationRoot()) {
+                return;
+            }
+            poll(currentState());
+        }
+
+        private static byte currentState() {
+            return CompilerDirectives.inInterpreter() ? StackTraceEntry.STATE_INTERPRETED
+                            : (CompilerDirectives.inCompilationRoot() ? StackTraceEntry.STATE_COMPILED : StackTraceEntry.STATE_COMPILATION_ROOT);
+        }
+
+        @TruffleBoundary
+        private void poll(byte state) {
+            poller.poll(instrumentedNode, state);
+        }
+
+        @Override
+        public NodeCost getCost() {
+            return NodeCost.NONE;
+        }
+    }
+}
@@ -110,6 +110,7 @@ public class CPUSamplerInstrument extends TruffleInstrument {
             sampler.setPeriod(env.getOptions().get(CPUSamplerCLI.SAMPLE_PERIOD));
             sampler.setDelay(env.getOptions().get(CPUSamplerCLI.DELAY_PERIOD));
             sampler.setStackLimit(env.getOptions().get(CPUSamplerCLI.STACK_LIMIT));
+            sampler.setUseShadowStack(env.getOptions().get(CPUSamplerCLI.SHADOW_STACK));
             sampler.setFilter(getSourceSectionFilter(env));
             sampler.setGatherSelfHitTimes(env.getOptions().get(GATHER_HIT_TIMES));
             sampler.setMode(env.getOptions().get(CPUSamplerCLI.MODE));
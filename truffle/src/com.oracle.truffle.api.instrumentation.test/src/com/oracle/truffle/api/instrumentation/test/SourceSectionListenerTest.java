@@ -47,6 +47,11 @@ import java.util.List;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.EventContext;
+import com.oracle.truffle.api.instrumentation.ExecutionEventListener;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNode;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNodeFactory;
 import com.oracle.truffle.api.instrumentation.Instrumenter;
 import com.oracle.truffle.api.instrumentation.LoadSourceSectionEvent;
 import com.oracle.truffle.api.instrumentation.LoadSourceSectionListener;
@@ -266,6 +271,69 @@ public class SourceSectionListenerTest extends AbstractInstrumentationTest {
         }
     }
 
+    @Test
+    public void testSourceFilteredBindingAfterManyRoots() throws IOException {
+        int sourceCount = 200;
+        List<Source> sources = new ArrayList<>();
+        for (int i = 0; i < sourceCount; i++) {
+            Source source = Source.newBuilder(InstrumentationTestLanguage.ID, "ROOT(STATEMENT(EXPRESSION))", "manyRoots" + i).buildLiteral();
+            sources.add(source);
+            run(source);
+        }
+        Source target = sources.get(sourceCount / 2);
+        com.oracle.truffle.api.source.Source targetImpl = getSourceImpl(target);
+        SourceSectionFilter filter = SourceSectionFilter.newBuilder().sourceIs(targetImpl).tagIs(StandardTags.StatementTag.class).build();
+
+        // The first lookups drop the roots that were added before they could be indexed.
+        instrumentEnv.getInstrumenter().attachLoadSourceSectionListener(filter, new LoadSourceSectionListener() {
+            public void onLoad(LoadSourceSectionEvent event) {
+            }
+        }, true).dispose();
+        instrumentEnv.getInstrumenter().attachExecutionEventFactory(filter, new ExecutionEventNodeFactory() {
+            public ExecutionEventNode create(EventContext ctx) {
+                return null;
+            }
+        }).dispose();
+
+        // Visiting a root queries its source section, so visiting all roots would query at least
+        // sourceCount of them.
+        int queryCount = InstrumentationTestLanguage.getRootSourceSectionQueryCount();
+        List<com.oracle.truffle.api.source.SourceSection> loaded = new ArrayList<>();
+        instrumentEnv.getInstrumenter().attachLoadSourceSectionListener(filter, new LoadSourceSectionListener() {
+            public void onLoad(LoadSourceSectionEvent event) {
+                loaded.add(event.getNode().getSourceSection());
+            }
+        }, true);
+        Assert.assertEquals(1, loaded.size());
+        Assert.assertSame(targetImpl, loaded.get(0).getSource());
+        assertOtherRootsNotVisited(queryCount, sourceCount);
+
+        queryCount = InstrumentationTestLanguage.getRootSourceSectionQueryCount();
+        List<com.oracle.truffle.api.source.SourceSection> entered = new ArrayList<>();
+        instrumentEnv.getInstrumenter().attachExecutionEventListener(filter, new ExecutionEventListener() {
+            public void onEnter(EventContext ctx, VirtualFrame frame) {
+                entered.add(ctx.getInstrumentedSourceSection());
+            }
+
+            public void onReturnValue(EventContext ctx, VirtualFrame frame, Object result) {
+            }
+
+            public void onReturnExceptional(EventContext ctx, VirtualFrame frame, Throwable exception) {
+            }
+        });
+        assertOtherRootsNotVisited(queryCount, sourceCount);
+        for (Source source : sources) {
+            run(source);
+        }
+        Assert.assertEquals(1, entered.size());
+        Assert.assertSame(targetImpl, entered.get(0).getSource());
+    }
+
+    private static void assertOtherRootsNotVisited(int queryCountBefore, int sourceCount) {
+        int queries = InstrumentationTestLanguage.getRootSourceSectionQueryCount() - queryCountBefore;
+        Assert.assertTrue("roots of other sources were visited: " + queries + " source section queries", queries < sourceCount / 10);
+    }
+
     private static class TestLoadSourceSectionExceptionClass extends RuntimeException {
 
         private static final long serialVersionUID = 1L;
@@ -123,6 +123,8 @@ final class InstrumentationHandler {
 
     final Collection<RootNode> loadedRoots = new WeakAsyncList<>(256);
     private final Collection<RootNode> executedRoots = new WeakAsyncList<>(64);
+    private final SourceRootIndex loadedRootsIndex = new SourceRootIndex();
+    private final SourceRootIndex executedRootsIndex = new SourceRootIndex();
     private final Collection<AllocationReporter> allocationReporters = new WeakAsyncList<>(16);
 
     private final Collection<EventBinding.Source<?>> executionBindings = new EventBindingList<>(8);
@@ -201,6 +203,7 @@ final class InstrumentationHandler {
                     rootSources = null;
                 }
                 loadedRoots.add(root);
+                loadedRootsIndex.add(root);
                 // Do not invoke foreign code while holding a lock to avoid deadlocks.
                 if (rootSources != null) {
                     SourceList sourceList = sourcesListRef.get();
@@ -215,6 +218,7 @@ final class InstrumentationHandler {
             }
         } else {
             loadedRoots.add(root);
+            loadedRootsIndex.add(root);
         }
 
         // fast path no bindings attached
@@ -332,6 +336,7 @@ final class InstrumentationHandler {
                     rootSources = null;
                 }
                 executedRoots.add(root);
+                executedRootsIndex.add(root);
                 // Do not invoke foreign code while holding a lock to avoid deadlocks.
                 if (rootSources != null) {
                     SourceList sourceList = sourcesExecutedListRef.get();
@@ -346,6 +351,7 @@ final class InstrumentationHandler {
             }
         } else {
             executedRoots.add(root);
+            executedRootsIndex.add(root);
         }
 
         // fast path no bindings attached
@@ -442,7 +448,7 @@ final class InstrumentationHandler {
         this.executionBindings.add(binding);
 
         if (!executedRoots.isEmpty()) {
-            visitRoots(executedRoots, new InsertWrappersWithBindingVisitor(binding));
+            visitRoots(findRoots(executedRoots, executedRootsIndex, binding), new InsertWrappersWithBindingVisitor(binding));
         }
 
         if (TRACE) {
@@ -460,7 +466,7 @@ final class InstrumentationHandler {
         this.sourceSectionBindings.add(binding);
         if (notifyLoaded) {
             if (!loadedRoots.isEmpty()) {
-                visitRoots(loadedRoots, new NotifyLoadedWithBindingVisitor(binding));
+                visitRoots(findRoots(loadedRoots, loadedRootsIndex, binding), new NotifyLoadedWithBindingVisitor(binding));
             }
         }
 
@@ -477,7 +483,7 @@ final class InstrumentationHandler {
         }
 
         if (!loadedRoots.isEmpty()) {
-            visitRoots(loadedRoots, new NotifyLoadedWithBindingVisitor(binding));
+            visitRoots(findRoots(loadedRoots, loadedRootsIndex, binding), new NotifyLoadedWithBindingVisitor(binding));
         }
 
         if (TRACE) {
@@ -715,6 +721,19 @@ final class InstrumentationHandler {
         }
     }
 
+    /**
+     * Returns the roots of {@code roots} that may contain nodes matching the filter of
+     * {@code binding}. If the filter is limited to specific sources, only the roots of these
+     * sources are looked up in {@code index}, otherwise all roots are returned.
+     */
+    private static Collection<RootNode> findRoots(Collection<RootNode> roots, SourceRootIndex index, EventBinding.Source<?> binding) {
+        Source[] limitedSources = binding.getFilter().getLimitedSources();
+        if (limitedSources == null) {
+            return roots;
+        }
+        return index.getRoots(limitedSources);
+    }
+
     private void visitRoots(Collection<RootNode> roots, AbstractNodeVisitor addBindingsVisitor) {
         for (RootNode root : roots) {
             visitRoot(root, root, addBindingsVisitor, false);
@@ -730,7 +749,7 @@ final class InstrumentationHandler {
         if (binding instanceof EventBinding.Source) {
             EventBinding.Source<?> sourceBinding = (EventBinding.Source<?>) binding;
             if (sourceBinding.isExecutionEvent()) {
-                visitRoots(executedRoots, new DisposeWrappersVisitor(sourceBinding));
+                visitRoots(findRoots(executedRoots, executedRootsIndex, sourceBinding), new DisposeWrappersVisitor(sourceBinding));
             }
         } else if (binding instanceof EventBinding.Allocation) {
             EventBinding.Allocation<?> allocationBinding = (EventBinding.Allocation<?>) binding;
@@ -2153,6 +2172,82 @@ final class InstrumentationHandler {
 
     }
 
+    /**
+     * Index of roots by the source of their root source section. Roots whose nodes may belong to
+     * other sources than the root source section, according to their {@link RootNodeBits}, are
+     * additionally kept in a list of unindexed roots that is returned for every lookup. Roots are
+     * removed from that list once their bits show that their root source section describes them
+     * or once they are collected.
+     */
+    private static final class SourceRootIndex {
+
+        private static final int INITIAL_PRUNE_THRESHOLD = 64;
+
+        private final Map<Source, Collection<RootNode>> rootsBySource = new WeakHashMap<>();
+        private List<WeakReference<RootNode>> unindexedRoots = new ArrayList<>();
+        private int pruneThreshold = INITIAL_PRUNE_THRESHOLD;
+
+        synchronized void add(RootNode root) {
+            SourceSection sourceSection = root.getSourceSection();
+            if (sourceSection != null) {
+                Collection<RootNode> roots = rootsBySource.get(sourceSection.getSource());
+                if (roots == null) {
+                    roots = new WeakAsyncList<>(4);
+                    rootsBySource.put(sourceSection.getSource(), roots);
+                }
+                roots.add(root);
+            }
+            if (isIndexed(root)) {
+                return;
+            }
+            if (unindexedRoots.size() >= pruneThreshold) {
+                pruneUnindexedRoots(null);
+                // Grow the threshold with the live roots to keep adding amortized constant time.
+                pruneThreshold = Math.max(INITIAL_PRUNE_THRESHOLD, unindexedRoots.size() * 2);
+            }
+            unindexedRoots.add(new WeakReference<>(root));
+        }
+
+        synchronized Collection<RootNode> getRoots(Source[] sources) {
+            Set<RootNode> result = new LinkedHashSet<>();
+            for (Source source : sources) {
+                Collection<RootNode> roots = rootsBySource.get(source);
+                if (roots != null) {
+                    result.addAll(roots);
+                }
+            }
+            pruneUnindexedRoots(result);
+            return result;
+        }
+
+        /**
+         * Removes collected and indexed roots from the unindexed roots and adds the remaining ones
+         * to {@code result} if it is not {@code null}.
+         */
+        private void pruneUnindexedRoots(Set<RootNode> result) {
+            List<WeakReference<RootNode>> stillUnindexed = new ArrayList<>(unindexedRoots.size());
+            for (WeakReference<RootNode> ref : unindexedRoots) {
+                RootNode root = ref.get();
+                if (root == null || isIndexed(root)) {
+                    continue;
+                }
+                stillUnindexed.add(ref);
+                if (result != null) {
+                    result.add(root);
+                }
+            }
+            unindexedRoots = stillUnindexed;
+        }
+
+        private static boolean isIndexed(RootNode root) {
+            int bits = RootNodeBits.get(root);
+            if (RootNodeBits.isUninitialized(bits)) {
+                return false;
+            }
+            return RootNodeBits.isNoSourceSection(bits) || (RootNodeBits.isSameSource(bits) && root.getSourceSection() != null);
+        }
+    }
+
     private static final class SourceList {
 
         private final Collection<Source> list = new WeakAsyncList<>(16);
@@ -192,6 +192,27 @@ public final class SourceSectionFilter {
         return true;
     }
 
+    /**
+     * Returns the sources this filter is limited to or {@code null} if it may match nodes of any
+     * source. Used to only visit the roots of these sources when a binding is attached.
+     */
+    Source[] getLimitedSources() {
+        for (EventFilterExpression exp : expressions) {
+            if (exp instanceof EventFilterExpression.SourceIs) {
+                return ((EventFilterExpression.SourceIs) exp).sources;
+            } else if (exp instanceof EventFilterExpression.SourceSectionEquals) {
+                Set<Source> sources = new HashSet<>();
+                for (SourceSection section : ((EventFilterExpression.SourceSectionEquals) exp).sourceSections) {
+                    if (section != null) {
+                        sources.add(section.getSource());
+                    }
+                }
+                return sources.toArray(new Source[sources.size()]);
+            }
+        }
+        return null;
+    }
+
     boolean isInstrumentedRoot(Set<Class<?>> providedTags, SourceSection rootSourceSection, RootNode rootNode, int rootNodeBits) {
         for (EventFilterExpression exp : expressions) {
             if (!exp.isRootIncluded(providedTags, rootSourceSection, rootNode, rootNodeBits)) {
@@ -103,6 +103,34 @@ public class PolyglotCachingTest {
         assertEquals(4, parseCalled.get());
     }
 
+    @Test
+    public void testSourceCacheWeightLimit() throws Exception {
+        AtomicInteger parseCalled = new AtomicInteger(0);
+        ProxyLanguage.setDelegate(new ProxyLanguage() {
+            @Override
+            protected CallTarget parse(ParsingRequest request) throws Exception {
+                parseCalled.incrementAndGet();
+                return Truffle.getRuntime().createCallTarget(RootNode.createConstantNode(""));
+            }
+        });
+        Context c = Context.newBuilder().allowExperimentalOptions(true).option("engine.SourceCacheWeightLimit", "10").build();
+        Source source1 = Source.create(ProxyLanguage.ID, "source_1");
+        Source source2 = Source.create(ProxyLanguage.ID, "source_2");
+        c.eval(source1);
+        assertEquals(1, parseCalled.get());
+        c.eval(source1);
+        assertEquals(1, parseCalled.get());
+
+        // exceeds the limit and evicts the least recently used source
+        c.eval(source2);
+        assertEquals(2, parseCalled.get());
+        c.eval(source2);
+        assertEquals(2, parseCalled.get());
+        c.eval(source1);
+        assertEquals(3, parseCalled.get());
+        c.close();
+    }
+
     /*
      * Tests that the outer source instance is never the same as the one passed in. That allows the
      * outer source instance to be collected while the inner one is still referenced strongly. The
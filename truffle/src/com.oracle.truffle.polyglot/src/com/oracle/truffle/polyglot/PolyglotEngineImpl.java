@@ -180,6 +180,7 @@ final class PolyglotEngineImpl extends AbstractPolyglotImpl.AbstractEngineImpl i
     private volatile EngineLimits limits;
     final boolean conservativeContextReferences;
     private final MessageTransport messageInterceptor;
+    final PolyglotSourceCache.Statistics sourceCacheStatistics = new PolyglotSourceCache.Statistics();
 
     PolyglotEngineImpl(PolyglotImpl impl, DispatchOutputStream out, DispatchOutputStream err, InputStream in, Map<String, String> options,
                     boolean allowExperimentalOptions, boolean useSystemProperties, ClassLoader contextClassLoader, boolean boundEngine,
@@ -994,6 +995,9 @@ final class PolyglotEngineImpl extends AbstractPolyglotImpl.AbstractEngineImpl i
             // don't commit to the close if still running as this might cause races in the executing
             // context.
             if (closeContexts) {
+                if (engineOptionValues.get(PolyglotEngineOptions.TraceSourceCache)) {
+                    sourceCacheStatistics.log();
+                }
                 Object loggers = getEngineLoggers();
                 if (loggers != null) {
                     LANGUAGE.closeEngineLoggers(loggers);
@@ -65,4 +65,12 @@ final class PolyglotEngineOptions {
                     "This allows invalid sharing between contexts. " +
                     "For testing purposes only.")//
     static final OptionKey<Boolean> UseConservativeContextReferences = new OptionKey<>(false);
+
+    @Option(category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL, help = "Maximum total size in characters or bytes of the cached sources of a language instance. " +
+                    "The least recently used sources are evicted from the cache first. " +
+                    "The cache is only bounded by the reachability of the sources if 0 (default: 0).")//
+    static final OptionKey<Long> SourceCacheWeightLimit = new OptionKey<>(0L);
+
+    @Option(category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL, help = "Print the source cache hits, misses and evictions when the engine is closed.")//
+    static final OptionKey<Boolean> TraceSourceCache = new OptionKey<>(false);
 }
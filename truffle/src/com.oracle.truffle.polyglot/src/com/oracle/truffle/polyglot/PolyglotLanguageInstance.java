@@ -80,7 +80,7 @@ final class PolyglotLanguageInstance implements VMObject {
     @SuppressWarnings("unchecked")
     PolyglotLanguageInstance(PolyglotLanguage language) {
         this.language = language;
-        this.sourceCache = new PolyglotSourceCache();
+        this.sourceCache = new PolyglotSourceCache(language.engine.engineOptionValues.get(PolyglotEngineOptions.SourceCacheWeightLimit), language.engine.sourceCacheStatistics);
         this.valueCodeCache = new ConcurrentHashMap<>();
         this.hostInteropCodeCache = new ConcurrentHashMap<>();
         try {
@@ -44,21 +44,42 @@ import static com.oracle.truffle.polyglot.EngineAccessor.LANGUAGE;
 
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 
 import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.TruffleLogger;
 import com.oracle.truffle.api.source.Source;
 
 final class PolyglotSourceCache {
 
-    private final ConcurrentHashMap<Object, CallTarget> sourceCache;
+    private static final TruffleLogger LOG = TruffleLogger.getLogger(PolyglotEngineImpl.OPTION_GROUP_ENGINE, PolyglotSourceCache.class);
+
+    private final ConcurrentHashMap<Object, CacheEntry> sourceCache;
     private final ReferenceQueue<Source> deadSources = new ReferenceQueue<>();
 
-    PolyglotSourceCache() {
+    /*
+     * The maximum total weight of the parsed entries, or 0 if the cache is only bounded by the
+     * reachability of its sources.
+     */
+    private final long weightLimit;
+    private final AtomicLong weight = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final Statistics statistics;
+
+    PolyglotSourceCache(long weightLimit, Statistics statistics) {
         this.sourceCache = new ConcurrentHashMap<>();
+        this.weightLimit = weightLimit;
+        this.statistics = statistics;
     }
 
     CallTarget parseCached(PolyglotLanguageContext context, Source source, String[] argumentNames) {
@@ -68,23 +89,107 @@ final class PolyglotSourceCache {
         if (source.isCached()) {
             Object sourceId = EngineAccessor.SOURCE.getSourceIdentifier(source);
             WeakSourceKey ref = new WeakSourceKey(sourceId, source, argumentNames, deadSources);
-            target = sourceCache.get(ref);
-            if (target == null) {
-                target = parseImpl(context, argumentNames, EngineAccessor.SOURCE.copySource(source));
-                CallTarget prev = sourceCache.putIfAbsent(ref, target);
-                if (prev != null) {
-                    /*
-                     * Parsed twice -> discard the one not in the cache.
-                     */
-                    target = prev;
+            CacheEntry entry = sourceCache.get(ref);
+            if (entry == null) {
+                CacheEntry newEntry = new CacheEntry(ref, weightOf(source));
+                entry = sourceCache.putIfAbsent(ref, newEntry);
+                if (entry == null) {
+                    entry = newEntry;
                 }
             }
+            target = entry.target;
+            if (target != null) {
+                statistics.hits.incrementAndGet();
+                entry.lastAccess = clock.incrementAndGet();
+            } else {
+                target = parseEntry(entry, context, source, argumentNames);
+            }
         } else {
             target = parseImpl(context, argumentNames, source);
         }
         return target;
     }
 
+    /*
+     * Concurrent requests for the same source wait for the first parse instead of parsing the
+     * source again.
+     */
+    private CallTarget parseEntry(CacheEntry entry, PolyglotLanguageContext context, Source source, String[] argumentNames) {
+        CallTarget target;
+        synchronized (entry) {
+            target = entry.target;
+            if (target != null) {
+                statistics.hits.incrementAndGet();
+                entry.lastAccess = clock.incrementAndGet();
+                return target;
+            }
+            statistics.misses.incrementAndGet();
+            try {
+                target = parseImpl(context, argumentNames, EngineAccessor.SOURCE.copySource(source));
+            } catch (Throwable t) {
+                remove(entry);
+                throw t;
+            }
+            entry.target = target;
+            entry.lastAccess = clock.incrementAndGet();
+            if (!entry.removed) {
+                weight.addAndGet(entry.weight);
+            }
+        }
+        if (weightLimit > 0 && weight.get() > weightLimit) {
+            evict();
+        }
+        return target;
+    }
+
+    /*
+     * Removes the least recently used parsed entries until the cache is at three quarters of its
+     * weight limit, so that eviction does not run again on the next miss.
+     */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<CacheEntry> parsed = new ArrayList<>();
+            for (CacheEntry entry : sourceCache.values()) {
+                if (entry.target != null) {
+                    parsed.add(entry);
+                }
+            }
+            parsed.sort(Comparator.comparingLong((CacheEntry e) -> e.lastAccess));
+            long target = weightLimit - weightLimit / 4;
+            for (CacheEntry entry : parsed) {
+                if (weight.get() <= target) {
+                    break;
+                }
+                if (remove(entry)) {
+                    statistics.evictions.incrementAndGet();
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private boolean remove(CacheEntry entry) {
+        if (!sourceCache.remove(entry.key, entry)) {
+            return false;
+        }
+        synchronized (entry) {
+            entry.removed = true;
+            if (entry.target != null) {
+                weight.addAndGet(-entry.weight);
+            }
+        }
+        return true;
+    }
+
+    private static long weightOf(Source source) {
+        // the length of the source is known without parsing and grows with the size of its AST
+        return Math.max(1, source.getLength());
+    }
+
     private static CallTarget parseImpl(PolyglotLanguageContext context, String[] argumentNames, Source source) {
         if (!EngineAccessor.SOURCE.isLegacySource(source)) {
             validateSource(context, source);
@@ -165,7 +270,38 @@ final class PolyglotSourceCache {
     private void cleanupStaleEntries() {
         WeakSourceKey sourceRef = null;
         while ((sourceRef = (WeakSourceKey) deadSources.poll()) != null) {
-            sourceCache.remove(sourceRef);
+            CacheEntry entry = sourceCache.get(sourceRef);
+            if (entry != null && entry.key == sourceRef) {
+                remove(entry);
+            }
+        }
+    }
+
+    private static final class CacheEntry {
+
+        final WeakSourceKey key;
+        final long weight;
+        volatile CallTarget target;
+        volatile long lastAccess;
+        boolean removed;
+
+        CacheEntry(WeakSourceKey key, long weight) {
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Source cache hits, misses and evictions of all language instances of an engine.
+     */
+    static final class Statistics {
+
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong evictions = new AtomicLong();
+
+        void log() {
+            LOG.log(Level.INFO, "Source cache: {0} hits, {1} misses, {2} evictions.", new Object[]{hits.get(), misses.get(), evictions.get()});
         }
     }
 